@@ -61,6 +61,10 @@ public class NodeAction extends AbstractAction {
             parameter.setMbeanPort(node.getPort().intValue() + 2);
         }
 
+        if (parameter.getStreamPort() == null || parameter.getStreamPort() == 0) {
+            parameter.setStreamPort(node.getPort().intValue() + 3);
+        }
+
         Long autoKeeperclusterId = nodeParameterInfo.getField("autoKeeperclusterId").getLongValue();
         if (autoKeeperclusterId != null && autoKeeperclusterId > 0) {
             AutoKeeperCluster autoKeeperCluster = autoKeeperClusterService.findAutoKeeperClusterById(autoKeeperclusterId);
@@ -97,6 +101,10 @@ public class NodeAction extends AbstractAction {
             parameter.setMbeanPort(node.getPort().intValue() + 2);
         }
 
+        if (parameter.getStreamPort() == null || parameter.getStreamPort() == 0) {
+            parameter.setStreamPort(node.getPort().intValue() + 3);
+        }
+
         Long autoKeeperclusterId = nodeParameterInfo.getField("autoKeeperclusterId").getLongValue();
         if (autoKeeperclusterId != null && autoKeeperclusterId > 0) {
             AutoKeeperCluster autoKeeperCluster = autoKeeperClusterService.findAutoKeeperClusterById(autoKeeperclusterId);
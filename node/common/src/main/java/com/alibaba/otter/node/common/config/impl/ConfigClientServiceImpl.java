@@ -29,6 +29,7 @@ import com.alibaba.otter.node.common.config.ConfigClientService;
 import com.alibaba.otter.shared.arbitrate.impl.config.ArbitrateConfig;
 import com.alibaba.otter.shared.arbitrate.impl.config.ArbitrateConfigRegistry;
 import com.alibaba.otter.shared.common.model.config.ConfigException;
+import com.alibaba.otter.shared.common.model.config.ConfigHelper;
 import com.alibaba.otter.shared.common.model.config.channel.Channel;
 import com.alibaba.otter.shared.common.model.config.node.Node;
 import com.alibaba.otter.shared.common.model.config.pipeline.Pipeline;
@@ -196,6 +197,8 @@ public class ConfigClientServiceImpl implements InternalConfigClientService, Arb
             if (excludeId == null || !pipeline.getId().equals(excludeId)) {
                 channelMapping.put(pipeline.getId(), channelId);
             }
+
+            ConfigHelper.refreshRoutingIndex(pipeline);// 重建一下路由索引
         }
     }
 
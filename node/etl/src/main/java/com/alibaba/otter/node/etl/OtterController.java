@@ -37,8 +37,14 @@ import com.alibaba.otter.node.common.config.model.NodeTask.TaskEvent;
 import com.alibaba.otter.node.etl.common.datasource.DataSourceService;
 import com.alibaba.otter.node.etl.common.db.dialect.DbDialectFactory;
 import com.alibaba.otter.node.etl.common.jmx.StageAggregationCollector;
+import com.alibaba.otter.node.etl.common.pipe.impl.AdaptivePipeChooser;
+import com.alibaba.otter.node.etl.common.pipe.impl.memory.RowDataMemoryPipe;
+import com.alibaba.otter.node.etl.common.pipe.impl.mmap.RowDataMmapPipe;
+import com.alibaba.otter.node.etl.common.pipe.impl.rpc.RowDataRpcPipe;
+import com.alibaba.otter.node.etl.common.pipe.impl.stream.RowDataStreamPipe;
 import com.alibaba.otter.node.etl.common.task.GlobalTask;
 import com.alibaba.otter.node.etl.extract.ExtractTask;
+import com.alibaba.otter.node.etl.extract.extractor.DatabaseExtractCache;
 import com.alibaba.otter.node.etl.load.LoadTask;
 import com.alibaba.otter.node.etl.select.SelectTask;
 import com.alibaba.otter.node.etl.transform.TransformTask;
@@ -47,6 +53,7 @@ import com.alibaba.otter.shared.arbitrate.ArbitrateManageService;
 import com.alibaba.otter.shared.arbitrate.impl.manage.NodeSessionExpired;
 import com.alibaba.otter.shared.arbitrate.impl.zookeeper.ZooKeeperClient;
 import com.alibaba.otter.shared.common.model.config.ConfigException;
+import com.alibaba.otter.shared.common.model.config.ConfigHelper;
 import com.alibaba.otter.shared.common.model.config.enums.StageType;
 import com.alibaba.otter.shared.common.model.config.node.Node;
 import com.alibaba.otter.shared.common.model.config.pipeline.Pipeline;
@@ -84,6 +91,12 @@ public class OtterController implements NodeTaskListener, OtterControllerMBean {
     private ExecutorService                       executorService;
 
     private StageAggregationCollector             stageAggregationCollector;
+    private RowDataMemoryPipe                     rowDataMemoryPipe;
+    private RowDataRpcPipe                        rowDataRpcPipe;
+    private RowDataMmapPipe                       rowDataMmapPipe;
+    private RowDataStreamPipe                     rowDataStreamPipe;
+    private AdaptivePipeChooser                   adaptivePipeChooser;
+    private DatabaseExtractCache                  databaseExtractCache;
 
     public void start() throws Throwable {
         // 初始化节点
@@ -229,6 +242,12 @@ public class OtterController implements NodeTaskListener, OtterControllerMBean {
 
         // 释放资源
         releasePipeline(pipelineId);
+        rowDataMemoryPipe.release(pipelineId);
+        rowDataRpcPipe.release(pipelineId);
+        rowDataMmapPipe.release(pipelineId);
+        rowDataStreamPipe.release(pipelineId);
+        databaseExtractCache.release(pipelineId);
+        ConfigHelper.removeRoutingIndex(pipelineId);
         arbitrateEventService.toolEvent().release(pipelineId);
     }
 
@@ -371,6 +390,31 @@ public class OtterController implements NodeTaskListener, OtterControllerMBean {
         return pendingProcess(pipelineId, StageType.LOAD);
     }
 
+    public String selectCoalescedInfo(Long pipelineId) {
+        GlobalTask task = controllers.get(pipelineId).get(StageType.SELECT);
+        if (task instanceof SelectTask) {
+            return ((SelectTask) task).getCoalescedInfo();
+        } else {
+            return "node don't running stage:" + StageType.SELECT;
+        }
+    }
+
+    public String pipeStoreInfo() {
+        return "memory:[" + rowDataMemoryPipe.getStoreInfo() + "] , rpc:[" + rowDataRpcPipe.getStoreInfo() + "]";
+    }
+
+    public String pipeChooseInfo(Long pipelineId) {
+        return adaptivePipeChooser.info(pipelineId);
+    }
+
+    public String extractCacheInfo(Long pipelineId) {
+        return databaseExtractCache.info(pipelineId);
+    }
+
+    public String tableMetaCacheInfo(Long pipelineId) {
+        return dbDialectFactory.tableMetaInfo(pipelineId);
+    }
+
     private String pendingProcess(Long pipelineId, StageType stage) {
         GlobalTask task = controllers.get(pipelineId).get(stage);
         if (task != null) {
@@ -410,6 +454,30 @@ public class OtterController implements NodeTaskListener, OtterControllerMBean {
         this.stageAggregationCollector = stageAggregationCollector;
     }
 
+    public void setRowDataMemoryPipe(RowDataMemoryPipe rowDataMemoryPipe) {
+        this.rowDataMemoryPipe = rowDataMemoryPipe;
+    }
+
+    public void setRowDataRpcPipe(RowDataRpcPipe rowDataRpcPipe) {
+        this.rowDataRpcPipe = rowDataRpcPipe;
+    }
+
+    public void setRowDataMmapPipe(RowDataMmapPipe rowDataMmapPipe) {
+        this.rowDataMmapPipe = rowDataMmapPipe;
+    }
+
+    public void setRowDataStreamPipe(RowDataStreamPipe rowDataStreamPipe) {
+        this.rowDataStreamPipe = rowDataStreamPipe;
+    }
+
+    public void setAdaptivePipeChooser(AdaptivePipeChooser adaptivePipeChooser) {
+        this.adaptivePipeChooser = adaptivePipeChooser;
+    }
+
+    public void setDatabaseExtractCache(DatabaseExtractCache databaseExtractCache) {
+        this.databaseExtractCache = databaseExtractCache;
+    }
+
     public void setExecutorService(ExecutorService executorService) {
         this.executorService = executorService;
     }
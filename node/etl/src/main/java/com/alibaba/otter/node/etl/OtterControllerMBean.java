@@ -126,4 +126,29 @@ public interface OtterControllerMBean {
      * load pending队列信息
      */
     public String loadPendingProcess(Long pipelineId);
+
+    /**
+     * select空批次合并ack的统计信息
+     */
+    public String selectCoalescedInfo(Long pipelineId);
+
+    /**
+     * memory/rpc pipe存储的统计信息，包括占用字节数、命中、丢失和淘汰次数
+     */
+    public String pipeStoreInfo();
+
+    /**
+     * 自适应pipe选择的最近一次决策及代价模型
+     */
+    public String pipeChooseInfo(Long pipelineId);
+
+    /**
+     * 数据库反查结果缓存按表的命中率
+     */
+    public String extractCacheInfo(Long pipelineId);
+
+    /**
+     * 数据源table meta缓存的命中、丢失次数和累计加载耗时
+     */
+    public String tableMetaCacheInfo(Long pipelineId);
 }
@@ -19,9 +19,7 @@ package com.alibaba.otter.node.etl.common.db.dialect;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.SQLException;
-import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.exception.NestableRuntimeException;
@@ -41,7 +39,6 @@ import com.alibaba.otter.node.etl.common.datasource.DataSourceService;
 import com.alibaba.otter.shared.common.utils.meta.DdlUtils;
 import com.alibaba.otter.shared.common.utils.meta.DdlUtilsFilter;
 import com.google.common.base.Function;
-import com.google.common.collect.OtterMigrateMap;
 
 /**
  * @author jianghang 2011-10-27 下午01:50:19
@@ -58,7 +55,7 @@ public abstract class AbstractDbDialect implements DbDialect {
     protected JdbcTemplate             jdbcTemplate;
     protected TransactionTemplate      transactionTemplate;
     protected LobHandler               lobHandler;
-    protected Map<List<String>, Table> tables;
+    protected TableMetaCache           tables;
 
     public AbstractDbDialect(final JdbcTemplate jdbcTemplate, LobHandler lobHandler){
         this.jdbcTemplate = jdbcTemplate;
@@ -101,12 +98,11 @@ public abstract class AbstractDbDialect implements DbDialect {
     }
 
     public Table findTable(String schema, String table, boolean useCache) {
-        List<String> key = Arrays.asList(schema, table);
         if (useCache == false) {
-            tables.remove(key);
+            tables.invalidate(schema, table);
         }
 
-        return tables.get(key);
+        return tables.get(schema, table);
     }
 
     public Table findTable(String schema, String table) {
@@ -115,11 +111,19 @@ public abstract class AbstractDbDialect implements DbDialect {
 
     public void reloadTable(String schema, String table) {
         if (StringUtils.isNotEmpty(table)) {
-            tables.remove(Arrays.asList(schema, table));
+            tables.invalidate(schema, table);
         } else {
             // 如果没有存在表名，则直接清空所有的table，重新加载
-            tables.clear();
+            tables.invalidateAll();
         }
+
+        if (logger.isInfoEnabled()) {
+            logger.info("reload table [{}.{}] , table meta cache : {}", new Object[] { schema, table, tables });
+        }
+    }
+
+    public TableMetaCache getTableMetaCache() {
+        return tables;
     }
 
     public String getName() {
@@ -169,7 +173,7 @@ public abstract class AbstractDbDialect implements DbDialect {
     // ================================ helper method ==========================
 
     private void initTables(final JdbcTemplate jdbcTemplate) {
-        this.tables = OtterMigrateMap.makeSoftValueComputingMap(new Function<List<String>, Table>() {
+        this.tables = new TableMetaCache(new Function<List<String>, Table>() {
 
             public Table apply(List<String> names) {
                 Assert.isTrue(names.size() == 2);
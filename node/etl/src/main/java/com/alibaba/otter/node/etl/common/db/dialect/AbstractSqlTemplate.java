@@ -39,6 +39,23 @@ public abstract class AbstractSqlTemplate implements SqlTemplate {
         return sql.toString().intern();// 不使用intern，避免方法区内存消耗过多
     }
 
+    public String getBatchSelectSql(String schemaName, String tableName, String[] pkNames, String[] columnNames,
+                                    int size) {
+        StringBuilder sql = new StringBuilder("select ");
+        int length = pkNames.length;
+        for (int i = 0; i < length; i++) {
+            sql.append(appendEscape(pkNames[i])).append(" , ");
+        }
+        length = columnNames.length;
+        for (int i = 0; i < length; i++) {
+            sql.append(appendEscape(columnNames[i])).append((i + 1 < length) ? " , " : "");
+        }
+
+        sql.append(" from ").append(getFullName(schemaName, tableName)).append(" where ");
+        appendBatchKeyCondition(sql, pkNames, size);
+        return sql.toString();// size不固定，不使用intern
+    }
+
     public String getUpdateSql(String schemaName, String tableName, String[] pkNames, String[] columnNames, boolean updatePks, String shardColumn) {
         StringBuilder sql = new StringBuilder("update " + getFullName(schemaName, tableName) + " set ");
         appendExcludeSingleShardColumnEquals(sql, columnNames, ",", updatePks, shardColumn);
@@ -93,6 +110,27 @@ public abstract class AbstractSqlTemplate implements SqlTemplate {
         }
     }
 
+    /**
+     * 单主键使用pk in (?,?)，复合主键使用( pk1 = ? and pk2 = ? ) or (...)展开.
+     * 行构造器形式的(pk1,pk2) in ((?,?))在部分mysql版本中无法使用主键索引，会退化为全表扫描
+     * 注意：oracle的in列表最多1000个表达式(ORA-01795)，由调用方控制size
+     */
+    protected void appendBatchKeyCondition(StringBuilder sql, String[] pkNames, int size) {
+        if (pkNames.length == 1) {
+            sql.append(appendEscape(pkNames[0])).append(" in (");
+            for (int i = 0; i < size; i++) {
+                sql.append("?").append((i + 1 < size) ? " , " : "");
+            }
+            sql.append(")");
+        } else {
+            for (int i = 0; i < size; i++) {
+                sql.append("(");
+                appendColumnEquals(sql, pkNames, "and");
+                sql.append(")").append((i + 1 < size) ? " or " : "");
+            }
+        }
+    }
+
     protected void appendColumnEquals(StringBuilder sql, String[] columns, String separator) {
         int size = columns.length;
         for (int i = 0; i < size; i++) {
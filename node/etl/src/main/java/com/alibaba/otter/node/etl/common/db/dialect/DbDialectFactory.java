@@ -115,6 +115,32 @@ public class DbDialectFactory implements DisposableBean {
         return dialects.get(pipelineId).get(source);
     }
 
+    /**
+     * 输出pipeline下各数据源的table meta缓存统计
+     */
+    public String tableMetaInfo(Long pipelineId) {
+        if (!dialects.containsKey(pipelineId)) {
+            return "";
+        }
+
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<DbMediaSource, DbDialect> entry : dialects.get(pipelineId).entrySet()) {
+            if (!(entry.getValue() instanceof AbstractDbDialect)) {
+                continue;
+            }
+
+            TableMetaCache tables = ((AbstractDbDialect) entry.getValue()).getTableMetaCache();
+            builder.append(String.format("%s(%s) size:%s hit:%s miss:%s loadTime:%sms\n",
+                entry.getKey().getName(),
+                entry.getKey().getId(),
+                tables.size(),
+                tables.getHitCount(),
+                tables.getMissCount(),
+                tables.getTotalLoadTime()));
+        }
+        return builder.toString();
+    }
+
     public void destory(Long pipelineId) {
         Map<DbMediaSource, DbDialect> dialect = dialects.remove(pipelineId);
         if (dialect != null) {
@@ -26,6 +26,14 @@ public interface SqlTemplate {
 
     public String getSelectSql(String schemaName, String tableName, String[] pkNames, String[] columnNames);
 
+    /**
+     * 获取按主键批量反查的sql，返回字段为pkNames + columnNames，用于将结果按主键映射回原记录
+     * 
+     * @param size 主键的个数，参数按主键顺序依次展开，共size * pkNames.length个
+     */
+    public String getBatchSelectSql(String schemaName, String tableName, String[] pkNames, String[] columnNames,
+                                    int size);
+
     public String getUpdateSql(String schemaName, String tableName, String[] pkNames, String[] columnNames, boolean updatePks, String shardColumn);
 
     public String getDeleteSql(String schemaName, String tableName, String[] pkNames);
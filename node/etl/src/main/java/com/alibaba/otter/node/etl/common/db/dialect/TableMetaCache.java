@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2010-2101 Alibaba Group Holding Limited.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.otter.node.etl.common.db.dialect;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.ddlutils.model.Table;
+
+import com.google.common.base.Function;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * 表结构meta信息的缓存，替代原先基于softValues的computingMap
+ *
+ * <pre>
+ * 1. 强引用+最大数量限制，只会按照LRU淘汰最久未访问的表，不会因为GC压力丢失正在使用的表结构
+ * 2. 基于版本号失效，DDL或者手工reload时递增版本号，避免并发加载中的旧结构被重新放入缓存
+ * 3. 记录命中/未命中/加载耗时等统计信息
+ * </pre>
+ */
+public class TableMetaCache {
+
+    public static final int                               DEFAULT_MAX_SIZE = 10000;
+
+    private final LoadingCache<List<String>, TableEntry>  tables;
+    private final AtomicLong                              version          = new AtomicLong(0);
+    private final ConcurrentMap<List<String>, Long>       invalidVersions  = new ConcurrentHashMap<List<String>, Long>();
+    private volatile long                                 clearVersion     = 0;
+    private final int                                     maxSize;
+
+    public TableMetaCache(final Function<List<String>, Table> loader){
+        this(DEFAULT_MAX_SIZE, loader);
+    }
+
+    public TableMetaCache(int maxSize, final Function<List<String>, Table> loader){
+        this.maxSize = maxSize;
+        this.tables = CacheBuilder.newBuilder()
+            .maximumSize(maxSize)
+            .recordStats()
+            .build(new CacheLoader<List<String>, TableEntry>() {
+
+                public TableEntry load(List<String> names) throws Exception {
+                    long loadVersion = version.get(); // 先记录版本，加载过程中发生失效则该结果视为过期
+                    return new TableEntry(loader.apply(names), loadVersion);
+                }
+            });
+    }
+
+    public Table get(String schema, String table) {
+        List<String> key = Arrays.asList(schema, table);
+        try {
+            TableEntry entry = tables.getUnchecked(key);
+            if (!isValid(key, entry)) {
+                tables.asMap().remove(key, entry);
+                entry = tables.getUnchecked(key);
+            }
+
+            return entry.table;
+        } catch (UncheckedExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+
+            throw e;
+        }
+    }
+
+    /**
+     * 失效单个表的meta信息，比如收到该表的DDL
+     */
+    public void invalidate(String schema, String table) {
+        List<String> key = Arrays.asList(schema, table);
+        if (invalidVersions.size() >= maxSize) {
+            // 记录过多，直接升级为全部失效
+            invalidateAll();
+            return;
+        }
+
+        invalidVersions.put(key, version.incrementAndGet());
+        tables.invalidate(key);
+    }
+
+    /**
+     * 失效所有表的meta信息
+     */
+    public void invalidateAll() {
+        clearVersion = version.incrementAndGet();
+        invalidVersions.clear();
+        tables.invalidateAll();
+    }
+
+    public long size() {
+        return tables.size();
+    }
+
+    public long getHitCount() {
+        return tables.stats().hitCount();
+    }
+
+    public long getMissCount() {
+        return tables.stats().missCount();
+    }
+
+    public long getLoadCount() {
+        return tables.stats().loadCount();
+    }
+
+    /**
+     * 累计的加载耗时，单位ms
+     */
+    public long getTotalLoadTime() {
+        return tables.stats().totalLoadTime() / (1000 * 1000);
+    }
+
+    public CacheStats getStats() {
+        return tables.stats();
+    }
+
+    public String toString() {
+        CacheStats stats = tables.stats();
+        return String.format("size : %s , hit : %s , miss : %s , load : %s , loadTime : %sms , eviction : %s",
+            tables.size(),
+            stats.hitCount(),
+            stats.missCount(),
+            stats.loadCount(),
+            stats.totalLoadTime() / (1000 * 1000),
+            stats.evictionCount());
+    }
+
+    // ================================ helper method ==========================
+
+    private boolean isValid(List<String> key, TableEntry entry) {
+        if (entry.version < clearVersion) {
+            return false;
+        }
+
+        Long invalidVersion = invalidVersions.get(key);
+        return invalidVersion == null || entry.version >= invalidVersion;
+    }
+
+    private static class TableEntry {
+
+        private final Table table;
+        private final long  version;
+
+        public TableEntry(Table table, long version){
+            this.table = table;
+            this.version = version;
+        }
+    }
+}
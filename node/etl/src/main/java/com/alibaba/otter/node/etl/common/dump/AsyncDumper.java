@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2010-2101 Alibaba Group Holding Limited.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.otter.node.etl.common.dump;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import com.alibaba.otter.shared.common.utils.thread.NamedThreadFactory;
+
+/**
+ * 异步的dump输出，将select/load的dump从业务线程中剥离
+ *
+ * <pre>
+ * 1. 业务线程只做数据快照，放入队列后立即返回，不会阻塞
+ * 2. 后台单线程负责格式化并输出到logger，文件的切分和滚动仍由logback的SiftingAppender完成
+ * 3. 队列按记录估算的字节数限制大小，单条记录的大小差异很大，按条数限制无法控制内存
+ * 4. 队列使用超过一半时，详细记录按照sampleRate进行采样，被采样掉的记录只输出概要信息
+ * 5. 队列满时直接丢弃，并记录丢弃的数量，定期输出一次统计
+ * 6. 容量检查和采样都在snapshot之前完成，被丢弃/采样的记录不会产生数据拷贝
+ * </pre>
+ */
+public class AsyncDumper implements InitializingBean, DisposableBean {
+
+    private static final Logger         logger         = LoggerFactory.getLogger(AsyncDumper.class);
+    private static final String         WORKER_NAME    = "AsyncDumper";
+    private static final long           REPORT_PERIOD  = 60 * 1000L;                                 // 统计信息输出间隔
+    private long                        bufferBytes    = 64 * 1024 * 1024L;                          // 队列最多占用的内存
+    private int                         sampleRate     = 10;                                         // 繁忙时每10条详细记录保留1条
+    private BlockingQueue<DumpRecord>   buffer;
+    private ExecutorService             executor;
+    private volatile boolean            running        = false;
+    private final AtomicLong            usedBytes      = new AtomicLong(0);
+
+    private final AtomicLong            acceptCount    = new AtomicLong(0);
+    private final AtomicLong            dropCount      = new AtomicLong(0);
+    private final AtomicLong            sampleCount    = new AtomicLong(0);
+    private final AtomicLong            sampleSequence = new AtomicLong(0);
+
+    /**
+     * 提交一条dump记录，队列满时直接丢弃，返回false
+     */
+    public boolean dump(DumpRecord record) {
+        if (!running) {
+            return false;
+        }
+
+        if (usedBytes.get() >= bufferBytes) {
+            dropCount.incrementAndGet();
+            return false;
+        }
+
+        if (record.isDetail() && usedBytes.get() >= bufferBytes / 2
+            && sampleSequence.incrementAndGet() % sampleRate != 0) {
+            record.skipDetail();
+            sampleCount.incrementAndGet();
+        }
+
+        long size = record.estimateSize();
+        long used = usedBytes.addAndGet(size);
+        if (used > bufferBytes && used > size) {
+            // 超过容量，单条超大的记录在队列为空时仍然允许放入
+            usedBytes.addAndGet(-size);
+            dropCount.incrementAndGet();
+            return false;
+        }
+
+        record.setSize(size);
+        record.snapshot();
+        buffer.offer(record);
+        acceptCount.incrementAndGet();
+        return true;
+    }
+
+    public void afterPropertiesSet() throws Exception {
+        buffer = new LinkedBlockingQueue<DumpRecord>();
+        executor = Executors.newSingleThreadExecutor(new NamedThreadFactory(WORKER_NAME));
+        running = true;
+        executor.submit(new Runnable() {
+
+            public void run() {
+                long lastReportTime = System.currentTimeMillis();
+                long lastDrop = 0;
+                long lastSample = 0;
+                while (running || !buffer.isEmpty()) {
+                    try {
+                        DumpRecord record = buffer.poll(1, TimeUnit.SECONDS);
+                        if (record != null) {
+                            try {
+                                write(record);
+                            } finally {
+                                usedBytes.addAndGet(-record.getSize());
+                            }
+                        }
+
+                        long now = System.currentTimeMillis();
+                        if (now - lastReportTime > REPORT_PERIOD) {
+                            long drop = dropCount.get();
+                            long sample = sampleCount.get();
+                            if (drop != lastDrop || sample != lastSample) {
+                                logger.warn("dump buffer is busy , accept : {} , drop : {} , sample : {}",
+                                    new Object[] { acceptCount.get(), drop, sample });
+                            }
+
+                            lastReportTime = now;
+                            lastDrop = drop;
+                            lastSample = sample;
+                        }
+                    } catch (InterruptedException e) {
+                        if (!running) {
+                            break;
+                        }
+                    } catch (Throwable e) {
+                        logger.warn("dump record failed", e);
+                    }
+                }
+            }
+        });
+    }
+
+    public void destroy() throws Exception {
+        running = false;
+        executor.shutdown();
+        if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+            executor.shutdownNow();
+        }
+    }
+
+    private void write(DumpRecord record) {
+        Logger recordLogger = record.getLogger();
+        if (!recordLogger.isInfoEnabled()) {
+            return;
+        }
+
+        try {
+            MDC.put(record.getMdcKey(), String.valueOf(record.getPipelineId()));
+            record.write(recordLogger);
+        } finally {
+            MDC.remove(record.getMdcKey());
+        }
+    }
+
+    public long getAcceptCount() {
+        return acceptCount.get();
+    }
+
+    public long getDropCount() {
+        return dropCount.get();
+    }
+
+    public long getSampleCount() {
+        return sampleCount.get();
+    }
+
+    public long getUsedBytes() {
+        return usedBytes.get();
+    }
+
+    // ================== setter / getter ==================
+
+    public void setBufferBytes(long bufferBytes) {
+        this.bufferBytes = bufferBytes;
+    }
+
+    public void setSampleRate(int sampleRate) {
+        this.sampleRate = sampleRate <= 0 ? 1 : sampleRate;
+    }
+
+}
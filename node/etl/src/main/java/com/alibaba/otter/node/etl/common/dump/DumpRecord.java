@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2010-2101 Alibaba Group Holding Limited.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.otter.node.etl.common.dump;
+
+import java.util.List;
+
+import org.slf4j.Logger;
+
+import com.alibaba.otter.shared.etl.model.EventData;
+
+/**
+ * 一条待输出的dump记录
+ *
+ * <pre>
+ * 1. snapshot在业务线程中执行，只做必要的数据拷贝，保证后续stage修改数据时不影响dump内容
+ * 2. write在后台线程中执行，负责格式化和输出，输出时会设置好对应的MDC，按pipeline切分日志文件
+ * 3. estimateSize在snapshot之前执行，用于控制队列占用的内存
+ * </pre>
+ */
+public abstract class DumpRecord {
+
+    protected static final long BASE_SIZE  = 1024L; // 概要信息以及没有大小信息的数据，按1KB估算
+    private final Logger        logger;
+    private final String        mdcKey;
+    private final Long          pipelineId;
+    private boolean             detail;
+    private long                size;
+
+    public DumpRecord(Logger logger, String mdcKey, Long pipelineId, boolean detail){
+        this.logger = logger;
+        this.mdcKey = mdcKey;
+        this.pipelineId = pipelineId;
+        this.detail = detail;
+    }
+
+    /**
+     * 在业务线程中拷贝需要dump的数据
+     */
+    protected void snapshot() {
+        // for subclass to extend
+    }
+
+    /**
+     * 估算snapshot之后记录占用的内存大小，被采样掉的记录只计算概要信息
+     */
+    protected long estimateSize() {
+        return BASE_SIZE;
+    }
+
+    /**
+     * 在后台线程中格式化并输出
+     */
+    protected abstract void write(Logger logger);
+
+    /**
+     * 繁忙时被采样掉的记录只输出概要信息
+     */
+    public void skipDetail() {
+        this.detail = false;
+    }
+
+    protected static long sizeOf(List<EventData> datas) {
+        long size = 0;
+        if (datas != null) {
+            for (EventData data : datas) {
+                size += data.getSize() > 0 ? data.getSize() : BASE_SIZE;
+            }
+        }
+        return size;
+    }
+
+    public boolean isDetail() {
+        return detail;
+    }
+
+    public Logger getLogger() {
+        return logger;
+    }
+
+    public String getMdcKey() {
+        return mdcKey;
+    }
+
+    public Long getPipelineId() {
+        return pipelineId;
+    }
+
+    long getSize() {
+        return size;
+    }
+
+    void setSize(long size) {
+        this.size = size;
+    }
+
+}
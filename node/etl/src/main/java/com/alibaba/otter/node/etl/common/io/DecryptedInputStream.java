@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2010-2101 Alibaba Group Holding Limited.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.otter.node.etl.common.io;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CheckedInputStream;
+
+import javax.crypto.Cipher;
+import javax.crypto.CipherInputStream;
+
+import org.apache.commons.lang.StringUtils;
+
+import com.alibaba.otter.node.etl.common.io.crypto.AESUtils;
+import com.alibaba.otter.node.etl.common.io.signature.ChecksumException;
+import com.alibaba.otter.node.etl.common.io.signature.ChecksumUtils;
+import com.alibaba.otter.node.etl.common.io.signature.Crc32C;
+
+/**
+ * 边读边解密的输入流，和{@linkplain EncryptedOutputStream}对应，读取的同时对密文计算crc
+ * 
+ * <pre>
+ * 数据流向：源输入流 -> crc32c计算 -> AES(CTR)解密 -> read
+ * 数据读取完成后调用{@linkplain #verify()}，读完剩余的密文后校验crc
+ * </pre>
+ */
+public class DecryptedInputStream extends FilterInputStream {
+
+    private final Crc32C             crc = new Crc32C();
+    private final CheckedInputStream checked;
+    private final String             expectCrc;
+
+    public DecryptedInputStream(InputStream input, String key, String crc){
+        super(null);
+        AESUtils aes = new AESUtils();
+        aes.setSecretKeyString(key);
+        this.checked = new CheckedInputStream(input, this.crc);
+        this.in = new CipherInputStream(checked, aes.getStreamCipher(Cipher.DECRYPT_MODE));
+        this.expectCrc = crc;
+    }
+
+    /**
+     * 读完剩余的密文(比如压缩流末尾未读取的数据)，然后校验crc
+     */
+    public void verify() throws IOException {
+        byte[] buffer = new byte[8 * 1024];
+        while (checked.read(buffer) != -1) {
+            // 只需要计算crc，不需要解密
+        }
+
+        String crcStr = ChecksumUtils.checksum(crc);
+        if (!StringUtils.equals(expectCrc, crcStr)) {
+            throw new ChecksumException("unmatch crc with[" + expectCrc + "],[" + crcStr + "]");
+        }
+    }
+}
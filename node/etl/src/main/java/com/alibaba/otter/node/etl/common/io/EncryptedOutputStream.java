@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2010-2101 Alibaba Group Holding Limited.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.otter.node.etl.common.io;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CheckedOutputStream;
+
+import javax.crypto.Cipher;
+import javax.crypto.CipherOutputStream;
+
+import com.alibaba.otter.node.etl.common.io.crypto.AESUtils;
+import com.alibaba.otter.node.etl.common.io.signature.ChecksumUtils;
+import com.alibaba.otter.node.etl.common.io.signature.Crc32C;
+
+/**
+ * 边写边加密的输出流，写入的数据经过AES加密后输出，同时对密文计算crc，不需要在写完后重新读取文件
+ * 
+ * <pre>
+ * 数据流向：write -> AES(CTR)加密 -> crc32c计算 -> 目标输出流
+ * close之后通过{@linkplain #getEncryptedData()}获取key和crc
+ * </pre>
+ */
+public class EncryptedOutputStream extends FilterOutputStream {
+
+    private final Crc32C crc = new Crc32C();
+    private final String key;
+    private boolean      closed;
+
+    public EncryptedOutputStream(OutputStream output){
+        super(null);
+        AESUtils aes = new AESUtils();
+        aes.generateSecretKey();
+        this.key = aes.getSecretyKeyString();
+        this.out = new CipherOutputStream(new CheckedOutputStream(output, crc), aes.getStreamCipher(Cipher.ENCRYPT_MODE));
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            super.close();
+        }
+    }
+
+    /**
+     * 获取加密的key和crc，需要在close之后调用，确保所有的密文都已经计算了crc
+     */
+    public EncryptedData getEncryptedData() {
+        if (!closed) {
+            throw new IllegalStateException("stream is not closed");
+        }
+
+        return new EncryptedData(null, key, ChecksumUtils.checksum(crc));
+    }
+}
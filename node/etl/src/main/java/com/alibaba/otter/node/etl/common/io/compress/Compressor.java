@@ -124,4 +124,23 @@ public interface Compressor {
      */
     public void decompressTo(InputStream input, OutputStream output) throws CompressException;
 
+    /**
+     * Wraps the output stream, bytes written to the returned stream are compressed on the fly. Closing the returned
+     * stream finishes the compressed data and closes the underlying stream.
+     * 
+     * @param output Stream to write the compressed bytes to
+     * @return Stream accepting the uncompressed bytes
+     * @throws CompressException if the Compressor reports an error
+     */
+    public OutputStream compressStream(OutputStream output) throws CompressException;
+
+    /**
+     * Wraps the input stream, bytes read from the returned stream are decompressed on the fly.
+     * 
+     * @param input Stream of the compressed bytes
+     * @return Stream of the decompressed bytes
+     * @throws CompressException if the Compressor reports an error
+     */
+    public InputStream decompressStream(InputStream input) throws CompressException;
+
 }
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2010-2101 Alibaba Group Holding Limited.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.otter.node.etl.common.io.compress;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+
+import com.alibaba.otter.node.etl.common.io.compress.exception.CompressException;
+import com.alibaba.otter.node.etl.common.io.compress.impl.AbstractCompressor;
+import com.alibaba.otter.node.etl.common.io.compress.impl.bzip2.BZip2Compressor;
+import com.alibaba.otter.node.etl.common.io.compress.impl.gzip.GzipCompressor;
+import com.alibaba.otter.node.etl.common.io.compress.impl.lz4.Lz4Compressor;
+import com.alibaba.otter.shared.common.model.config.pipeline.PipelineParameter.PipeCompressType;
+
+/**
+ * 根据pipeline配置/pipe key中的名字获取对应的{@linkplain Compressor}，compressor都是无状态的，可以共享
+ */
+public class CompressorFactory {
+
+    private static final AbstractCompressor              GZIP        = new GzipCompressor();
+    private static final AbstractCompressor              BZIP2       = new BZip2Compressor();
+    private static final AbstractCompressor              LZ4         = new Lz4Compressor();
+    private static final Map<String, AbstractCompressor> compressors = new HashMap<String, AbstractCompressor>();
+
+    static {
+        compressors.put(GZIP.getName(), GZIP);
+        compressors.put(BZIP2.getName(), BZIP2);
+        compressors.put(LZ4.getName(), LZ4);
+    }
+
+    /**
+     * 根据pipeline的配置获取，NONE返回null
+     */
+    public static AbstractCompressor getCompressor(PipeCompressType type) {
+        if (type == null || type.isNone()) {
+            return null;
+        } else if (type.isGzip()) {
+            return GZIP;
+        } else if (type.isBzip2()) {
+            return BZIP2;
+        } else if (type.isLz4()) {
+            return LZ4;
+        } else {
+            throw new CompressException("unknow_compress_type", type.name());
+        }
+    }
+
+    /**
+     * 根据{@linkplain AbstractCompressor#getName()}获取，为空返回null
+     */
+    public static AbstractCompressor getCompressor(String name) {
+        if (StringUtils.isEmpty(name)) {
+            return null;
+        }
+
+        AbstractCompressor compressor = compressors.get(name);
+        if (compressor == null) {
+            throw new CompressException("unknow_compress_type", name);
+        }
+        return compressor;
+    }
+}
@@ -69,6 +69,22 @@ public class BZip2Compressor extends AbstractCompressor {
         }
     }
 
+    public OutputStream compressStream(OutputStream out) throws CompressException {
+        try {
+            return new BZip2CompressorOutputStream(out);
+        } catch (Exception e) {
+            throw new CompressException("bzip_compress_error", e);
+        }
+    }
+
+    public InputStream decompressStream(InputStream in) throws CompressException {
+        try {
+            return new BZip2CompressorInputStream(in);
+        } catch (Exception e) {
+            throw new CompressException("bzip_decompress_error", e);
+        }
+    }
+
     public byte[] getHeader() {
         return HEADER;
     }
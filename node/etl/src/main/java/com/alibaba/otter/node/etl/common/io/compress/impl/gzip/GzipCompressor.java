@@ -45,6 +45,8 @@ public class GzipCompressor extends AbstractCompressor {
      */
     private final static int    GZIP_MAGIC             = 0x8b1f;
 
+    private static final int    BUFFER_SIZE            = 64 * 1024;
+
     /* Header BZ as byte-Array */
     private static final byte[] HEADER                 = new byte[] { (byte) GZIP_MAGIC, // Magic number (short)
             (byte) (GZIP_MAGIC >> 8), // Magic number (short)
@@ -84,6 +86,22 @@ public class GzipCompressor extends AbstractCompressor {
         }
     }
 
+    public OutputStream compressStream(OutputStream out) throws CompressException {
+        try {
+            return new GZIPOutputStream(out, BUFFER_SIZE);
+        } catch (Exception e) {
+            throw new CompressException("gzip_compress_error", e);
+        }
+    }
+
+    public InputStream decompressStream(InputStream in) throws CompressException {
+        try {
+            return new GZIPInputStream(in, BUFFER_SIZE);
+        } catch (Exception e) {
+            throw new CompressException("gzip_decompress_error", e);
+        }
+    }
+
     public byte[] getHeader() {
         return HEADER;
     }
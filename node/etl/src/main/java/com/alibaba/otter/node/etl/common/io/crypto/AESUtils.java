@@ -16,6 +16,7 @@
 
 package com.alibaba.otter.node.etl.common.io.crypto;
 
+import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 
@@ -25,6 +26,7 @@ import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.KeyGenerator;
 import javax.crypto.NoSuchPaddingException;
 import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 
 import com.alibaba.otter.shared.common.utils.ByteUtils;
@@ -38,6 +40,7 @@ import com.alibaba.otter.shared.common.utils.ByteUtils;
 public class AESUtils {
 
     private static final String ENCRYPTION_ALGORITHM = "AES";
+    private static final String STREAM_TRANSFORM     = "AES/CTR/NoPadding";
     private static final int    KEY_SIZE             = 128;
     private byte[]              secretKey;
 
@@ -114,6 +117,34 @@ public class AESUtils {
         }
     }
 
+    /**
+     * 构造流式加解密使用的cipher，CTR模式不需要padding，密文和明文长度一致，可以配合CipherOutputStream/CipherInputStream边写边加密
+     * 
+     * <pre>
+     * 每个文件都会重新生成密钥，所以这里固定使用全0的iv
+     * </pre>
+     * 
+     * @param mode Cipher.ENCRYPT_MODE / Cipher.DECRYPT_MODE
+     * @return
+     * @throws AESException
+     */
+    public Cipher getStreamCipher(int mode) throws AESException {
+        try {
+            SecretKeySpec skeySpec = new SecretKeySpec(secretKey, ENCRYPTION_ALGORITHM);
+            Cipher cipher = Cipher.getInstance(STREAM_TRANSFORM);
+            cipher.init(mode, skeySpec, new IvParameterSpec(new byte[16]));
+            return cipher;
+        } catch (NoSuchAlgorithmException e) {
+            throw new AESException(e);
+        } catch (NoSuchPaddingException e) {
+            throw new AESException(e);
+        } catch (InvalidKeyException e) {
+            throw new AESException(e);
+        } catch (InvalidAlgorithmParameterException e) {
+            throw new AESException(e);
+        }
+    }
+
     /**
      * 获取生成的加密密钥
      * 
@@ -21,6 +21,7 @@ import org.apache.commons.lang.SystemUtils;
 
 import com.alibaba.otter.node.etl.common.io.download.exception.DataRetrieveException;
 import com.alibaba.otter.node.etl.common.io.download.impl.aria2c.Aria2cRetriever;
+import com.alibaba.otter.node.etl.common.io.download.impl.mr4j.Mr4jRetriever;
 import com.alibaba.otter.shared.common.model.config.parameter.SystemParameter.RetrieverType;
 
 /**
@@ -31,11 +32,14 @@ import com.alibaba.otter.shared.common.model.config.parameter.SystemParameter.Re
  */
 public class DataRetrieverFactory {
 
+    private int  mr4jSegments       = 4;                // 单个文件最大并行下载的segment数
+    private long mr4jMinSegmentSize = 4 * 1024 * 1024L; // 每个segment的最小字节数，文件小于2倍时单线程下载
+
     public DataRetriever createRetriever(RetrieverType type, String url, String targetDir) {
         if (type.isAria2c()) {
             return getAria2cRetriever(type.getExe(), url, targetDir);
-        } else {
-            // 其他的类型
+        } else if (type.isMr4j()) {
+            return new Mr4jRetriever(url, targetDir, mr4jSegments, mr4jMinSegmentSize);
         }
 
         throw new DataRetrieveException("no DataRetriever for[" + type + "]");
@@ -47,4 +51,12 @@ public class DataRetrieverFactory {
         }
         return new Aria2cRetriever(cmd, url, targetDir);
     }
+
+    public void setMr4jSegments(int mr4jSegments) {
+        this.mr4jSegments = mr4jSegments;
+    }
+
+    public void setMr4jMinSegmentSize(long mr4jMinSegmentSize) {
+        this.mr4jMinSegmentSize = mr4jMinSegmentSize;
+    }
 }
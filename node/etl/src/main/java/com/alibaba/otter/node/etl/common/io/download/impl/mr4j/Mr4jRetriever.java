@@ -0,0 +1,498 @@
+/*
+ * Copyright (C) 2010-2101 Alibaba Group Holding Limited.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.otter.node.etl.common.io.download.impl.mr4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Observable;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alibaba.otter.node.etl.common.io.download.DataRetriever;
+import com.alibaba.otter.node.etl.common.io.download.DownloadStatus;
+import com.alibaba.otter.node.etl.common.io.download.exception.DataRetrieveException;
+import com.alibaba.otter.shared.common.utils.NioUtils;
+import com.alibaba.otter.shared.common.utils.thread.NamedThreadFactory;
+
+/**
+ * 纯java实现的多线程下载，不依赖aria2c等外部命令
+ *
+ * <pre>
+ * 1. 基于HttpURLConnection，依赖jdk自带的keep-alive连接池复用tcp连接，每次请求都会完整读完并关闭stream以便连接归还
+ * 2. 文件较大且服务端支持Range时，按字节区间拆分为多个segment并行下载，通过FileChannel按位置直接写入目标文件
+ * 3. 每个segment出错后从已写入的位置继续下载(断点续传)，超过重试次数后整体失败
+ * 4. 记录每次下载的字节数、耗时和吞吐量
+ * </pre>
+ */
+public class Mr4jRetriever extends Observable implements DataRetriever {
+
+    private static final Logger          logger         = LoggerFactory.getLogger(Mr4jRetriever.class);
+    private static final String          WORKER_NAME    = "Mr4jRetriever";
+    private static final int             BUFFER_SIZE    = 64 * 1024;
+    // 所有下载共享的segment线程池
+    private static final ExecutorService executor;
+
+    static {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(16,
+            16,
+            60,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(),
+            new NamedThreadFactory(WORKER_NAME, true));
+        pool.allowCoreThreadTimeOut(true);
+        executor = pool;
+    }
+
+    private String                       url;
+    private File                         targetFile;
+    private int                          segments       = 4;
+    private long                         minSegmentSize = 4 * 1024 * 1024L;
+    private int                          retryTimes     = 3;
+    private int                          connectTimeout = 10 * 1000;
+    private int                          readTimeout    = 60 * 1000;
+
+    private long                         contentLength  = -1;
+    private boolean                      acceptRanges   = false;
+    private volatile boolean             completed      = false;
+    private AtomicBoolean                aborted        = new AtomicBoolean(false);
+    private List<HttpURLConnection>      connections    = new ArrayList<HttpURLConnection>();
+
+    // 统计信息
+    private AtomicLong                   transferred    = new AtomicLong(0);
+    private AtomicLong                   retries        = new AtomicLong(0);
+    private long                         elapsed        = 0;
+    private int                          actualSegments = 0;
+
+    public Mr4jRetriever(String url, String targetDir){
+        this.url = url;
+        // 下载文件名
+        String fileName = url.substring(url.lastIndexOf("/") + 1).replace("%20", " ");
+        this.targetFile = new File(targetDir, fileName);
+    }
+
+    public Mr4jRetriever(String url, String targetDir, int segments, long minSegmentSize){
+        this(url, targetDir);
+        this.segments = segments;
+        this.minSegmentSize = minSegmentSize;
+    }
+
+    public void connect() throws DataRetrieveException {
+        checkAborted();
+        notifyStatusChange(DownloadStatus.CONNECTING);
+        HttpURLConnection conn = null;
+        try {
+            conn = open("HEAD", null);
+            int code = conn.getResponseCode();
+            if (code == HttpURLConnection.HTTP_OK) {
+                contentLength = parseLong(conn.getHeaderField("Content-Length"));
+                acceptRanges = StringUtils.equalsIgnoreCase("bytes", conn.getHeaderField("Accept-Ranges"));
+            } else {
+                // 部分服务端不支持HEAD，退化为单线程下载
+                logger.warn("HEAD {} return {}, fallback to single stream", url, code);
+            }
+            drain(conn);
+        } catch (IOException e) {
+            release(conn);
+            notifyStatusChange(DownloadStatus.EXCEPTION);
+            throw new DataRetrieveException("connect " + url + " failed", e);
+        } finally {
+            unregister(conn);
+        }
+    }
+
+    public void doRetrieve() throws DataRetrieveException {
+        checkAborted();
+        notifyStatusChange(DownloadStatus.RUNNING);
+        long start = System.currentTimeMillis();
+        try {
+            if (acceptRanges && contentLength >= minSegmentSize * 2 && segments > 1) {
+                doParallelRetrieve();
+            } else {
+                doSingleRetrieve();
+            }
+        } catch (DataRetrieveException e) {
+            notifyStatusChange(aborted.get() ? DownloadStatus.ABORT : DownloadStatus.EXCEPTION);
+            throw e;
+        } finally {
+            elapsed = System.currentTimeMillis() - start;
+        }
+
+        completed = true;
+        notifyStatusChange(DownloadStatus.COMPLETE);
+        String msg = String.format("download %s size:%s segments:%s retries:%s elapsed:%sms throughput:%sKB/s",
+            url,
+            transferred.get(),
+            actualSegments,
+            retries.get(),
+            elapsed,
+            getThroughput() / 1024);
+        logger.info(msg);
+        notifyEvent(msg);
+    }
+
+    /**
+     * 按Range拆分为多个segment并行下载
+     */
+    private void doParallelRetrieve() {
+        actualSegments = (int) Math.min(segments, contentLength / minSegmentSize);
+        long segmentSize = contentLength / actualSegments;
+
+        RandomAccessFile raf = null;
+        List<Future<Long>> futures = new ArrayList<Future<Long>>();
+        try {
+            raf = new RandomAccessFile(targetFile, "rw");
+            raf.setLength(contentLength);
+            FileChannel channel = raf.getChannel();
+            for (int i = 0; i < actualSegments; i++) {
+                long begin = i * segmentSize;
+                long end = (i == actualSegments - 1) ? contentLength - 1 : begin + segmentSize - 1;
+                futures.add(executor.submit(new Segment(channel, begin, end)));
+            }
+
+            for (Future<Long> future : futures) {
+                future.get();
+            }
+        } catch (IOException e) {
+            throw new DataRetrieveException("open " + targetFile.getPath() + " failed", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            aborted.set(true);
+            throw new DataRetrieveException("download " + url + " interrupted", e);
+        } catch (ExecutionException e) {
+            // 有一个segment失败，通知其余segment尽快退出
+            aborted.set(true);
+            throw new DataRetrieveException("download " + url + " failed", e.getCause());
+        } finally {
+            for (Future<Long> future : futures) {
+                future.cancel(true);
+            }
+            IOUtils.closeQuietly(raf);
+        }
+    }
+
+    /**
+     * 单线程下载，服务端支持Range时出错后从已下载的位置续传
+     */
+    private void doSingleRetrieve() {
+        actualSegments = 1;
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(targetFile, "rw");
+            raf.setLength(0);
+            FileChannel channel = raf.getChannel();
+            AtomicLong position = new AtomicLong(0);
+            for (int i = 0;; i++) {
+                checkAborted();
+                HttpURLConnection conn = null;
+                try {
+                    conn = open("GET", position.get() > 0 ? "bytes=" + position.get() + "-" : null);
+                    int code = conn.getResponseCode();
+                    if (position.get() > 0 && code == HttpURLConnection.HTTP_OK) {
+                        // 服务端忽略了Range，只能从头开始
+                        transferred.addAndGet(-position.get());
+                        position.set(0);
+                        channel.truncate(0);
+                    } else if (code != HttpURLConnection.HTTP_OK && code != HttpURLConnection.HTTP_PARTIAL) {
+                        drain(conn);
+                        throw new DataRetrieveException("download " + url + " return " + code);
+                    }
+
+                    transfer(conn, channel, position, Long.MAX_VALUE);
+                    if (contentLength > 0 && position.get() != contentLength) {
+                        throw new IOException("unexpected eof at " + position + ", contentLength:" + contentLength);
+                    }
+                    return;
+                } catch (IOException e) {
+                    release(conn);
+                    retryOrFail(i, e);
+                } finally {
+                    unregister(conn);
+                }
+            }
+        } catch (IOException e) {
+            throw new DataRetrieveException("open " + targetFile.getPath() + " failed", e);
+        } finally {
+            IOUtils.closeQuietly(raf);
+        }
+    }
+
+    /**
+     * 从连接中读取数据写入channel的position位置，最多写到end(包含)，position随写入推进，出错后可以从该位置续传
+     */
+    private void transfer(HttpURLConnection conn, FileChannel channel, AtomicLong position, long end)
+                                                                                              throws IOException {
+        InputStream input = conn.getInputStream();
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int len;
+            while ((len = input.read(buffer)) != -1) {
+                if (aborted.get()) {
+                    throw new IOException("download " + url + " aborted");
+                }
+
+                if (position.get() + len - 1 > end) {
+                    throw new IOException("overflow the segment end:" + end);
+                }
+
+                ByteBuffer buf = ByteBuffer.wrap(buffer, 0, len);
+                long offset = position.get();
+                while (buf.hasRemaining()) {
+                    offset += channel.write(buf, offset);
+                }
+                position.addAndGet(len);
+                transferred.addAndGet(len);
+            }
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+    }
+
+    private void retryOrFail(int times, IOException e) {
+        if (aborted.get()) {
+            throw new DataRetrieveException("download " + url + " aborted", e);
+        }
+        if (times >= retryTimes) {
+            throw new DataRetrieveException("retry " + retryTimes + " times still have err", e);
+        }
+
+        retries.incrementAndGet();
+        notifyStatusChange(DownloadStatus.RETRYING);
+        logger.warn("download " + url + " failed, retry " + (times + 1), e);
+        try {
+            Thread.sleep(1000L * (times + 1));
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new DataRetrieveException("download " + url + " interrupted", ie);
+        }
+    }
+
+    private HttpURLConnection open(String method, String range) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        conn.setRequestMethod(method);
+        conn.setConnectTimeout(connectTimeout);
+        conn.setReadTimeout(readTimeout);
+        conn.setUseCaches(false);
+        conn.setRequestProperty("Connection", "keep-alive");
+        if (range != null) {
+            conn.setRequestProperty("Range", range);
+        }
+        synchronized (connections) {
+            connections.add(conn);
+        }
+        return conn;
+    }
+
+    // 读完error stream，保证连接可以被keep-alive复用
+    private void drain(HttpURLConnection conn) {
+        InputStream input = conn.getErrorStream();
+        if (input == null) {
+            try {
+                input = conn.getInputStream();
+            } catch (IOException e) {
+                return;
+            }
+        }
+
+        try {
+            byte[] buffer = new byte[1024];
+            while (input.read(buffer) != -1) {
+                // ignore
+            }
+        } catch (IOException e) {
+            // ignore
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+    }
+
+    // 出现异常的连接不再复用
+    private void release(HttpURLConnection conn) {
+        if (conn != null) {
+            conn.disconnect();
+        }
+    }
+
+    private void unregister(HttpURLConnection conn) {
+        if (conn != null) {
+            synchronized (connections) {
+                connections.remove(conn);
+            }
+        }
+    }
+
+    private void checkAborted() {
+        if (aborted.get()) {
+            throw new DataRetrieveException("Retriever aborted");
+        }
+    }
+
+    private long parseLong(String value) {
+        if (StringUtils.isBlank(value)) {
+            return -1;
+        }
+
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private void notifyStatusChange(DownloadStatus status) {
+        notifyEvent(status);
+    }
+
+    private void notifyEvent(Object arg) {
+        setChanged();
+        notifyObservers(arg);
+    }
+
+    public void disconnect() {
+        // 正常结束的连接已经归还到keep-alive池，这里只需要关闭残留的连接
+        List<HttpURLConnection> remains;
+        synchronized (connections) {
+            remains = new ArrayList<HttpURLConnection>(connections);
+            connections.clear();
+        }
+        for (HttpURLConnection conn : remains) {
+            conn.disconnect();
+        }
+    }
+
+    public void abort() {
+        aborted.set(true);
+        disconnect();
+        if (!completed && targetFile.exists()) {
+            targetFile.delete();
+        }
+    }
+
+    public boolean isDataAvailable() {
+        return completed;
+    }
+
+    public byte[] getDataAsByteArray() {
+        try {
+            return NioUtils.read(getDataAsFile());
+        } catch (IOException e) {
+            throw new DataRetrieveException(e);
+        }
+    }
+
+    public File getDataAsFile() {
+        return targetFile;
+    }
+
+    public long getContentLength() throws IOException {
+        return completed ? targetFile.length() : contentLength;
+    }
+
+    public long getTransferredBytes() {
+        return transferred.get();
+    }
+
+    public long getRetryCount() {
+        return retries.get();
+    }
+
+    public long getElapsed() {
+        return elapsed;
+    }
+
+    /**
+     * 吞吐量，单位bytes/s
+     */
+    public long getThroughput() {
+        return elapsed > 0 ? transferred.get() * 1000 / elapsed : transferred.get();
+    }
+
+    public void setRetryTimes(int retryTimes) {
+        this.retryTimes = retryTimes;
+    }
+
+    public void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    public void setReadTimeout(int readTimeout) {
+        this.readTimeout = readTimeout;
+    }
+
+    /**
+     * 下载一个字节区间[begin, end]，出错后从已写入的位置继续
+     */
+    private class Segment implements Callable<Long> {
+
+        private FileChannel channel;
+        private long        begin;
+        private long        end;
+
+        Segment(FileChannel channel, long begin, long end){
+            this.channel = channel;
+            this.begin = begin;
+            this.end = end;
+        }
+
+        public Long call() throws Exception {
+            AtomicLong position = new AtomicLong(begin);
+            for (int i = 0;; i++) {
+                checkAborted();
+                HttpURLConnection conn = null;
+                try {
+                    conn = open("GET", "bytes=" + position.get() + "-" + end);
+                    int code = conn.getResponseCode();
+                    if (code != HttpURLConnection.HTTP_PARTIAL) {
+                        drain(conn);
+                        throw new DataRetrieveException("download " + url + " range " + position.get() + "-" + end
+                                                        + " return " + code);
+                    }
+
+                    transfer(conn, channel, position, end);
+                    if (position.get() != end + 1) {
+                        throw new IOException("unexpected eof at " + position + ", segment end:" + end);
+                    }
+                    return end - begin + 1;
+                } catch (IOException e) {
+                    release(conn);
+                    retryOrFail(i, e);
+                } finally {
+                    unregister(conn);
+                }
+            }
+        }
+    }
+}
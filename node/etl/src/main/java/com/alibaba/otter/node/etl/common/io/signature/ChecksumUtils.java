@@ -34,4 +34,11 @@ public class ChecksumUtils {
         return Integer.toString(sum);
     }
 
+    /**
+     * 流式计算的checksum，和{@linkplain #checksum(byte[])}的结果一致
+     */
+    public static String checksum(Crc32C crc) {
+        return Integer.toString(crc.getMaskedValue());
+    }
+
 }
@@ -33,6 +33,7 @@ public class PipeKey implements Serializable {
     private static final long serialVersionUID = 1543055219365681976L;
 
     private PipeDataType      dataType;                               // 数据对象类型
+    private Integer           version;                                // 数据编码版本，为空代表v1
 
     public PipeDataType getDataType() {
         return dataType;
@@ -42,6 +43,14 @@ public class PipeKey implements Serializable {
         this.dataType = dataType;
     }
 
+    public Integer getVersion() {
+        return version;
+    }
+
+    public void setVersion(Integer version) {
+        this.version = version;
+    }
+
     @Override
     public String toString() {
         return ToStringBuilder.reflectionToString(this, OtterToStringStyle.DEFAULT_STYLE);
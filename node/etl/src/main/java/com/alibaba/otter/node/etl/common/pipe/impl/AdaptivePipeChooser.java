@@ -0,0 +1,434 @@
+/*
+ * Copyright (C) 2010-2101 Alibaba Group Holding Limited.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.otter.node.etl.common.pipe.impl;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alibaba.otter.node.common.communication.NodeCommmunicationClient;
+import com.alibaba.otter.node.common.config.ConfigClientService;
+import com.alibaba.otter.shared.communication.core.CommunicationRegistry;
+import com.alibaba.otter.shared.communication.core.model.Callback;
+import com.alibaba.otter.shared.communication.core.model.Event;
+import com.alibaba.otter.shared.communication.core.model.EventType;
+import com.alibaba.otter.shared.etl.model.DbBatch;
+import com.alibaba.otter.shared.etl.model.EventColumn;
+import com.alibaba.otter.shared.etl.model.EventData;
+
+/**
+ * 基于实测代价的rpc/http pipe选择
+ *
+ * <pre>
+ * 1. 按(目标node, pipe类型)分别记录发送端put耗时(序列化/写文件)和接收端get耗时(传输/反序列化)，用带衰减的线性回归拟合 耗时 = 固定开销 + 单位字节开销 * 大小
+ * 2. 接收端的耗时只能在接收端测量，定期异步回报给发送端
+ * 3. 两种pipe都有足够样本后按预估总耗时选择，否则使用原先的阈值规则；每隔exploreInterval个批次尝试一次另一种pipe，保证代价数据持续更新
+ * </pre>
+ */
+public class AdaptivePipeChooser {
+
+    private static final Logger         logger          = LoggerFactory.getLogger(AdaptivePipeChooser.class);
+    private ConfigClientService         configClientService;
+    private NodeCommmunicationClient    nodeCommmunicationClient;
+    private int                         minSamples      = 5;                                                // 参与决策的最少样本数
+    private int                         exploreInterval = 50;                                               // 探测另一种pipe的批次间隔
+    private long                        maxExploreSize  = 1024 * 1024L;                                     // 超过该大小不探测rpc，避免大批次占用内存
+    private int                         reportSize      = 32;                                               // 接收端累积多少样本回报一次
+    private long                        reportInterval  = 10 * 1000L;                                       // 接收端最长多久回报一次
+
+    private Map<String, CostModel>      models          = new ConcurrentHashMap<String, CostModel>();      // nid + pipeType -> 代价模型
+    private Map<Long, Decision>         decisions       = new ConcurrentHashMap<Long, Decision>();         // pipelineId -> 最近一次决策
+    private Map<Long, AtomicLong>       counters        = new ConcurrentHashMap<Long, AtomicLong>();       // pipelineId -> 批次计数
+    private Map<Long, List<CostSample>> reports         = new ConcurrentHashMap<Long, List<CostSample>>(); // 接收端，源nid -> 待回报样本
+    private Map<Long, Long>             lastReportTimes = new ConcurrentHashMap<Long, Long>();
+
+    public static enum PipeType {
+        RPC, HTTP;
+
+        public boolean isRpc() {
+            return this.equals(PipeType.RPC);
+        }
+
+        public boolean isHttp() {
+            return this.equals(PipeType.HTTP);
+        }
+    }
+
+    // 接收端回报耗时的事件
+    public static enum PipeCostRpc implements EventType {
+        report
+    }
+
+    public AdaptivePipeChooser(){
+        // 注册一下事件处理
+        CommunicationRegistry.regist(PipeCostRpc.report, this);
+    }
+
+    /**
+     * 选择发送到指定node的pipe，defaultType为阈值规则的选择结果，在样本不足时使用
+     */
+    public PipeType choose(Long pipelineId, Long nid, long size, PipeType defaultType) {
+        CostModel rpc = getModel(nid, PipeType.RPC);
+        CostModel http = getModel(nid, PipeType.HTTP);
+        long count = getCounter(pipelineId).incrementAndGet();
+        boolean explore = count % exploreInterval == 0;
+
+        Decision decision = new Decision();
+        decision.nid = nid;
+        decision.size = size;
+        decision.rpcCost = rpc.estimate(size);
+        decision.httpCost = http.estimate(size);
+        if (rpc.isReady() && http.isReady()) {
+            decision.type = decision.rpcCost <= decision.httpCost ? PipeType.RPC : PipeType.HTTP;
+            decision.reason = "model";
+        } else {
+            decision.type = defaultType;
+            decision.reason = "warmup";
+        }
+
+        if (explore) {
+            PipeType other = decision.type.isRpc() ? PipeType.HTTP : PipeType.RPC;
+            if (other.isHttp() || size <= maxExploreSize) {
+                decision.type = other;
+                decision.reason += ",explore";
+            }
+        }
+
+        decisions.put(pipelineId, decision);
+        return decision.type;
+    }
+
+    /**
+     * 发送端记录put的耗时
+     */
+    public void recordProduce(Long nid, PipeType type, long size, long nanos) {
+        getModel(nid, type).produce.add(size, nanos);
+    }
+
+    /**
+     * 接收端记录get的耗时，累积后异步回报给源node
+     */
+    public void recordConsume(final Long nid, PipeType type, long size, long nanos) {
+        List<CostSample> samples = reports.get(nid);
+        if (samples == null) {
+            synchronized (reports) {
+                samples = reports.get(nid);
+                if (samples == null) {
+                    samples = new ArrayList<CostSample>();
+                    reports.put(nid, samples);
+                    lastReportTimes.put(nid, System.currentTimeMillis());
+                }
+            }
+        }
+
+        List<CostSample> sends = null;
+        synchronized (samples) {
+            samples.add(new CostSample(type, size, nanos));
+            long now = System.currentTimeMillis();
+            if (samples.size() >= reportSize || now - lastReportTimes.get(nid) >= reportInterval) {
+                sends = new ArrayList<CostSample>(samples);
+                samples.clear();
+                lastReportTimes.put(nid, now);
+            }
+        }
+
+        if (sends != null) {
+            PipeCostEvent event = new PipeCostEvent(PipeCostRpc.report);
+            event.setNid(configClientService.currentNode().getId());
+            event.setSamples(sends);
+            try {
+                nodeCommmunicationClient.call(nid, event, new Callback<Object>() {
+
+                    public void call(Object event) {
+                        // ignore
+                    }
+                });
+            } catch (Exception e) {
+                logger.warn("report pipe cost to nid:" + nid + " failed", e);
+            }
+        }
+    }
+
+    @SuppressWarnings("unused")
+    // 处理接收端回报的耗时
+    private Object onReport(PipeCostEvent event) {
+        for (CostSample sample : event.getSamples()) {
+            getModel(event.getNid(), sample.getType()).consume.add(sample.getSize(), sample.getNanos());
+        }
+        return null;
+    }
+
+    /**
+     * 返回pipeline最近一次的选择结果和对应的代价模型
+     */
+    public String info(Long pipelineId) {
+        Decision decision = decisions.get(pipelineId);
+        if (decision == null) {
+            return "pipeline:" + pipelineId + " has no adaptive decision";
+        }
+
+        return String.format("%s , rpc:[%s] , http:[%s]",
+            decision,
+            getModel(decision.nid, PipeType.RPC),
+            getModel(decision.nid, PipeType.HTTP));
+    }
+
+    /**
+     * 按编码后的内容估算batch的字节数，比binlog的eachSize更接近实际传输的大小
+     */
+    public static long estimateSize(DbBatch dbBatch) {
+        long size = 0;
+        for (EventData eventData : dbBatch.getRowBatch().getDatas()) {
+            size += 32 + length(eventData.getSchemaName()) + length(eventData.getTableName())
+                    + length(eventData.getSql()) + length(eventData.getHint());
+            size += estimateSize(eventData.getKeys());
+            size += estimateSize(eventData.getOldKeys());
+            size += estimateSize(eventData.getColumns());
+        }
+        return size;
+    }
+
+    private static long estimateSize(List<EventColumn> columns) {
+        long size = 0;
+        for (EventColumn column : columns) {
+            size += 8 + length(column.getColumnName()) + length(column.getColumnValue());
+        }
+        return size;
+    }
+
+    private static int length(String str) {
+        return str == null ? 0 : str.length();
+    }
+
+    private CostModel getModel(Long nid, PipeType type) {
+        String name = nid + "-" + type;
+        CostModel model = models.get(name);
+        if (model == null) {
+            synchronized (models) {
+                model = models.get(name);
+                if (model == null) {
+                    model = new CostModel();
+                    models.put(name, model);
+                }
+            }
+        }
+        return model;
+    }
+
+    private AtomicLong getCounter(Long pipelineId) {
+        AtomicLong counter = counters.get(pipelineId);
+        if (counter == null) {
+            synchronized (counters) {
+                counter = counters.get(pipelineId);
+                if (counter == null) {
+                    counter = new AtomicLong(0);
+                    counters.put(pipelineId, counter);
+                }
+            }
+        }
+        return counter;
+    }
+
+    // ================== 代价模型 ===================
+
+    /**
+     * 单个(node, pipe类型)的代价，发送端和接收端分别拟合
+     */
+    private class CostModel {
+
+        private final CostRegression produce = new CostRegression();
+        private final CostRegression consume = new CostRegression();
+
+        public boolean isReady() {
+            return produce.getSamples() >= minSamples && consume.getSamples() >= minSamples;
+        }
+
+        // 单位毫秒
+        public double estimate(long size) {
+            return produce.predict(size) + consume.predict(size);
+        }
+
+        public String toString() {
+            return String.format("produce:{%s} , consume:{%s}", produce, consume);
+        }
+    }
+
+    /**
+     * 带衰减的最小二乘拟合，x为KB，y为毫秒
+     */
+    private static class CostRegression {
+
+        private static final double DECAY = 0.95;
+        private double              sw;
+        private double              sx;
+        private double              sy;
+        private double              sxx;
+        private double              sxy;
+        private long                samples;
+
+        public synchronized void add(long size, long nanos) {
+            double x = size / 1024.0;
+            double y = nanos / 1000000.0;
+            sw = sw * DECAY + 1;
+            sx = sx * DECAY + x;
+            sy = sy * DECAY + y;
+            sxx = sxx * DECAY + x * x;
+            sxy = sxy * DECAY + x * y;
+            samples++;
+        }
+
+        public synchronized double predict(long size) {
+            if (samples == 0) {
+                return 0;
+            }
+
+            double x = size / 1024.0;
+            double slope = slope();
+            double intercept = Math.max(0, (sy - slope * sx) / sw);
+            return intercept + slope * x;
+        }
+
+        public synchronized long getSamples() {
+            return samples;
+        }
+
+        // 大小基本一致时无法拟合斜率，退化为平均值
+        private double slope() {
+            double denominator = sw * sxx - sx * sx;
+            if (denominator <= 1e-9 * sw * sw) {
+                return 0;
+            }
+            return Math.max(0, (sw * sxy - sx * sy) / denominator);
+        }
+
+        public synchronized String toString() {
+            if (samples == 0) {
+                return "samples:0";
+            }
+
+            double slope = slope();
+            return String.format("samples:%s, fixed:%.3fms, perKB:%.4fms", samples,
+                Math.max(0, (sy - slope * sx) / sw), slope);
+        }
+    }
+
+    private static class Decision {
+
+        Long     nid;
+        long     size;
+        double   rpcCost;
+        double   httpCost;
+        PipeType type;
+        String   reason;
+        long     time = System.currentTimeMillis();
+
+        public String toString() {
+            return String.format("nid:%s, size:%s, rpcCost:%.3fms, httpCost:%.3fms, choose:%s, reason:%s, time:%s",
+                nid, size, rpcCost, httpCost, type, reason, time);
+        }
+    }
+
+    public static class CostSample implements Serializable {
+
+        private static final long serialVersionUID = -6311428413209867023L;
+        private PipeType          type;
+        private long              size;
+        private long              nanos;
+
+        public CostSample(PipeType type, long size, long nanos){
+            this.type = type;
+            this.size = size;
+            this.nanos = nanos;
+        }
+
+        public PipeType getType() {
+            return type;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+    }
+
+    // 接收端回报耗时的事件，nid为回报方
+    public static class PipeCostEvent extends Event {
+
+        private static final long serialVersionUID = 4127962403316557730L;
+        private Long              nid;
+        private List<CostSample>  samples;
+
+        public PipeCostEvent(EventType eventType){
+            super(eventType);
+        }
+
+        public Long getNid() {
+            return nid;
+        }
+
+        public void setNid(Long nid) {
+            this.nid = nid;
+        }
+
+        public List<CostSample> getSamples() {
+            return samples;
+        }
+
+        public void setSamples(List<CostSample> samples) {
+            this.samples = samples;
+        }
+    }
+
+    // ==================== setter / getter =====================
+
+    public void setConfigClientService(ConfigClientService configClientService) {
+        this.configClientService = configClientService;
+    }
+
+    public void setNodeCommmunicationClient(NodeCommmunicationClient nodeCommmunicationClient) {
+        this.nodeCommmunicationClient = nodeCommmunicationClient;
+    }
+
+    public void setMinSamples(int minSamples) {
+        this.minSamples = minSamples;
+    }
+
+    public void setExploreInterval(int exploreInterval) {
+        this.exploreInterval = exploreInterval;
+    }
+
+    public void setMaxExploreSize(long maxExploreSize) {
+        this.maxExploreSize = maxExploreSize;
+    }
+
+    public void setReportSize(int reportSize) {
+        this.reportSize = reportSize;
+    }
+
+    public void setReportInterval(long reportInterval) {
+        this.reportInterval = reportInterval;
+    }
+}
@@ -23,6 +23,7 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 
+import org.apache.commons.lang.StringUtils;
 import org.slf4j.MDC;
 import org.springframework.util.Assert;
 import org.springframework.util.CollectionUtils;
@@ -31,13 +32,19 @@ import com.alibaba.otter.node.common.config.ConfigClientService;
 import com.alibaba.otter.node.etl.OtterConstants;
 import com.alibaba.otter.node.etl.common.pipe.PipeKey;
 import com.alibaba.otter.node.etl.common.pipe.exception.PipeException;
+import com.alibaba.otter.node.etl.common.pipe.impl.AdaptivePipeChooser.PipeType;
 import com.alibaba.otter.node.etl.common.pipe.impl.http.AttachmentHttpPipe;
 import com.alibaba.otter.node.etl.common.pipe.impl.http.HttpPipeKey;
 import com.alibaba.otter.node.etl.common.pipe.impl.http.RowDataHttpPipe;
 import com.alibaba.otter.node.etl.common.pipe.impl.memory.MemoryPipeKey;
 import com.alibaba.otter.node.etl.common.pipe.impl.memory.RowDataMemoryPipe;
+import com.alibaba.otter.node.etl.common.pipe.impl.mmap.MmapPipeKey;
+import com.alibaba.otter.node.etl.common.pipe.impl.mmap.RowDataMmapPipe;
 import com.alibaba.otter.node.etl.common.pipe.impl.rpc.RowDataRpcPipe;
 import com.alibaba.otter.node.etl.common.pipe.impl.rpc.RpcPipeKey;
+import com.alibaba.otter.node.etl.common.pipe.impl.stream.RowDataStreamPipe;
+import com.alibaba.otter.node.etl.common.pipe.impl.stream.StreamPipeKey;
+import com.alibaba.otter.shared.common.model.config.node.Node;
 import com.alibaba.otter.shared.common.model.config.pipeline.Pipeline;
 import com.alibaba.otter.shared.common.model.config.pipeline.PipelineParameter.PipeChooseMode;
 import com.alibaba.otter.shared.etl.model.DbBatch;
@@ -55,6 +62,9 @@ public class RowDataPipeDelegate {
     private AttachmentHttpPipe  attachmentHttpPipe;
     private RowDataHttpPipe     rowDataHttpPipe;
     private RowDataRpcPipe      rowDataRpcPipe;
+    private RowDataStreamPipe   rowDataStreamPipe;
+    private RowDataMmapPipe     rowDataMmapPipe;
+    private AdaptivePipeChooser adaptivePipeChooser;
     private ConfigClientService configClientService;
     private ExecutorService     executorService;
     private long                sizeThresold = 1024 * 128L; // 默认1MB
@@ -85,7 +95,10 @@ public class RowDataPipeDelegate {
             }
             try {
                 PipeChooseMode pipeChooseMode = pipeline.getParameters().getPipeChooseType();
-                if (pipeChooseMode.isAutomatic()) {
+                if (pipeline.getParameters().getUseLocalMmap() && isSameHost(nid)) {
+                    // 同一台机器上的不同node，走共享目录
+                    keys.add(rowDataMmapPipe.put(data));
+                } else if (pipeChooseMode.isAutomatic()) {
                     if (calculateSize(data) <= sizeThresold) {
                         keys.add(rowDataRpcPipe.put(data));
                     } else {
@@ -95,6 +108,15 @@ public class RowDataPipeDelegate {
                     keys.add(rowDataRpcPipe.put(data));
                 } else if (pipeChooseMode.isHttp()) {
                     keys.add(rowDataHttpPipe.put(data));
+                } else if (pipeChooseMode.isStream()) {
+                    PipeKey key = rowDataStreamPipe.put(data, nid);
+                    if (key == null) {
+                        // 推送窗口已满或者连接不可用，降级为rpc
+                        key = rowDataRpcPipe.put(data);
+                    }
+                    keys.add(key);
+                } else if (pipeChooseMode.isAdaptive()) {
+                    keys.add(adaptivePut(data, nid));
                 } else {
                     throw new PipeException("pipeChooseMode is error!" + pipeChooseMode);
                 }
@@ -125,7 +147,9 @@ public class RowDataPipeDelegate {
                 return dbBatch;// 直接返回
             } else if (key instanceof HttpPipeKey) {
                 if (key.getDataType().isDbBatch()) { // 区分一下数据下载
+                    long start = System.nanoTime();
                     dbBatch = rowDataHttpPipe.get((HttpPipeKey) key);
+                    recordConsume(((HttpPipeKey) key).getNid(), PipeType.HTTP, dbBatch, start);
                 } else {
                     future = executorService.submit(new Callable<File>() {
 
@@ -143,7 +167,13 @@ public class RowDataPipeDelegate {
                     });
                 }
             } else if (key instanceof RpcPipeKey) {
+                long start = System.nanoTime();
                 dbBatch = rowDataRpcPipe.get((RpcPipeKey) key);
+                recordConsume(((RpcPipeKey) key).getNid(), PipeType.RPC, dbBatch, start);
+            } else if (key instanceof StreamPipeKey) {
+                dbBatch = rowDataStreamPipe.get((StreamPipeKey) key);
+            } else if (key instanceof MmapPipeKey) {
+                dbBatch = rowDataMmapPipe.get((MmapPipeKey) key);
             } else {
                 throw new PipeException("unknow_PipeKey", key.toString());
             }
@@ -159,6 +189,41 @@ public class RowDataPipeDelegate {
         return dbBatch;
     }
 
+    /**
+     * 出现rollback后清理已经写入但不会再被获取的数据
+     */
+    public void rollback(Long pipelineId) {
+        rowDataMmapPipe.rollback(pipelineId);
+        rowDataStreamPipe.release(pipelineId);
+        rowDataRpcPipe.release(pipelineId);
+        rowDataMemoryPipe.release(pipelineId);
+    }
+
+    // 根据实测代价选择rpc/http，样本不足时退化为阈值规则
+    private PipeKey adaptivePut(DbBatch data, Long nid) {
+        Long pipelineId = data.getRowBatch().getIdentity().getPipelineId();
+        long size = AdaptivePipeChooser.estimateSize(data);
+        PipeType defaultType = calculateSize(data) <= sizeThresold ? PipeType.RPC : PipeType.HTTP;
+        PipeType pipeType = adaptivePipeChooser.choose(pipelineId, nid, size, defaultType);
+        long start = System.nanoTime();
+        PipeKey key = pipeType.isRpc() ? rowDataRpcPipe.put(data) : rowDataHttpPipe.put(data);
+        adaptivePipeChooser.recordProduce(nid, pipeType, size, System.nanoTime() - start);
+        return key;
+    }
+
+    // 自适应模式下记录接收端的耗时，回报给源node
+    private void recordConsume(Long nid, PipeType pipeType, DbBatch dbBatch, long start) {
+        if (nid == null || dbBatch == null) {
+            return; // 老版本node的key没有nid
+        }
+
+        long nanos = System.nanoTime() - start;
+        Pipeline pipeline = configClientService.findPipeline(dbBatch.getRowBatch().getIdentity().getPipelineId());
+        if (pipeline.getParameters().getPipeChooseType().isAdaptive()) {
+            adaptivePipeChooser.recordConsume(nid, pipeType, AdaptivePipeChooser.estimateSize(dbBatch), nanos);
+        }
+    }
+
     // 大致估算一下row记录的大小
     private long calculateSize(DbBatch data) {
         long size = 0;
@@ -185,6 +250,11 @@ public class RowDataPipeDelegate {
         return configClientService.currentNode().getId().equals(nid);
     }
 
+    private boolean isSameHost(Long nid) {
+        Node node = configClientService.findNode(nid);
+        return node != null && StringUtils.equals(node.getIp(), configClientService.currentNode().getIp());
+    }
+
     // ================ setter / getter ===============
 
     public void setRowDataMemoryPipe(RowDataMemoryPipe rowDataMemoryPipe) {
@@ -199,6 +269,18 @@ public class RowDataPipeDelegate {
         this.rowDataRpcPipe = rowDataRpcPipe;
     }
 
+    public void setRowDataStreamPipe(RowDataStreamPipe rowDataStreamPipe) {
+        this.rowDataStreamPipe = rowDataStreamPipe;
+    }
+
+    public void setRowDataMmapPipe(RowDataMmapPipe rowDataMmapPipe) {
+        this.rowDataMmapPipe = rowDataMmapPipe;
+    }
+
+    public void setAdaptivePipeChooser(AdaptivePipeChooser adaptivePipeChooser) {
+        this.adaptivePipeChooser = adaptivePipeChooser;
+    }
+
     public void setConfigClientService(ConfigClientService configClientService) {
         this.configClientService = configClientService;
     }
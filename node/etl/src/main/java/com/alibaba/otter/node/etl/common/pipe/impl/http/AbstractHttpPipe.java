@@ -17,6 +17,7 @@
 package com.alibaba.otter.node.etl.common.pipe.impl.http;
 
 import java.io.File;
+import java.io.InputStream;
 import java.io.RandomAccessFile;
 import java.io.UnsupportedEncodingException;
 import java.util.Set;
@@ -181,6 +182,29 @@ public abstract class AbstractHttpPipe<T, KEY extends HttpPipeKey> implements Pi
         }
     }
 
+    /**
+     * 流式读取时使用，数据部分读取完成后，从流中读取末尾的key + crc进行校验
+     */
+    protected void checkEncrypted(InputStream input, String key, String crc) {
+        try {
+            byte[] keyBytes = new byte[ByteUtils.stringToBytes(key).length];
+            IOUtils.readFully(input, keyBytes);
+            String keystr = ByteUtils.bytesToString(keyBytes);
+            if (!key.equals(keystr)) {
+                throw new ChecksumException("unmatch garble key with[" + key + "],[" + keystr + "]");
+            }
+
+            byte[] crcBytes = new byte[ByteUtils.stringToBytes(crc).length];
+            IOUtils.readFully(input, crcBytes);
+            String crcStr = ByteUtils.bytesToString(crcBytes);
+            if (!crc.equals(crcStr)) {
+                throw new ChecksumException("unmatch crc with[" + crc + "],[" + crcStr + "]");
+            }
+        } catch (Exception e) {
+            throw new PipeException("read_encrypted_error", e);
+        }
+    }
+
     // ==================== setter / getter ==================
 
     public void setConfigClientService(ConfigClientService configClientService) {
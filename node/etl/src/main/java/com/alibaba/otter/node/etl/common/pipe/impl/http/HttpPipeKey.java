@@ -32,6 +32,9 @@ public class HttpPipeKey extends PipeKey {
     private String            crc;                                    // checksum数字串
     private String            key;                                    // 密钥串
     private String            url;                                    // 数据文件
+    private String            compress;                               // 压缩算法，为空代表未压缩
+    private Long              nid;                                    // 数据文件所在的源机器id
+    private boolean           streamEncrypt;                          // 是否为边写边加密的文件，否则为文件末尾追加key + crc的方式
 
     public String getCrc() {
         return crc;
@@ -57,6 +60,30 @@ public class HttpPipeKey extends PipeKey {
         this.url = url;
     }
 
+    public String getCompress() {
+        return compress;
+    }
+
+    public void setCompress(String compress) {
+        this.compress = compress;
+    }
+
+    public Long getNid() {
+        return nid;
+    }
+
+    public void setNid(Long nid) {
+        this.nid = nid;
+    }
+
+    public boolean isStreamEncrypt() {
+        return streamEncrypt;
+    }
+
+    public void setStreamEncrypt(boolean streamEncrypt) {
+        this.streamEncrypt = streamEncrypt;
+    }
+
     public Identity getIdentity() {
         return identity;
     }
@@ -24,6 +24,10 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.HttpURLConnection;
+import java.net.URL;
 import java.text.MessageFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -31,16 +35,23 @@ import java.util.Date;
 import java.util.List;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.apache.commons.io.output.CountingOutputStream;
 import org.apache.commons.lang.ClassUtils;
 import org.apache.commons.lang.StringUtils;
 import org.springframework.util.CollectionUtils;
 
-import com.alibaba.fastjson.JSONReader;
+import com.alibaba.otter.node.etl.common.io.DecryptedInputStream;
 import com.alibaba.otter.node.etl.common.io.EncryptedData;
+import com.alibaba.otter.node.etl.common.io.EncryptedOutputStream;
+import com.alibaba.otter.node.etl.common.io.compress.CompressorFactory;
+import com.alibaba.otter.node.etl.common.io.compress.impl.AbstractCompressor;
 import com.alibaba.otter.node.etl.common.io.download.DataRetriever;
+import com.alibaba.otter.node.etl.common.io.signature.ChecksumException;
 import com.alibaba.otter.node.etl.common.pipe.PipeDataType;
 import com.alibaba.otter.node.etl.common.pipe.exception.PipeException;
 import com.alibaba.otter.node.etl.model.protobuf.BatchProto;
+import com.alibaba.otter.node.etl.model.protobuf.DbBatchCodec;
 import com.alibaba.otter.shared.common.model.config.channel.ChannelParameter.SyncConsistency;
 import com.alibaba.otter.shared.common.model.config.channel.ChannelParameter.SyncMode;
 import com.alibaba.otter.shared.common.model.config.pipeline.Pipeline;
@@ -49,10 +60,11 @@ import com.alibaba.otter.shared.etl.model.DbBatch;
 import com.alibaba.otter.shared.etl.model.EventColumn;
 import com.alibaba.otter.shared.etl.model.EventData;
 import com.alibaba.otter.shared.etl.model.EventType;
-import com.alibaba.otter.shared.etl.model.FileBatch;
-import com.alibaba.otter.shared.etl.model.FileData;
 import com.alibaba.otter.shared.etl.model.Identity;
 import com.alibaba.otter.shared.etl.model.RowBatch;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.ExtensionRegistryLite;
+import com.google.protobuf.WireFormat;
 
 /**
  * 基于http下载的pipe实现
@@ -62,6 +74,10 @@ import com.alibaba.otter.shared.etl.model.RowBatch;
  */
 public class RowDataHttpPipe extends AbstractHttpPipe<DbBatch, HttpPipeKey> {
 
+    private static final int BUFFER_SIZE     = 64 * 1024;
+    private static final int CONNECT_TIMEOUT = 10 * 1000;
+    private static final int READ_TIMEOUT    = 60 * 1000;
+
     public HttpPipeKey put(final DbBatch data) throws PipeException {
         return saveDbBatch(data);
     }
@@ -74,10 +90,91 @@ public class RowDataHttpPipe extends AbstractHttpPipe<DbBatch, HttpPipeKey> {
     // ======================== help method ===================
     // 保存对应的dbBatch
     private HttpPipeKey saveDbBatch(DbBatch dbBatch) {
+        RowBatch rowBatch = dbBatch.getRowBatch();
+        Pipeline pipeline = configClientService.findPipeline(rowBatch.getIdentity().getPipelineId());
+        boolean typedEncode = pipeline.getParameters().getUseTypedEncode();
+        boolean streamEncrypt = pipeline.getParameters().getUseFileEncrypt()
+                                && pipeline.getParameters().getUseStreamEncrypt();
+        AbstractCompressor compressor = CompressorFactory.getCompressor(pipeline.getParameters().getPipeCompressType());
+        // 处理构造对应的文件url
+        String filename = buildFileName(rowBatch.getIdentity(),
+            ClassUtils.getShortClassName(dbBatch.getClass()),
+            compressor != null ? compressor.getDefaultFileExtension() : "bin");
+        // 写入数据，边序列化边压缩，不在内存中保留完整的字节数组
+        File file = new File(htdocsDir, filename);
+        OutputStream output = null;
+        CountingOutputStream rawOutput = null;
+        EncryptedOutputStream encryptOutput = null;
+        long cpuStart = currentThreadCpuTime();
+        try {
+            output = new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE);
+            if (streamEncrypt) {
+                // 压缩后的数据边写边加密，不需要写完后再处理文件
+                encryptOutput = new EncryptedOutputStream(output);
+                output = encryptOutput;
+            }
+            if (compressor != null) {
+                output = compressor.compressStream(output);
+            }
+            rawOutput = new CountingOutputStream(output);
+            output = rawOutput;
+            if (typedEncode) {
+                DbBatchCodec.write(dbBatch, output);
+            } else {
+                writeDbBatchV1(dbBatch, output);
+            }
+            output.close(); // 显式close，确保压缩流的尾部数据写出
+            output = null;
+        } catch (IOException e) {
+            throw new PipeException("write_byte_error", e);
+        } finally {
+            IOUtils.closeQuietly(output);
+        }
+
+        if (compressor != null && logger.isInfoEnabled()) {
+            long rawSize = rawOutput.getByteCount();
+            long compressSize = file.length();
+            logger.info(MessageFormat.format("compress [{0}] with {1} raw:{2} compressed:{3} ratio:{4} cpu:{5}ms",
+                filename,
+                compressor.getName(),
+                String.valueOf(rawSize),
+                String.valueOf(compressSize),
+                String.format("%.2f", rawSize > 0 ? (double) compressSize / rawSize : 1.0d),
+                String.valueOf((currentThreadCpuTime() - cpuStart) / 1000000)));
+        }
+
+        HttpPipeKey key = new HttpPipeKey();
+        key.setUrl(remoteUrlBuilder.getUrl(rowBatch.getIdentity().getPipelineId(), filename));
+        key.setDataType(PipeDataType.DB_BATCH);
+        key.setIdentity(rowBatch.getIdentity());
+        key.setNid(configClientService.currentNode().getId());
+        if (compressor != null) {
+            key.setCompress(compressor.getName());
+        }
+        if (typedEncode) {
+            key.setVersion(DbBatchCodec.VERSION_2);
+        }
+        if (streamEncrypt) {
+            EncryptedData encryptedData = encryptOutput.getEncryptedData();
+            key.setKey(encryptedData.getKey());
+            key.setCrc(encryptedData.getCrc());
+            key.setStreamEncrypt(true);
+        } else if (pipeline.getParameters().getUseFileEncrypt()) {
+            // 加密处理
+            EncryptedData encryptedData = encryptFile(file);
+            key.setKey(encryptedData.getKey());
+            key.setCrc(encryptedData.getCrc());
+        }
+
+        return key;
+    }
+
+    // v1编码，RowBatch/FileBatch分别转化为proto对象输出
+    private void writeDbBatchV1(DbBatch dbBatch, OutputStream output) throws IOException {
         RowBatch rowBatch = dbBatch.getRowBatch();
         // 转化为proto对象
         BatchProto.RowBatch.Builder rowBatchBuilder = BatchProto.RowBatch.newBuilder();
-        rowBatchBuilder.setIdentity(build(rowBatch.getIdentity()));
+        rowBatchBuilder.setIdentity(DbBatchCodec.build(rowBatch.getIdentity()));
         // 处理具体的字段rowData
         for (EventData eventData : rowBatch.getDatas()) {
             BatchProto.RowData.Builder rowDataBuilder = BatchProto.RowData.newBuilder();
@@ -128,68 +225,23 @@ public class RowDataHttpPipe extends AbstractHttpPipe<DbBatch, HttpPipeKey> {
             rowBatchBuilder.addRows(rowDataBuilder.build());// 添加一条rowData记录
         }
 
-        // 处理下FileBatch
-        FileBatch fileBatch = dbBatch.getFileBatch();
-        BatchProto.FileBatch.Builder fileBatchBuilder = null;
-        fileBatchBuilder = BatchProto.FileBatch.newBuilder();
-        fileBatchBuilder.setIdentity(build(fileBatch.getIdentity()));
-        // 构造对应的proto对象
-        for (FileData fileData : fileBatch.getFiles()) {
-            BatchProto.FileData.Builder fileDataBuilder = BatchProto.FileData.newBuilder();
-            fileDataBuilder.setPairId(fileData.getPairId());
-            fileDataBuilder.setTableId(fileData.getTableId());
-            if (fileData.getNameSpace() != null) {
-                fileDataBuilder.setNamespace(fileData.getNameSpace());
-            }
-            if (fileData.getPath() != null) {
-                fileDataBuilder.setPath(fileData.getPath());
-            }
-            fileDataBuilder.setEventType(fileData.getEventType().getValue());
-            fileDataBuilder.setSize(fileData.getSize());
-            fileDataBuilder.setLastModifiedTime(fileData.getLastModifiedTime());
-
-            fileBatchBuilder.addFiles(fileDataBuilder.build());// 添加一条fileData记录
-        }
-        // 处理构造对应的文件url
-        String filename = buildFileName(rowBatch.getIdentity(), ClassUtils.getShortClassName(dbBatch.getClass()));
-        // 写入数据
-        File file = new File(htdocsDir, filename);
-        OutputStream output = null;
-        try {
-            output = new BufferedOutputStream(new FileOutputStream(file));
-            com.alibaba.otter.node.etl.model.protobuf.BatchProto.RowBatch rowBatchProto = rowBatchBuilder.build();
-            output.write(ByteUtils.int2bytes(rowBatchProto.getSerializedSize()));// 输出大小
-            rowBatchProto.writeTo(output);// 输出row batch
-
-            com.alibaba.otter.node.etl.model.protobuf.BatchProto.FileBatch fileBatchProto = fileBatchBuilder.build();
-            output.write(ByteUtils.int2bytes(fileBatchProto.getSerializedSize()));// 输出大小
-            fileBatchProto.writeTo(output); // 输出file batch
-            output.flush();
-        } catch (IOException e) {
-            throw new PipeException("write_byte_error", e);
-        } finally {
-            IOUtils.closeQuietly(output);
-        }
-
-        HttpPipeKey key = new HttpPipeKey();
-        key.setUrl(remoteUrlBuilder.getUrl(rowBatch.getIdentity().getPipelineId(), filename));
-        key.setDataType(PipeDataType.DB_BATCH);
-        key.setIdentity(rowBatch.getIdentity());
-        Pipeline pipeline = configClientService.findPipeline(rowBatch.getIdentity().getPipelineId());
-        if (pipeline.getParameters().getUseFileEncrypt()) {
-            // 加密处理
-            EncryptedData encryptedData = encryptFile(file);
-            key.setKey(encryptedData.getKey());
-            key.setCrc(encryptedData.getCrc());
-        }
+        BatchProto.RowBatch rowBatchProto = rowBatchBuilder.build();
+        output.write(ByteUtils.int2bytes(rowBatchProto.getSerializedSize()));// 输出大小
+        rowBatchProto.writeTo(output);// 输出row batch
 
-        return key;
+        BatchProto.FileBatch fileBatchProto = DbBatchCodec.buildFileBatch(dbBatch.getFileBatch());
+        output.write(ByteUtils.int2bytes(fileBatchProto.getSerializedSize()));// 输出大小
+        fileBatchProto.writeTo(output); // 输出file batch
     }
 
     // 处理对应的dbBatch
     private DbBatch getDbBatch(HttpPipeKey key) {
         String dataUrl = key.getUrl();
         Pipeline pipeline = configClientService.findPipeline(key.getIdentity().getPipelineId());
+        if (pipeline.getParameters().getUseStreamDownload()) {
+            return getDbBatchByStream(key);
+        }
+
         DataRetriever dataRetriever = dataRetrieverFactory.createRetriever(pipeline.getParameters().getRetriever(),
             dataUrl,
             downloadDir);
@@ -206,94 +258,185 @@ public class RowDataHttpPipe extends AbstractHttpPipe<DbBatch, HttpPipeKey> {
         }
 
         // 处理下有加密的数据
-        if (StringUtils.isNotEmpty(key.getKey()) && StringUtils.isNotEmpty(key.getCrc())) {
+        if (!key.isStreamEncrypt() && StringUtils.isNotEmpty(key.getKey()) && StringUtils.isNotEmpty(key.getCrc())) {
             decodeFile(archiveFile, key.getKey(), key.getCrc());
         }
 
         InputStream input = null;
-        JSONReader reader = null;
         try {
-            input = new BufferedInputStream(new FileInputStream(archiveFile));
-            DbBatch dbBatch = new DbBatch();
-            byte[] lengthBytes = new byte[4];
-            input.read(lengthBytes);
-            int length = ByteUtils.bytes2int(lengthBytes);
-            BatchProto.RowBatch rowbatchProto = BatchProto.RowBatch.parseFrom(new LimitedInputStream(input, length));
-            // 构造原始的model对象
-            RowBatch rowBatch = new RowBatch();
-            rowBatch.setIdentity(build(rowbatchProto.getIdentity()));
-            for (BatchProto.RowData rowDataProto : rowbatchProto.getRowsList()) {
-                EventData eventData = new EventData();
-                eventData.setPairId(rowDataProto.getPairId());
-                eventData.setTableId(rowDataProto.getTableId());
-                eventData.setTableName(rowDataProto.getTableName());
-                eventData.setSchemaName(rowDataProto.getSchemaName());
-                eventData.setEventType(EventType.valuesOf(rowDataProto.getEventType()));
-                eventData.setExecuteTime(rowDataProto.getExecuteTime());
-                // add by ljh at 2012-10-31
-                if (StringUtils.isNotEmpty(rowDataProto.getSyncMode())) {
-                    eventData.setSyncMode(SyncMode.valuesOf(rowDataProto.getSyncMode()));
-                }
-                if (StringUtils.isNotEmpty(rowDataProto.getSyncConsistency())) {
-                    eventData.setSyncConsistency(SyncConsistency.valuesOf(rowDataProto.getSyncConsistency()));
-                }
-                // 处理主键
-                List<EventColumn> keys = new ArrayList<EventColumn>();
-                for (BatchProto.Column columnProto : rowDataProto.getKeysList()) {
-                    keys.add(buildColumn(columnProto));
-                }
-                eventData.setKeys(keys);
-                // 处理old主键
-                if (CollectionUtils.isEmpty(rowDataProto.getOldKeysList()) == false) {
-                    List<EventColumn> oldKeys = new ArrayList<EventColumn>();
-                    for (BatchProto.Column columnProto : rowDataProto.getOldKeysList()) {
-                        oldKeys.add(buildColumn(columnProto));
-                    }
-                    eventData.setOldKeys(oldKeys);
-                }
-                // 处理具体的column value
-                List<EventColumn> columns = new ArrayList<EventColumn>();
-                for (BatchProto.Column columnProto : rowDataProto.getColumnsList()) {
-                    columns.add(buildColumn(columnProto));
-                }
-                eventData.setColumns(columns);
-
-                eventData.setRemedy(rowDataProto.getRemedy());
-                eventData.setSize(rowDataProto.getSize());
-                eventData.setSql(rowDataProto.getSql());
-                eventData.setDdlSchemaName(rowDataProto.getDdlSchemaName());
-                eventData.setHint(rowDataProto.getHint());
-                eventData.setWithoutSchema(rowDataProto.getWithoutSchema());
-                // 添加到总记录
-                rowBatch.merge(eventData);
+            input = new BufferedInputStream(new FileInputStream(archiveFile), BUFFER_SIZE);
+            if (key.isStreamEncrypt()) {
+                return readEncryptedDbBatch(input, key);
+            }
+            return readDbBatch(input, key);
+        } catch (IOException e) {
+            throw new PipeException("deserial_error", e);
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+    }
+
+    // 边下载边解析，http body直接进入解压/反序列化，不落地文件，加密校验信息在body末尾读取
+    private DbBatch getDbBatchByStream(HttpPipeKey key) {
+        HttpURLConnection connection = null;
+        InputStream input = null;
+        try {
+            connection = (HttpURLConnection) new URL(key.getUrl()).openConnection();
+            connection.setConnectTimeout(CONNECT_TIMEOUT);
+            connection.setReadTimeout(READ_TIMEOUT);
+            int responseCode = connection.getResponseCode();
+            if (responseCode != HttpURLConnection.HTTP_OK) {
+                throw new PipeException("download_error", "response code [" + responseCode + "] for " + key.getUrl());
             }
-            dbBatch.setRowBatch(rowBatch);
-
-            input.read(lengthBytes);
-            length = ByteUtils.bytes2int(lengthBytes);
-            BatchProto.FileBatch filebatchProto = BatchProto.FileBatch.parseFrom(new LimitedInputStream(input, length));
-            // 构造原始的model对象
-            FileBatch fileBatch = new FileBatch();
-            fileBatch.setIdentity(build(filebatchProto.getIdentity()));
-            for (BatchProto.FileData fileDataProto : filebatchProto.getFilesList()) {
-                FileData fileData = new FileData();
-                fileData.setPairId(fileDataProto.getPairId());
-                fileData.setTableId(fileDataProto.getTableId());
-                fileData.setEventType(EventType.valuesOf(fileDataProto.getEventType()));
-                fileData.setLastModifiedTime(fileDataProto.getLastModifiedTime());
-                fileData.setNameSpace(fileDataProto.getNamespace());
-                fileData.setPath(fileDataProto.getPath());
-                fileData.setSize(fileDataProto.getSize());
-                // 添加到filebatch中
-                fileBatch.getFiles().add(fileData);
+
+            input = new BufferedInputStream(connection.getInputStream(), BUFFER_SIZE);
+            if (StringUtils.isEmpty(key.getKey()) || StringUtils.isEmpty(key.getCrc())) {
+                return readDbBatch(input, key);
+            } else if (key.isStreamEncrypt()) {
+                return readEncryptedDbBatch(input, key);
+            }
+
+            // 有加密数据，需要根据content-length切分出数据部分，剩余的为key + crc
+            String contentLength = connection.getHeaderField("Content-Length");
+            if (StringUtils.isEmpty(contentLength)) {
+                throw new PipeException("download_error", "no content-length for " + key.getUrl());
             }
-            dbBatch.setFileBatch(fileBatch);
+            long length = Long.valueOf(contentLength) - ByteUtils.stringToBytes(key.getKey()).length
+                          - ByteUtils.stringToBytes(key.getCrc()).length;
+            BoundedInputStream payload = new BoundedInputStream(input, length);
+            payload.setPropagateClose(false);
+            DbBatch dbBatch = readDbBatch(payload, key);
+            IOUtils.skip(payload, length); // 跳过压缩流末尾未读取的数据
+            checkEncrypted(input, key.getKey(), key.getCrc());
             return dbBatch;
         } catch (IOException e) {
-            throw new PipeException("deserial_error", e);
+            throw new PipeException("download_error", e);
         } finally {
-            IOUtils.closeQuietly(reader);
+            IOUtils.closeQuietly(input);
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    // 边解密边解析，解析完成后校验整个文件的crc
+    private DbBatch readEncryptedDbBatch(InputStream input, HttpPipeKey key) throws IOException {
+        DecryptedInputStream decryptInput = new DecryptedInputStream(input, key.getKey(), key.getCrc());
+        DbBatch dbBatch = readDbBatch(decryptInput, key);
+        try {
+            decryptInput.verify();
+        } catch (ChecksumException e) {
+            throw new PipeException("read_encrypted_error", e);
+        }
+        return dbBatch;
+    }
+
+    // 从流中读取dbBatch，根据key中的版本选择解码方式
+    private DbBatch readDbBatch(InputStream input, HttpPipeKey key) throws IOException {
+        // 老版本的key没有compress，代表文件未压缩
+        AbstractCompressor compressor = CompressorFactory.getCompressor(key.getCompress());
+        long cpuStart = currentThreadCpuTime();
+        if (compressor != null) {
+            input = compressor.decompressStream(input);
+        }
+
+        DbBatch dbBatch = null;
+        if (key.getVersion() != null && key.getVersion() == DbBatchCodec.VERSION_2) {
+            dbBatch = DbBatchCodec.read(input);
+        } else {
+            dbBatch = readDbBatchV1(input);
+        }
+        if (compressor != null && logger.isInfoEnabled()) {
+            logger.info(MessageFormat.format("decompress [{0}] with {1} cpu:{2}ms",
+                key.getUrl(),
+                compressor.getName(),
+                String.valueOf((currentThreadCpuTime() - cpuStart) / 1000000)));
+        }
+        return dbBatch;
+    }
+
+    // v1编码，rowData每读取一条就转化为EventData，不构造完整的RowBatch proto对象
+    private DbBatch readDbBatchV1(InputStream input) throws IOException {
+        DbBatch dbBatch = new DbBatch();
+        byte[] lengthBytes = new byte[4];
+        IOUtils.readFully(input, lengthBytes);
+        int length = ByteUtils.bytes2int(lengthBytes);
+        // 限制读取范围，避免CodedInputStream的预读吃掉后面的file batch
+        CodedInputStream rowBatchInput = CodedInputStream.newInstance(new LimitedInputStream(input, length));
+        rowBatchInput.setSizeLimit(Integer.MAX_VALUE);
+        // 构造原始的model对象
+        RowBatch rowBatch = new RowBatch();
+        int tag = 0;
+        while ((tag = rowBatchInput.readTag()) != 0) {
+            int fieldNumber = WireFormat.getTagFieldNumber(tag);
+            if (fieldNumber == BatchProto.RowBatch.IDENTITY_FIELD_NUMBER) {
+                BatchProto.Identity.Builder identityBuilder = BatchProto.Identity.newBuilder();
+                rowBatchInput.readMessage(identityBuilder, ExtensionRegistryLite.getEmptyRegistry());
+                rowBatch.setIdentity(DbBatchCodec.build(identityBuilder.build()));
+            } else if (fieldNumber == BatchProto.RowBatch.ROWS_FIELD_NUMBER) {
+                BatchProto.RowData.Builder rowDataBuilder = BatchProto.RowData.newBuilder();
+                rowBatchInput.readMessage(rowDataBuilder, ExtensionRegistryLite.getEmptyRegistry());
+                // 添加到总记录
+                rowBatch.merge(buildEventData(rowDataBuilder.build()));
+            } else {
+                rowBatchInput.skipField(tag);
+            }
         }
+        if (rowBatch.getIdentity() == null) {
+            rowBatch.setIdentity(DbBatchCodec.build(BatchProto.Identity.getDefaultInstance()));
+        }
+        dbBatch.setRowBatch(rowBatch);
+
+        IOUtils.readFully(input, lengthBytes);
+        length = ByteUtils.bytes2int(lengthBytes);
+        BatchProto.FileBatch filebatchProto = BatchProto.FileBatch.parseFrom(new LimitedInputStream(input, length));
+        dbBatch.setFileBatch(DbBatchCodec.buildFileBatch(filebatchProto));
+        return dbBatch;
+    }
+
+    private EventData buildEventData(BatchProto.RowData rowDataProto) {
+        EventData eventData = new EventData();
+        eventData.setPairId(rowDataProto.getPairId());
+        eventData.setTableId(rowDataProto.getTableId());
+        eventData.setTableName(rowDataProto.getTableName());
+        eventData.setSchemaName(rowDataProto.getSchemaName());
+        eventData.setEventType(EventType.valuesOf(rowDataProto.getEventType()));
+        eventData.setExecuteTime(rowDataProto.getExecuteTime());
+        // add by ljh at 2012-10-31
+        if (StringUtils.isNotEmpty(rowDataProto.getSyncMode())) {
+            eventData.setSyncMode(SyncMode.valuesOf(rowDataProto.getSyncMode()));
+        }
+        if (StringUtils.isNotEmpty(rowDataProto.getSyncConsistency())) {
+            eventData.setSyncConsistency(SyncConsistency.valuesOf(rowDataProto.getSyncConsistency()));
+        }
+        // 处理主键
+        List<EventColumn> keys = new ArrayList<EventColumn>();
+        for (BatchProto.Column columnProto : rowDataProto.getKeysList()) {
+            keys.add(buildColumn(columnProto));
+        }
+        eventData.setKeys(keys);
+        // 处理old主键
+        if (CollectionUtils.isEmpty(rowDataProto.getOldKeysList()) == false) {
+            List<EventColumn> oldKeys = new ArrayList<EventColumn>();
+            for (BatchProto.Column columnProto : rowDataProto.getOldKeysList()) {
+                oldKeys.add(buildColumn(columnProto));
+            }
+            eventData.setOldKeys(oldKeys);
+        }
+        // 处理具体的column value
+        List<EventColumn> columns = new ArrayList<EventColumn>();
+        for (BatchProto.Column columnProto : rowDataProto.getColumnsList()) {
+            columns.add(buildColumn(columnProto));
+        }
+        eventData.setColumns(columns);
+
+        eventData.setRemedy(rowDataProto.getRemedy());
+        eventData.setSize(rowDataProto.getSize());
+        eventData.setSql(rowDataProto.getSql());
+        eventData.setDdlSchemaName(rowDataProto.getDdlSchemaName());
+        eventData.setHint(rowDataProto.getHint());
+        eventData.setWithoutSchema(rowDataProto.getWithoutSchema());
+        return eventData;
     }
 
     private EventColumn buildColumn(BatchProto.Column columnProto) {
@@ -325,33 +468,26 @@ public class RowDataHttpPipe extends AbstractHttpPipe<DbBatch, HttpPipeKey> {
     }
 
     // 构造文件名
-    private String buildFileName(Identity identity, String prefix) {
+    private String buildFileName(Identity identity, String prefix, String extension) {
         Date now = new Date();
         String time = new SimpleDateFormat(DATE_FORMAT).format(now);
-        return MessageFormat.format("{0}-{1}-{2}-{3}-{4}.gzip",
+        return MessageFormat.format("{0}-{1}-{2}-{3}-{4}.{5}",
             prefix,
             time,
             String.valueOf(identity.getChannelId()),
             String.valueOf(identity.getPipelineId()),
-            String.valueOf(identity.getProcessId()));
+            String.valueOf(identity.getProcessId()),
+            extension);
     }
 
-    // 构造proto对象
-    private BatchProto.Identity build(Identity identity) {
-        BatchProto.Identity.Builder identityBuilder = BatchProto.Identity.newBuilder();
-        identityBuilder.setChannelId(identity.getChannelId());
-        identityBuilder.setPipelineId(identity.getPipelineId());
-        identityBuilder.setProcessId(identity.getProcessId());
-        return identityBuilder.build();
-    }
-
-    // 从proto对象构造回object
-    private Identity build(BatchProto.Identity identityProto) {
-        Identity identity = new Identity();
-        identity.setChannelId(identityProto.getChannelId());
-        identity.setPipelineId(identityProto.getPipelineId());
-        identity.setProcessId(identityProto.getProcessId());
-        return identity;
+    // 当前线程的cpu时间(ns)，不支持时退化为墙钟时间
+    private long currentThreadCpuTime() {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (threadMXBean.isCurrentThreadCpuTimeSupported()) {
+            return threadMXBean.getCurrentThreadCpuTime();
+        } else {
+            return System.nanoTime();
+        }
     }
 
 }
@@ -16,14 +16,10 @@
 
 package com.alibaba.otter.node.etl.common.pipe.impl.memory;
 
-import java.util.Map;
-import java.util.concurrent.TimeUnit;
-
 import org.springframework.beans.factory.InitializingBean;
 
 import com.alibaba.otter.node.etl.common.pipe.Pipe;
-import com.alibaba.otter.shared.etl.model.DbBatch;
-import com.google.common.collect.OtterMigrateMap;
+import com.alibaba.otter.node.etl.common.pipe.store.BatchStore;
 
 /**
  * 基于内存版本的pipe实现
@@ -33,13 +29,27 @@ import com.google.common.collect.OtterMigrateMap;
  */
 public abstract class AbstractMemoryPipe<T, KEY extends MemoryPipeKey> implements Pipe<T, KEY>, InitializingBean {
 
-    protected Long                        timeout = 60 * 1000L; // 对应的超时时间,1分钟
+    protected Long                      timeout    = 60 * 1000L;         // 对应的超时时间,1分钟
+    protected Long                      capacity   = 256 * 1024 * 1024L; // 最大占用的字节数，按EventData.getSize()估算
+    protected Long                      putTimeout = 60 * 1000L;         // 存储满时put的最大等待时间
 
-    protected Map<MemoryPipeKey, DbBatch> cache;
+    protected BatchStore<MemoryPipeKey> store;
 
     public void afterPropertiesSet() throws Exception {
         // 一定要设置过期时间，因为针对rollback操作，不会有后续的节点来获取数据，需要自动过期删除掉
-        cache = OtterMigrateMap.makeSoftValueMapWithTimeout(timeout, TimeUnit.MILLISECONDS);
+        // 本机内传递保留引用，不做序列化
+        store = new BatchStore<MemoryPipeKey>(capacity, timeout, putTimeout, false);
+    }
+
+    /**
+     * pipeline停止后释放对应的数据
+     */
+    public void release(Long pipelineId) {
+        store.release(pipelineId);
+    }
+
+    public String getStoreInfo() {
+        return store.info();
     }
 
     // ============== setter / getter ===============
@@ -48,4 +58,12 @@ public abstract class AbstractMemoryPipe<T, KEY extends MemoryPipeKey> implement
         this.timeout = timeout;
     }
 
+    public void setCapacity(Long capacity) {
+        this.capacity = capacity;
+    }
+
+    public void setPutTimeout(Long putTimeout) {
+        this.putTimeout = putTimeout;
+    }
+
 }
@@ -60,12 +60,12 @@ public class RowDataMemoryPipe extends AbstractMemoryPipe<DbBatch, MemoryPipeKey
         // // data.setRoot(prepareFile(data.getFileBatch()));
         // }
         key.setDataType(PipeDataType.DB_BATCH);
-        cache.put(key, data);
+        store.put(key, data);
         return key;
     }
 
     public DbBatch get(MemoryPipeKey key) {
-        return cache.remove(key);
+        return store.get(key);
     }
 
     // 处理对应的附件
@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2010-2101 Alibaba Group Holding Limited.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.otter.node.etl.common.pipe.impl.mmap;
+
+import com.alibaba.otter.node.etl.common.pipe.PipeKey;
+import com.alibaba.otter.shared.etl.model.Identity;
+
+/**
+ * 基于共享目录mmap文件的pipe key，只在同一台机器的node之间使用
+ */
+public class MmapPipeKey extends PipeKey {
+
+    private static final long serialVersionUID = -2950738405046286367L;
+    private Identity          identity;
+    private String            path;                                    // 共享目录下的数据文件
+    private Integer           length;                                  // 数据长度
+
+    public Identity getIdentity() {
+        return identity;
+    }
+
+    public void setIdentity(Identity identity) {
+        this.identity = identity;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    public Integer getLength() {
+        return length;
+    }
+
+    public void setLength(Integer length) {
+        this.length = length;
+    }
+
+}
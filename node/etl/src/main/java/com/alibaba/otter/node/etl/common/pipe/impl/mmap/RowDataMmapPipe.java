@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2010-2101 Alibaba Group Holding Limited.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.otter.node.etl.common.pipe.impl.mmap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+
+import com.alibaba.otter.node.etl.common.pipe.Pipe;
+import com.alibaba.otter.node.etl.common.pipe.PipeDataType;
+import com.alibaba.otter.node.etl.common.pipe.exception.PipeException;
+import com.alibaba.otter.node.etl.model.protobuf.DbBatchCodec;
+import com.alibaba.otter.shared.common.utils.NioUtils;
+import com.alibaba.otter.shared.common.utils.thread.NamedThreadFactory;
+import com.alibaba.otter.shared.etl.model.DbBatch;
+import com.alibaba.otter.shared.etl.model.Identity;
+
+/**
+ * 同一台机器上不同jvm的node之间，基于共享目录下的mmap文件传递数据
+ *
+ * <pre>
+ * 1. 发送端编码后写入mmap文件，不做force，数据只需要进入page cache，接收端直接共享同一份page cache
+ * 2. 接收端只读映射文件，直接从MappedByteBuffer解码，不需要拷贝到堆内的byte[]
+ * 3. 文件清理：接收端get(确认获取)后删除；rollback时删除rollback之前写入的文件；pipeline停止时删除全部文件；超时文件由后台任务清理
+ * 4. 需要保证两个node的mmapDir指向同一个目录
+ * </pre>
+ */
+public class RowDataMmapPipe implements Pipe<DbBatch, MmapPipeKey>, InitializingBean, DisposableBean {
+
+    private static final Logger      logger  = LoggerFactory.getLogger(RowDataMmapPipe.class);
+    private static final String      SUFFIX  = ".batch";
+    private String                   mmapDir;                                                // 共享目录
+    private Long                     timeout = 10 * 60 * 1000L;                              // 文件超时时间
+    private Long                     period  = 60 * 1000L;                                   // 超时检查间隔
+    private ScheduledExecutorService cleaner;
+
+    public void afterPropertiesSet() throws Exception {
+        Assert.notNull(mmapDir);
+        NioUtils.create(new File(mmapDir), false, 3);
+        cleaner = Executors.newScheduledThreadPool(1, new NamedThreadFactory("MmapPipe-Cleaner"));
+        cleaner.scheduleAtFixedRate(new Runnable() {
+
+            public void run() {
+                try {
+                    File[] dirs = new File(mmapDir).listFiles();
+                    if (dirs != null) {
+                        long threshold = System.currentTimeMillis() - timeout;
+                        for (File dir : dirs) {
+                            clean(dir, threshold);
+                        }
+                    }
+                } catch (Throwable e) {
+                    logger.error("old_file_clean_error", e);
+                }
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public void destroy() throws Exception {
+        cleaner.shutdownNow();
+    }
+
+    public MmapPipeKey put(DbBatch data) throws PipeException {
+        Identity identity = data.getRowBatch().getIdentity();
+        byte[] bytes = encode(data);
+
+        RandomAccessFile raf = null;
+        File file = null;
+        try {
+            File dir = new File(mmapDir, String.valueOf(identity.getPipelineId()));
+            NioUtils.create(dir, false, 3);
+            // 文件名中记录写入时间，rollback时根据时间判断是否需要删除
+            file = File.createTempFile(identity.getProcessId() + "-" + System.currentTimeMillis() + "-", SUFFIX, dir);
+            raf = new RandomAccessFile(file, "rw");
+            MappedByteBuffer buffer = raf.getChannel().map(MapMode.READ_WRITE, 0, bytes.length);
+            buffer.put(bytes);
+        } catch (IOException e) {
+            if (file != null) {
+                NioUtils.delete(file);
+            }
+            throw new PipeException("mmap_write_error", e);
+        } finally {
+            IOUtils.closeQuietly(raf);
+        }
+
+        MmapPipeKey key = new MmapPipeKey();
+        key.setIdentity(identity);
+        key.setPath(file.getPath());
+        key.setLength(bytes.length);
+        key.setDataType(PipeDataType.DB_BATCH);
+        key.setVersion(DbBatchCodec.VERSION_2);
+        return key;
+    }
+
+    public DbBatch get(MmapPipeKey key) throws PipeException {
+        File file = new File(key.getPath());
+        if (!file.exists()) {
+            // rollback或者超时后已经被删除，或者两个node的mmapDir不是同一个目录
+            logger.warn("mmap file is not found with key:{}", key);
+            return null;
+        }
+
+        RandomAccessFile raf = null;
+        DbBatch dbBatch = null;
+        try {
+            raf = new RandomAccessFile(file, "r");
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, key.getLength());
+            dbBatch = DbBatchCodec.read(buffer);
+        } catch (IOException e) {
+            throw new PipeException("mmap_read_error", e);
+        } finally {
+            IOUtils.closeQuietly(raf);
+        }
+
+        // 确认获取后删除，映射的内存在buffer回收后释放
+        if (!NioUtils.delete(file)) {
+            logger.warn("delete mmap file failed:{}, waiting for clean", file.getPath());
+        }
+        return dbBatch;
+    }
+
+    /**
+     * 出现rollback后，之前写入的数据都不会再被获取，直接删除
+     */
+    public void rollback(Long pipelineId) {
+        clean(new File(mmapDir, String.valueOf(pipelineId)), System.currentTimeMillis());
+    }
+
+    /**
+     * pipeline停止后释放对应的数据
+     */
+    public void release(Long pipelineId) {
+        clean(new File(mmapDir, String.valueOf(pipelineId)), Long.MAX_VALUE);
+    }
+
+    // 删除写入时间早于threshold的文件
+    private void clean(File dir, long threshold) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        int count = 0;
+        for (File file : files) {
+            String[] parts = StringUtils.split(file.getName(), '-');
+            long time = (parts.length >= 3 && StringUtils.isNumeric(parts[1])) ? Long.valueOf(parts[1]) : file
+                .lastModified();
+            if (time < threshold && NioUtils.delete(file)) {
+                count++;
+            }
+        }
+
+        if (count > 0) {
+            logger.info("clean {} mmap files in {}", count, dir.getPath());
+        }
+    }
+
+    private byte[] encode(DbBatch data) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try {
+            DbBatchCodec.write(data, output);
+        } catch (IOException e) {
+            throw new PipeException("write_byte_error", e);
+        }
+        return output.toByteArray();
+    }
+
+    // ============== setter / getter ===============
+
+    public void setMmapDir(String mmapDir) {
+        this.mmapDir = mmapDir;
+    }
+
+    public void setTimeout(Long timeout) {
+        this.timeout = timeout;
+    }
+
+    public void setPeriod(Long period) {
+        this.period = period;
+    }
+
+}
@@ -16,22 +16,18 @@
 
 package com.alibaba.otter.node.etl.common.pipe.impl.rpc;
 
-import java.util.Map;
-import java.util.concurrent.TimeUnit;
-
 import org.springframework.beans.factory.InitializingBean;
 
 import com.alibaba.otter.node.etl.common.pipe.Pipe;
+import com.alibaba.otter.node.etl.common.pipe.store.BatchStore;
 import com.alibaba.otter.shared.communication.core.model.Event;
 import com.alibaba.otter.shared.communication.core.model.EventType;
-import com.alibaba.otter.shared.etl.model.DbBatch;
-import com.google.common.collect.OtterMigrateMap;
 
 /**
  * 基于rpc通讯的数据传递
  * 
  * <pre>
- * PUT：基于内存cache的临时存储
+ * PUT：基于内存store的临时存储，按字节数控制容量
  * GET: 基于远程rpc请求的调用获取
  * </pre>
  * 
@@ -40,12 +36,26 @@ import com.google.common.collect.OtterMigrateMap;
  */
 public abstract class AbstractRpcPipe<T, KEY extends RpcPipeKey> implements Pipe<T, KEY>, InitializingBean {
 
-    protected Long                     timeout = 60 * 1000L; // 对应的超时时间,1分钟
+    protected Long                   timeout    = 60 * 1000L;         // 对应的超时时间,1分钟
+    protected Long                   capacity   = 256 * 1024 * 1024L; // 最大占用的字节数
+    protected Long                   putTimeout = 60 * 1000L;         // 存储满时put的最大等待时间
 
-    protected Map<RpcPipeKey, DbBatch> cache;
+    protected BatchStore<RpcPipeKey> store;
 
     public void afterPropertiesSet() throws Exception {
-        cache = OtterMigrateMap.makeSoftValueMapWithTimeout(timeout, TimeUnit.MILLISECONDS);
+        // 默认保留对象引用，v2的key在put时单独指定编码存储
+        store = new BatchStore<RpcPipeKey>(capacity, timeout, putTimeout, false);
+    }
+
+    /**
+     * pipeline停止或者rollback后释放对应的数据
+     */
+    public void release(Long pipelineId) {
+        store.release(pipelineId);
+    }
+
+    public String getStoreInfo() {
+        return store.info();
     }
 
     // rpc get操作事件
@@ -74,4 +84,12 @@ public abstract class AbstractRpcPipe<T, KEY extends RpcPipeKey> implements Pipe
     public void setTimeout(Long timeout) {
         this.timeout = timeout;
     }
+
+    public void setCapacity(Long capacity) {
+        this.capacity = capacity;
+    }
+
+    public void setPutTimeout(Long putTimeout) {
+        this.putTimeout = putTimeout;
+    }
 }
@@ -16,10 +16,14 @@
 
 package com.alibaba.otter.node.etl.common.pipe.impl.rpc;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
 import com.alibaba.otter.node.common.communication.NodeCommmunicationClient;
 import com.alibaba.otter.node.common.config.ConfigClientService;
 import com.alibaba.otter.node.etl.common.pipe.PipeDataType;
 import com.alibaba.otter.node.etl.common.pipe.exception.PipeException;
+import com.alibaba.otter.node.etl.model.protobuf.DbBatchCodec;
 import com.alibaba.otter.shared.communication.core.CommunicationRegistry;
 import com.alibaba.otter.shared.communication.core.model.EventType;
 import com.alibaba.otter.shared.etl.model.DbBatch;
@@ -37,12 +41,13 @@ public class RowDataRpcPipe extends AbstractRpcPipe<DbBatch, RpcPipeKey> {
 
     // 基于rowData rpc的eventType
     public static enum RowDataRpc implements EventType {
-        get
+        get, getV2
     }
 
     public RowDataRpcPipe(){
         // 注册一下事件处理
         CommunicationRegistry.regist(RowDataRpc.get, this);
+        CommunicationRegistry.regist(RowDataRpc.getV2, this);
     }
 
     public RpcPipeKey put(DbBatch data) throws PipeException {
@@ -50,11 +55,28 @@ public class RowDataRpcPipe extends AbstractRpcPipe<DbBatch, RpcPipeKey> {
         key.setIdentity(data.getRowBatch().getIdentity());
         key.setNid(getNid());
         key.setDataType(PipeDataType.DB_BATCH);
-        cache.put(key, data);
+        key.setVersion(getVersion(key.getIdentity().getPipelineId()));
+        // v2直接存储编码后的byte[]，get时原样返回；v1走java序列化，保留对象避免重复编解码
+        store.put(key, data, isVersion2(key));
         return key;
     }
 
     public DbBatch get(RpcPipeKey key) throws PipeException {
+        if (isVersion2(key)) {
+            RpcEvent event = new RpcEvent(RowDataRpc.getV2);
+            event.setKey(key);
+            byte[] data = (byte[]) nodeCommmunicationClient.call(key.getNid(), event);
+            if (data == null) {
+                return null;
+            }
+
+            try {
+                return DbBatchCodec.read(new ByteArrayInputStream(data));
+            } catch (IOException e) {
+                throw new PipeException("deserial_error", e);
+            }
+        }
+
         RpcEvent event = new RpcEvent(RowDataRpc.get);
         event.setKey(key);
         return (DbBatch) nodeCommmunicationClient.call(key.getNid(), event);
@@ -63,13 +85,31 @@ public class RowDataRpcPipe extends AbstractRpcPipe<DbBatch, RpcPipeKey> {
     @SuppressWarnings("unused")
     // 处理rpc调用事件
     private DbBatch onGet(RpcEvent event) {
-        return cache.remove(event.getKey()); // 不建议使用remove，rpc调用容易有retry请求，导致第二次拿到的数据为null
+        return store.get(event.getKey()); // 不建议使用remove，rpc调用容易有retry请求，导致第二次拿到的数据为null
+    }
+
+    @SuppressWarnings("unused")
+    // 处理v2编码的rpc调用事件，使用类型化编码代替java序列化
+    private byte[] onGetV2(RpcEvent event) {
+        return store.getBytes(event.getKey()); // store中已经是编码后的数据，直接返回
+    }
+
+    private boolean isVersion2(RpcPipeKey key) {
+        return key.getVersion() != null && key.getVersion() == DbBatchCodec.VERSION_2;
     }
 
     private Long getNid() {
         return configClientService.currentNode().getId();
     }
 
+    // 开启类型化编码后使用v2，否则保持v1的java序列化，兼容老版本的node
+    private Integer getVersion(Long pipelineId) {
+        if (configClientService.findPipeline(pipelineId).getParameters().getUseTypedEncode()) {
+            return DbBatchCodec.VERSION_2;
+        }
+        return null;
+    }
+
     // ==================== setter / getter =====================
 
     public void setConfigClientService(ConfigClientService configClientService) {
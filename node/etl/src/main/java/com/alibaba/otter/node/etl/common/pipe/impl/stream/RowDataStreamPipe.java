@@ -0,0 +1,815 @@
+/*
+ * Copyright (C) 2010-2101 Alibaba Group Holding Limited.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.otter.node.etl.common.pipe.impl.stream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import com.alibaba.otter.node.common.communication.NodeCommmunicationClient;
+import com.alibaba.otter.node.common.config.ConfigClientService;
+import com.alibaba.otter.node.etl.common.pipe.PipeDataType;
+import com.alibaba.otter.node.etl.common.pipe.exception.PipeException;
+import com.alibaba.otter.node.etl.model.protobuf.DbBatchCodec;
+import com.alibaba.otter.shared.common.model.config.node.Node;
+import com.alibaba.otter.shared.common.utils.thread.NamedThreadFactory;
+import com.alibaba.otter.shared.communication.core.CommunicationRegistry;
+import com.alibaba.otter.shared.communication.core.model.Event;
+import com.alibaba.otter.shared.communication.core.model.EventType;
+import com.alibaba.otter.shared.etl.model.DbBatch;
+import com.alibaba.otter.shared.etl.model.Identity;
+
+/**
+ * 基于node之间长连接的rowData推送实现
+ *
+ * <pre>
+ * PUT：编码后通过到目标node的长连接直接推送，在仲裁信号之前数据已经开始传输，数据保留在发送端直到收到ack
+ * GET: 等待推送的数据到达，消费后回写ack释放发送端的窗口；超时未到达时通过rpc从发送端拉取
+ *
+ * 1. 每个目标node一个连接，未ack的数据按数量/字节数控制窗口，窗口满或者连接不可用时put返回null，由调用方降级为rpc pipe
+ * 2. put只放入窗口，由每个连接独立的writer线程负责连接和写出，单次写超过writeTimeout后断开连接，避免半开连接阻塞extract线程
+ * 3. 连接断开后重连，按顺序重发所有未ack的数据，接收端根据key(processId + time)去重
+ * 4. 接收端未消费的数据按字节数控制上限，超过后丢弃推送(不ack)，由get时通过rpc从发送端拉取
+ * 5. 未ack/未消费的数据超过timeout后丢弃，rollback或者pipeline停止时按pipelineId立即释放
+ * </pre>
+ */
+public class RowDataStreamPipe implements InitializingBean, DisposableBean {
+
+    private static final Logger                  logger         = LoggerFactory.getLogger(RowDataStreamPipe.class);
+    private static final byte                    FRAME_BATCH    = 1;
+    private static final byte                    FRAME_ACK      = 2;
+    private static final int                     HEADER_SIZE    = 1 + 8 * 4;                                        // type + channelId/pipelineId/processId/time
+    private static final int                     MAX_FRAME_SIZE = 512 * 1024 * 1024;
+
+    private ConfigClientService                  configClientService;
+    private NodeCommmunicationClient             nodeCommmunicationClient;
+    private Long                                 timeout        = 60 * 1000L;                                       // 未ack/未消费数据的超时时间,1分钟
+    private Long                                 waitTimeout    = 5 * 1000L;                                        // get等待推送数据到达的时间，超过后走rpc拉取
+    private Long                                 period         = 5 * 1000L;                                        // 超时清理/断线重连的检查周期
+    private int                                  windowSize     = 16;                                               // 单个连接上未ack的最大批次数
+    private long                                 windowBytes    = 64 * 1024 * 1024L;                                // 单个连接上未ack的最大字节数
+    private int                                  connectTimeout = 3 * 1000;
+    private long                                 writeTimeout   = 30 * 1000L;                                       // 单次写出的最大时间
+    private long                                 maxArriveBytes = 256 * 1024 * 1024L;                               // 接收端未消费数据的最大字节数
+
+    private volatile boolean                     running        = false;
+    private ServerSocketChannel                  serverChannel;
+    private ExecutorService                      executor;
+    private ScheduledExecutorService             schedulor;
+    private Map<Long, StreamClient>              clients        = new ConcurrentHashMap<Long, StreamClient>();    // 发送端，目标nid -> 连接
+    private ConcurrentMap<StreamPipeKey, Arrive> arrives        = new ConcurrentHashMap<StreamPipeKey, Arrive>(); // 接收端，已到达未消费的数据
+    private ConcurrentMap<StreamPipeKey, Long>   consumed       = new ConcurrentHashMap<StreamPipeKey, Long>();   // 接收端，已消费的key，用于重发去重
+    private long                                 arriveBytes    = 0;                                                // 需要持有arriveMonitor
+    private Object                               arriveMonitor  = new Object();
+
+    // 推送失败时从发送端拉取数据的事件
+    public static enum RowDataStream implements EventType {
+        pull
+    }
+
+    public RowDataStreamPipe(){
+        // 注册一下事件处理
+        CommunicationRegistry.regist(RowDataStream.pull, this);
+    }
+
+    public void afterPropertiesSet() throws Exception {
+        running = true;
+        executor = Executors.newCachedThreadPool(new NamedThreadFactory("StreamPipe"));
+        schedulor = Executors.newScheduledThreadPool(1, new NamedThreadFactory("StreamPipe-Checker"));
+        try {
+            int port = getListenPort();
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.socket().setReuseAddress(true);
+            serverChannel.socket().bind(new InetSocketAddress(port));
+            executor.submit(new Runnable() {
+
+                public void run() {
+                    accept();
+                }
+            });
+            logger.info("##StreamPipe server is startup on port:" + port);
+        } catch (IOException e) {
+            // 端口启动失败不影响node启动，发送端连接不上会自动降级为rpc
+            logger.error("##StreamPipe server startup failed", e);
+            IOUtils.closeQuietly(serverChannel);
+            serverChannel = null;
+        }
+
+        schedulor.scheduleWithFixedDelay(new Runnable() {
+
+            public void run() {
+                try {
+                    check();
+                } catch (Throwable e) {
+                    logger.error("stream_pipe_check_error", e);
+                }
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public void destroy() throws Exception {
+        running = false;
+        IOUtils.closeQuietly(serverChannel);
+        for (StreamClient client : clients.values()) {
+            client.close();
+        }
+        schedulor.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    /**
+     * 推送数据到指定的node，窗口已满或者连接不可用时返回null，由调用方进行降级
+     */
+    public StreamPipeKey put(DbBatch data, Long nid) throws PipeException {
+        StreamPipeKey key = new StreamPipeKey();
+        key.setIdentity(data.getRowBatch().getIdentity());
+        key.setNid(getNid());
+        key.setDataType(PipeDataType.DB_BATCH);
+        key.setVersion(DbBatchCodec.VERSION_2);
+
+        StreamClient client = clients.get(nid);
+        if (client == null) {
+            synchronized (clients) {
+                client = clients.get(nid);
+                if (client == null) {
+                    client = new StreamClient(nid);
+                    clients.put(nid, client);
+                    executor.submit(client);
+                }
+            }
+        }
+
+        if (client.send(key, encode(data))) {
+            return key;
+        } else {
+            return null;
+        }
+    }
+
+    public DbBatch get(StreamPipeKey key) throws PipeException {
+        long deadline = System.currentTimeMillis() + waitTimeout;
+        Arrive arrive = null;
+        synchronized (arriveMonitor) {
+            while ((arrive = removeArrive(key)) == null) {
+                long remain = deadline - System.currentTimeMillis();
+                if (remain <= 0) {
+                    break;
+                }
+
+                try {
+                    arriveMonitor.wait(remain);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new PipeException("stream_get_interrupted", e);
+                }
+            }
+        }
+
+        byte[] payload = null;
+        if (arrive != null) {
+            consumed.put(key, System.currentTimeMillis());
+            arrive.ack(key);
+            payload = arrive.payload;
+        } else {
+            // 推送数据未到达，直接从发送端的窗口中拉取
+            logger.warn("stream data not arrive in {}ms, pull from nid:{} with key:{}",
+                new Object[] { waitTimeout, key.getNid(), key });
+            StreamEvent event = new StreamEvent(RowDataStream.pull);
+            event.setKey(key);
+            payload = (byte[]) nodeCommmunicationClient.call(key.getNid(), event);
+            if (payload == null) {
+                return null;
+            }
+            consumed.put(key, System.currentTimeMillis());
+        }
+
+        return decode(payload);
+    }
+
+    /**
+     * 释放pipeline对应的所有数据，比如rollback或者pipeline停止后不会再有下游来获取
+     */
+    public void release(Long pipelineId) {
+        int count = 0;
+        for (StreamClient client : clients.values()) {
+            count += client.release(pipelineId);
+        }
+
+        synchronized (arriveMonitor) {
+            Iterator<Map.Entry<StreamPipeKey, Arrive>> iter = arrives.entrySet().iterator();
+            while (iter.hasNext()) {
+                Map.Entry<StreamPipeKey, Arrive> entry = iter.next();
+                if (pipelineId.equals(entry.getKey().getIdentity().getPipelineId())) {
+                    arriveBytes -= entry.getValue().payload.length;
+                    iter.remove();
+                    count++;
+                }
+            }
+        }
+
+        Iterator<StreamPipeKey> consumedIter = consumed.keySet().iterator();
+        while (consumedIter.hasNext()) {
+            if (pipelineId.equals(consumedIter.next().getIdentity().getPipelineId())) {
+                consumedIter.remove();
+            }
+        }
+
+        if (count > 0) {
+            logger.info("release {} stream batches for pipelineId:{}", count, pipelineId);
+        }
+    }
+
+    @SuppressWarnings("unused")
+    // 处理rpc拉取事件，直接从窗口中移除
+    private byte[] onPull(StreamEvent event) {
+        for (StreamClient client : clients.values()) {
+            byte[] payload = client.remove(event.getKey());
+            if (payload != null) {
+                return payload;
+            }
+        }
+
+        return null;
+    }
+
+    // ==================== 接收端 =====================
+
+    private void accept() {
+        while (running) {
+            try {
+                final SocketChannel channel = serverChannel.accept();
+                channel.socket().setTcpNoDelay(true);
+                executor.submit(new Runnable() {
+
+                    public void run() {
+                        receive(channel);
+                    }
+                });
+            } catch (IOException e) {
+                if (running) {
+                    logger.error("stream_accept_error", e);
+                }
+            }
+        }
+    }
+
+    private void receive(SocketChannel channel) {
+        Connection connection = new Connection(channel);
+        try {
+            while (running) {
+                Frame frame = readFrame(channel);
+                if (frame.type != FRAME_BATCH) {
+                    throw new IOException("unknow frame type " + frame.type);
+                }
+
+                if (consumed.containsKey(frame.key)) {
+                    // 重连后的重复推送，数据已经被消费，直接回复ack
+                    connection.ack(frame.key);
+                    continue;
+                }
+
+                synchronized (arriveMonitor) {
+                    if (arriveBytes + frame.payload.length > maxArriveBytes) {
+                        // 不回复ack，数据保留在发送端，get时通过rpc拉取
+                        logger.warn("stream arrives is full, resident:{}, drop key:{}", arriveBytes, frame.key);
+                        continue;
+                    }
+
+                    Arrive old = arrives.put(frame.key, new Arrive(connection, frame.payload));
+                    if (old != null) {
+                        arriveBytes -= old.payload.length;
+                    }
+                    arriveBytes += frame.payload.length;
+                    arriveMonitor.notifyAll();
+                }
+            }
+        } catch (IOException e) {
+            if (running && !(e instanceof EOFException)) {
+                logger.warn("stream_receive_error", e);
+            }
+        } finally {
+            IOUtils.closeQuietly(channel);
+        }
+    }
+
+    // 需要持有arriveMonitor
+    private Arrive removeArrive(StreamPipeKey key) {
+        Arrive arrive = arrives.remove(key);
+        if (arrive != null) {
+            arriveBytes -= arrive.payload.length;
+        }
+        return arrive;
+    }
+
+    // ==================== 发送端 =====================
+
+    /**
+     * 到单个目标node的连接，维护未ack的数据窗口，所有的网络写操作都在writer线程中完成
+     */
+    private class StreamClient implements Runnable {
+
+        private final Long                                  nid;
+        private final LinkedHashMap<StreamPipeKey, Pending> pendings     = new LinkedHashMap<StreamPipeKey, Pending>();
+        private final BlockingQueue<StreamPipeKey>          writeQueue   = new LinkedBlockingQueue<StreamPipeKey>();
+        private long                                        pendingBytes = 0;
+        private volatile SocketChannel                      channel;
+        private volatile long                               lastFailTime = 0;
+        private volatile long                               writeStart   = 0;                                          // 当前写操作的开始时间，0代表没有在写
+        private volatile boolean                            closed       = false;
+        private int                                         generation   = 0;                                          // 连接的版本，只在writer线程中修改
+
+        public StreamClient(Long nid){
+            this.nid = nid;
+        }
+
+        public boolean send(StreamPipeKey key, byte[] payload) {
+            if (channel == null && System.currentTimeMillis() - lastFailTime < period) {
+                return false; // 目标node不可用，直接降级
+            }
+
+            synchronized (this) {
+                if (pendings.size() >= windowSize || pendingBytes + payload.length > windowBytes) {
+                    logger.info("stream window is full for nid:{}, pendings:{}, bytes:{}",
+                        new Object[] { nid, pendings.size(), pendingBytes });
+                    return false;
+                }
+
+                pendings.put(key, new Pending(payload));
+                pendingBytes += payload.length;
+            }
+
+            // 交给writer线程写出，写失败时数据保留在窗口中，重连后重发，或者由接收端拉取
+            writeQueue.offer(key);
+            return true;
+        }
+
+        public void run() {
+            while (running && !closed) {
+                try {
+                    StreamPipeKey key = writeQueue.poll(period, TimeUnit.MILLISECONDS);
+                    if (key == null && !hasPending()) {
+                        continue;
+                    }
+
+                    // 有未ack的数据时保持连接，重连后会按顺序重发所有未ack的数据
+                    if (!connect() || key == null) {
+                        continue;
+                    }
+
+                    Pending pending = getPending(key);
+                    if (pending != null && pending.generation != generation) {
+                        write(key, pending);
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                } catch (IOException e) {
+                    if (running && !closed) {
+                        logger.warn("stream_send_error for nid:" + nid, e);
+                    }
+                    closeChannel();
+                    lastFailTime = System.currentTimeMillis();
+                } catch (Throwable e) {
+                    logger.error("stream_writer_error for nid:" + nid, e);
+                }
+            }
+        }
+
+        public synchronized byte[] remove(StreamPipeKey key) {
+            Pending pending = pendings.remove(key);
+            if (pending == null) {
+                return null;
+            }
+
+            pendingBytes -= pending.payload.length;
+            return pending.payload;
+        }
+
+        public synchronized int release(Long pipelineId) {
+            int count = 0;
+            Iterator<Map.Entry<StreamPipeKey, Pending>> iter = pendings.entrySet().iterator();
+            while (iter.hasNext()) {
+                Map.Entry<StreamPipeKey, Pending> entry = iter.next();
+                if (pipelineId.equals(entry.getKey().getIdentity().getPipelineId())) {
+                    pendingBytes -= entry.getValue().payload.length;
+                    iter.remove();
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        // 清理超时的数据，并断开写超时的连接
+        public void check() {
+            synchronized (this) {
+                long threshold = System.currentTimeMillis() - timeout;
+                Iterator<Map.Entry<StreamPipeKey, Pending>> iter = pendings.entrySet().iterator();
+                while (iter.hasNext()) {
+                    Map.Entry<StreamPipeKey, Pending> entry = iter.next();
+                    if (entry.getValue().time < threshold) {
+                        logger.warn("stream data is timeout for nid:{} with key:{}", nid, entry.getKey());
+                        pendingBytes -= entry.getValue().payload.length;
+                        iter.remove();
+                    }
+                }
+            }
+
+            long start = writeStart;
+            if (start > 0 && System.currentTimeMillis() - start > writeTimeout) {
+                // 关闭连接后阻塞的write会抛出异常退出，writer线程负责重连
+                logger.warn("stream write is timeout for nid:{}, close the connection", nid);
+                closeChannel();
+            }
+        }
+
+        public void close() {
+            closed = true;
+            closeChannel();
+        }
+
+        private synchronized boolean hasPending() {
+            return !pendings.isEmpty();
+        }
+
+        private synchronized Pending getPending(StreamPipeKey key) {
+            return pendings.get(key);
+        }
+
+        // 只在writer线程中调用
+        private boolean connect() throws IOException {
+            SocketChannel current = channel;
+            if (current != null && current.isOpen()) {
+                return true;
+            }
+
+            if (System.currentTimeMillis() - lastFailTime < period) {
+                return false; // 避免目标node不可用时频繁进行连接
+            }
+
+            SocketChannel newChannel = null;
+            try {
+                newChannel = SocketChannel.open();
+                newChannel.socket().setTcpNoDelay(true);
+                newChannel.socket().connect(getAddress(nid), connectTimeout);
+            } catch (Exception e) {
+                logger.warn("stream_connect_error for nid:" + nid, e);
+                IOUtils.closeQuietly(newChannel);
+                lastFailTime = System.currentTimeMillis();
+                return false;
+            }
+
+            channel = newChannel;
+            generation++;
+            final SocketChannel ackChannel = newChannel;
+            executor.submit(new Runnable() {
+
+                public void run() {
+                    receiveAck(ackChannel);
+                }
+            });
+
+            // 按顺序重发所有未ack的数据
+            List<Map.Entry<StreamPipeKey, Pending>> resends = null;
+            synchronized (this) {
+                resends = new ArrayList<Map.Entry<StreamPipeKey, Pending>>(pendings.entrySet());
+            }
+            for (Map.Entry<StreamPipeKey, Pending> entry : resends) {
+                write(entry.getKey(), entry.getValue());
+            }
+
+            if (!resends.isEmpty()) {
+                logger.info("stream reconnect to nid:{} and resend {} batches", nid, resends.size());
+            }
+            return true;
+        }
+
+        // 只在writer线程中调用，写超时由check()断开连接
+        private void write(StreamPipeKey key, Pending pending) throws IOException {
+            SocketChannel current = channel;
+            if (current == null) {
+                throw new IOException("stream connection is closed");
+            }
+
+            writeStart = System.currentTimeMillis();
+            try {
+                writeFrame(current, FRAME_BATCH, key, pending.payload);
+                pending.generation = generation;
+            } finally {
+                writeStart = 0;
+            }
+        }
+
+        private void receiveAck(SocketChannel ackChannel) {
+            try {
+                while (running) {
+                    Frame frame = readFrame(ackChannel);
+                    if (frame.type != FRAME_ACK) {
+                        throw new IOException("unknow frame type " + frame.type);
+                    }
+                    remove(frame.key);
+                }
+            } catch (IOException e) {
+                if (running && ackChannel.isOpen()) {
+                    logger.warn("stream_ack_error for nid:" + nid, e);
+                }
+            } finally {
+                IOUtils.closeQuietly(ackChannel);
+            }
+        }
+
+        private void closeChannel() {
+            SocketChannel current = channel;
+            channel = null;
+            IOUtils.closeQuietly(current);
+        }
+    }
+
+    private void check() {
+        for (StreamClient client : clients.values()) {
+            client.check();
+        }
+
+        long threshold = System.currentTimeMillis() - timeout;
+        synchronized (arriveMonitor) {
+            Iterator<Map.Entry<StreamPipeKey, Arrive>> arriveIter = arrives.entrySet().iterator();
+            while (arriveIter.hasNext()) {
+                Arrive arrive = arriveIter.next().getValue();
+                if (arrive.time < threshold) {
+                    arriveBytes -= arrive.payload.length;
+                    arriveIter.remove();
+                }
+            }
+        }
+
+        Iterator<Map.Entry<StreamPipeKey, Long>> consumedIter = consumed.entrySet().iterator();
+        while (consumedIter.hasNext()) {
+            if (consumedIter.next().getValue() < threshold) {
+                consumedIter.remove();
+            }
+        }
+    }
+
+    // ==================== 协议处理 =====================
+
+    /**
+     * 帧格式：length(int) + type(byte) + channelId + pipelineId + processId + time + payload
+     */
+    private static void writeFrame(SocketChannel channel, byte type, StreamPipeKey key, byte[] payload)
+                                                                                                      throws IOException {
+        int payloadLength = payload == null ? 0 : payload.length;
+        ByteBuffer header = ByteBuffer.allocate(4 + HEADER_SIZE);
+        header.putInt(HEADER_SIZE + payloadLength);
+        header.put(type);
+        header.putLong(key.getIdentity().getChannelId());
+        header.putLong(key.getIdentity().getPipelineId());
+        header.putLong(key.getIdentity().getProcessId());
+        header.putLong(key.getTime());
+        header.flip();
+
+        ByteBuffer[] buffers = payloadLength == 0 ? new ByteBuffer[] { header } : new ByteBuffer[] { header,
+                ByteBuffer.wrap(payload) };
+        long remaining = header.remaining() + payloadLength;
+        while (remaining > 0) {
+            remaining -= channel.write(buffers);
+        }
+    }
+
+    private static Frame readFrame(SocketChannel channel) throws IOException {
+        ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+        readFully(channel, lengthBuffer);
+        int length = lengthBuffer.getInt();
+        if (length < HEADER_SIZE || length > MAX_FRAME_SIZE) {
+            throw new IOException("invalid frame length " + length);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        readFully(channel, buffer);
+        Frame frame = new Frame();
+        frame.type = buffer.get();
+        Identity identity = new Identity();
+        identity.setChannelId(buffer.getLong());
+        identity.setPipelineId(buffer.getLong());
+        identity.setProcessId(buffer.getLong());
+        frame.key = new StreamPipeKey();
+        frame.key.setIdentity(identity);
+        frame.key.setTime(buffer.getLong());
+        frame.payload = new byte[buffer.remaining()];
+        buffer.get(frame.payload);
+        return frame;
+    }
+
+    private static void readFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException();
+            }
+        }
+        buffer.flip();
+    }
+
+    private byte[] encode(DbBatch data) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try {
+            DbBatchCodec.write(data, output);
+        } catch (IOException e) {
+            throw new PipeException("write_byte_error", e);
+        }
+        return output.toByteArray();
+    }
+
+    private DbBatch decode(byte[] payload) {
+        try {
+            return DbBatchCodec.read(new ByteArrayInputStream(payload));
+        } catch (IOException e) {
+            throw new PipeException("deserial_error", e);
+        }
+    }
+
+    private Long getNid() {
+        return configClientService.currentNode().getId();
+    }
+
+    private int getListenPort() {
+        Node node = configClientService.currentNode();
+        Integer port = node.getParameters().getStreamPort();
+        if (port == null || port <= 0) {
+            port = node.getPort().intValue() + 3;
+        }
+        return port;
+    }
+
+    private InetSocketAddress getAddress(Long nid) {
+        Node node = configClientService.findNode(nid);
+        String ip = node.getIp();
+        if (node.getParameters().getUseExternalIp() && StringUtils.isNotEmpty(node.getParameters().getExternalIp())) {
+            ip = node.getParameters().getExternalIp();
+        }
+
+        Integer port = node.getParameters().getStreamPort();
+        if (port == null || port <= 0) {
+            port = node.getPort().intValue() + 3;
+        }
+        return new InetSocketAddress(ip, port);
+    }
+
+    // ==================== 内部对象 =====================
+
+    private static class Frame {
+
+        byte          type;
+        StreamPipeKey key;
+        byte[]        payload;
+    }
+
+    // 发送端未ack的数据
+    private static class Pending {
+
+        final byte[] payload;
+        final long   time = System.currentTimeMillis();
+        volatile int generation;                      // 已写出的连接版本
+
+        Pending(byte[] payload){
+            this.payload = payload;
+        }
+    }
+
+    // 接收端已到达的数据，记录来源连接用于回写ack
+    private static class Arrive {
+
+        final Connection connection;
+        final byte[]     payload;
+        final long       time = System.currentTimeMillis();
+
+        Arrive(Connection connection, byte[] payload){
+            this.connection = connection;
+            this.payload = payload;
+        }
+
+        void ack(StreamPipeKey key) {
+            connection.ack(key);
+        }
+    }
+
+    // 接收端的连接，ack可能由多个load线程并发回写
+    private static class Connection {
+
+        final SocketChannel channel;
+
+        Connection(SocketChannel channel){
+            this.channel = channel;
+        }
+
+        synchronized void ack(StreamPipeKey key) {
+            if (!channel.isOpen()) {
+                return; // 发送端重连后会重发，再根据consumed进行ack
+            }
+
+            try {
+                writeFrame(channel, FRAME_ACK, key, null);
+            } catch (IOException e) {
+                logger.warn("stream_ack_write_error", e);
+                IOUtils.closeQuietly(channel);
+            }
+        }
+    }
+
+    // rpc拉取事件
+    public static class StreamEvent extends Event {
+
+        private static final long serialVersionUID = -2283694460373870513L;
+
+        public StreamEvent(EventType eventType){
+            super(eventType);
+        }
+
+        private StreamPipeKey key;
+
+        public StreamPipeKey getKey() {
+            return key;
+        }
+
+        public void setKey(StreamPipeKey key) {
+            this.key = key;
+        }
+    }
+
+    // ==================== setter / getter =====================
+
+    public void setConfigClientService(ConfigClientService configClientService) {
+        this.configClientService = configClientService;
+    }
+
+    public void setNodeCommmunicationClient(NodeCommmunicationClient nodeCommmunicationClient) {
+        this.nodeCommmunicationClient = nodeCommmunicationClient;
+    }
+
+    public void setTimeout(Long timeout) {
+        this.timeout = timeout;
+    }
+
+    public void setWaitTimeout(Long waitTimeout) {
+        this.waitTimeout = waitTimeout;
+    }
+
+    public void setPeriod(Long period) {
+        this.period = period;
+    }
+
+    public void setWindowSize(int windowSize) {
+        this.windowSize = windowSize;
+    }
+
+    public void setWindowBytes(long windowBytes) {
+        this.windowBytes = windowBytes;
+    }
+
+    public void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    public void setWriteTimeout(long writeTimeout) {
+        this.writeTimeout = writeTimeout;
+    }
+
+    public void setMaxArriveBytes(long maxArriveBytes) {
+        this.maxArriveBytes = maxArriveBytes;
+    }
+}
@@ -0,0 +1,301 @@
+/*
+ * Copyright (C) 2010-2101 Alibaba Group Holding Limited.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.otter.node.etl.common.pipe.store;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alibaba.otter.node.etl.common.pipe.PipeKey;
+import com.alibaba.otter.node.etl.common.pipe.exception.PipeException;
+import com.alibaba.otter.node.etl.model.protobuf.DbBatchCodec;
+import com.alibaba.otter.shared.etl.model.DbBatch;
+import com.alibaba.otter.shared.etl.model.EventData;
+
+/**
+ * 按字节数控制容量的DbBatch存储，替换原先基于soft value的cache
+ *
+ * <pre>
+ * 1. 数据不会被gc回收，只在下游get(确认获取)、pipeline释放或者超时后删除，避免内存紧张时静默丢数据导致processMissData
+ * 2. 存储满了以后put阻塞等待下游消费，超过putTimeout后抛出PipeException
+ * 3. serialized模式下使用DbBatchCodec编码为byte[]存储，对象更紧凑且字节数准确，否则保留引用按EventData.getSize()估算，可以在put时单独指定
+ * </pre>
+ */
+public class BatchStore<K extends PipeKey> {
+
+    private static final Logger logger        = LoggerFactory.getLogger(BatchStore.class);
+
+    private final long          capacity;                                       // 最大字节数
+    private final long          timeout;                                        // 数据超时时间
+    private final long          putTimeout;                                     // 存储满时put的最大等待时间
+    private final boolean       serialized;                                     // 默认的存储模式
+
+    private final ReentrantLock lock          = new ReentrantLock();
+    private final Condition     notFull       = lock.newCondition();
+    private final Map<K, Entry> entries       = new LinkedHashMap<K, Entry>(); // 按写入顺序，方便超时清理
+    private long                residentBytes = 0;
+
+    private final AtomicLong    hits          = new AtomicLong(0);
+    private final AtomicLong    misses        = new AtomicLong(0);
+    private final AtomicLong    evictions     = new AtomicLong(0);
+    private final AtomicLong    rejects       = new AtomicLong(0);
+
+    public BatchStore(long capacity, long timeout, long putTimeout, boolean serialized){
+        this.capacity = capacity;
+        this.timeout = timeout;
+        this.putTimeout = putTimeout;
+        this.serialized = serialized;
+    }
+
+    public void put(K key, DbBatch dbBatch) throws PipeException {
+        put(key, dbBatch, serialized);
+    }
+
+    /**
+     * 指定是否编码存储，比如下游只会获取java对象时不需要编码
+     */
+    public void put(K key, DbBatch dbBatch, boolean serialized) throws PipeException {
+        Entry entry = serialized ? new Entry(encode(dbBatch), dbBatch) : new Entry(dbBatch);
+        lock.lock();
+        try {
+            expire();
+            long remain = TimeUnit.MILLISECONDS.toNanos(putTimeout);
+            // 单个batch超过容量时，存储为空也允许放入，避免一直阻塞
+            while (!entries.isEmpty() && residentBytes + entry.bytes > capacity) {
+                if (remain <= 0) {
+                    rejects.incrementAndGet();
+                    throw new PipeException("batch_store_full", String.format("resident:%s, capacity:%s, need:%s",
+                        residentBytes,
+                        capacity,
+                        entry.bytes));
+                }
+
+                try {
+                    remain = notFull.awaitNanos(remain);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new PipeException("batch_store_interrupted", e);
+                }
+                expire();
+            }
+
+            Entry old = entries.put(key, entry);
+            if (old != null) {
+                residentBytes -= old.bytes;
+            }
+            residentBytes += entry.bytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 下游获取数据，获取后即释放占用的空间
+     */
+    public DbBatch get(K key) throws PipeException {
+        Entry entry = remove(key);
+        if (entry == null) {
+            return null;
+        }
+
+        return entry.batch != null ? entry.batch : decode(entry.data);
+    }
+
+    /**
+     * 下游获取编码后的数据，serialized模式下直接返回存储的byte[]，避免重复编码
+     */
+    public byte[] getBytes(K key) throws PipeException {
+        Entry entry = remove(key);
+        if (entry == null) {
+            return null;
+        }
+
+        return entry.data != null ? entry.data : encode(entry.batch);
+    }
+
+    /**
+     * 释放pipeline对应的所有数据，比如pipeline停止后不会再有下游来获取
+     */
+    public void release(Long pipelineId) {
+        lock.lock();
+        try {
+            int count = 0;
+            Iterator<Entry> iter = entries.values().iterator();
+            while (iter.hasNext()) {
+                Entry entry = iter.next();
+                if (pipelineId.equals(entry.pipelineId)) {
+                    residentBytes -= entry.bytes;
+                    iter.remove();
+                    count++;
+                }
+            }
+
+            if (count > 0) {
+                evictions.addAndGet(count);
+                notFull.signalAll();
+                logger.info("release {} batches for pipelineId:{}", count, pipelineId);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public String info() {
+        lock.lock();
+        try {
+            return String.format("size:%s, resident:%s/%s bytes, hits:%s, misses:%s, evictions:%s, rejects:%s",
+                entries.size(),
+                residentBytes,
+                capacity,
+                hits.get(),
+                misses.get(),
+                evictions.get(),
+                rejects.get());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getResidentBytes() {
+        lock.lock();
+        try {
+            return residentBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    public long getRejectCount() {
+        return rejects.get();
+    }
+
+    private Entry remove(K key) {
+        Entry entry = null;
+        lock.lock();
+        try {
+            expire();
+            entry = entries.remove(key);
+            if (entry != null) {
+                residentBytes -= entry.bytes;
+                notFull.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (entry == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return entry;
+    }
+
+    // 需要持有lock，按写入顺序从头开始清理超时的数据，比如rollback后不会有下游来获取
+    private void expire() {
+        long threshold = System.currentTimeMillis() - timeout;
+        boolean expired = false;
+        Iterator<Map.Entry<K, Entry>> iter = entries.entrySet().iterator();
+        while (iter.hasNext()) {
+            Map.Entry<K, Entry> entry = iter.next();
+            if (entry.getValue().time >= threshold) {
+                break;
+            }
+
+            logger.warn("batch is timeout with key:{}", entry.getKey());
+            residentBytes -= entry.getValue().bytes;
+            iter.remove();
+            evictions.incrementAndGet();
+            expired = true;
+        }
+
+        if (expired) {
+            notFull.signalAll();
+        }
+    }
+
+    private byte[] encode(DbBatch dbBatch) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try {
+            DbBatchCodec.write(dbBatch, output);
+        } catch (IOException e) {
+            throw new PipeException("write_byte_error", e);
+        }
+        return output.toByteArray();
+    }
+
+    private DbBatch decode(byte[] data) {
+        try {
+            return DbBatchCodec.read(new ByteArrayInputStream(data));
+        } catch (IOException e) {
+            throw new PipeException("deserial_error", e);
+        }
+    }
+
+    private static long estimate(DbBatch dbBatch) {
+        long size = 0;
+        for (EventData eventData : dbBatch.getRowBatch().getDatas()) {
+            size += eventData.getSize();
+        }
+        return size;
+    }
+
+    private static class Entry {
+
+        final Long    pipelineId;
+        final DbBatch batch;
+        final byte[]  data;
+        final long    bytes;
+        final long    time = System.currentTimeMillis();
+
+        Entry(DbBatch batch){
+            this.pipelineId = batch.getRowBatch().getIdentity().getPipelineId();
+            this.batch = batch;
+            this.data = null;
+            this.bytes = estimate(batch);
+        }
+
+        Entry(byte[] data, DbBatch batch){
+            this.pipelineId = batch.getRowBatch().getIdentity().getPipelineId();
+            this.batch = null;
+            this.data = data;
+            this.bytes = data.length;
+        }
+    }
+}
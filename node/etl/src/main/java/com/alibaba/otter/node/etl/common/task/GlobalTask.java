@@ -92,6 +92,7 @@ public abstract class GlobalTask extends Thread {
     }
 
     protected void sendRollbackTermin(long pipelineId, String message) {
+        rollbackPipe(pipelineId);
         TerminEventData errorEventData = new TerminEventData();
         errorEventData.setPipelineId(pipelineId);
         errorEventData.setType(TerminType.ROLLBACK);
@@ -109,6 +110,7 @@ public abstract class GlobalTask extends Thread {
      * 自动处理数据为null的情况，重新发一遍数据
      */
     protected void processMissData(long pipelineId, String message) {
+        rollbackPipe(pipelineId);
         TerminEventData errorEventData = new TerminEventData();
         errorEventData.setPipelineId(pipelineId);
         errorEventData.setType(TerminType.RESTART);
@@ -117,6 +119,17 @@ public abstract class GlobalTask extends Thread {
         arbitrateEventService.terminEvent().single(errorEventData);
     }
 
+    // rollback之前写入pipe的数据不会再被获取，清理一下。发起termin的节点和生产数据的节点(select/extract)都需要调用
+    protected void rollbackPipe(long pipelineId) {
+        try {
+            if (rowDataPipeDelegate != null) {
+                rowDataPipeDelegate.rollback(pipelineId);
+            }
+        } catch (Throwable e) {
+            logger.warn("rollback pipe failed", e);
+        }
+    }
+
     protected String createTaskName(long pipelineId, String taskName) {
         return new StringBuilder().append("pipelineId = ").append(pipelineId).append(",taskName = ").append(taskName).toString();
     }
@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2010-2101 Alibaba Group Holding Limited.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.alibaba.otter.node.etl.extract.extractor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.alibaba.otter.shared.etl.model.EventColumn;
+import com.alibaba.otter.shared.etl.model.EventData;
+import com.google.common.base.Function;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.OtterMigrateMap;
+
+/**
+ * 数据库反查相关的缓存，按pipeline隔离
+ * 
+ * <pre>
+ * 一. 反查结果，key为(schema, table, pk)
+ * 反查到的是查询时刻数据库中的最新记录，所以只要变更发生在查询之前，缓存的结果对它同样适用：
+ * 1. 同一批次(processId)内的变更在select时都已经提交，一定发生在反查之前，可以直接命中
+ * 2. 其他批次的变更一律失效后重新反查。不能基于executeTime判断先后：binlog中的时间为语句开始执行的时间且只精确到秒，
+ *    大事务可能在反查之后才提交，但executeTime却早于之前的批次，命中缓存会拿到提交前的记录，丢失这次变更
+ * 3. 缓存只保留很短的时间(timeout)，并限制每个pipeline的记录数
+ * 
+ * 二. 单表的反查计划{@linkplain DatabaseExtractPlan}，key为(tableId, schema, table)，由使用方判断是否过期
+ * </pre>
+ */
+public class DatabaseExtractCache {
+
+    private long                           timeout = 3 * 1000;                                    // 缓存有效时间，单位ms
+    private int                            maxSize = 10000;                                       // 每个pipeline缓存的最大记录数
+    private Map<Long, PipelineCache>       caches;
+
+    public DatabaseExtractCache(){
+        caches = OtterMigrateMap.makeComputingMap(new Function<Long, PipelineCache>() {
+
+            public PipelineCache apply(Long pipelineId) {
+                return new PipelineCache();
+            }
+        });
+    }
+
+    /**
+     * 获取缓存的反查结果，返回null代表没有可用的缓存
+     */
+    public Entry get(Long pipelineId, Window window, EventData eventData, String[] columnNames) {
+        PipelineCache cache = caches.get(pipelineId);
+        List<String> key = buildKey(eventData);
+        Entry entry = cache.entries.getIfPresent(key);
+        boolean hit = entry != null && Arrays.equals(entry.columnNames, columnNames)
+                      && entry.processId.equals(window.processId);
+        if (entry != null && !hit) {
+            cache.entries.invalidate(key); // 其他批次的反查结果或者反查字段不同
+        }
+
+        cache.getStat(eventData).record(hit);
+        return hit ? entry : null;
+    }
+
+    /**
+     * 记录反查结果，values为null代表数据库中不存在对应的记录
+     */
+    public void put(Long pipelineId, Window window, EventData eventData, String[] columnNames, List<String> values) {
+        caches.get(pipelineId).entries.put(buildKey(eventData), new Entry(window, columnNames, values));
+    }
+
+    DatabaseExtractPlan getPlan(Long pipelineId, EventData eventData) {
+        return caches.get(pipelineId).plans.get(buildPlanKey(eventData));
+    }
+
+    void putPlan(Long pipelineId, EventData eventData, DatabaseExtractPlan plan) {
+        PipelineCache cache = caches.get(pipelineId);
+        List<Object> key = buildPlanKey(eventData);
+        if (cache.plans.size() < maxSize || cache.plans.containsKey(key)) {
+            cache.plans.put(key, plan);
+        }
+    }
+
+    public void release(Long pipelineId) {
+        caches.remove(pipelineId);
+    }
+
+    /**
+     * 按表输出缓存的命中率
+     */
+    public String info(Long pipelineId) {
+        if (!caches.containsKey(pipelineId)) {
+            return "";
+        }
+
+        PipelineCache cache = caches.get(pipelineId);
+        StringBuilder builder = new StringBuilder();
+        builder.append("size:").append(cache.entries.size()).append("\n");
+        for (Map.Entry<String, TableStat> entry : cache.stats.entrySet()) {
+            long hits = entry.getValue().hits.get();
+            long misses = entry.getValue().misses.get();
+            long total = hits + misses;
+            builder.append(String.format("%s hit:%s miss:%s ratio:%.2f%%\n",
+                entry.getKey(),
+                hits,
+                misses,
+                total == 0 ? 0d : hits * 100d / total));
+        }
+        return builder.toString();
+    }
+
+    private List<String> buildKey(EventData eventData) {
+        List<String> key = new ArrayList<String>(eventData.getKeys().size() + 2);
+        key.add(eventData.getSchemaName());
+        key.add(eventData.getTableName());
+        for (EventColumn column : eventData.getKeys()) {
+            key.add(column.getColumnValue());
+        }
+        return key;
+    }
+
+    private List<Object> buildPlanKey(EventData eventData) {
+        return Arrays.<Object> asList(eventData.getTableId(), eventData.getSchemaName(), eventData.getTableName());
+    }
+
+    private class PipelineCache {
+
+        private Cache<List<String>, Entry> entries = CacheBuilder.newBuilder()
+                                                       .maximumSize(maxSize)
+                                                       .expireAfterWrite(timeout, TimeUnit.MILLISECONDS)
+                                                       .build();
+        private Map<String, TableStat>     stats   = OtterMigrateMap.makeComputingMap(new Function<String, TableStat>() {
+
+                                                       public TableStat apply(String name) {
+                                                           return new TableStat();
+                                                       }
+                                                   });
+
+        private Map<List<Object>, DatabaseExtractPlan> plans = new ConcurrentHashMap<List<Object>, DatabaseExtractPlan>();
+
+        TableStat getStat(EventData eventData) {
+            return stats.get(eventData.getSchemaName() + "." + eventData.getTableName());
+        }
+    }
+
+    private static class TableStat {
+
+        private AtomicLong hits   = new AtomicLong(0);
+        private AtomicLong misses = new AtomicLong(0);
+
+        void record(boolean hit) {
+            if (hit) {
+                hits.incrementAndGet();
+            } else {
+                misses.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * 当前反查批次的信息
+     */
+    public static class Window {
+
+        private final Long processId;
+
+        public Window(Long processId){
+            this.processId = processId;
+        }
+    }
+
+    public static class Entry {
+
+        private final Long         processId;
+        private final String[]     columnNames;
+        private final List<String> values;
+
+        Entry(Window window, String[] columnNames, List<String> values){
+            this.processId = window.processId;
+            this.columnNames = columnNames;
+            this.values = values;
+        }
+
+        public List<String> getValues() {
+            return values;
+        }
+    }
+
+    // ======================== setter / getter ======================
+
+    public void setTimeout(long timeout) {
+        this.timeout = timeout;
+    }
+
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+}
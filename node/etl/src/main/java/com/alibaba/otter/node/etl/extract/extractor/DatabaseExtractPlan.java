@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2010-2101 Alibaba Group Holding Limited.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.alibaba.otter.node.etl.extract.extractor;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.ddlutils.model.Column;
+import org.apache.ddlutils.model.Table;
+
+import com.alibaba.otter.node.etl.common.db.dialect.DbDialect;
+import com.alibaba.otter.node.etl.extract.extractor.DatabaseExtractor.TableData;
+import com.alibaba.otter.shared.common.model.config.ColumnProjection;
+import com.alibaba.otter.shared.common.model.config.ConfigHelper;
+import com.alibaba.otter.shared.common.model.config.data.DataMedia;
+import com.alibaba.otter.shared.common.model.config.pipeline.Pipeline;
+import com.alibaba.otter.shared.etl.model.EventColumn;
+
+/**
+ * 单表的反查计划，按(pipeline, 源表)缓存，避免每条记录重复计算字段下标、主键类型和构造select sql
+ * 
+ * <pre>
+ * 1. 基于TableMetaCache返回的Table对象判断是否过期，DDL或者reload之后会返回新的Table对象，计划随之重建
+ * 2. pipeline配置或者DbDialect变化后也会重建
+ * 3. 主键字段一般是固定的，按主键字段名再缓存一层{@linkplain KeyPlan}，包含主键信息、反查所有字段时的字段信息和select sql
+ * </pre>
+ */
+class DatabaseExtractPlan {
+
+    private static final int                     MAX_CACHE_SIZE = 1000;
+
+    private final Pipeline                       pipeline;
+    private final DataMedia                      dataMedia;
+    private final DbDialect                      dbDialect;
+    private final Table                          table;
+    private final int                            rowModeColumnCount;                                     // row模式下需要的字段数
+    private final Map<String, Integer>           columnIndexes  = new HashMap<String, Integer>();        // 字段名(小写) -> 下标
+    private final ConcurrentMap<String, KeyPlan> keyPlans       = new ConcurrentHashMap<String, KeyPlan>();
+
+    public DatabaseExtractPlan(Pipeline pipeline, DataMedia dataMedia, DbDialect dbDialect, Table table){
+        this.pipeline = pipeline;
+        this.dataMedia = dataMedia;
+        this.dbDialect = dbDialect;
+        this.table = table;
+
+        Column[] columns = table.getColumns();
+        for (int i = 0; i < columns.length; i++) {
+            String name = StringUtils.lowerCase(columns[i].getName());
+            if (!columnIndexes.containsKey(name)) {
+                columnIndexes.put(name, i);
+            }
+        }
+
+        int columnCount = table.getColumnCount();
+        ColumnProjection projection = ConfigHelper.findColumnProjection(pipeline, dataMedia.getId());
+        if (projection != null) {
+            // select解析时可能已按照视图定义裁剪了字段，只需要视图内的字段齐全即可
+            columnCount = 0;
+            for (Column column : columns) {
+                if (column.isPrimaryKey() || projection.contains(column.getName())) {
+                    columnCount++;
+                }
+            }
+        }
+        this.rowModeColumnCount = columnCount;
+    }
+
+    public boolean isValid(Pipeline pipeline, DbDialect dbDialect, Table table) {
+        return this.pipeline == pipeline && this.dbDialect == dbDialect && this.table == table;
+    }
+
+    /**
+     * 返回字段在表中的下标，不存在返回null
+     */
+    public Integer getColumnIndex(String columnName) {
+        return columnIndexes.get(StringUtils.lowerCase(columnName));
+    }
+
+    public KeyPlan getKeyPlan(List<EventColumn> keys) {
+        return keyPlans.get(buildKey(keys));
+    }
+
+    public void putKeyPlan(List<EventColumn> keys, KeyPlan keyPlan) {
+        if (keyPlans.size() < MAX_CACHE_SIZE) {
+            keyPlans.putIfAbsent(buildKey(keys), keyPlan);
+        }
+    }
+
+    private String buildKey(List<EventColumn> columns) {
+        StringBuilder builder = new StringBuilder();
+        for (EventColumn column : columns) {
+            builder.append(StringUtils.lowerCase(column.getColumnName())).append(',');
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 同一组主键字段对应的反查计划
+     */
+    static class KeyPlan {
+
+        private final Column[]                      keyColumns;
+        private final TableData                     keyTableData;     // 主键字段信息，不包含主键值
+        private final TableData                     allTableData;     // 反查所有字段时的字段信息
+        private final String                        allSelectSql;
+        private final ConcurrentMap<String, String> selectSqls = new ConcurrentHashMap<String, String>();
+
+        public KeyPlan(Column[] keyColumns, TableData keyTableData, TableData allTableData, String allSelectSql){
+            this.keyColumns = keyColumns;
+            this.keyTableData = keyTableData;
+            this.allTableData = allTableData;
+            this.allSelectSql = allSelectSql;
+        }
+
+        /**
+         * 获取按需反查部分字段时的select sql
+         */
+        public String getSelectSql(DbDialect dbDialect, String schemaName, String tableName, String[] columnNames) {
+            String key = StringUtils.join(columnNames, ',');
+            String sql = selectSqls.get(key);
+            if (sql == null) {
+                sql = dbDialect.getSqlTemplate().getSelectSql(schemaName,
+                    tableName,
+                    keyTableData.columnNames,
+                    columnNames);
+                if (selectSqls.size() < MAX_CACHE_SIZE) {
+                    selectSqls.putIfAbsent(key, sql);
+                }
+            }
+            return sql;
+        }
+
+        public Column[] getKeyColumns() {
+            return keyColumns;
+        }
+
+        public TableData getKeyTableData() {
+            return keyTableData;
+        }
+
+        public TableData getAllTableData() {
+            return allTableData;
+        }
+
+        public String getAllSelectSql() {
+            return allSelectSql;
+        }
+    }
+
+    // ======================== setter / getter ======================
+
+    public Pipeline getPipeline() {
+        return pipeline;
+    }
+
+    public DataMedia getDataMedia() {
+        return dataMedia;
+    }
+
+    public DbDialect getDbDialect() {
+        return dbDialect;
+    }
+
+    public Table getTable() {
+        return table;
+    }
+
+    public int getRowModeColumnCount() {
+        return rowModeColumnCount;
+    }
+
+}
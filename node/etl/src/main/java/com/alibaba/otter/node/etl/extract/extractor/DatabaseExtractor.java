@@ -23,6 +23,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -52,6 +53,8 @@ import com.alibaba.otter.node.etl.common.db.dialect.DbDialect;
 import com.alibaba.otter.node.etl.common.db.dialect.oracle.OracleDialect;
 import com.alibaba.otter.node.etl.common.db.utils.SqlUtils;
 import com.alibaba.otter.node.etl.extract.exceptions.ExtractException;
+import com.alibaba.otter.node.etl.extract.extractor.DatabaseExtractCache.Window;
+import com.alibaba.otter.node.etl.extract.extractor.DatabaseExtractPlan.KeyPlan;
 import com.alibaba.otter.shared.common.model.config.ConfigHelper;
 import com.alibaba.otter.shared.common.model.config.data.ColumnPair;
 import com.alibaba.otter.shared.common.model.config.data.DataMedia;
@@ -73,6 +76,9 @@ import com.alibaba.otter.shared.etl.model.EventData;
  *  2. 当其中的一次并行查询出现异常，会立即中断之前的并行查询请求，同时忽略后续的查询直接退出(在出错时快速响应)
  *  3. 编写{@linkplain DatabaseExtractWorker}代码时需注意，在适合的地方响应Thread.currentThread().isInterrupted(),在dbcp连接池和driver代码中是有支持
  *  4. 反查数据库，只会反查update=true的字段，按需反查，因为通过反查之后字段都会变为update=true，不必要的字段会进行数据同步 (modify by ljh at 2012-11-04)
+ *  5. 设置了extractBatchSize后，按表分组使用{@linkplain DatabaseBatchExtractWorker}进行where pk in (...)的批量反查，减少补救等场景下的单条查询次数
+ *  6. 开启useExtractCache后，反查结果记录到{@linkplain DatabaseExtractCache}，热点记录在一个批次窗口内只反查一次
+ *  7. 表结构相关的计算(字段下标、主键类型、select sql等)按表缓存为{@linkplain DatabaseExtractPlan}，表结构变化后重建
  * </pre>
  * 
  * @author jianghang 2012-4-18 下午04:53:15
@@ -80,13 +86,15 @@ import com.alibaba.otter.shared.etl.model.EventData;
  */
 public class DatabaseExtractor extends AbstractExtractor<DbBatch> implements InitializingBean, DisposableBean {
 
-    private static final String WORKER_NAME        = "DataBaseExtractor";
-    private static final String WORKER_NAME_FORMAT = "pipelineId = %s , pipelineName = %s , " + WORKER_NAME;
-    private static final Logger logger             = LoggerFactory.getLogger(DatabaseExtractor.class);
-    private static final int    DEFAULT_POOL_SIZE  = 5;
-    private static final int    retryTimes         = 3;
-    private int                 poolSize           = DEFAULT_POOL_SIZE;
-    private ExecutorService     executor;
+    private static final String  WORKER_NAME        = "DataBaseExtractor";
+    private static final String  WORKER_NAME_FORMAT = "pipelineId = %s , pipelineName = %s , " + WORKER_NAME;
+    private static final Logger  logger             = LoggerFactory.getLogger(DatabaseExtractor.class);
+    private static final int     DEFAULT_POOL_SIZE  = 5;
+    private static final int     retryTimes         = 3;
+    private static final int     MAX_BATCH_SIZE     = 1000;                                                 // oracle的in列表最多1000个
+    private int                  poolSize           = DEFAULT_POOL_SIZE;
+    private ExecutorService      executor;
+    private DatabaseExtractCache databaseExtractCache;
 
     @Override
     public void extract(DbBatch dbBatch) throws ExtractException {
@@ -99,6 +107,13 @@ public class DatabaseExtractor extends AbstractExtractor<DbBatch> implements Ini
         // 读取一次配置
         adjustPoolSize(pipeline.getParameters().getExtractPoolSize()); // 调整下线程池，Extractor会被池化处理
         ExecutorCompletionService completionService = new ExecutorCompletionService(executor);
+        int batchSize = Math.min(pipeline.getParameters().getExtractBatchSize(), MAX_BATCH_SIZE);
+        boolean useBatch = batchSize > 1;
+        Map<String, List<DatabaseExtractWorker>> batchWorkers = new LinkedHashMap<String, List<DatabaseExtractWorker>>();
+        Window window = null;
+        if (pipeline.getParameters().getUseExtractCache() && databaseExtractCache != null) {
+            window = new Window(dbBatch.getRowBatch().getIdentity().getProcessId());
+        }
 
         // 进行并发提交
         ExtractException exception = null;
@@ -132,26 +147,34 @@ public class DatabaseExtractor extends AbstractExtractor<DbBatch> implements Ini
             }
 
             if (flag && (eventData.getEventType().isInsert() || eventData.getEventType().isUpdate())) {// 判断是否需要反查
-                Future future = completionService.submit(new DatabaseExtractWorker(pipeline, item), null); // 提交进行并行查询
-                if (future.isDone()) {
-                    // 立即判断一次，因为使用了CallerRun可能当场跑出结果，针对有异常时快速响应，而不是等跑完所有的才抛异常
-                    try {
-                        future.get();
-                    } catch (InterruptedException e) {
-                        cancel(futures);// 取消完之后立马退出
-                        throw new ExtractException(e);
-                    } catch (ExecutionException e) {
-                        cancel(futures); // 取消完之后立马退出
-                        throw new ExtractException(e);
+                DatabaseExtractWorker worker = new DatabaseExtractWorker(pipeline, item, window);
+                if (useBatch) {
+                    // 按表进行分组，攒够batchSize后提交一次批量反查
+                    String key = eventData.getTableId() + "." + eventData.getSchemaName() + "." + eventData.getTableName();
+                    List<DatabaseExtractWorker> workers = batchWorkers.get(key);
+                    if (workers == null) {
+                        workers = new ArrayList<DatabaseExtractWorker>(batchSize);
+                        batchWorkers.put(key, workers);
                     }
-                }
 
-                futures.add(future);// 记录一下添加的任务
+                    workers.add(worker);
+                    if (workers.size() >= batchSize) {
+                        submit(completionService, futures, new DatabaseBatchExtractWorker(pipeline, workers));
+                        batchWorkers.remove(key);
+                    }
+                } else {
+                    submit(completionService, futures, worker); // 提交进行并行查询
+                }
             }
 
             items.add(item);// 按顺序添加
         }
 
+        // 提交剩余不足batchSize的批量反查
+        for (List<DatabaseExtractWorker> workers : batchWorkers.values()) {
+            submit(completionService, futures, new DatabaseBatchExtractWorker(pipeline, workers));
+        }
+
         // 开始处理结果
         int index = 0;
         while (index < futures.size()) { // 循环处理发出去的所有任务
@@ -186,17 +209,51 @@ public class DatabaseExtractor extends AbstractExtractor<DbBatch> implements Ini
     }
 
     private boolean checkNeedDbForRowMode(Pipeline pipeline, EventData eventData) {
-        // 获取数据表信息
-        DataMedia dataMedia = ConfigHelper.findDataMedia(pipeline, eventData.getTableId());
-        DbDialect dbDialect = dbDialectFactory.getDbDialect(pipeline.getId(), (DbMediaSource) dataMedia.getSource());
-        Table table = dbDialect.findTable(eventData.getSchemaName(), eventData.getTableName());
-        if (table.getColumnCount() == eventData.getColumns().size() + eventData.getKeys().size()) {
+        DatabaseExtractPlan plan = getExtractPlan(pipeline, eventData);
+        if (plan.getRowModeColumnCount() <= eventData.getColumns().size() + eventData.getKeys().size()) {
             return false;
         } else {
             return true;
         }
     }
 
+    /**
+     * 获取单表的反查计划，Table对象来自TableMetaCache，对象发生变化(DDL/reload)时重建计划
+     */
+    private DatabaseExtractPlan getExtractPlan(Pipeline pipeline, EventData eventData) {
+        DataMedia dataMedia = ConfigHelper.findDataMedia(pipeline, eventData.getTableId());
+        DbDialect dbDialect = dbDialectFactory.getDbDialect(pipeline.getId(), (DbMediaSource) dataMedia.getSource());
+        Table table = dbDialect.findTable(eventData.getSchemaName(), eventData.getTableName());
+        if (databaseExtractCache == null) {
+            return new DatabaseExtractPlan(pipeline, dataMedia, dbDialect, table);
+        }
+
+        DatabaseExtractPlan plan = databaseExtractCache.getPlan(pipeline.getId(), eventData);
+        if (plan == null || !plan.isValid(pipeline, dbDialect, table)) {
+            plan = new DatabaseExtractPlan(pipeline, dataMedia, dbDialect, table);
+            databaseExtractCache.putPlan(pipeline.getId(), eventData, plan);
+        }
+        return plan;
+    }
+
+    private void submit(ExecutorCompletionService completionService, List<Future> futures, Runnable worker) {
+        Future future = completionService.submit(worker, null);
+        if (future.isDone()) {
+            // 立即判断一次，因为使用了CallerRun可能当场跑出结果，针对有异常时快速响应，而不是等跑完所有的才抛异常
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                cancel(futures);// 取消完之后立马退出
+                throw new ExtractException(e);
+            } catch (ExecutionException e) {
+                cancel(futures); // 取消完之后立马退出
+                throw new ExtractException(e);
+            }
+        }
+
+        futures.add(future);// 记录一下添加的任务
+    }
+
     // 取消一下当前正在执行的异步任务
     private void cancel(List<Future> futures) {
         for (int i = 0; i < futures.size(); i++) {
@@ -276,6 +333,11 @@ public class DatabaseExtractor extends AbstractExtractor<DbBatch> implements Ini
         private Pipeline     pipeline;
         private DataItem     item;
         private EventData    eventData;
+        private Window       window;
+        private DbDialect    dbDialect;
+        private TableData    keyTableData;
+        private TableData    columnTableData;
+        private String       selectSql;
         {
             eventData_format = "-----------------" + SEP;
             eventData_format += "- PairId: {0} , TableId: {1} " + SEP;
@@ -288,116 +350,27 @@ public class DatabaseExtractor extends AbstractExtractor<DbBatch> implements Ini
             eventData_format += "---END" + SEP;
         }
 
-        public DatabaseExtractWorker(Pipeline pipeline, DataItem item){
+        public DatabaseExtractWorker(Pipeline pipeline, DataItem item, Window window){
             this.pipeline = pipeline;
             this.item = item;
             this.eventData = item.getEventData();
+            this.window = window;
         }
 
         public void run() {
             try {
                 MDC.put(OtterConstants.splitPipelineLogFileKey, String.valueOf(pipeline.getId()));
                 Thread.currentThread().setName(String.format(WORKER_NAME_FORMAT, pipeline.getId(), pipeline.getName()));
-                // 获取数据表信息
-                DataMedia dataMedia = ConfigHelper.findDataMedia(pipeline, eventData.getTableId());
-                DbDialect dbDialect = dbDialectFactory.getDbDialect(pipeline.getId(),
-                    (DbMediaSource) dataMedia.getSource());
-                Table table = dbDialect.findTable(eventData.getSchemaName(), eventData.getTableName());
-                TableData keyTableData = buildTableData(table, eventData.getKeys());
-
-                // oracle类型特殊处理下
-                if (dbDialect instanceof OracleDialect) {
-                    keyTableData.columnTypes = getOraclePkTypes(table, keyTableData.columnNames);
-                }
-
-                boolean needAll = pipeline.getParameters().getSyncMode().isRow()
-                                  || (eventData.getSyncMode() != null && eventData.getSyncMode().isRow());
-
-                // 增加一种case, 针对oracle erosa有时侯结果记录只有主键，没有变更字段，需要做一次反查，获取所有字段
-                needAll |= CollectionUtils.isEmpty(eventData.getUpdatedColumns())
-                           && dataMedia.getSource().getType().isOracle();
-
-                List<DataMediaPair> mediaParis = ConfigHelper.findDataMediaPairByMediaId(pipeline, dataMedia.getId());
-                List<String> viewColumnNames = buildMaxColumnsFromColumnPairs(mediaParis, eventData.getKeys());
-
-                // TODO 后续版本测试下
-                // if (needAll) {
-                // boolean needDb = checkNeedDbForRowMode(table,
-                // viewColumnNames, eventData);
-                // if (needAll && !needDb) {// 不需要进行反查
-                // item.setFilter(false);
-                // return;
-                // }
-                // }
-
-                // modified by ljh at 2012-11-04
-                // 反查数据时只反查带update=true标识的数据，因为update=false的记录可能只是进行filter需要用到的数据，不需要反查
-                TableData columnTableData = buildTableData(table,
-                    eventData.getUpdatedColumns(),
-                    needAll,
-                    viewColumnNames);
-
-                if (columnTableData.columnNames.length == 0) {
-                    // 全主键，不需要进行反查
-                } else {
-                    List<String> newColumnValues = select(dbDialect,
-                        eventData.getSchemaName(),
-                        eventData.getTableName(),
-                        keyTableData,
-                        columnTableData);
-
-                    if (newColumnValues == null) {
-                        // miss from db
-                        // 设置为filter=true，可能存在丢数据的风险.
-                        // 比如针对源库发生主备切换，otter反查的是备库，查询不到对应的记录
-                        // item.setFilter(true);
-
-                        // 针对需要自定义反查数据库的，允许忽略
-                        // a. 自由门触发的数据，不存在时可以忽略
-                        // b. 回环补救算法触发的数据，不存在时可以忽略
-                        boolean needFilter = eventData.isRemedy() || pipeline.getParameters().getSkipNoRow();
-                        item.setFilter(needFilter);
-
-                        // 判断主键是否有变更，如果变更了，就原样返回item
-                        int index = 0;
-                        for (EventColumn oldKey : eventData.getOldKeys()) {
-                            if (!oldKey.equals(eventData.getKeys().get(index))) {
-                                item.setFilter(false);
-                                break;
-                            }
-                        }
+                if (prepare()) {
+                    DatabaseExtractCache.Entry entry = getCache();
+                    List<String> newColumnValues = null;
+                    if (entry != null) {
+                        newColumnValues = entry.getValues();
                     } else {
-                        // 构造反查的返回结果
-                        List<EventColumn> newEventColumns = new ArrayList<EventColumn>();
-                        for (int i = 0; i < newColumnValues.size(); i++) {
-                            EventColumn column = new EventColumn();
-                            column.setIndex(columnTableData.indexs[i]);
-                            column.setColumnName(columnTableData.columnNames[i]);
-                            column.setColumnType(columnTableData.columnTypes[i]);
-                            column.setNull(newColumnValues.get(i) == null);
-                            column.setColumnValue(newColumnValues.get(i));
-                            column.setUpdate(true);
-                            newEventColumns.add(column);
-                        }
-
-                        // 处理下columns中不在反查字段内的字段列表
-                        for (EventColumn column : eventData.getColumns()) {
-                            boolean override = false;
-                            for (EventColumn newEventColumn : newEventColumns) {
-                                if (StringUtils.equalsIgnoreCase(newEventColumn.getColumnName(), column.getColumnName())) {
-                                    override = true;
-                                    break;
-                                }
-                            }
-
-                            if (!override) {// 针对newcolumns不存在的记录进行添加
-                                newEventColumns.add(column);
-                            }
-                        }
-
-                        Collections.sort(newEventColumns, new EventColumnIndexComparable()); // 重新排个序
-                        eventData.setColumns(newEventColumns);
+                        newColumnValues = select();
+                        putCache(newColumnValues);
                     }
+                    apply(newColumnValues);
                 }
             } catch (InterruptedException e) {
                 // ignore
@@ -407,6 +380,186 @@ public class DatabaseExtractor extends AbstractExtractor<DbBatch> implements Ini
             }
         }
 
+        /**
+         * 构造反查需要的主键和字段信息，返回false代表全主键，不需要进行反查
+         */
+        boolean prepare() {
+            // 获取数据表信息
+            DatabaseExtractPlan plan = getExtractPlan(pipeline, eventData);
+            DataMedia dataMedia = plan.getDataMedia();
+            Table table = plan.getTable();
+            dbDialect = plan.getDbDialect();
+            KeyPlan keyPlan = plan.getKeyPlan(eventData.getKeys());
+            if (keyPlan == null) {
+                keyPlan = buildKeyPlan(plan);
+                plan.putKeyPlan(eventData.getKeys(), keyPlan);
+            }
+            keyTableData = buildKeyTableData(keyPlan);
+
+            boolean needAll = pipeline.getParameters().getSyncMode().isRow()
+                              || (eventData.getSyncMode() != null && eventData.getSyncMode().isRow());
+
+            // 增加一种case, 针对oracle erosa有时侯结果记录只有主键，没有变更字段，需要做一次反查，获取所有字段
+            needAll |= CollectionUtils.isEmpty(eventData.getUpdatedColumns())
+                       && dataMedia.getSource().getType().isOracle();
+
+            // TODO 后续版本测试下
+            // if (needAll) {
+            // boolean needDb = checkNeedDbForRowMode(table,
+            // viewColumnNames, eventData);
+            // if (needAll && !needDb) {// 不需要进行反查
+            // item.setFilter(false);
+            // return;
+            // }
+            // }
+
+            // modified by ljh at 2012-11-04
+            // 反查数据时只反查带update=true标识的数据，因为update=false的记录可能只是进行filter需要用到的数据，不需要反查
+            if (needAll) {
+                columnTableData = keyPlan.getAllTableData();
+                selectSql = keyPlan.getAllSelectSql();
+            } else {
+                columnTableData = buildTableData(plan, eventData.getUpdatedColumns());
+                if (columnTableData.columnNames.length != 0) {
+                    selectSql = keyPlan.getSelectSql(dbDialect,
+                        eventData.getSchemaName(),
+                        eventData.getTableName(),
+                        columnTableData.columnNames);
+                }
+            }
+            return columnTableData.columnNames.length != 0; // 全主键，不需要进行反查
+        }
+
+        /**
+         * 构建当前主键字段对应的反查计划，包括主键类型和反查所有字段时的字段信息
+         */
+        private KeyPlan buildKeyPlan(DatabaseExtractPlan plan) {
+            Table table = plan.getTable();
+            TableData keyData = buildTableData(table, eventData.getKeys());
+            // oracle类型特殊处理下
+            if (plan.getDbDialect() instanceof OracleDialect) {
+                keyData.columnTypes = getOraclePkTypes(table, keyData.columnNames);
+            }
+            keyData.columnValues = null; // 主键值每条记录单独构造
+
+            Column[] keyColumns = new Column[keyData.indexs.length];
+            for (int i = 0; i < keyColumns.length; i++) {
+                keyColumns[i] = table.findColumn(keyData.columnNames[i], false);
+            }
+
+            List<DataMediaPair> mediaParis = ConfigHelper.findDataMediaPairByMediaId(pipeline, plan.getDataMedia()
+                .getId());
+            List<String> viewColumnNames = buildMaxColumnsFromColumnPairs(mediaParis, eventData.getKeys());
+            TableData allData = buildTableData(table, eventData.getUpdatedColumns(), true, viewColumnNames);
+            String allSelectSql = null;
+            if (allData.columnNames.length != 0) {
+                allSelectSql = plan.getDbDialect()
+                    .getSqlTemplate()
+                    .getSelectSql(eventData.getSchemaName(),
+                        eventData.getTableName(),
+                        keyData.columnNames,
+                        allData.columnNames);
+            }
+            return new KeyPlan(keyColumns, keyData, allData, allSelectSql);
+        }
+
+        /**
+         * 基于反查计划中的主键字段信息，构建当前记录的主键值
+         */
+        private TableData buildKeyTableData(KeyPlan keyPlan) {
+            TableData template = keyPlan.getKeyTableData();
+            Column[] keyColumns = keyPlan.getKeyColumns();
+            List<EventColumn> keys = eventData.getKeys();
+
+            TableData data = new TableData();
+            data.indexs = template.indexs;
+            data.columnNames = template.columnNames;
+            data.columnTypes = template.columnTypes;
+            data.columnValues = new Object[keys.size()];
+            for (int i = 0; i < keys.size(); i++) {
+                data.columnValues[i] = SqlUtils.stringToSqlValue(keys.get(i).getColumnValue(),
+                    keyColumns[i].getTypeCode(),
+                    keyColumns[i].isRequired(),
+                    false);
+            }
+            return data;
+        }
+
+        /**
+         * 获取缓存的反查结果，需要在prepare之后调用，返回null代表需要反查数据库
+         */
+        DatabaseExtractCache.Entry getCache() {
+            if (window == null) {
+                return null;
+            }
+
+            return databaseExtractCache.get(pipeline.getId(), window, eventData, columnTableData.columnNames);
+        }
+
+        void putCache(List<String> newColumnValues) {
+            if (window != null) {
+                databaseExtractCache.put(pipeline.getId(), window, eventData, columnTableData.columnNames, newColumnValues);
+            }
+        }
+
+        /**
+         * 处理反查的结果，newColumnValues为null代表数据库中不存在对应的记录
+         */
+        void apply(List<String> newColumnValues) {
+            if (newColumnValues == null) {
+                // miss from db
+                // 设置为filter=true，可能存在丢数据的风险.
+                // 比如针对源库发生主备切换，otter反查的是备库，查询不到对应的记录
+                // item.setFilter(true);
+
+                // 针对需要自定义反查数据库的，允许忽略
+                // a. 自由门触发的数据，不存在时可以忽略
+                // b. 回环补救算法触发的数据，不存在时可以忽略
+                boolean needFilter = eventData.isRemedy() || pipeline.getParameters().getSkipNoRow();
+                item.setFilter(needFilter);
+
+                // 判断主键是否有变更，如果变更了，就原样返回item
+                int index = 0;
+                for (EventColumn oldKey : eventData.getOldKeys()) {
+                    if (!oldKey.equals(eventData.getKeys().get(index))) {
+                        item.setFilter(false);
+                        break;
+                    }
+                }
+            } else {
+                // 构造反查的返回结果
+                List<EventColumn> newEventColumns = new ArrayList<EventColumn>();
+                for (int i = 0; i < newColumnValues.size(); i++) {
+                    EventColumn column = new EventColumn();
+                    column.setIndex(columnTableData.indexs[i]);
+                    column.setColumnName(columnTableData.columnNames[i]);
+                    column.setColumnType(columnTableData.columnTypes[i]);
+                    column.setNull(newColumnValues.get(i) == null);
+                    column.setColumnValue(newColumnValues.get(i));
+                    column.setUpdate(true);
+                    newEventColumns.add(column);
+                }
+
+                // 处理下columns中不在反查字段内的字段列表
+                for (EventColumn column : eventData.getColumns()) {
+                    boolean override = false;
+                    for (EventColumn newEventColumn : newEventColumns) {
+                        if (StringUtils.equalsIgnoreCase(newEventColumn.getColumnName(), column.getColumnName())) {
+                            override = true;
+                            break;
+                        }
+                    }
+
+                    if (!override) {// 针对newcolumns不存在的记录进行添加
+                        newEventColumns.add(column);
+                    }
+                }
+
+                Collections.sort(newEventColumns, new EventColumnIndexComparable()); // 重新排个序
+                eventData.setColumns(newEventColumns);
+            }
+        }
+
         /**
          * 根据视图同步定义的columnPair，获取需要反查的字段列表，不包括主键
          */
@@ -438,12 +591,12 @@ public class DatabaseExtractor extends AbstractExtractor<DbBatch> implements Ini
             return new ArrayList<String>(allColumns);
         }
 
-        private List<String> select(DbDialect dbDialect, String schemaName, String tableName, TableData keyTableData,
-                                    TableData columnTableData) throws InterruptedException {
-            String selectSql = dbDialect.getSqlTemplate().getSelectSql(schemaName,
-                tableName,
-                keyTableData.columnNames,
-                columnTableData.columnNames);
+        /**
+         * 单条反查，需要在prepare之后调用
+         */
+        List<String> select() throws InterruptedException {
+            String schemaName = eventData.getSchemaName();
+            String tableName = eventData.getTableName();
             Exception exception = null;
             for (int i = 0; i < retryTimes; i++) {
                 if (Thread.currentThread().isInterrupted()) {
@@ -629,6 +782,33 @@ public class DatabaseExtractor extends AbstractExtractor<DbBatch> implements Ini
             return data;
         }
 
+        /**
+         * 基于反查计划中的字段下标，构建变更字段的信息
+         */
+        private TableData buildTableData(DatabaseExtractPlan plan, List<EventColumn> columns) {
+            Column[] tableColumns = plan.getTable().getColumns();
+            TableData data = new TableData();
+            data.indexs = new int[columns.size()];
+            data.columnNames = new String[columns.size()];
+            data.columnTypes = new int[columns.size()];
+            data.columnValues = new Object[columns.size()];
+
+            int i = 0;
+            for (EventColumn column : columns) {
+                Integer index = plan.getColumnIndex(column.getColumnName());
+                if (index == null) {
+                    throw new ExtractException("columns is not found in table " + plan.getTable().toString()
+                                               + " columns : " + dumpEventColumn(columns));
+                }
+
+                data.indexs[i] = index;// 计算下下标
+                data.columnNames[i] = tableColumns[index].getName();
+                data.columnTypes[i] = tableColumns[index].getTypeCode();
+                i++;
+            }
+            return data;
+        }
+
         private String dumpEventData(EventData eventData, String selectSql) {
             return MessageFormat.format(eventData_format,
                 eventData.getPairId(),
@@ -652,10 +832,165 @@ public class DatabaseExtractor extends AbstractExtractor<DbBatch> implements Ini
 
     }
 
+    /**
+     * 批量反查处理单元，同一张表的多条记录使用where pk in (...)一次反查
+     * 
+     * <pre>
+     * 1. 按照反查的主键/字段列表再分一次组，同一组的记录使用一条sql
+     * 2. 同一主键的多条记录只反查一次
+     * 3. 批量结果中匹配不到的记录(比如主键的字符串表示不一致)，退化为单条反查，保证miss时的filter/skipNoRow行为和单条反查一致
+     * </pre>
+     */
+    class DatabaseBatchExtractWorker implements Runnable {
+
+        private Pipeline                    pipeline;
+        private List<DatabaseExtractWorker> workers;
+
+        public DatabaseBatchExtractWorker(Pipeline pipeline, List<DatabaseExtractWorker> workers){
+            this.pipeline = pipeline;
+            this.workers = workers;
+        }
+
+        public void run() {
+            try {
+                MDC.put(OtterConstants.splitPipelineLogFileKey, String.valueOf(pipeline.getId()));
+                Thread.currentThread().setName(String.format(WORKER_NAME_FORMAT, pipeline.getId(), pipeline.getName()));
+                Map<String, List<DatabaseExtractWorker>> groups = new LinkedHashMap<String, List<DatabaseExtractWorker>>();
+                for (DatabaseExtractWorker worker : workers) {
+                    if (!worker.prepare()) {
+                        continue; // 全主键，不需要进行反查
+                    }
+
+                    String key = StringUtils.join(worker.keyTableData.columnNames, ",") + "|"
+                                 + StringUtils.join(worker.columnTableData.columnNames, ",");
+                    List<DatabaseExtractWorker> group = groups.get(key);
+                    if (group == null) {
+                        group = new ArrayList<DatabaseExtractWorker>();
+                        groups.put(key, group);
+                    }
+                    group.add(worker);
+                }
+
+                for (List<DatabaseExtractWorker> group : groups.values()) {
+                    select(group);
+                }
+            } catch (InterruptedException e) {
+                // ignore
+            } finally {
+                Thread.currentThread().setName(WORKER_NAME);
+                MDC.remove(OtterConstants.splitPipelineLogFileKey);
+            }
+        }
+
+        private void select(List<DatabaseExtractWorker> group) throws InterruptedException {
+            DatabaseExtractWorker first = group.get(0);
+            TableData keyTableData = first.keyTableData;
+            TableData columnTableData = first.columnTableData;
+            String schemaName = first.eventData.getSchemaName();
+            String tableName = first.eventData.getTableName();
+
+            // 相同主键只反查一次
+            Map<List<String>, List<DatabaseExtractWorker>> keyWorkers = new LinkedHashMap<List<String>, List<DatabaseExtractWorker>>();
+            for (DatabaseExtractWorker worker : group) {
+                DatabaseExtractCache.Entry entry = worker.getCache();
+                if (entry != null) {
+                    worker.apply(entry.getValues());
+                    continue;
+                }
+
+                List<String> key = new ArrayList<String>();
+                for (EventColumn column : worker.eventData.getKeys()) {
+                    key.add(column.getColumnValue());
+                }
+
+                List<DatabaseExtractWorker> sameKeyWorkers = keyWorkers.get(key);
+                if (sameKeyWorkers == null) {
+                    sameKeyWorkers = new ArrayList<DatabaseExtractWorker>(1);
+                    keyWorkers.put(key, sameKeyWorkers);
+                }
+                sameKeyWorkers.add(worker);
+            }
+
+            if (keyWorkers.isEmpty()) {
+                return; // 全部命中缓存
+            }
+
+            int keySize = keyTableData.columnNames.length;
+            int size = keyWorkers.size();
+            Object[] values = new Object[size * keySize];
+            int[] types = new int[size * keySize];
+            int i = 0;
+            for (List<DatabaseExtractWorker> sameKeyWorkers : keyWorkers.values()) {
+                TableData data = sameKeyWorkers.get(0).keyTableData;
+                System.arraycopy(data.columnValues, 0, values, i * keySize, keySize);
+                System.arraycopy(data.columnTypes, 0, types, i * keySize, keySize);
+                i++;
+            }
+
+            int[] resultTypes = new int[keySize + columnTableData.columnTypes.length];
+            System.arraycopy(keyTableData.columnTypes, 0, resultTypes, 0, keySize);
+            System.arraycopy(columnTableData.columnTypes, 0, resultTypes, keySize, columnTableData.columnTypes.length);
+
+            String selectSql = first.dbDialect.getSqlTemplate().getBatchSelectSql(schemaName,
+                tableName,
+                keyTableData.columnNames,
+                columnTableData.columnNames,
+                size);
+            List<List<String>> result = query(first.dbDialect, selectSql, values, types, resultTypes);
+
+            // 按主键映射回对应的记录
+            int missCount = 0;
+            Map<List<String>, List<String>> rows = new HashMap<List<String>, List<String>>(result.size() * 2);
+            for (List<String> row : result) {
+                rows.put(new ArrayList<String>(row.subList(0, keySize)), row.subList(keySize, row.size()));
+            }
+            for (Map.Entry<List<String>, List<DatabaseExtractWorker>> entry : keyWorkers.entrySet()) {
+                List<String> newColumnValues = rows.get(entry.getKey());
+                if (newColumnValues == null) {
+                    missCount++;
+                    // 退化为单条反查，由单条反查处理miss的情况
+                    newColumnValues = entry.getValue().get(0).select();
+                }
+
+                entry.getValue().get(0).putCache(newColumnValues);
+                for (DatabaseExtractWorker worker : entry.getValue()) {
+                    worker.apply(newColumnValues);
+                }
+            }
+
+            if (logger.isDebugEnabled()) {
+                logger.debug("batch extract {}.{} with {} keys, {} rows, {} miss", new Object[] { schemaName,
+                        tableName, size, result.size(), missCount });
+            }
+        }
+
+        private List<List<String>> query(DbDialect dbDialect, String selectSql, Object[] values, int[] types,
+                                         int[] resultTypes) throws InterruptedException {
+            Exception exception = null;
+            for (int i = 0; i < retryTimes; i++) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedException(); // 退出
+                }
+
+                try {
+                    return dbDialect.getJdbcTemplate().query(selectSql,
+                        values,
+                        types,
+                        new RowDataMapper(resultTypes));
+                } catch (Exception e) {
+                    exception = e;
+                    logger.warn("retry [" + (i + 1) + "] failed", e);
+                }
+            }
+
+            throw new RuntimeException("db batch extract failed , sql:\n " + selectSql, exception);
+        }
+    }
+
     /**
      * 数据库处理对象
      */
-    class TableData {
+    static class TableData {
 
         int[]    indexs;
         String[] columnNames;
@@ -694,4 +1029,8 @@ public class DatabaseExtractor extends AbstractExtractor<DbBatch> implements Ini
         this.poolSize = poolSize;
     }
 
+    public void setDatabaseExtractCache(DatabaseExtractCache databaseExtractCache) {
+        this.databaseExtractCache = databaseExtractCache;
+    }
+
 }
@@ -16,38 +16,223 @@
 
 package com.alibaba.otter.node.etl.extract.extractor;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
+import org.slf4j.MDC;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.BeanFactory;
 import org.springframework.beans.factory.BeanFactoryAware;
 import org.springframework.util.Assert;
 
+import com.alibaba.otter.node.common.config.ConfigClientService;
+import com.alibaba.otter.node.etl.OtterConstants;
+import com.alibaba.otter.shared.common.model.config.pipeline.Pipeline;
+import com.alibaba.otter.shared.common.utils.thread.ExecutorTemplate;
+import com.alibaba.otter.shared.common.utils.thread.ExecutorTemplateGetter;
 import com.alibaba.otter.shared.etl.model.DbBatch;
+import com.alibaba.otter.shared.etl.model.EventData;
+import com.alibaba.otter.shared.etl.model.FileBatch;
+import com.alibaba.otter.shared.etl.model.FileData;
+import com.alibaba.otter.shared.etl.model.RowBatch;
 
 /**
  * otter extractor工厂处理
  * 
+ * <pre>
+ * 开启extractPartition后，dbBatchExtractor中连续的partitionExtractor(只处理单表内的数据)按表分区执行：
+ * 1. 每个分区独立的依次流过这一段extractor，比如某张表的反查较慢，不会阻塞其他表进入processor等后续阶段
+ * 2. 所有分区完成后再合并，按照记录在原始批次中的位置恢复顺序，extractor新产生的记录跟随在同分区的前一条记录之后
+ * 3. 不在partitionExtractor中的extractor(比如freedom会改写表信息，rowMerge依赖整个批次)仍然基于整个批次执行
+ * 4. 实现了{@linkplain PartitionExtractor}的extractor可以根据配置拒绝分区，比如存在非批量的EventProcessor时processorExtractor基于整个批次执行
+ * </pre>
+ * 
  * @author jianghang 2012-4-18 下午04:09:15
  * @version 4.0.2
  */
 public class OtterExtractorFactory implements BeanFactoryAware {
 
-    private List        dbBatchExtractor;
-    private BeanFactory beanFactory;
+    private List                   dbBatchExtractor;
+    private List                   partitionExtractor = Collections.EMPTY_LIST; // 可以按表分区执行的extractor
+    private BeanFactory            beanFactory;
+    private ConfigClientService    configClientService;
+    private ExecutorTemplateGetter executorTemplateGetter;
 
     public void extract(DbBatch dbBatch) {
         Assert.notNull(dbBatch);
-        for (Object extractor : dbBatchExtractor) {
-            OtterExtractor otterExtractor = null;
-            if (extractor instanceof java.lang.String) {
-                // 每次从容器中取一次，有做池化处理
-                otterExtractor = (OtterExtractor) beanFactory.getBean((String) extractor, OtterExtractor.class);
+        Pipeline pipeline = null;
+        if (dbBatch.getRowBatch() != null && configClientService != null) {
+            pipeline = configClientService.findPipeline(dbBatch.getRowBatch().getIdentity().getPipelineId());
+        }
+        boolean partition = pipeline != null && pipeline.getParameters().getExtractPartition();
+
+        int size = dbBatchExtractor.size();
+        boolean[] partitionable = new boolean[size];
+        for (int i = 0; partition && i < size; i++) {
+            partitionable[i] = isPartitionable(pipeline, dbBatchExtractor.get(i));
+        }
+
+        int i = 0;
+        while (i < size) {
+            if (partitionable[i]) {
+                // 找出连续的一段可分区的extractor
+                int end = i + 1;
+                while (end < size && partitionable[end]) {
+                    end++;
+                }
+
+                partitionExtract(pipeline, dbBatch, dbBatchExtractor.subList(i, end));
+                i = end;
             } else {
-                otterExtractor = (OtterExtractor) extractor;
+                getExtractor(dbBatchExtractor.get(i)).extract(dbBatch);
+                i++;
+            }
+        }
+    }
+
+    private void partitionExtract(final Pipeline pipeline, DbBatch dbBatch, final List extractors) {
+        RowBatch rowBatch = dbBatch.getRowBatch();
+        List<EventData> eventDatas = rowBatch.getDatas();
+        // 按表分区，同时记录每条记录的原始位置
+        Map<String, Partition> partitions = new LinkedHashMap<String, Partition>();
+        Map<EventData, Integer> positions = new IdentityHashMap<EventData, Integer>(eventDatas.size() * 2);
+        int position = 0;
+        for (EventData eventData : eventDatas) {
+            String key = eventData.getTableId() + "." + eventData.getSchemaName() + "." + eventData.getTableName();
+            Partition partition = partitions.get(key);
+            if (partition == null) {
+                partition = new Partition(dbBatch, position);
+                partitions.put(key, partition);
+            }
+
+            partition.dbBatch.getRowBatch().merge(eventData);
+            positions.put(eventData, position++);
+        }
+
+        if (partitions.size() <= 1) {
+            // 只有一张表，没必要分区
+            for (Object extractor : extractors) {
+                getExtractor(extractor).extract(dbBatch);
             }
+            return;
+        }
+
+        ExecutorTemplate executorTemplate = executorTemplateGetter.get();
+        try {
+            executorTemplate.start();
+            executorTemplate.adjustPoolSize(pipeline.getParameters().getExtractPoolSize());
+            for (final Partition partition : partitions.values()) {
+                executorTemplate.submit(new Runnable() {
+
+                    public void run() {
+                        MDC.put(OtterConstants.splitPipelineLogFileKey, String.valueOf(pipeline.getId()));
+                        try {
+                            for (Object extractor : extractors) {
+                                getExtractor(extractor).extract(partition.dbBatch);
+                            }
+                        } finally {
+                            MDC.remove(OtterConstants.splitPipelineLogFileKey);
+                        }
+                    }
+                });
+            }
+
+            // 等待所有分区处理完成
+            executorTemplate.waitForResult();
+        } finally {
+            executorTemplateGetter.release(executorTemplate);
+        }
+
+        // 合并结果，按原始位置恢复顺序
+        List<PositionData> results = new ArrayList<PositionData>(eventDatas.size());
+        List<FileData> fileDatas = null;
+        for (Partition partition : partitions.values()) {
+            int last = partition.position;
+            for (EventData eventData : partition.dbBatch.getRowBatch().getDatas()) {
+                Integer origin = positions.get(eventData);
+                if (origin != null) {
+                    last = origin;
+                }
+                results.add(new PositionData(last, eventData));
+            }
+
+            FileBatch fileBatch = partition.dbBatch.getFileBatch();
+            if (fileBatch != null) {
+                if (fileDatas == null) {
+                    fileDatas = new ArrayList<FileData>();
+                }
+                fileDatas.addAll(fileBatch.getFiles());
+            }
+        }
+
+        Collections.sort(results); // 稳定排序，同一位置的记录保持分区内的顺序
+        eventDatas.clear();
+        for (PositionData result : results) {
+            eventDatas.add(result.eventData);
+        }
 
-            otterExtractor.extract(dbBatch);
+        if (fileDatas != null) {
+            FileBatch fileBatch = new FileBatch();
+            fileBatch.setIdentity(rowBatch.getIdentity());
+            fileBatch.setFiles(fileDatas);
+            dbBatch.setFileBatch(fileBatch);
+        }
+    }
+
+    private boolean isPartitionable(Pipeline pipeline, Object extractor) {
+        if (!partitionExtractor.contains(extractor)) {
+            return false;
+        }
+
+        OtterExtractor otterExtractor = getExtractor(extractor);
+        if (otterExtractor instanceof PartitionExtractor) {
+            return ((PartitionExtractor) otterExtractor).isPartitionable(pipeline);
+        }
+        return true;
+    }
+
+    private OtterExtractor getExtractor(Object extractor) {
+        if (extractor instanceof java.lang.String) {
+            // 每次从容器中取一次，有做池化处理
+            return (OtterExtractor) beanFactory.getBean((String) extractor, OtterExtractor.class);
+        } else {
+            return (OtterExtractor) extractor;
+        }
+    }
+
+    /**
+     * 一张表对应的分区
+     */
+    private static class Partition {
+
+        private DbBatch dbBatch;
+        private int     position; // 分区第一条记录的原始位置
+
+        public Partition(DbBatch dbBatch, int position){
+            RowBatch rowBatch = new RowBatch();
+            rowBatch.setIdentity(dbBatch.getRowBatch().getIdentity());
+            // fileBatch为空，只有分区内的extractor(比如fileExtractor)产生了附件才需要合并
+            this.dbBatch = new DbBatch(rowBatch, null, dbBatch.getRoot());
+            this.position = position;
+        }
+    }
+
+    private static class PositionData implements Comparable<PositionData> {
+
+        private int       position;
+        private EventData eventData;
+
+        public PositionData(int position, EventData eventData){
+            this.position = position;
+            this.eventData = eventData;
+        }
+
+        public int compareTo(PositionData o) {
+            return position < o.position ? -1 : (position == o.position ? 0 : 1);
         }
     }
 
@@ -57,7 +242,19 @@ public class OtterExtractorFactory implements BeanFactoryAware {
         this.dbBatchExtractor = dbBatchExtractor;
     }
 
+    public void setPartitionExtractor(List partitionExtractor) {
+        this.partitionExtractor = partitionExtractor;
+    }
+
     public void setBeanFactory(BeanFactory beanFactory) throws BeansException {
         this.beanFactory = beanFactory;
     }
+
+    public void setConfigClientService(ConfigClientService configClientService) {
+        this.configClientService = configClientService;
+    }
+
+    public void setExecutorTemplateGetter(ExecutorTemplateGetter executorTemplateGetter) {
+        this.executorTemplateGetter = executorTemplateGetter;
+    }
 }
@@ -0,0 +1,30 @@
+/*
+ * Copyright (C) 2010-2101 Alibaba Group Holding Limited.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.otter.node.etl.extract.extractor;
+
+import com.alibaba.otter.shared.common.model.config.pipeline.Pipeline;
+
+/**
+ * 可以按表分区执行的extractor，根据pipeline的配置判断本次是否允许分区
+ */
+public interface PartitionExtractor {
+
+    /**
+     * 返回false时该extractor基于整个批次执行
+     */
+    boolean isPartitionable(Pipeline pipeline);
+}
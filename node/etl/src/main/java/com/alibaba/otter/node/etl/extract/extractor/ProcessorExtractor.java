@@ -16,10 +16,15 @@
 
 package com.alibaba.otter.node.etl.extract.extractor;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.sql.DataSource;
 
@@ -36,6 +41,7 @@ import com.alibaba.otter.shared.common.model.config.pipeline.Pipeline;
 import com.alibaba.otter.shared.common.utils.extension.ExtensionFactory;
 import com.alibaba.otter.shared.common.utils.thread.ExecutorTemplate;
 import com.alibaba.otter.shared.common.utils.thread.ExecutorTemplateGetter;
+import com.alibaba.otter.shared.etl.extend.processor.BatchEventProcessor;
 import com.alibaba.otter.shared.etl.extend.processor.EventProcessor;
 import com.alibaba.otter.shared.etl.extend.processor.support.DataSourceFetcher;
 import com.alibaba.otter.shared.etl.extend.processor.support.DataSourceFetcherAware;
@@ -46,9 +52,16 @@ import com.alibaba.otter.shared.etl.model.RowBatch;
 /**
  * 调用{@linkplain EventProcessor}，进行业务数据处理
  * 
+ * <pre>
+ * 1. 普通的EventProcessor逐条处理，DataSourceFetcherAware的实现提交到线程池并行处理
+ * 2. 如果源表对应的DataMediaPair中存在{@linkplain BatchEventProcessor}，该源表的数据按DataMediaPair的顺序依次批量处理
+ * 3. 只有源表的processor都是{@linkplain BatchEventProcessor}时才会提交到ExecutorTemplate按表并行，否则在extract线程中处理，
+ *    普通的EventProcessor实例会被多个pair共享，不能隐式的并发调用；pipeline的分区执行同理
+ * </pre>
+ * 
  * @author jianghang 2012-7-23 下午03:11:19
  */
-public class ProcessorExtractor extends AbstractExtractor<DbBatch> {
+public class ProcessorExtractor extends AbstractExtractor<DbBatch> implements PartitionExtractor {
 
     private ExtensionFactory       extensionFactory;
     private DataSourceService      dataSourceService;
@@ -61,6 +74,8 @@ public class ProcessorExtractor extends AbstractExtractor<DbBatch> {
             final Pipeline pipeline = getPipeline(rowBatch.getIdentity().getPipelineId());
             List<EventData> eventDatas = rowBatch.getDatas();
             final Set<EventData> removeDatas = Collections.synchronizedSet(new HashSet<EventData>());// 使用set，提升remove时的查找速度
+            Map<Long, Boolean> batchMedias = new HashMap<Long, Boolean>(); // 源表是否需要批量处理
+            Map<Long, List<EventData>> batchDatas = new LinkedHashMap<Long, List<EventData>>();
             executorTemplate = executorTemplateGetter.get();
             executorTemplate.start();
             // 重新设置下poolSize
@@ -73,23 +88,30 @@ public class ProcessorExtractor extends AbstractExtractor<DbBatch> {
                                                + " dataMediaPair is null,please check");
                 }
 
+                Boolean batch = batchMedias.get(eventData.getTableId());
+                if (batch == null) {
+                    batch = existBatchProcessor(pipeline, dataMediaPairs);
+                    batchMedias.put(eventData.getTableId(), batch);
+                }
+
+                if (batch) {
+                    // 先按源表收集，后续统一批量处理
+                    List<EventData> datas = batchDatas.get(eventData.getTableId());
+                    if (datas == null) {
+                        datas = new ArrayList<EventData>();
+                        batchDatas.put(eventData.getTableId(), datas);
+                    }
+                    datas.add(eventData);
+                    continue;
+                }
+
                 for (DataMediaPair dataMediaPair : dataMediaPairs) {
                     if (!dataMediaPair.isExistFilter()) {
                         continue;
                     }
 
-                    final EventProcessor eventProcessor = extensionFactory.getExtension(EventProcessor.class,
-                        dataMediaPair.getFilterData());
+                    final EventProcessor eventProcessor = getEventProcessor(pipeline, dataMediaPair);
                     if (eventProcessor instanceof DataSourceFetcherAware) {
-                        ((DataSourceFetcherAware) eventProcessor).setDataSourceFetcher(new DataSourceFetcher() {
-
-                            @Override
-                            public DataSource fetch(Long tableId) {
-                                DataMedia dataMedia = ConfigHelper.findDataMedia(pipeline, tableId);
-                                return dataSourceService.getDataSource(pipeline.getId(), dataMedia.getSource());
-                            }
-                        });
-
                         executorTemplate.submit(new Runnable() {
 
                             @Override
@@ -113,10 +135,43 @@ public class ProcessorExtractor extends AbstractExtractor<DbBatch> {
 
             }
 
+            // 按源表进行批量处理，全部为BatchEventProcessor的源表才并行
+            final Map<Long, List<EventData>> batchResults = new ConcurrentHashMap<Long, List<EventData>>();
+            for (final Map.Entry<Long, List<EventData>> entry : batchDatas.entrySet()) {
+                final List<DataMediaPair> dataMediaPairs = ConfigHelper.findDataMediaPairByMediaId(pipeline,
+                    entry.getKey());
+                if (!isAllBatchProcessor(dataMediaPairs)) {
+                    batchResults.put(entry.getKey(), process(pipeline, dataMediaPairs, entry.getValue()));
+                    continue;
+                }
+
+                executorTemplate.submit(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        MDC.put(OtterConstants.splitPipelineLogFileKey, String.valueOf(pipeline.getId()));
+                        batchResults.put(entry.getKey(), process(pipeline, dataMediaPairs, entry.getValue()));
+                    }
+                });
+            }
+
             // 等待所有都处理完成
             executorTemplate.waitForResult();
 
-            if (!CollectionUtils.isEmpty(removeDatas)) {
+            if (!batchResults.isEmpty()) {
+                // 批量处理的结果放在该源表第一条数据的位置，其余数据保持原有顺序
+                List<EventData> newEventDatas = new ArrayList<EventData>(eventDatas.size());
+                for (EventData eventData : eventDatas) {
+                    List<EventData> result = batchResults.remove(eventData.getTableId());
+                    if (result != null) {
+                        newEventDatas.addAll(result);
+                    } else if (!batchDatas.containsKey(eventData.getTableId()) && !removeDatas.contains(eventData)) {
+                        newEventDatas.add(eventData);
+                    }
+                }
+                eventDatas.clear();
+                eventDatas.addAll(newEventDatas);
+            } else if (!CollectionUtils.isEmpty(removeDatas)) {
                 eventDatas.removeAll(removeDatas);
             }
         } finally {
@@ -127,6 +182,83 @@ public class ProcessorExtractor extends AbstractExtractor<DbBatch> {
 
     }
 
+    /**
+     * 按DataMediaPair的顺序依次处理同一个源表的数据，前一个processor的结果作为后一个的输入
+     */
+    private List<EventData> process(Pipeline pipeline, List<DataMediaPair> dataMediaPairs, List<EventData> eventDatas) {
+        List<EventData> result = eventDatas;
+        for (DataMediaPair dataMediaPair : dataMediaPairs) {
+            if (!dataMediaPair.isExistFilter()) {
+                continue;
+            }
+
+            EventProcessor eventProcessor = getEventProcessor(pipeline, dataMediaPair);
+            if (eventProcessor instanceof BatchEventProcessor) {
+                result = ((BatchEventProcessor) eventProcessor).process(new ArrayList<EventData>(result));
+                if (result == null) {
+                    result = new ArrayList<EventData>();
+                }
+            } else {
+                List<EventData> processed = new ArrayList<EventData>(result.size());
+                for (EventData eventData : result) {
+                    if (eventProcessor.process(eventData)) {
+                        processed.add(eventData);
+                    }
+                }
+                result = processed;
+            }
+
+            if (result.isEmpty()) {
+                break;
+            }
+        }
+
+        return result;
+    }
+
+    public boolean isPartitionable(Pipeline pipeline) {
+        return isAllBatchProcessor(pipeline.getPairs());
+    }
+
+    private boolean isAllBatchProcessor(List<DataMediaPair> dataMediaPairs) {
+        for (DataMediaPair dataMediaPair : dataMediaPairs) {
+            if (dataMediaPair.isExistFilter()
+                && !(extensionFactory.getExtension(EventProcessor.class, dataMediaPair.getFilterData()) instanceof BatchEventProcessor)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private boolean existBatchProcessor(Pipeline pipeline, List<DataMediaPair> dataMediaPairs) {
+        for (DataMediaPair dataMediaPair : dataMediaPairs) {
+            if (dataMediaPair.isExistFilter()
+                && extensionFactory.getExtension(EventProcessor.class, dataMediaPair.getFilterData()) instanceof BatchEventProcessor) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private EventProcessor getEventProcessor(final Pipeline pipeline, DataMediaPair dataMediaPair) {
+        EventProcessor eventProcessor = extensionFactory.getExtension(EventProcessor.class,
+            dataMediaPair.getFilterData());
+        if (eventProcessor instanceof DataSourceFetcherAware) {
+            ((DataSourceFetcherAware) eventProcessor).setDataSourceFetcher(new DataSourceFetcher() {
+
+                @Override
+                public DataSource fetch(Long tableId) {
+                    DataMedia dataMedia = ConfigHelper.findDataMedia(pipeline, tableId);
+                    return dataSourceService.getDataSource(pipeline.getId(), dataMedia.getSource());
+                }
+            });
+        }
+
+        return eventProcessor;
+    }
+
     public void setExtensionFactory(ExtensionFactory extensionFactory) {
         this.extensionFactory = extensionFactory;
     }
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2010-2101 Alibaba Group Holding Limited.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.otter.node.etl.extract.extractor;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+import org.springframework.util.CollectionUtils;
+
+import com.alibaba.otter.node.etl.extract.exceptions.ExtractException;
+import com.alibaba.otter.node.etl.load.loader.db.DbLoadMerger;
+import com.alibaba.otter.shared.common.model.config.pipeline.Pipeline;
+import com.alibaba.otter.shared.etl.model.DbBatch;
+import com.alibaba.otter.shared.etl.model.EventColumn;
+import com.alibaba.otter.shared.etl.model.EventData;
+import com.alibaba.otter.shared.etl.model.RowBatch;
+
+/**
+ * 在extract节点发送数据前，按照load时的规则(DbLoadMerger)合并相同主键的多次I/U/D变更，减少跨机房传输的数据量
+ * 
+ * <pre>
+ * 1. 按照dataMediaPair分组后合并，每个pair对应唯一的weight，保证不会跨weight合并，也不会合并不同pair的同一张源表
+ * 2. ddl批次不做处理
+ * 3. 合并规则和load一致，合并失败的数据在load阶段同样会失败，所以直接抛出异常
+ * </pre>
+ */
+public class RowMergeExtractor extends AbstractExtractor<DbBatch> {
+
+    private static final Logger logger = LoggerFactory.getLogger(RowMergeExtractor.class);
+
+    @Override
+    public void extract(DbBatch dbBatch) throws ExtractException {
+        Assert.notNull(dbBatch);
+        Assert.notNull(dbBatch.getRowBatch());
+
+        RowBatch rowBatch = dbBatch.getRowBatch();
+        Pipeline pipeline = getPipeline(rowBatch.getIdentity().getPipelineId());
+        List<EventData> eventDatas = rowBatch.getDatas();
+        if (!pipeline.getParameters().getExtractMerge() || eventDatas.size() <= 1) {
+            return;
+        }
+
+        // 按pair分组
+        Map<Long, List<EventData>> buckets = new LinkedHashMap<Long, List<EventData>>();
+        for (EventData eventData : eventDatas) {
+            if (eventData.getEventType().isDdl()) {
+                return;
+            }
+
+            List<EventData> items = buckets.get(eventData.getPairId());
+            if (items == null) {
+                items = new ArrayList<EventData>();
+                buckets.put(eventData.getPairId(), items);
+            }
+            items.add(eventData);
+        }
+
+        int rows = eventDatas.size();
+        long bytes = estimate(eventDatas);
+        List<EventData> result = new LinkedList<EventData>();
+        try {
+            for (List<EventData> items : buckets.values()) {
+                result.addAll(DbLoadMerger.merge(items));
+            }
+        } catch (Exception e) {
+            throw new ExtractException("merge failed for " + rowBatch.getIdentity(), e);
+        }
+
+        if (result.size() < rows) {
+            rowBatch.setDatas(result);
+            long mergedBytes = estimate(result);
+            logger.info("merge {} with rows:{}->{} saved:{}, bytes:{}->{} saved:{}", new Object[] {
+                    rowBatch.getIdentity(), rows, result.size(), rows - result.size(), bytes, mergedBytes,
+                    bytes - mergedBytes });
+        }
+    }
+
+    // 估算需要传输的字段数据大小，EventData.getSize()在合并时会累加，不能反映传输的数据量
+    private long estimate(List<EventData> eventDatas) {
+        long size = 0;
+        for (EventData eventData : eventDatas) {
+            size += estimate(eventData.getKeys());
+            size += estimate(eventData.getColumns());
+            if (!CollectionUtils.isEmpty(eventData.getOldKeys())) {
+                size += estimate(eventData.getOldKeys());
+            }
+        }
+        return size;
+    }
+
+    private long estimate(List<EventColumn> columns) {
+        long size = 0;
+        for (EventColumn column : columns) {
+            size += column.getColumnName() != null ? column.getColumnName().length() : 0;
+            size += column.getColumnValue() != null ? column.getColumnValue().length() : 0;
+        }
+        return size;
+    }
+}
@@ -376,6 +376,9 @@ public class DbLoadAction implements InitializingBean, DisposableBean {
                     context.getFailedDatas().add(data);
                 }
 
+                // 目标库执行过ddl，失效一下对应表的meta缓存
+                dbDialect.reloadTable(data.getSchemaName(), data.getTableName());
+
             } catch (Throwable e) {
                 if (skipDdlException) {
                     // do skip
@@ -18,6 +18,7 @@ package com.alibaba.otter.node.etl.load.loader.db.interceptor.log;
 
 import java.text.MessageFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
@@ -27,6 +28,8 @@ import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
 
 import com.alibaba.otter.node.etl.OtterConstants;
+import com.alibaba.otter.node.etl.common.dump.AsyncDumper;
+import com.alibaba.otter.node.etl.common.dump.DumpRecord;
 import com.alibaba.otter.node.etl.load.loader.db.DbLoadDumper;
 import com.alibaba.otter.node.etl.load.loader.db.context.DbLoadContext;
 import com.alibaba.otter.node.etl.load.loader.interceptor.AbstractLoadInterceptor;
@@ -46,6 +49,7 @@ public class LogLoadInterceptor extends AbstractLoadInterceptor<DbLoadContext, E
     private int                 batchSize        = 50;
     private static String       context_format   = null;
     private boolean             dump             = true;
+    private AsyncDumper         asyncDumper;
 
     static {
         context_format = "* status : {0}  , time : {1} *" + SEP;
@@ -58,6 +62,11 @@ public class LogLoadInterceptor extends AbstractLoadInterceptor<DbLoadContext, E
         boolean dumpThisEvent = context.getPipeline().getParameters().isDumpEvent()
                                 || context.getPipeline().getParameters().isDryRun();
         if (dump && dumpThisEvent && logger.isInfoEnabled()) {
+            if (asyncDumper != null) {
+                asyncDumper.dump(new LoadDumpRecord("successed", context, true));
+                return;
+            }
+
             synchronized (LogLoadInterceptor.class) {
                 try {
                     MDC.put(OtterConstants.splitPipelineLoadLogFileKey,
@@ -82,6 +91,11 @@ public class LogLoadInterceptor extends AbstractLoadInterceptor<DbLoadContext, E
         boolean dumpThisEvent = context.getPipeline().getParameters().isDumpEvent()
                                 || context.getPipeline().getParameters().isDryRun();
         if (dump && dumpThisEvent && logger.isInfoEnabled()) {
+            if (asyncDumper != null) {
+                asyncDumper.dump(new LoadDumpRecord("error", context, false));
+                return;
+            }
+
             synchronized (LogLoadInterceptor.class) {
                 try {
                     MDC.put(OtterConstants.splitPipelineLoadLogFileKey,
@@ -104,6 +118,10 @@ public class LogLoadInterceptor extends AbstractLoadInterceptor<DbLoadContext, E
      * 分批输出多个数据
      */
     private void logEventDatas(List<EventData> eventDatas) {
+        logEventDatas(logger, eventDatas, batchSize);
+    }
+
+    private static void logEventDatas(Logger logger, List<EventData> eventDatas, int batchSize) {
         int size = eventDatas.size();
         // 开始输出每条记录
         int index = 0;
@@ -121,17 +139,77 @@ public class LogLoadInterceptor extends AbstractLoadInterceptor<DbLoadContext, E
         int successed = context.getProcessedDatas().size();
         int failed = context.getFailedDatas().size();
         int all = context.getPrepareDatas().size();
+        return dumpContextInfo(status, new Date(), context.getIdentity().toString(), all, successed, failed);
+    }
+
+    private static String dumpContextInfo(String status, Date time, String identity, int all, int successed,
+                                          int failed) {
         boolean isInterrupt = (all != (failed + successed));
-        Date now = new Date();
         SimpleDateFormat format = new SimpleDateFormat(TIMESTAMP_FORMAT);
-        return MessageFormat.format(context_format, status, format.format(now), context.getIdentity().toString(), all,
-                                    successed, failed, isInterrupt);
+        return MessageFormat.format(context_format, status, format.format(time), identity, all, successed, failed,
+                                    isInterrupt);
+    }
+
+    /**
+     * load的异步dump记录，load完成后数据不会再被修改，只需要拷贝一下列表
+     */
+    private class LoadDumpRecord extends DumpRecord {
+
+        private final String    status;
+        private final Date      time;
+        private final String    identity;
+        private final int       all;
+        private final boolean   withHeader;
+        private List<EventData> processedDatas;
+        private List<EventData> failedDatas;
+
+        public LoadDumpRecord(String status, DbLoadContext context, boolean withHeader){
+            super(logger, OtterConstants.splitPipelineLoadLogFileKey, context.getIdentity().getPipelineId(), true);
+            this.status = status;
+            this.time = new Date();
+            this.identity = context.getIdentity().toString();
+            this.all = context.getPrepareDatas().size();
+            this.withHeader = withHeader;
+            this.processedDatas = context.getProcessedDatas();
+            this.failedDatas = context.getFailedDatas();
+        }
+
+        protected long estimateSize() {
+            return isDetail() ? BASE_SIZE + sizeOf(processedDatas) + sizeOf(failedDatas) : BASE_SIZE;
+        }
+
+        protected void snapshot() {
+            processedDatas = new ArrayList<EventData>(processedDatas);
+            failedDatas = new ArrayList<EventData>(failedDatas);
+        }
+
+        protected void write(Logger logger) {
+            if (withHeader) {
+                logger.info(SEP + "****************************************************" + SEP);
+            }
+            logger.info(dumpContextInfo(status, time, identity, all, processedDatas.size(), failedDatas.size()));
+            if (withHeader) {
+                logger.info("****************************************************" + SEP);
+            }
+            if (isDetail()) {
+                logger.info("* process Data  *" + SEP);
+                logEventDatas(logger, processedDatas, batchSize);
+                logger.info("-----------------" + SEP);
+                logger.info("* failed Data *" + SEP);
+                logEventDatas(logger, failedDatas, batchSize);
+            }
+            logger.info("****************************************************" + SEP);
+        }
     }
 
     public void setDump(boolean dump) {
         this.dump = dump;
     }
 
+    public void setAsyncDumper(AsyncDumper asyncDumper) {
+        this.asyncDumper = asyncDumper;
+    }
+
     public void setBatchSize(int batchSize) {
         this.batchSize = batchSize;
     }
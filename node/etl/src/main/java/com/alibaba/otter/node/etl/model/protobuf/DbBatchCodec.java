@@ -0,0 +1,658 @@
+/*
+ * Copyright (C) 2010-2101 Alibaba Group Holding Limited.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.otter.node.etl.model.protobuf;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.alibaba.otter.shared.common.model.config.channel.ChannelParameter.SyncConsistency;
+import com.alibaba.otter.shared.common.model.config.channel.ChannelParameter.SyncMode;
+import com.alibaba.otter.shared.etl.model.DbBatch;
+import com.alibaba.otter.shared.etl.model.EventColumn;
+import com.alibaba.otter.shared.etl.model.EventData;
+import com.alibaba.otter.shared.etl.model.EventType;
+import com.alibaba.otter.shared.etl.model.FileBatch;
+import com.alibaba.otter.shared.etl.model.FileData;
+import com.alibaba.otter.shared.etl.model.Identity;
+import com.alibaba.otter.shared.etl.model.RowBatch;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.ExtensionRegistryLite;
+
+/**
+ * DbBatch的v2编码，v1为{@linkplain BatchProto.RowBatch} + {@linkplain BatchProto.FileBatch}的protobuf对象
+ *
+ * <pre>
+ * v2基于protobuf的wire格式手工编码rowData，相比v1：
+ * 1. 每个batch内按表构造字典，schema/table名以及列的name/type/index/isKey只在第一次出现时传输，之后只传输字典下标
+ * 2. 列值按类型编码：整数为zigzag varint，decimal为scale + unscaled varint，binary为原始字节，datetime为epoch秒 + 小数位
+ * 3. isNull/isUpdate使用bitmap，isNull的列不传输值
+ * 4. 类型化编码后不能还原出完全一致的字符串时，退化为string编码，保证解码后的columnValue和编码前一致
+ *
+ * fileBatch仍使用v1的{@linkplain BatchProto.FileBatch}，直接跟在rowData之后
+ * </pre>
+ */
+public class DbBatchCodec {
+
+    public static final int     VERSION_1      = 1;
+    public static final int     VERSION_2      = 2;
+
+    private static final int    BUFFER_SIZE    = 64 * 1024;
+    private static final int    FLAG_REMEDY    = 1;
+    private static final int    FLAG_NO_SCHEMA = 2;
+    private static final String ISO_8859_1     = "ISO-8859-1";
+
+    // 列值的编码类型
+    private static final int    VALUE_NULL     = 0;
+    private static final int    VALUE_STRING   = 1;
+    private static final int    VALUE_INTEGER  = 2;
+    private static final int    VALUE_DECIMAL  = 3;
+    private static final int    VALUE_BYTES    = 4;
+    private static final int    VALUE_DATETIME = 5;
+    private static final int    VALUE_DATE     = 6;
+
+    /**
+     * 按v2编码输出dbBatch，调用方负责关闭output
+     */
+    public static void write(DbBatch dbBatch, OutputStream output) throws IOException {
+        CodedOutputStream out = CodedOutputStream.newInstance(output, BUFFER_SIZE);
+        out.writeUInt32NoTag(VERSION_2);
+        RowBatch rowBatch = dbBatch.getRowBatch();
+        writeIdentity(out, rowBatch.getIdentity());
+        out.writeUInt32NoTag(rowBatch.getDatas().size());
+        Map<String, TableDictionary> tables = new HashMap<String, TableDictionary>();
+        for (EventData eventData : rowBatch.getDatas()) {
+            writeEventData(out, eventData, tables);
+        }
+
+        // fileBatch可能为空
+        out.writeBoolNoTag(dbBatch.getFileBatch() != null);
+        if (dbBatch.getFileBatch() != null) {
+            out.writeMessageNoTag(buildFileBatch(dbBatch.getFileBatch()));
+        }
+        out.flush();
+    }
+
+    /**
+     * 读取v2编码的dbBatch，rowData每读取一条就转化为EventData
+     */
+    public static DbBatch read(InputStream input) throws IOException {
+        CodedInputStream in = CodedInputStream.newInstance(input, BUFFER_SIZE);
+        in.setSizeLimit(Integer.MAX_VALUE);
+        return read(in);
+    }
+
+    /**
+     * 直接从ByteBuffer中解码，比如mmap映射的文件，不需要先拷贝到byte[]
+     */
+    public static DbBatch read(ByteBuffer buffer) throws IOException {
+        CodedInputStream in = CodedInputStream.newInstance(buffer);
+        in.setSizeLimit(Integer.MAX_VALUE);
+        return read(in);
+    }
+
+    private static DbBatch read(CodedInputStream in) throws IOException {
+        int version = in.readUInt32();
+        if (version != VERSION_2) {
+            throw new IOException("unsupported batch version [" + version + "]");
+        }
+
+        RowBatch rowBatch = new RowBatch();
+        rowBatch.setIdentity(readIdentity(in));
+        int size = in.readUInt32();
+        List<TableDictionary> tables = new ArrayList<TableDictionary>();
+        for (int i = 0; i < size; i++) {
+            rowBatch.merge(readEventData(in, tables));
+        }
+
+        DbBatch dbBatch = new DbBatch();
+        dbBatch.setRowBatch(rowBatch);
+        if (in.readBool()) {
+            BatchProto.FileBatch.Builder fileBatchBuilder = BatchProto.FileBatch.newBuilder();
+            in.readMessage(fileBatchBuilder, ExtensionRegistryLite.getEmptyRegistry());
+            dbBatch.setFileBatch(buildFileBatch(fileBatchBuilder.build()));
+        }
+        return dbBatch;
+    }
+
+    // ======================== fileBatch, v1/v2共用 ===================
+
+    public static BatchProto.FileBatch buildFileBatch(FileBatch fileBatch) {
+        BatchProto.FileBatch.Builder fileBatchBuilder = BatchProto.FileBatch.newBuilder();
+        fileBatchBuilder.setIdentity(build(fileBatch.getIdentity()));
+        // 构造对应的proto对象
+        for (FileData fileData : fileBatch.getFiles()) {
+            BatchProto.FileData.Builder fileDataBuilder = BatchProto.FileData.newBuilder();
+            fileDataBuilder.setPairId(fileData.getPairId());
+            fileDataBuilder.setTableId(fileData.getTableId());
+            if (fileData.getNameSpace() != null) {
+                fileDataBuilder.setNamespace(fileData.getNameSpace());
+            }
+            if (fileData.getPath() != null) {
+                fileDataBuilder.setPath(fileData.getPath());
+            }
+            fileDataBuilder.setEventType(fileData.getEventType().getValue());
+            fileDataBuilder.setSize(fileData.getSize());
+            fileDataBuilder.setLastModifiedTime(fileData.getLastModifiedTime());
+
+            fileBatchBuilder.addFiles(fileDataBuilder.build());// 添加一条fileData记录
+        }
+        return fileBatchBuilder.build();
+    }
+
+    public static FileBatch buildFileBatch(BatchProto.FileBatch filebatchProto) {
+        // 构造原始的model对象
+        FileBatch fileBatch = new FileBatch();
+        fileBatch.setIdentity(build(filebatchProto.getIdentity()));
+        for (BatchProto.FileData fileDataProto : filebatchProto.getFilesList()) {
+            FileData fileData = new FileData();
+            fileData.setPairId(fileDataProto.getPairId());
+            fileData.setTableId(fileDataProto.getTableId());
+            fileData.setEventType(EventType.valuesOf(fileDataProto.getEventType()));
+            fileData.setLastModifiedTime(fileDataProto.getLastModifiedTime());
+            fileData.setNameSpace(fileDataProto.getNamespace());
+            fileData.setPath(fileDataProto.getPath());
+            fileData.setSize(fileDataProto.getSize());
+            // 添加到filebatch中
+            fileBatch.getFiles().add(fileData);
+        }
+        return fileBatch;
+    }
+
+    // 构造proto对象
+    public static BatchProto.Identity build(Identity identity) {
+        BatchProto.Identity.Builder identityBuilder = BatchProto.Identity.newBuilder();
+        identityBuilder.setChannelId(identity.getChannelId());
+        identityBuilder.setPipelineId(identity.getPipelineId());
+        identityBuilder.setProcessId(identity.getProcessId());
+        return identityBuilder.build();
+    }
+
+    // 从proto对象构造回object
+    public static Identity build(BatchProto.Identity identityProto) {
+        Identity identity = new Identity();
+        identity.setChannelId(identityProto.getChannelId());
+        identity.setPipelineId(identityProto.getPipelineId());
+        identity.setProcessId(identityProto.getProcessId());
+        return identity;
+    }
+
+    // ======================== rowData v2 ===================
+
+    private static void writeIdentity(CodedOutputStream out, Identity identity) throws IOException {
+        out.writeInt64NoTag(identity.getChannelId());
+        out.writeInt64NoTag(identity.getPipelineId());
+        out.writeInt64NoTag(identity.getProcessId());
+    }
+
+    private static Identity readIdentity(CodedInputStream in) throws IOException {
+        Identity identity = new Identity();
+        identity.setChannelId(in.readInt64());
+        identity.setPipelineId(in.readInt64());
+        identity.setProcessId(in.readInt64());
+        return identity;
+    }
+
+    private static void writeEventData(CodedOutputStream out, EventData eventData, Map<String, TableDictionary> tables)
+                                                                                                                throws IOException {
+        String tableKey = eventData.getSchemaName() + "." + eventData.getTableName();
+        TableDictionary table = tables.get(tableKey);
+        if (table == null) {
+            // 第一次出现，输出表的定义
+            table = new TableDictionary(eventData.getSchemaName(), eventData.getTableName());
+            table.id = tables.size();
+            out.writeUInt32NoTag(table.id);
+            writeNullableString(out, table.schemaName);
+            writeNullableString(out, table.tableName);
+            tables.put(tableKey, table);
+        } else {
+            out.writeUInt32NoTag(table.id);
+        }
+
+        out.writeSInt64NoTag(eventData.getTableId());
+        out.writeSInt64NoTag(eventData.getPairId());
+        out.writeStringNoTag(eventData.getEventType().getValue());
+        out.writeInt64NoTag(eventData.getExecuteTime());
+        writeNullableString(out, eventData.getSyncMode() != null ? eventData.getSyncMode().getValue() : null);
+        writeNullableString(out,
+            eventData.getSyncConsistency() != null ? eventData.getSyncConsistency().getValue() : null);
+        out.writeInt64NoTag(eventData.getSize());
+        int flags = (eventData.isRemedy() ? FLAG_REMEDY : 0) | (eventData.isWithoutSchema() ? FLAG_NO_SCHEMA : 0);
+        out.writeUInt32NoTag(flags);
+        writeNullableString(out, eventData.getSql());
+        writeNullableString(out, eventData.getDdlSchemaName());
+        writeNullableString(out, eventData.getHint());
+
+        writeColumns(out, eventData.getKeys(), table);
+        writeColumns(out, eventData.getOldKeys(), table);
+        writeColumns(out, eventData.getColumns(), table);
+    }
+
+    private static EventData readEventData(CodedInputStream in, List<TableDictionary> tables) throws IOException {
+        int tableRef = in.readUInt32();
+        TableDictionary table = null;
+        if (tableRef == tables.size()) {
+            table = new TableDictionary(readNullableString(in), readNullableString(in));
+            tables.add(table);
+        } else {
+            table = tables.get(tableRef);
+        }
+
+        EventData eventData = new EventData();
+        eventData.setSchemaName(table.schemaName);
+        eventData.setTableName(table.tableName);
+        eventData.setTableId(in.readSInt64());
+        eventData.setPairId(in.readSInt64());
+        eventData.setEventType(EventType.valuesOf(in.readString()));
+        eventData.setExecuteTime(in.readInt64());
+        String syncMode = readNullableString(in);
+        if (syncMode != null) {
+            eventData.setSyncMode(SyncMode.valuesOf(syncMode));
+        }
+        String syncConsistency = readNullableString(in);
+        if (syncConsistency != null) {
+            eventData.setSyncConsistency(SyncConsistency.valuesOf(syncConsistency));
+        }
+        eventData.setSize(in.readInt64());
+        int flags = in.readUInt32();
+        eventData.setRemedy((flags & FLAG_REMEDY) != 0);
+        eventData.setWithoutSchema((flags & FLAG_NO_SCHEMA) != 0);
+        eventData.setSql(readNullableString(in));
+        eventData.setDdlSchemaName(readNullableString(in));
+        eventData.setHint(readNullableString(in));
+
+        eventData.setKeys(readColumns(in, table));
+        eventData.setOldKeys(readColumns(in, table));
+        eventData.setColumns(readColumns(in, table));
+        return eventData;
+    }
+
+    private static void writeColumns(CodedOutputStream out, List<EventColumn> columns, TableDictionary table)
+                                                                                                             throws IOException {
+        int size = columns == null ? 0 : columns.size();
+        out.writeUInt32NoTag(size);
+        if (size == 0) {
+            return;
+        }
+
+        byte[] nulls = new byte[(size + 7) / 8];
+        byte[] updates = new byte[(size + 7) / 8];
+        for (int i = 0; i < size; i++) {
+            EventColumn column = columns.get(i);
+            if (column.isNull()) {
+                nulls[i >> 3] |= 1 << (i & 7);
+            }
+            if (column.isUpdate()) {
+                updates[i >> 3] |= 1 << (i & 7);
+            }
+        }
+        out.writeRawBytes(nulls);
+        out.writeRawBytes(updates);
+
+        for (EventColumn column : columns) {
+            String columnKey = column.getColumnName() + "|" + column.getColumnType() + "|" + column.getIndex() + "|"
+                               + column.isKey();
+            Integer ref = table.columnRefs.get(columnKey);
+            if (ref == null) {
+                // 第一次出现，输出列的定义
+                out.writeUInt32NoTag(table.columns.size());
+                writeNullableString(out, column.getColumnName());
+                out.writeSInt32NoTag(column.getColumnType());
+                out.writeSInt32NoTag(column.getIndex());
+                out.writeBoolNoTag(column.isKey());
+                table.columnRefs.put(columnKey, table.columns.size());
+                table.columns.add(column);
+            } else {
+                out.writeUInt32NoTag(ref);
+            }
+
+            if (!column.isNull()) {
+                writeValue(out, column.getColumnType(), column.getColumnValue());
+            }
+        }
+    }
+
+    private static List<EventColumn> readColumns(CodedInputStream in, TableDictionary table) throws IOException {
+        int size = in.readUInt32();
+        List<EventColumn> columns = new ArrayList<EventColumn>(size);
+        if (size == 0) {
+            return columns;
+        }
+
+        byte[] nulls = in.readRawBytes((size + 7) / 8);
+        byte[] updates = in.readRawBytes((size + 7) / 8);
+        for (int i = 0; i < size; i++) {
+            int ref = in.readUInt32();
+            EventColumn define = null;
+            if (ref == table.columns.size()) {
+                define = new EventColumn();
+                define.setColumnName(readNullableString(in));
+                define.setColumnType(in.readSInt32());
+                define.setIndex(in.readSInt32());
+                define.setKey(in.readBool());
+                table.columns.add(define);
+            } else {
+                define = table.columns.get(ref);
+            }
+
+            EventColumn column = new EventColumn();
+            column.setColumnName(define.getColumnName());
+            column.setColumnType(define.getColumnType());
+            column.setIndex(define.getIndex());
+            column.setKey(define.isKey());
+            column.setNull((nulls[i >> 3] & (1 << (i & 7))) != 0);
+            column.setUpdate((updates[i >> 3] & (1 << (i & 7))) != 0);
+            if (!column.isNull()) {
+                column.setColumnValue(readValue(in));
+            }
+            columns.add(column);
+        }
+        return columns;
+    }
+
+    // ======================== column value ===================
+
+    private static void writeValue(CodedOutputStream out, int type, String value) throws IOException {
+        if (value == null) {
+            out.writeRawByte(VALUE_NULL);
+            return;
+        }
+
+        switch (type) {
+            case Types.BIT:
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT:
+                Long longValue = parseLong(value);
+                if (longValue != null) {
+                    out.writeRawByte(VALUE_INTEGER);
+                    out.writeSInt64NoTag(longValue);
+                    return;
+                }
+                break;
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                BigDecimal decimal = parseDecimal(value);
+                if (decimal != null) {
+                    out.writeRawByte(VALUE_DECIMAL);
+                    out.writeSInt32NoTag(decimal.scale());
+                    out.writeSInt64NoTag(decimal.unscaledValue().longValue());
+                    return;
+                }
+                break;
+            case Types.BINARY:
+            case Types.VARBINARY:
+            case Types.LONGVARBINARY:
+            case Types.BLOB:
+                // binary数据在otter中为ISO-8859-1编码的字符串
+                if (isLatin1(value)) {
+                    out.writeRawByte(VALUE_BYTES);
+                    out.writeByteArrayNoTag(value.getBytes(ISO_8859_1));
+                    return;
+                }
+                break;
+            case Types.TIMESTAMP:
+                long[] datetime = parseDatetime(value);
+                if (datetime != null) {
+                    out.writeRawByte(VALUE_DATETIME);
+                    out.writeSInt64NoTag(datetime[0]);
+                    out.writeUInt32NoTag((int) datetime[1]);
+                    out.writeUInt32NoTag((int) datetime[2]);
+                    return;
+                }
+                break;
+            case Types.DATE:
+                long[] date = parseDate(value);
+                if (date != null) {
+                    out.writeRawByte(VALUE_DATE);
+                    out.writeSInt64NoTag(date[0]);
+                    return;
+                }
+                break;
+            default:
+                break;
+        }
+
+        out.writeRawByte(VALUE_STRING);
+        out.writeStringNoTag(value);
+    }
+
+    private static String readValue(CodedInputStream in) throws IOException {
+        int valueType = in.readRawByte();
+        switch (valueType) {
+            case VALUE_NULL:
+                return null;
+            case VALUE_STRING:
+                return in.readString();
+            case VALUE_INTEGER:
+                return String.valueOf(in.readSInt64());
+            case VALUE_DECIMAL:
+                int scale = in.readSInt32();
+                return new BigDecimal(BigInteger.valueOf(in.readSInt64()), scale).toPlainString();
+            case VALUE_BYTES:
+                return new String(in.readByteArray(), ISO_8859_1);
+            case VALUE_DATETIME:
+                long seconds = in.readSInt64();
+                int fraction = in.readUInt32();
+                int fractionDigits = in.readUInt32();
+                return formatDatetime(seconds, fraction, fractionDigits);
+            case VALUE_DATE:
+                return formatDate(in.readSInt64());
+            default:
+                throw new IOException("unknow value type [" + valueType + "]");
+        }
+    }
+
+    // 只有能还原出完全一致的字符串才使用整数编码，比如前导0/+号等都退化为string
+    private static Long parseLong(String value) {
+        try {
+            long longValue = Long.parseLong(value);
+            return String.valueOf(longValue).equals(value) ? longValue : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static BigDecimal parseDecimal(String value) {
+        try {
+            BigDecimal decimal = new BigDecimal(value);
+            if (decimal.unscaledValue().bitLength() < 64 && decimal.toPlainString().equals(value)) {
+                return decimal;
+            }
+            return null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static boolean isLatin1(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) > 0xFF) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 解析yyyy-MM-dd HH:mm:ss[.SSSSSSSSS]，返回{epoch秒, 小数部分, 小数位数}，不涉及时区，只用于紧凑编码
+    private static long[] parseDatetime(String value) {
+        if (value.length() < 19 || value.length() == 20 || value.length() > 29) {
+            return null;
+        }
+
+        long[] date = parseDate(value.substring(0, 10));
+        if (date == null || value.charAt(10) != ' ' || value.charAt(13) != ':' || value.charAt(16) != ':') {
+            return null;
+        }
+
+        int hour = parseDigits(value, 11, 13);
+        int minute = parseDigits(value, 14, 16);
+        int second = parseDigits(value, 17, 19);
+        int fraction = 0;
+        int fractionDigits = 0;
+        if (value.length() > 19) {
+            if (value.charAt(19) != '.') {
+                return null;
+            }
+            fraction = parseDigits(value, 20, value.length());
+            fractionDigits = value.length() - 20;
+        }
+        if (hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59 || fraction < 0) {
+            return null;
+        }
+
+        long seconds = date[0] * 86400 + hour * 3600 + minute * 60 + second;
+        if (!formatDatetime(seconds, fraction, fractionDigits).equals(value)) {
+            return null;
+        }
+        return new long[] { seconds, fraction, fractionDigits };
+    }
+
+    // 解析yyyy-MM-dd，返回{epoch天数}，像0000-00-00这类的值会退化为string
+    private static long[] parseDate(String value) {
+        if (value.length() != 10 || value.charAt(4) != '-' || value.charAt(7) != '-') {
+            return null;
+        }
+
+        int year = parseDigits(value, 0, 4);
+        int month = parseDigits(value, 5, 7);
+        int day = parseDigits(value, 8, 10);
+        if (year < 1 || month < 1 || month > 12 || day < 1 || day > 31) {
+            return null;
+        }
+
+        long days = daysFromCivil(year, month, day);
+        if (!formatDate(days).equals(value)) {
+            return null; // 比如02-30这类不存在的日期
+        }
+        return new long[] { days };
+    }
+
+    private static int parseDigits(String value, int start, int end) {
+        int result = 0;
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+
+    private static String formatDatetime(long seconds, int fraction, int fractionDigits) {
+        long days = seconds / 86400;
+        long secondOfDay = seconds - days * 86400;
+        if (secondOfDay < 0) { // 1970年之前的时间
+            days--;
+            secondOfDay += 86400;
+        }
+        StringBuilder builder = new StringBuilder(29);
+        builder.append(formatDate(days)).append(' ');
+        pad(builder, secondOfDay / 3600, 2);
+        builder.append(':');
+        pad(builder, (secondOfDay / 60) % 60, 2);
+        builder.append(':');
+        pad(builder, secondOfDay % 60, 2);
+        if (fractionDigits > 0) {
+            builder.append('.');
+            pad(builder, fraction, fractionDigits);
+        }
+        return builder.toString();
+    }
+
+    private static String formatDate(long days) {
+        long[] civil = civilFromDays(days);
+        StringBuilder builder = new StringBuilder(10);
+        pad(builder, civil[0], 4);
+        builder.append('-');
+        pad(builder, civil[1], 2);
+        builder.append('-');
+        pad(builder, civil[2], 2);
+        return builder.toString();
+    }
+
+    private static void pad(StringBuilder builder, long value, int width) {
+        String str = String.valueOf(value);
+        for (int i = str.length(); i < width; i++) {
+            builder.append('0');
+        }
+        builder.append(str);
+    }
+
+    // 公历日期转换为1970-01-01开始的天数
+    private static long daysFromCivil(long year, long month, long day) {
+        year -= month <= 2 ? 1 : 0;
+        long era = (year >= 0 ? year : year - 399) / 400;
+        long yoe = year - era * 400;
+        long doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097 + doe - 719468;
+    }
+
+    // 1970-01-01开始的天数转换为公历日期{year, month, day}
+    private static long[] civilFromDays(long days) {
+        days += 719468;
+        long era = (days >= 0 ? days : days - 146096) / 146097;
+        long doe = days - era * 146097;
+        long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp = (5 * doy + 2) / 153;
+        long day = doy - (153 * mp + 2) / 5 + 1;
+        long month = mp < 10 ? mp + 3 : mp - 9;
+        long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+        return new long[] { year, month, day };
+    }
+
+    private static void writeNullableString(CodedOutputStream out, String value) throws IOException {
+        out.writeBoolNoTag(value != null);
+        if (value != null) {
+            out.writeStringNoTag(value);
+        }
+    }
+
+    private static String readNullableString(CodedInputStream in) throws IOException {
+        return in.readBool() ? in.readString() : null;
+    }
+
+    /**
+     * 单个batch内一张表的字典，记录出现过的列定义
+     */
+    private static class TableDictionary {
+
+        private int                  id;
+        private String               schemaName;
+        private String               tableName;
+        private List<EventColumn>    columns    = new ArrayList<EventColumn>();
+        private Map<String, Integer> columnRefs = new HashMap<String, Integer>();
+
+        public TableDictionary(String schemaName, String tableName){
+            this.schemaName = schemaName;
+            this.tableName = tableName;
+        }
+    }
+}
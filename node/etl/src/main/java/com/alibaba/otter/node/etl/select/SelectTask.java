@@ -16,6 +16,7 @@
 
 package com.alibaba.otter.node.etl.select;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.concurrent.BlockingQueue;
@@ -23,6 +24,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.LockSupport;
 
 import org.slf4j.MDC;
@@ -86,6 +88,15 @@ import com.alibaba.otter.shared.etl.model.RowBatch;
  * b. ProcessSelect/ProcessTermin在处理过程中，会检查一下当前节点是否为抢占mainstem成功的节点，如果发现不是，立马停止，继续监听mainstem
  * c. ProcessSelect进行get数据之前，会等到ProcessTermin会读取未被处理过termin信号，对上一次的selector进行ack/rollback处理
  *      i. 注意：ProcessSelect进行get数据时，需要保证batch/termin/get操作状态保持一致，必须都处于同一个数据点上
+ * 
+ * 4. 预取机制(selectPrefetchSize > 0)
+ * a. 启动ProcessPrefetch线程提前get+解析数据，放入有界的prefetchBuffer，ProcessSelect在等待processId时，下一批数据已经在准备
+ * b. 预取的数据会记录get时的rversion，出现rollback后版本号发生变化，ProcessSelect会直接丢弃rollback前预取的数据
+ * c. ProcessPrefetch和ProcessSelect一样受canStartSelector控制，rollback过程中不会并发进行get操作
+ * 
+ * 5. 空批次合并
+ * a. 回环数据/未匹配的表被过滤后，会产生大量不需要wait termin信号的空批次
+ * b. ProcessTermin遇到空批次时，会一次性取出buffer中连续的空批次，合并成一次ack，delayReset也只在合并后按时间间隔推送一次
  * </pre>
  * 
  * @author jianghang 2012-7-31 下午05:39:06
@@ -93,6 +104,8 @@ import com.alibaba.otter.shared.etl.model.RowBatch;
  */
 public class SelectTask extends GlobalTask {
 
+    private static final long          DELAY_RESET_INTERVAL = 60 * 1000L;
+
     // 运行调度控制
     private volatile boolean           isStart          = false;
     // 运行
@@ -101,10 +114,15 @@ public class SelectTask extends GlobalTask {
     private OtterSelector<Message>     otterSelector;
     private ExecutorService            executor;
     private BlockingQueue<BatchTermin> batchBuffer      = new LinkedBlockingQueue<BatchTermin>(50); // 设置有界队列，避免小batch处理太多
+    private volatile BlockingQueue<PrefetchMessage> prefetchBuffer;                                // 预取的数据，为null代表不启用预取
     private boolean                    needCheck        = false;
     private BooleanMutex               canStartSelector = new BooleanMutex(false);                 // 非常轻量的一个阻塞式实现，调用成本低
     private AtomicInteger              rversion         = new AtomicInteger(0);
     private long                       lastResetTime    = new Date().getTime();
+    // 空批次合并ack的统计
+    private AtomicLong                 coalescedAcks    = new AtomicLong(0);                        // 合并后的ack次数
+    private AtomicLong                 coalescedBatchs  = new AtomicLong(0);                        // 被合并ack的空批次数
+    private AtomicLong                 delayResets      = new AtomicLong(0);                        // delayReset推送次数
 
     public SelectTask(Long pipelineId){
         super(pipelineId);
@@ -164,13 +182,23 @@ public class SelectTask extends GlobalTask {
             return;
         }
 
-        executor = Executors.newFixedThreadPool(2); // 启动两个线程
+        int prefetchSize = configClientService.findPipeline(pipelineId).getParameters().getSelectPrefetchSize();
+        if (prefetchSize > 0) {
+            prefetchBuffer = new LinkedBlockingQueue<PrefetchMessage>(prefetchSize);
+            executor = Executors.newFixedThreadPool(3); // 启动三个线程
+        } else {
+            prefetchBuffer = null;
+            executor = Executors.newFixedThreadPool(2); // 启动两个线程
+        }
         // 启动selector
         otterSelector = otterSelectorFactory.getSelector(pipelineId); // 获取对应的selector
         otterSelector.start();
 
         canStartSelector.set(false);// 初始化为false
         startProcessTermin();
+        if (prefetchBuffer != null) {
+            startProcessPrefetch();
+        }
         startProcessSelect();
 
         isStart = true;
@@ -230,22 +258,37 @@ public class SelectTask extends GlobalTask {
                 // 出现阻塞挂起时，等待mananger处理完成，解挂开启同步
                 arbitrateEventService.toolEvent().waitForPermit(pipelineId);// 出现rollback后能及时停住
 
-                // 使用startVersion要解决的一个问题：出现rollback时，尽可能判断取出来的数据是rollback前还是rollback后，想办法丢弃rollback前的数据。
-                // (因为出现rollback，之前取出去的几个批次的数据其实是没有执行成功，get取出来的数据会是其后一批数据，如果不丢弃的话，会出现后面的数据先执行，然后又回到出错的点，再执行一遍)
-                // int startVersion = rversion.get();
-                Message gotMessage = otterSelector.selector();
+                Message gotMessage = null;
+                int startVersion = 0;
+                if (prefetchBuffer != null) {
+                    PrefetchMessage prefetchMessage = prefetchBuffer.take();
+                    if (prefetchMessage.getVersion() != rversion.get()) {
+                        // rollback前预取的数据，直接丢弃，canal中已经rollback过
+                        logger.info("rollback happend , skip prefetch message : {}",
+                            prefetchMessage.getMessage().getId());
+                        continue;
+                    }
 
-                // modify by ljh at 2012-09-10，startVersion获取操作应该放在拿到数据之后
-                // 放在前面 : (遇到一个并发bug)
-                // // a.
-                // 先拿startVersion，再获取数据，在拿数据过程中rollback开始并完成了，导致selector返回时数据已经取到了末尾
-                // // b. 在进行version判断时发现已经有变化，导致又触发一次拿数据的过程，此时的get
-                // cursor已经到队列的末尾，拿不出任何数据，所以出现死等情况
-                // 放在后面 : (一点点瑕疵)
-                // // a.
-                // 并发操作rollback和selector时，针对拿到rollback前的老数据，此时startVersion还未初始化，导致判断不出出现过rollback操作，后面的变更数据会提前同步
-                // (概率性会比较高，取决于selector和初始化startVersion的时间间隔)
-                int startVersion = rversion.get();
+                    gotMessage = prefetchMessage.getMessage();
+                    startVersion = prefetchMessage.getVersion();
+                } else {
+                    // 使用startVersion要解决的一个问题：出现rollback时，尽可能判断取出来的数据是rollback前还是rollback后，想办法丢弃rollback前的数据。
+                    // (因为出现rollback，之前取出去的几个批次的数据其实是没有执行成功，get取出来的数据会是其后一批数据，如果不丢弃的话，会出现后面的数据先执行，然后又回到出错的点，再执行一遍)
+                    // int startVersion = rversion.get();
+                    gotMessage = otterSelector.selector();
+
+                    // modify by ljh at 2012-09-10，startVersion获取操作应该放在拿到数据之后
+                    // 放在前面 : (遇到一个并发bug)
+                    // // a.
+                    // 先拿startVersion，再获取数据，在拿数据过程中rollback开始并完成了，导致selector返回时数据已经取到了末尾
+                    // // b. 在进行version判断时发现已经有变化，导致又触发一次拿数据的过程，此时的get
+                    // cursor已经到队列的末尾，拿不出任何数据，所以出现死等情况
+                    // 放在后面 : (一点点瑕疵)
+                    // // a.
+                    // 并发操作rollback和selector时，针对拿到rollback前的老数据，此时startVersion还未初始化，导致判断不出出现过rollback操作，后面的变更数据会提前同步
+                    // (概率性会比较高，取决于selector和初始化startVersion的时间间隔)
+                    startVersion = rversion.get();
+                }
 
                 if (canStartSelector.state() == false) { // 是否出现异常
                     // 回滚在出现异常的瞬间，拿出来的数据，因为otterSelector.selector()会循环，可能出现了rollback，其还未感知到
@@ -266,7 +309,7 @@ public class SelectTask extends GlobalTask {
                     // 先睡眠一段时间，保证channel有足够的时间变成pause态，即使没有变成PAUSE态，***MemoryArbitrateEvent里面有回滚操作兜底。
                     Thread.sleep(10 * 1000);
                     arbitrateEventService.toolEvent().waitForPermit(pipelineId);
-                    gotMessage = otterSelector.selector();// 这时不管有没有数据，都需要执行一次s/e/t/l
+                    gotMessage = selectAfterRollback();// 这时不管有没有数据，都需要执行一次s/e/t/l
                 }
 
                 final Message message = gotMessage;
@@ -357,6 +400,69 @@ public class SelectTask extends GlobalTask {
         }
     }
 
+    /**
+     * 预取数据，get+解析canal数据后放入prefetchBuffer
+     */
+    private void startProcessPrefetch() {
+        executor.submit(new Runnable() {
+
+            public void run() {
+                MDC.put(OtterConstants.splitPipelineLogFileKey, String.valueOf(pipelineId));
+                String currentName = Thread.currentThread().getName();
+                Thread.currentThread().setName(createTaskName(pipelineId, "ProcessPrefetch"));
+                try {
+                    processPrefetch();
+                } finally {
+                    Thread.currentThread().setName(currentName);
+                    MDC.remove(OtterConstants.splitPipelineLogFileKey);
+                }
+            }
+        });
+    }
+
+    private void processPrefetch() {
+        while (running) {
+            try {
+                // 和ProcessSelect一样，rollback过程中不允许get数据
+                canStartSelector.get();
+                arbitrateEventService.toolEvent().waitForPermit(pipelineId);
+
+                Message gotMessage = otterSelector.selector();
+                int version = rversion.get();
+                if (canStartSelector.state() == false) { // 是否出现异常
+                    rollback(gotMessage.getId());
+                    continue;
+                }
+
+                prefetchBuffer.put(new PrefetchMessage(gotMessage, version));// 队列满时会阻塞，控制预取的深度
+            } catch (Throwable e) {
+                if (!isInterrupt(e)) {
+                    logger.error(String.format("[%s] selectTask prefetch is error!", pipelineId), e);
+                    sendRollbackTermin(pipelineId, e);
+                } else {
+                    logger.info(String.format("[%s] selectTask prefetch is interrrupt!", pipelineId), e);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * rollback完成后重新获取一次数据，预取模式下需要跳过rollback前预取的数据
+     */
+    private Message selectAfterRollback() throws InterruptedException {
+        if (prefetchBuffer == null) {
+            return otterSelector.selector();
+        }
+
+        while (true) {
+            PrefetchMessage prefetchMessage = prefetchBuffer.take();
+            if (prefetchMessage.getVersion() == rversion.get()) {
+                return prefetchMessage.getMessage();
+            }
+        }
+    }
+
     private void startProcessTermin() {
         executor.submit(new Runnable() {
 
@@ -388,17 +494,18 @@ public class SelectTask extends GlobalTask {
                                 }
 
                                 BatchTermin batch = batchBuffer.take();
+                                if (!batch.isNeedWait() && lastStatus) {
+                                    // 不需要wait的批次，上一个batch成功，合并后续连续的空批次一起ack
+                                    processEmptyTermins(batch);
+                                    continue;
+                                }
+
                                 logger.info("start process termin : {}", batch.toString());
                                 if (batch.isNeedWait()) {
                                     lastStatus = processTermin(lastStatus, batch.getBatchId(), batch.getProcessId());
                                 } else {
-                                    // 不需要wait的批次，直接以上一个batch的结果决定是否ack
-                                    if (lastStatus) {
-                                        ack(batch.getBatchId());
-                                        sendDelayReset(pipelineId);
-                                    } else {
-                                        rollback(batch.getBatchId());// 会阻塞selector等待所有batch的rollback操作完成
-                                    }
+                                    // 上一个batch失败，直接rollback
+                                    rollback(batch.getBatchId());// 会阻塞selector等待所有batch的rollback操作完成
                                 }
 
                                 logger.info("end process termin : {}  result : {}", batch.toString(), lastStatus);
@@ -434,6 +541,29 @@ public class SelectTask extends GlobalTask {
         });
     }
 
+    /**
+     * 合并buffer中连续的空批次，只进行一次ack
+     */
+    private void processEmptyTermins(BatchTermin first) {
+        List<Long> batchIds = new ArrayList<Long>();
+        batchIds.add(first.getBatchId());
+        // ProcessTermin是唯一的消费者，peek到的数据一定可以poll出来
+        BatchTermin next = batchBuffer.peek();
+        while (next != null && !next.isNeedWait()) {
+            batchIds.add(batchBuffer.poll().getBatchId());
+            next = batchBuffer.peek();
+        }
+
+        ack(batchIds);
+        sendDelayReset(pipelineId);
+        coalescedAcks.incrementAndGet();
+        coalescedBatchs.addAndGet(batchIds.size());
+        if (logger.isDebugEnabled()) {
+            logger.debug("coalesced ack empty termin : {} ~ {} , size : {}",
+                new Object[] { batchIds.get(0), batchIds.get(batchIds.size() - 1), batchIds.size() });
+        }
+    }
+
     private boolean processTermin(boolean lastStatus, Long batchId, Long processId) throws InterruptedException {
         int retry = 0;
         SelectException exception = null;
@@ -491,6 +621,8 @@ public class SelectTask extends GlobalTask {
         notifyRollback();
         // otterSelector.rollback(batchId);
         otterSelector.rollback();// 一旦出错，rollback所有的mark，避免拿出后面的数据进行同步
+        // rpc/stream的数据保存在生产端，load节点发起的rollback无法释放，在这里释放一下，避免占满存储
+        rollbackPipe(pipelineId);
     }
 
     private void ack(Long batchId) {
@@ -498,9 +630,17 @@ public class SelectTask extends GlobalTask {
         otterSelector.ack(batchId);
     }
 
+    private void ack(List<Long> batchIds) {
+        canStartSelector.set(true);
+        otterSelector.ack(batchIds);
+    }
+
     private void notifyRollback() {
         canStartSelector.set(false);
         rversion.incrementAndGet();// 变更一下版本
+        if (prefetchBuffer != null) {
+            prefetchBuffer.clear();// 预取的数据都需要丢弃，释放一下内存
+        }
     }
 
     /**
@@ -579,6 +719,29 @@ public class SelectTask extends GlobalTask {
 
     }
 
+    /**
+     * 预取的数据，记录get时的rversion
+     */
+    public static class PrefetchMessage {
+
+        private Message message;
+        private int     version;
+
+        public PrefetchMessage(Message message, int version){
+            this.message = message;
+            this.version = version;
+        }
+
+        public Message getMessage() {
+            return message;
+        }
+
+        public int getVersion() {
+            return version;
+        }
+
+    }
+
     private void sendDelayStat(long pipelineId, Long endTime, Long startTime) {
         DelayCount delayCount = new DelayCount();
         delayCount.setPipelineId(pipelineId);
@@ -592,18 +755,31 @@ public class SelectTask extends GlobalTask {
 
     private void sendDelayReset(long pipelineId) {
         long currentTime = System.currentTimeMillis();
-        if (currentTime - lastResetTime > 60 * 1000) {
+        if (currentTime - lastResetTime > DELAY_RESET_INTERVAL) {
             // 60秒向manager推送一次配置
             lastResetTime = currentTime;
+            delayResets.incrementAndGet();
             DelayCount delayCount = new DelayCount();
             delayCount.setPipelineId(pipelineId);
             delayCount.setNumber(0L);
             long delayTime = currentTime - otterSelector.lastEntryTime();
             delayCount.setTime(delayTime);
             statisticsClientService.sendResetDelayCount(delayCount);
+            if (coalescedAcks.get() > 0) {
+                logger.info("coalesced empty termin , acks : {} , batchs : {} , delayResets : {}", new Object[] {
+                        coalescedAcks.get(), coalescedBatchs.get(), delayResets.get() });
+            }
         }
     }
 
+    /**
+     * 空批次合并ack的统计信息
+     */
+    public String getCoalescedInfo() {
+        return "coalesced acks:" + coalescedAcks.get() + " , batchs:" + coalescedBatchs.get() + " , delayResets:"
+               + delayResets.get();
+    }
+
     // ======================= setter / getter ===================
 
     public void setOtterSelectorFactory(OtterSelectorFactory otterSelectorFactory) {
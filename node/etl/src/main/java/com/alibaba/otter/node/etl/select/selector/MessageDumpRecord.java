@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2010-2101 Alibaba Group Holding Limited.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.otter.node.etl.select.selector;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.commons.lang.SystemUtils;
+import org.slf4j.Logger;
+
+import com.alibaba.otter.canal.protocol.CanalEntry.Header;
+import com.alibaba.otter.node.etl.OtterConstants;
+import com.alibaba.otter.node.etl.common.dump.DumpRecord;
+import com.alibaba.otter.shared.etl.model.EventData;
+
+/**
+ * selector的dump记录，只记录位点信息和解析后的数据快照，格式化在后台线程中完成
+ */
+public class MessageDumpRecord extends DumpRecord {
+
+    private static final String SEP = SystemUtils.LINE_SEPARATOR;
+    private final Long          batchId;
+    private final Header        startHeader;
+    private final Header        endHeader;
+    private final int           total;
+    private final Date          time;
+    private final int           logSplitSize;
+    private List<EventData>     datas;
+    private int                 normal;
+
+    public MessageDumpRecord(Logger logger, Long pipelineId, Message<EventData> message, Header startHeader,
+                             Header endHeader, int total, boolean detail, int logSplitSize){
+        super(logger, OtterConstants.splitPipelineSelectLogFileKey, pipelineId, detail);
+        this.batchId = message.getId();
+        this.datas = message.getDatas();
+        this.normal = datas.size();
+        this.startHeader = startHeader;
+        this.endHeader = endHeader;
+        this.total = total;
+        this.time = new Date();
+        this.logSplitSize = logSplitSize;
+    }
+
+    protected long estimateSize() {
+        return isDetail() ? BASE_SIZE + sizeOf(datas) : BASE_SIZE;
+    }
+
+    protected void snapshot() {
+        if (isDetail()) {
+            // 后续extract会修改EventData，需要拷贝一份
+            List<EventData> snapshot = new ArrayList<EventData>(datas.size());
+            for (EventData data : datas) {
+                snapshot.add(data.clone());
+            }
+            datas = snapshot;
+        } else {
+            datas = null;
+        }
+    }
+
+    protected void write(Logger logger) {
+        logger.info(SEP + "****************************************************" + SEP);
+        logger.info(MessageDumper.dumpMessageInfo(batchId,
+            normal,
+            MessageDumper.dumpPosition(startHeader),
+            MessageDumper.dumpPosition(endHeader),
+            total,
+            time));
+        logger.info("****************************************************" + SEP);
+        if (isDetail() && datas != null) {
+            int size = datas.size();
+            int index = 0;
+            do {
+                int end = index + logSplitSize >= size ? size : index + logSplitSize;
+                logger.info(MessageDumper.dumpEventDatas(datas.subList(index, end)));
+                index += logSplitSize;
+            } while (index < size);
+            logger.info("****************************************************" + SEP);
+        }
+    }
+}
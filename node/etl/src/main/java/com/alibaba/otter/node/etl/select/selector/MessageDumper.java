@@ -25,6 +25,7 @@ import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.SystemUtils;
 import org.springframework.util.CollectionUtils;
 
+import com.alibaba.otter.canal.protocol.CanalEntry.Header;
 import com.alibaba.otter.shared.etl.model.EventColumn;
 import com.alibaba.otter.shared.etl.model.EventData;
 
@@ -38,6 +39,7 @@ public class MessageDumper {
 
     private static final String SEP                    = SystemUtils.LINE_SEPARATOR;
     private static final String TIMESTAMP_FORMAT       = "yyyy-MM-dd HH:mm:ss:SSS";
+    private static final String DATE_FORMAT            = "yyyy-MM-dd HH:mm:ss";
     private static String       context_format         = null;
     private static String       eventData_format       = null;
     private static int          event_default_capacity = 1024;                      // 预设值StringBuilder，减少扩容影响
@@ -63,11 +65,26 @@ public class MessageDumper {
     }
 
     public static String dumpMessageInfo(Message<EventData> message, String startPosition, String endPosition, int total) {
-        Date now = new Date();
+        return dumpMessageInfo(message.getId(), message.getDatas().size(), startPosition, endPosition, total, new Date());
+    }
+
+    public static String dumpMessageInfo(Long batchId, int normal, String startPosition, String endPosition, int total,
+                                         Date time) {
         SimpleDateFormat format = new SimpleDateFormat(TIMESTAMP_FORMAT);
-        int normal = message.getDatas().size();
-        return MessageFormat.format(context_format, String.valueOf(message.getId()), total, normal, total - normal,
-                                    format.format(now), startPosition, endPosition);
+        return MessageFormat.format(context_format, String.valueOf(batchId), total, normal, total - normal,
+                                    format.format(time), startPosition, endPosition);
+    }
+
+    public static String dumpPosition(Header header) {
+        if (header == null) {
+            return null;
+        }
+
+        long time = header.getExecuteTime();
+        Date date = new Date(time);
+        SimpleDateFormat format = new SimpleDateFormat(DATE_FORMAT);
+        return header.getLogfileName() + ":" + header.getLogfileOffset() + ":" + header.getExecuteTime() + "("
+               + format.format(date) + ")";
     }
 
     public static String dumpEventDatas(List<EventData> eventDatas) {
@@ -42,6 +42,7 @@ import com.alibaba.otter.node.etl.common.db.dialect.mysql.MysqlDialect;
 import com.alibaba.otter.node.etl.common.db.dialect.oracle.OracleDialect;
 import com.alibaba.otter.node.etl.select.exceptions.SelectException;
 import com.alibaba.otter.node.etl.transform.exception.TransformException;
+import com.alibaba.otter.shared.common.model.config.ColumnProjection;
 import com.alibaba.otter.shared.common.model.config.ConfigHelper;
 import com.alibaba.otter.shared.common.model.config.channel.ChannelParameter.SyncConsistency;
 import com.alibaba.otter.shared.common.model.config.data.DataMedia;
@@ -51,10 +52,13 @@ import com.alibaba.otter.shared.common.model.config.data.DataMediaSource;
 import com.alibaba.otter.shared.common.model.config.data.db.DbMediaSource;
 import com.alibaba.otter.shared.common.model.config.pipeline.Pipeline;
 import com.alibaba.otter.shared.common.model.config.pipeline.PipelineParameter;
+import com.alibaba.otter.shared.common.utils.thread.ExecutorTemplate;
+import com.alibaba.otter.shared.common.utils.thread.ExecutorTemplateGetter;
 import com.alibaba.otter.shared.etl.model.EventColumn;
 import com.alibaba.otter.shared.etl.model.EventColumnIndexComparable;
 import com.alibaba.otter.shared.etl.model.EventData;
 import com.alibaba.otter.shared.etl.model.EventType;
+import com.google.protobuf.InvalidProtocolBufferException;
 
 /**
  * 数据对象解析
@@ -64,13 +68,15 @@ import com.alibaba.otter.shared.etl.model.EventType;
  */
 public class MessageParser {
 
-    private static final Logger logger                         = LoggerFactory.getLogger(MessageParser.class);
-    private ConfigClientService configClientService;
-    private DbDialectFactory    dbDialectFactory;
-    private static final String RETL_CLIENT_FLAG               = "_SYNC";
-    private static final String compatibleMarkTable            = "retl_client";
-    private static final String compatibleMarkInfoColumn       = "client_info";
-    private static final String compatibleMarkIdentifierColumn = "client_identifier";
+    private static final Logger    logger                         = LoggerFactory.getLogger(MessageParser.class);
+    private ConfigClientService    configClientService;
+    private DbDialectFactory       dbDialectFactory;
+    private ExecutorTemplateGetter executorTemplateGetter;
+    private static final String    RETL_CLIENT_FLAG               = "_SYNC";
+    private static final String    compatibleMarkTable            = "retl_client";
+    private static final String    compatibleMarkInfoColumn       = "client_info";
+    private static final String    compatibleMarkIdentifierColumn = "client_identifier";
+    private static final int       minParseTaskSize               = 1000; // 并行解析时单个任务的最小entry数
 
     /**
      * 将对应canal送出来的Entry对象解析为otter使用的内部对象
@@ -83,144 +89,263 @@ public class MessageParser {
      * </pre>
      */
     public List<EventData> parse(Long pipelineId, List<Entry> datas) throws SelectException {
-        List<EventData> eventDatas = new ArrayList<EventData>();
         Pipeline pipeline = configClientService.findPipeline(pipelineId);
-        List<Entry> transactionDataBuffer = new ArrayList<Entry>();
         // hz为主站点，us->hz的数据，需要回环同步会us。并且需要开启回环补救算法
         PipelineParameter pipelineParameter = pipeline.getParameters();
         boolean enableLoopbackRemedy = pipelineParameter.isEnableRemedy() && pipelineParameter.isHome()
                                        && pipelineParameter.getRemedyAlgorithm().isLoopback();
-        boolean isLoopback = false;
-        boolean needLoopback = false; // 判断是否属于需要loopback处理的类型，只处理正常otter同步产生的回环数据，因为会有业务方手工屏蔽同步的接口，避免回环
-
         long now = new Date().getTime();
         try {
-            for (Entry entry : datas) {
-                switch (entry.getEntryType()) {
-                    case TRANSACTIONBEGIN:
-                        isLoopback = false;
-                        break;
-                    case ROWDATA:
-                        String tableName = entry.getHeader().getTableName();
-                        // 判断是否是回环表retl_mark
-                        boolean isMarkTable = tableName.equalsIgnoreCase(pipeline.getParameters().getSystemMarkTable());
-                        if (isMarkTable) {
-                            RowChange rowChange = RowChange.parseFrom(entry.getStoreValue());
-                            if (!rowChange.getIsDdl()) {
-                                int loopback = 0;
-                                if (rowChange.getRowDatasCount() > 0) {
-                                    loopback = checkLoopback(pipeline, rowChange.getRowDatas(0));
-                                }
-                                if (loopback == 2) {
-                                    needLoopback |= true; // 只处理正常同步产生的回环数据
-                                }
+            // 先按事务切分，回环的判断只依赖于事务内的retl_mark记录，切分后每个事务可独立解析
+            List<TransactionSegment> segments = split(pipeline, datas, enableLoopbackRemedy);
+            if (pipelineParameter.getParallelMessageParse() && !segments.isEmpty()) {
+                return fenceParse(pipeline, segments, now);
+            }
 
-                                isLoopback |= loopback > 0;
+            List<EventData> eventDatas = new ArrayList<EventData>();
+            for (TransactionSegment segment : segments) {
+                parseSegment(pipeline, segment, now, eventDatas);
+            }
+            return eventDatas;
+        } catch (Exception e) {
+            throw new SelectException(e);
+        }
+    }
+
+    /**
+     * 按照TRANSACTIONBEGIN/TRANSACTIONEND切分事务，同时完成回环数据的过滤，只返回需要解析的事务
+     */
+    private List<TransactionSegment> split(Pipeline pipeline, List<Entry> datas, boolean enableLoopbackRemedy)
+                                                                                                              throws InvalidProtocolBufferException {
+        List<TransactionSegment> segments = new ArrayList<TransactionSegment>();
+        List<Entry> transactionDataBuffer = new ArrayList<Entry>();
+        boolean isLoopback = false;
+        boolean needLoopback = false; // 判断是否属于需要loopback处理的类型，只处理正常otter同步产生的回环数据，因为会有业务方手工屏蔽同步的接口，避免回环
+        boolean containsDdl = false;
+
+        for (Entry entry : datas) {
+            switch (entry.getEntryType()) {
+                case TRANSACTIONBEGIN:
+                    isLoopback = false;
+                    break;
+                case ROWDATA:
+                    String tableName = entry.getHeader().getTableName();
+                    // 判断是否是回环表retl_mark
+                    boolean isMarkTable = tableName.equalsIgnoreCase(pipeline.getParameters().getSystemMarkTable());
+                    if (isMarkTable) {
+                        RowChange rowChange = RowChange.parseFrom(entry.getStoreValue());
+                        if (!rowChange.getIsDdl()) {
+                            int loopback = 0;
+                            if (rowChange.getRowDatasCount() > 0) {
+                                loopback = checkLoopback(pipeline, rowChange.getRowDatas(0));
                             }
+                            if (loopback == 2) {
+                                needLoopback |= true; // 只处理正常同步产生的回环数据
+                            }
+
+                            isLoopback |= loopback > 0;
                         }
+                    }
 
-                        // 检查下otter3.0的回环表，对应的schmea会比较随意，所以不做比较
-                        boolean isCompatibleLoopback = tableName.equalsIgnoreCase(compatibleMarkTable);
+                    // 检查下otter3.0的回环表，对应的schmea会比较随意，所以不做比较
+                    boolean isCompatibleLoopback = tableName.equalsIgnoreCase(compatibleMarkTable);
 
-                        if (isCompatibleLoopback) {
-                            RowChange rowChange = RowChange.parseFrom(entry.getStoreValue());
-                            if (!rowChange.getIsDdl()) {
-                                int loopback = 0;
-                                if (rowChange.getRowDatasCount() > 0) {
-                                    loopback = checkCompatibleLoopback(pipeline, rowChange.getRowDatas(0));
-                                }
-                                if (loopback == 2) {
-                                    needLoopback |= true; // 只处理正常同步产生的回环数据
-                                }
-                                isLoopback |= loopback > 0;
+                    if (isCompatibleLoopback) {
+                        RowChange rowChange = RowChange.parseFrom(entry.getStoreValue());
+                        if (!rowChange.getIsDdl()) {
+                            int loopback = 0;
+                            if (rowChange.getRowDatasCount() > 0) {
+                                loopback = checkCompatibleLoopback(pipeline, rowChange.getRowDatas(0));
+                            }
+                            if (loopback == 2) {
+                                needLoopback |= true; // 只处理正常同步产生的回环数据
                             }
+                            isLoopback |= loopback > 0;
                         }
+                    }
 
-                        if ((!isLoopback || (enableLoopbackRemedy && needLoopback)) && !isMarkTable
-                            && !isCompatibleLoopback) {
-                            transactionDataBuffer.add(entry);
-                        }
-                        break;
-                    case TRANSACTIONEND:
-                        if (!isLoopback || (enableLoopbackRemedy && needLoopback)) {
-                            // 添加数据解析
-                            for (Entry bufferEntry : transactionDataBuffer) {
-                                List<EventData> parseDatas = internParse(pipeline, bufferEntry);
-                                if (CollectionUtils.isEmpty(parseDatas)) {// 可能为空，针对ddl返回时就为null
-                                    continue;
-                                }
+                    if ((!isLoopback || (enableLoopbackRemedy && needLoopback)) && !isMarkTable
+                        && !isCompatibleLoopback) {
+                        transactionDataBuffer.add(entry);
+                        containsDdl |= isDdl(entry);
+                    }
+                    break;
+                case TRANSACTIONEND:
+                    if ((!isLoopback || (enableLoopbackRemedy && needLoopback)) && !transactionDataBuffer.isEmpty()) {
+                        segments.add(new TransactionSegment(transactionDataBuffer, needLoopback, true, containsDdl));
+                    }
 
-                                // 初步计算一下事件大小
-                                long totalSize = bufferEntry.getHeader().getEventLength();
-                                long eachSize = totalSize / parseDatas.size();
-                                for (EventData eventData : parseDatas) {
-                                    if (eventData == null) {
-                                        continue;
-                                    }
-
-                                    eventData.setSize(eachSize);// 记录一下大小
-                                    if (needLoopback) {// 针对需要回环同步的
-                                        // 如果延迟超过指定的阀值，则设置为需要反查db
-                                        if (now - eventData.getExecuteTime() > 1000 * pipeline.getParameters()
-                                            .getRemedyDelayThresoldForMedia()) {
-                                            eventData.setSyncConsistency(SyncConsistency.MEDIA);
-                                        } else {
-                                            eventData.setSyncConsistency(SyncConsistency.BASE);
-                                        }
-                                        eventData.setRemedy(true);
-                                    }
-                                    eventDatas.add(eventData);
-                                }
-                            }
-                        }
+                    isLoopback = false;
+                    needLoopback = false;
+                    containsDdl = false;
+                    transactionDataBuffer = new ArrayList<Entry>();
+                    break;
+                default:
+                    break;
+            }
+        }
 
-                        isLoopback = false;
-                        needLoopback = false;
-                        transactionDataBuffer.clear();
-                        break;
-                    default:
-                        break;
-                }
+        // 添加最后一次的数据，可能没有TRANSACTIONEND
+        if ((!isLoopback || (enableLoopbackRemedy && needLoopback)) && !transactionDataBuffer.isEmpty()) {
+            // 最后一段未结束的事务，保持原有逻辑不标记remedy
+            segments.add(new TransactionSegment(transactionDataBuffer, needLoopback, false, containsDdl));
+        }
+
+        return segments;
+    }
+
+    /**
+     * 解析一个事务内的数据，结果追加到eventDatas中
+     */
+    private void parseSegment(Pipeline pipeline, TransactionSegment segment, long now, List<EventData> eventDatas) {
+        for (Entry bufferEntry : segment.getEntries()) {
+            List<EventData> parseDatas = internParse(pipeline, bufferEntry);
+            if (CollectionUtils.isEmpty(parseDatas)) {// 可能为空，针对ddl返回时就为null
+                continue;
             }
 
-            // 添加最后一次的数据，可能没有TRANSACTIONEND
-            if (!isLoopback || (enableLoopbackRemedy && needLoopback)) {
-                // 添加数据解析
-                for (Entry bufferEntry : transactionDataBuffer) {
-                    List<EventData> parseDatas = internParse(pipeline, bufferEntry);
-                    if (CollectionUtils.isEmpty(parseDatas)) {// 可能为空，针对ddl返回时就为null
-                        continue;
+            // 初步计算一下事件大小
+            long totalSize = bufferEntry.getHeader().getEventLength();
+            long eachSize = totalSize / parseDatas.size();
+            for (EventData eventData : parseDatas) {
+                if (eventData == null) {
+                    continue;
+                }
+
+                eventData.setSize(eachSize);// 记录一下大小
+                if (segment.isNeedLoopback()) {// 针对需要回环同步的
+                    // 如果延迟超过指定的阀值，则设置为需要反查db
+                    if (now - eventData.getExecuteTime() > 1000 * pipeline.getParameters()
+                        .getRemedyDelayThresoldForMedia()) {
+                        eventData.setSyncConsistency(SyncConsistency.MEDIA);
+                    } else {
+                        eventData.setSyncConsistency(SyncConsistency.BASE);
                     }
 
-                    // 初步计算一下事件大小
-                    long totalSize = bufferEntry.getHeader().getEventLength();
-                    long eachSize = totalSize / parseDatas.size();
-                    for (EventData eventData : parseDatas) {
-                        if (eventData == null) {
-                            continue;
-                        }
+                    if (segment.isMarkRemedy()) {
+                        eventData.setRemedy(true);
+                    }
+                }
+                eventDatas.add(eventData);
+            }
+        }
+    }
 
-                        eventData.setSize(eachSize);// 记录一下大小
-                        if (needLoopback) {// 针对需要回环同步的
-                            // 如果延迟超过指定的阀值，则设置为需要反查db
-                            if (now - eventData.getExecuteTime() > 1000 * pipeline.getParameters()
-                                .getRemedyDelayThresoldForMedia()) {
-                                eventData.setSyncConsistency(SyncConsistency.MEDIA);
-                            } else {
-                                eventData.setSyncConsistency(SyncConsistency.BASE);
-                            }
+    private boolean isDdl(Entry entry) {
+        CanalEntry.EventType eventType = entry.getHeader().getEventType();
+        return eventType != null && EventType.valueOf(eventType.name()).isDdl();
+    }
+
+    /**
+     * DDL解析时会调用dbDialect.reloadTable，和其他线程中DML对table meta的读取存在竞争。
+     * 以包含DDL的事务为界，之前的事务并行解析完成后再串行解析DDL事务，保证DDL前后的DML看到正确的meta
+     */
+    private List<EventData> fenceParse(Pipeline pipeline, List<TransactionSegment> segments, long now) {
+        List<EventData> eventDatas = new ArrayList<EventData>();
+        List<TransactionSegment> dmlSegments = new ArrayList<TransactionSegment>();
+        for (TransactionSegment segment : segments) {
+            if (!segment.isContainsDdl()) {
+                dmlSegments.add(segment);
+                continue;
+            }
+
+            if (!dmlSegments.isEmpty()) {
+                eventDatas.addAll(parallelParse(pipeline, dmlSegments, now));
+                dmlSegments = new ArrayList<TransactionSegment>();
+            }
+            parseSegment(pipeline, segment, now, eventDatas);
+        }
+
+        if (!dmlSegments.isEmpty()) {
+            eventDatas.addAll(parallelParse(pipeline, dmlSegments, now));
+        }
+        return eventDatas;
+    }
+
+    /**
+     * 多线程解析事务数据，每个任务处理一段连续的事务，最后按原始顺序合并结果
+     */
+    private List<EventData> parallelParse(final Pipeline pipeline, List<TransactionSegment> segments, final long now) {
+        int poolSize = pipeline.getParameters().getMessageParsePoolSize();
+        List<List<TransactionSegment>> tasks = partition(segments, poolSize);
+        if (tasks.size() == 1) {
+            // 数据量较小，直接在当前线程解析
+            List<EventData> eventDatas = new ArrayList<EventData>();
+            for (TransactionSegment segment : tasks.get(0)) {
+                parseSegment(pipeline, segment, now, eventDatas);
+            }
+            return eventDatas;
+        }
+
+        final List<EventData>[] results = new List[tasks.size()];
+        ExecutorTemplate executorTemplate = executorTemplateGetter.get();
+        try {
+            executorTemplate.start();
+            // 重新设置下poolSize
+            executorTemplate.adjustPoolSize(poolSize);
+            for (int i = 0; i < tasks.size(); i++) {
+                final int index = i;
+                final List<TransactionSegment> task = tasks.get(i);
+                executorTemplate.submit(new Runnable() {
+
+                    public void run() {
+                        List<EventData> eventDatas = new ArrayList<EventData>();
+                        for (TransactionSegment segment : task) {
+                            parseSegment(pipeline, segment, now, eventDatas);
                         }
-                        eventDatas.add(eventData);
+                        results[index] = eventDatas;
                     }
-                }
+                });
             }
-        } catch (Exception e) {
-            throw new SelectException(e);
+
+            // 等待所有都处理完成
+            executorTemplate.waitForResult();
+        } finally {
+            executorTemplateGetter.release(executorTemplate);
         }
 
+        List<EventData> eventDatas = new ArrayList<EventData>();
+        for (List<EventData> result : results) {
+            eventDatas.addAll(result);
+        }
         return eventDatas;
     }
 
+    /**
+     * 将事务合并/拆分为大小接近的任务，避免小事务过多导致任务调度成本过高，大事务则按entry拆分
+     */
+    private List<List<TransactionSegment>> partition(List<TransactionSegment> segments, int poolSize) {
+        int total = 0;
+        for (TransactionSegment segment : segments) {
+            total += segment.getEntries().size();
+        }
+
+        int taskSize = Math.max(minParseTaskSize, total / (Math.max(poolSize, 1) * 2) + 1);
+        List<List<TransactionSegment>> tasks = new ArrayList<List<TransactionSegment>>();
+        List<TransactionSegment> task = new ArrayList<TransactionSegment>();
+        int taskEntries = 0;
+        for (TransactionSegment segment : segments) {
+            int size = segment.getEntries().size();
+            int offset = 0;
+            while (offset < size) {
+                int length = Math.min(size - offset, taskSize - taskEntries);
+                task.add(segment.slice(offset, offset + length));
+                offset += length;
+                taskEntries += length;
+                if (taskEntries >= taskSize) {
+                    tasks.add(task);
+                    task = new ArrayList<TransactionSegment>();
+                    taskEntries = 0;
+                }
+            }
+        }
+
+        if (!task.isEmpty()) {
+            tasks.add(task);
+        }
+        return tasks;
+    }
+
     /**
      * <pre>
      * the table def: 
@@ -368,7 +493,10 @@ public class MessageParser {
                     notExistReturnNull);
                 // 如果EventType是CREATE/ALTER，需要reload
                 // DataMediaInfo;并且把CREATE/ALTER类型的事件丢弃掉.
-                if (dataMedia != null && (eventType.isCreate() || eventType.isAlter() || eventType.isRename())) {
+                // DROP/INDEX变更同样会影响表结构和主键信息，一并失效meta缓存
+                if (dataMedia != null
+                    && (eventType.isCreate() || eventType.isAlter() || eventType.isRename() || eventType.isErase()
+                        || eventType.isCindex() || eventType.isDindex())) {
                     DbDialect dbDialect = dbDialectFactory.getDbDialect(pipeline.getId(),
                         (DbMediaSource) dataMedia.getSource());
                     dbDialect.reloadTable(schemaName, tableName);// 更新下meta信息
@@ -422,6 +550,11 @@ public class MessageParser {
         eventData.setExecuteTime(entry.getHeader().getExecuteTime());
         EventType eventType = eventData.getEventType();
         TableInfoHolder tableHolder = null;
+        ColumnProjection projection = null;
+        // 判断一下是否需要all columns
+        boolean isRowMode = pipeline.getParameters().getSyncMode().isRow(); // 如果是rowMode模式，所有字段都需要标记为updated
+        boolean existExtension = checkNeedAllColumns(pipeline);
+        boolean needAllColumns = isRowMode || existExtension;
 
         if (!StringUtils.equalsIgnoreCase(pipeline.getParameters().getSystemSchema(), eventData.getSchemaName())) {
             boolean useTableTransform = pipeline.getParameters().getUseTableTransform();
@@ -431,6 +564,10 @@ public class MessageParser {
                 eventData.getTableName());
             DataMedia dataMedia = dataMediaPair.getSource();
             eventData.setTableId(dataMedia.getId());
+            if (!existExtension) {
+                // 不存在filter/resolver时，按照视图定义直接裁剪掉不需要同步的字段，避免无用字段的构造和传输
+                projection = ConfigHelper.findColumnProjection(pipeline, dataMedia.getId());
+            }
             // 获取目标表
             DataMedia targetDataMedia = dataMediaPair.getTarget();
             if (useTableTransform || dataMedia.getSource().getType().isOracle()) {// oracle需要反查一次meta
@@ -484,10 +621,6 @@ public class MessageParser {
         List<Column> afterColumns = rowData.getAfterColumnsList();
         String tableName = eventData.getSchemaName() + "." + eventData.getTableName();
 
-        // 判断一下是否需要all columns
-        boolean isRowMode = pipeline.getParameters().getSyncMode().isRow(); // 如果是rowMode模式，所有字段都需要标记为updated
-        boolean needAllColumns = isRowMode || checkNeedAllColumns(pipeline);
-
         // 变更后的主键
         Map<String, EventColumn> keyColumns = new LinkedHashMap<String, EventColumn>();
         // 变更前的主键
@@ -499,7 +632,7 @@ public class MessageParser {
             for (Column column : afterColumns) {
                 if (isKey(tableHolder, tableName, column)) {
                     keyColumns.put(column.getName(), copyEventColumn(column, true, tableHolder));
-                } else {
+                } else if (isProjected(projection, column)) {
                     // mysql 有效
                     notKeyColumns.put(column.getName(), copyEventColumn(column, true, tableHolder));
                 }
@@ -508,7 +641,7 @@ public class MessageParser {
             for (Column column : beforeColumns) {
                 if (isKey(tableHolder, tableName, column)) {
                     keyColumns.put(column.getName(), copyEventColumn(column, true, tableHolder));
-                } else {
+                } else if (isProjected(projection, column)) {
                     // mysql 有效
                     notKeyColumns.put(column.getName(), copyEventColumn(column, true, tableHolder));
                 }
@@ -522,7 +655,8 @@ public class MessageParser {
                     // key,因为mysql5.6之后出现了minimal模式,after里会没有主键信息,需要在before记录中找
                     keyColumns.put(column.getName(), copyEventColumn(column, true, tableHolder));
                 } else {
-                    if (needAllColumns && entry.getHeader().getSourceType() == CanalEntry.Type.ORACLE) {
+                    if (needAllColumns && entry.getHeader().getSourceType() == CanalEntry.Type.ORACLE
+                        && isProjected(projection, column)) {
                         // 针对行记录同步时，针对oracle记录一下非主键的字段，因为update时针对未变更的字段在aftercolume里没有
                         notKeyColumns.put(column.getName(), copyEventColumn(column, isRowMode, tableHolder));
                     }
@@ -532,8 +666,8 @@ public class MessageParser {
                 if (isKey(tableHolder, tableName, column)) {
                     // 获取变更后的主键
                     keyColumns.put(column.getName(), copyEventColumn(column, true, tableHolder));
-                } else if (needAllColumns || entry.getHeader().getSourceType() == CanalEntry.Type.ORACLE
-                           || column.getUpdated()) {
+                } else if (isProjected(projection, column)
+                           && (needAllColumns || entry.getHeader().getSourceType() == CanalEntry.Type.ORACLE || column.getUpdated())) {
                     // 在update操作时，oracle和mysql存放变更的非主键值的方式不同,oracle只有变更的字段;
                     // mysql会把变更前和变更后的字段都发出来，只需要取有变更的字段.
                     // 如果是oracle库，after里一定为对应的变更字段
@@ -595,6 +729,13 @@ public class MessageParser {
         return eventData;
     }
 
+    /**
+     * 判断非主键字段是否在视图投影中，projection为null代表需要所有字段
+     */
+    private boolean isProjected(ColumnProjection projection, Column column) {
+        return projection == null || projection.contains(column.getName());
+    }
+
     private boolean checkNeedAllColumns(Pipeline pipeline) {
         boolean needAllColumns = false;
         // 只要有filter/resolver逻辑存在，就需要尽可能保留所有字段
@@ -737,6 +878,52 @@ public class MessageParser {
         this.configClientService = configClientService;
     }
 
+    public void setExecutorTemplateGetter(ExecutorTemplateGetter executorTemplateGetter) {
+        this.executorTemplateGetter = executorTemplateGetter;
+    }
+
+    /**
+     * 一个事务内需要解析的数据，以及该事务的回环处理结果
+     */
+    static class TransactionSegment {
+
+        private List<Entry> entries;
+        private boolean     needLoopback;
+        private boolean     markRemedy;
+        private boolean     containsDdl;
+
+        public TransactionSegment(List<Entry> entries, boolean needLoopback, boolean markRemedy, boolean containsDdl){
+            this.entries = entries;
+            this.needLoopback = needLoopback;
+            this.markRemedy = markRemedy;
+            this.containsDdl = containsDdl;
+        }
+
+        public TransactionSegment slice(int fromIndex, int toIndex) {
+            if (fromIndex == 0 && toIndex == entries.size()) {
+                return this;
+            }
+
+            return new TransactionSegment(entries.subList(fromIndex, toIndex), needLoopback, markRemedy, containsDdl);
+        }
+
+        public List<Entry> getEntries() {
+            return entries;
+        }
+
+        public boolean isNeedLoopback() {
+            return needLoopback;
+        }
+
+        public boolean isMarkRemedy() {
+            return markRemedy;
+        }
+
+        public boolean isContainsDdl() {
+            return containsDdl;
+        }
+    }
+
     /**
      * 实现可reload的table meta，可替换table属性.
      * 
@@ -65,6 +65,11 @@ public interface OtterSelector<T> {
      */
     public void ack(Long batchId);
 
+    /**
+     * 按顺序反馈多批数据处理完成，用于合并连续的空批次
+     */
+    public void ack(List<Long> batchIds);
+
     /**
      * 返回最后一次entry数据的时间戳
      */
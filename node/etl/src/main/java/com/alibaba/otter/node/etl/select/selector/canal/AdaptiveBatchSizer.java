@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2010-2101 Alibaba Group Holding Limited.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.otter.node.etl.select.selector.canal;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 自适应的mainstem批次大小计算，按照目标字节数和延迟预算动态调整每次从canal获取的entry数量
+ *
+ * <pre>
+ * 1. 每次get之后记录entry的平均大小，批次数量 = 目标字节数 / 平均entry大小
+ * 2. 每次ack时计算批次从select到ack的端到端耗时，按 耗时 = 固定耗时 + 单条耗时 * entry数量 做加权最小二乘拟合，
+ *    批次数量不超过 (延迟预算 - 固定耗时) / 单条耗时
+ * 3. 固定耗时(网络往返/调度等)不能算到单条entry上，否则批次越小单条耗时越大，批次会一路缩小到minBatchSize。
+ *    固定耗时超过延迟预算时，缩小批次并不能降低延迟，此时不再按延迟限制批次大小
+ * 4. 只有一种批次大小的样本时无法区分固定耗时，只在超出延迟预算时按比例缩小批次
+ * 5. 每次调整最多扩大一倍，避免流量突变时批次大小剧烈抖动
+ * 6. 批次大小限制在[minBatchSize, maxBatchSize]之间，maxBatchSize为pipeline配置的mainstem批次大小
+ * </pre>
+ */
+public class AdaptiveBatchSizer {
+
+    private static final int        MIN_BATCH_SIZE = 16;
+    private static final double     ALPHA          = 0.3;                          // 平滑系数
+    private static final double     DECAY          = 1 - ALPHA;                    // 拟合样本的衰减系数，越早的样本权重越小
+    private static final int        MAX_INFLIGHT   = 1024;                         // 最多记录的未ack批次数
+
+    private final int               maxBatchSize;
+    private final long              targetBytes;
+    private final long              latencyBudget;
+    private volatile int            batchSize;
+    private double                  avgEntryBytes  = -1;
+    // 耗时拟合的加权累计值，x为批次entry数量，y为批次耗时
+    private double                  sumWeight      = 0;
+    private double                  sumCount       = 0;
+    private double                  sumLatency     = 0;
+    private double                  sumCount2      = 0;
+    private double                  sumCross       = 0;
+    private final Map<Long, long[]> selectBatchs   = new HashMap<Long, long[]>();
+
+    public AdaptiveBatchSizer(int maxBatchSize, long targetBytes, long latencyBudget){
+        this.maxBatchSize = Math.max(maxBatchSize, MIN_BATCH_SIZE);
+        this.targetBytes = targetBytes;
+        this.latencyBudget = latencyBudget;
+        this.batchSize = Math.min(this.maxBatchSize, 1024); // 从一个较小的批次开始探测
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * 记录一次get的结果
+     */
+    public synchronized void select(Long batchId, int count, long bytes) {
+        if (count <= 0) {
+            return;
+        }
+
+        avgEntryBytes = ewma(avgEntryBytes, (double) bytes / count);
+        if (selectBatchs.size() < MAX_INFLIGHT) {
+            selectBatchs.put(batchId, new long[] { System.currentTimeMillis(), count });
+        }
+
+        adjust();
+    }
+
+    /**
+     * 记录一次ack，计算端到端的延迟
+     */
+    public synchronized void ack(Long batchId) {
+        long[] batch = selectBatchs.remove(batchId);
+        if (batch == null) {
+            return;
+        }
+
+        cost((int) batch[1], System.currentTimeMillis() - batch[0]);
+    }
+
+    /**
+     * 记录一个批次的端到端耗时
+     */
+    public synchronized void cost(int count, long latency) {
+        if (count <= 0 || latency < 0) {
+            return;
+        }
+
+        sumWeight = sumWeight * DECAY + 1;
+        sumCount = sumCount * DECAY + count;
+        sumLatency = sumLatency * DECAY + latency;
+        sumCount2 = sumCount2 * DECAY + (double) count * count;
+        sumCross = sumCross * DECAY + (double) count * latency;
+        adjust();
+    }
+
+    /**
+     * rollback之后未ack的批次都会被重新获取，清理掉对应的记录
+     */
+    public synchronized void rollback() {
+        selectBatchs.clear();
+    }
+
+    private void adjust() {
+        double target = batchSize;
+        if (avgEntryBytes > 0 && targetBytes > 0) {
+            target = targetBytes / avgEntryBytes;
+        }
+
+        if (sumWeight > 0 && latencyBudget > 0) {
+            // 保证整个批次的处理耗时在延迟预算内
+            target = Math.min(target, latencyLimit());
+        }
+
+        target = Math.min(target, batchSize * 2.0);
+        batchSize = (int) Math.max(MIN_BATCH_SIZE, Math.min(maxBatchSize, target));
+    }
+
+    /**
+     * 根据拟合的耗时模型计算延迟预算内的最大批次，不需要限制时返回Double.MAX_VALUE
+     */
+    private double latencyLimit() {
+        double meanCount = sumCount / sumWeight;
+        double meanLatency = sumLatency / sumWeight;
+        double variance = sumCount2 / sumWeight - meanCount * meanCount;
+        if (variance < 1) {
+            // 批次大小基本一致，无法区分固定耗时和单条耗时
+            return meanLatency > latencyBudget ? meanCount * latencyBudget / meanLatency : Double.MAX_VALUE;
+        }
+
+        double perEntry = (sumCross / sumWeight - meanCount * meanLatency) / variance;
+        double fixed = meanLatency - perEntry * meanCount;
+        if (perEntry <= 0 || fixed >= latencyBudget) {
+            // 耗时和批次大小无关，或者固定耗时已经超过预算，缩小批次没有意义
+            return Double.MAX_VALUE;
+        }
+
+        return (latencyBudget - Math.max(fixed, 0)) / perEntry;
+    }
+
+    private double ewma(double avg, double value) {
+        return avg < 0 ? value : avg * (1 - ALPHA) + value * ALPHA;
+    }
+}
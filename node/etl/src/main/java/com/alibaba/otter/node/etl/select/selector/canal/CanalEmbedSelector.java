@@ -16,9 +16,7 @@
 
 package com.alibaba.otter.node.etl.select.selector.canal;
 
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.LockSupport;
@@ -29,32 +27,22 @@ import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
 import org.springframework.util.CollectionUtils;
 
-import com.alibaba.otter.canal.common.CanalException;
 import com.alibaba.otter.canal.extend.communication.CanalConfigClient;
-import com.alibaba.otter.canal.extend.ha.MediaHAController;
-import com.alibaba.otter.canal.instance.core.CanalInstance;
-import com.alibaba.otter.canal.instance.core.CanalInstanceGenerator;
-import com.alibaba.otter.canal.instance.manager.CanalInstanceWithManager;
-import com.alibaba.otter.canal.instance.manager.model.Canal;
-import com.alibaba.otter.canal.instance.manager.model.CanalParameter.HAMode;
-import com.alibaba.otter.canal.parse.CanalEventParser;
-import com.alibaba.otter.canal.parse.ha.CanalHAController;
-import com.alibaba.otter.canal.parse.inbound.mysql.MysqlEventParser;
-import com.alibaba.otter.canal.parse.support.AuthenticationInfo;
 import com.alibaba.otter.canal.protocol.CanalEntry;
 import com.alibaba.otter.canal.protocol.CanalEntry.Entry;
+import com.alibaba.otter.canal.protocol.CanalEntry.Header;
 import com.alibaba.otter.canal.protocol.ClientIdentity;
 import com.alibaba.otter.canal.server.embedded.CanalServerWithEmbedded;
-import com.alibaba.otter.canal.sink.AbstractCanalEventSink;
-import com.alibaba.otter.canal.sink.CanalEventSink;
 import com.alibaba.otter.node.common.config.ConfigClientService;
 import com.alibaba.otter.node.etl.OtterConstants;
-import com.alibaba.otter.node.etl.OtterContextLocator;
+import com.alibaba.otter.node.etl.common.dump.AsyncDumper;
 import com.alibaba.otter.node.etl.select.exceptions.SelectException;
 import com.alibaba.otter.node.etl.select.selector.Message;
+import com.alibaba.otter.node.etl.select.selector.MessageDumpRecord;
 import com.alibaba.otter.node.etl.select.selector.MessageDumper;
 import com.alibaba.otter.node.etl.select.selector.MessageParser;
 import com.alibaba.otter.node.etl.select.selector.OtterSelector;
+import com.alibaba.otter.node.etl.select.selector.canal.SharedCanalDestination.Subscriber;
 import com.alibaba.otter.shared.common.model.config.pipeline.Pipeline;
 import com.alibaba.otter.shared.etl.model.EventData;
 import com.google.protobuf.ByteString;
@@ -68,30 +56,30 @@ import com.google.protobuf.InvalidProtocolBufferException;
  */
 public class CanalEmbedSelector implements OtterSelector {
 
-    private static final Logger     logger           = LoggerFactory.getLogger(CanalEmbedSelector.class);
-    private static final String     SEP              = SystemUtils.LINE_SEPARATOR;
-    private static final String     DATE_FORMAT      = "yyyy-MM-dd HH:mm:ss";
-    private static final int        maxEmptyTimes    = 10;
-    private int                     logSplitSize     = 50;
-    private boolean                 dump             = true;
-    private boolean                 dumpDetail       = true;
-    private Long                    pipelineId;
-    private CanalServerWithEmbedded canalServer;
-    private ClientIdentity          clientIdentity;
-    private MessageParser           messageParser;
-    private ConfigClientService     configClientService;
-    private OtterDownStreamHandler  handler;
-
-    private String                  destination;
-    private String                  filter;
-    private int                     batchSize        = 10000;
-    private long                    batchTimeout     = -1L;
-    private boolean                 ddlSync          = true;
-    private boolean                 filterTableError = false;
-
-    private CanalConfigClient       canalConfigClient;
-    private volatile boolean        running          = false;                                            // 是否处于运行中
-    private volatile long           lastEntryTime    = 0;
+    private static final Logger         logger        = LoggerFactory.getLogger(CanalEmbedSelector.class);
+    private static final String         SEP           = SystemUtils.LINE_SEPARATOR;
+    private static final int            maxEmptyTimes = 10;
+    private int                         logSplitSize  = 50;
+    private boolean                     dump          = true;
+    private boolean                     dumpDetail    = true;
+    private Long                        pipelineId;
+    private CanalServerWithEmbedded     canalServer;
+    private OtterCanalInstanceGenerator instanceGenerator;
+    private Subscriber                  subscriber;                                                      // 共享解析模式下的订阅，为null代表使用独立的canal instance
+    private ClientIdentity              clientIdentity;
+    private MessageParser               messageParser;
+    private ConfigClientService         configClientService;
+    private AsyncDumper                 asyncDumper;
+
+    private String                      destination;
+    private String                      filter;
+    private int                         batchSize     = 10000;
+    private long                        batchTimeout  = -1L;
+    private AdaptiveBatchSizer          batchSizer;                                                      // 自适应批次大小，为null代表使用固定的batchSize
+
+    private CanalConfigClient           canalConfigClient;
+    private volatile boolean            running       = false;                                           // 是否处于运行中
+    private volatile long               lastEntryTime = 0;
 
     public CanalEmbedSelector(Long pipelineId){
         this.pipelineId = pipelineId;
@@ -112,11 +100,6 @@ public class CanalEmbedSelector implements OtterSelector {
         destination = pipeline.getParameters().getDestinationName();
         batchSize = pipeline.getParameters().getMainstemBatchsize();
         batchTimeout = pipeline.getParameters().getBatchTimeout();
-        ddlSync = pipeline.getParameters().getDdlSync();
-        final boolean syncFull = pipeline.getParameters().getSyncMode().isRow()
-                                 || pipeline.getParameters().isEnableRemedy();
-        // 暂时使用skip load代替
-        filterTableError = pipeline.getParameters().getSkipSelectException();
         if (pipeline.getParameters().getDumpSelector() != null) {
             dump = pipeline.getParameters().getDumpSelector();
         }
@@ -125,92 +108,32 @@ public class CanalEmbedSelector implements OtterSelector {
             dumpDetail = pipeline.getParameters().getDumpSelectorDetail();
         }
 
-        canalServer.setCanalInstanceGenerator(new CanalInstanceGenerator() {
-
-            public CanalInstance generate(String destination) {
-                Canal canal = canalConfigClient.findCanal(destination);
-                final OtterAlarmHandler otterAlarmHandler = new OtterAlarmHandler();
-                otterAlarmHandler.setPipelineId(pipelineId);
-                OtterContextLocator.autowire(otterAlarmHandler); // 注入一下spring资源
-                // 设置下slaveId，保证多个piplineId下重复引用时不重复
-                long slaveId = 10000;// 默认基数
-                if (canal.getCanalParameter().getSlaveId() != null) {
-                    slaveId = canal.getCanalParameter().getSlaveId();
-                }
-                canal.getCanalParameter().setSlaveId(slaveId + pipelineId);
-                canal.getCanalParameter().setDdlIsolation(ddlSync);
-                canal.getCanalParameter().setFilterTableError(filterTableError);
-                canal.getCanalParameter().setMemoryStorageRawEntry(false);
-
-                CanalInstanceWithManager instance = new CanalInstanceWithManager(canal, filter) {
-
-                    protected CanalHAController initHaController() {
-                        HAMode haMode = parameters.getHaMode();
-                        if (haMode.isMedia()) {
-                            return new MediaHAController(parameters.getMediaGroup(),
-                                parameters.getDbUsername(),
-                                parameters.getDbPassword(),
-                                parameters.getDefaultDatabaseName());
-                        } else {
-                            return super.initHaController();
-                        }
-                    }
-
-                    protected void startEventParserInternal(CanalEventParser parser, boolean isGroup) {
-                        super.startEventParserInternal(parser, isGroup);
-
-                        if (eventParser instanceof MysqlEventParser) {
-                            // 设置支持的类型
-                            ((MysqlEventParser) eventParser).setSupportBinlogFormats("ROW");
-                            if (syncFull) {
-                                ((MysqlEventParser) eventParser).setSupportBinlogImages("FULL");
-                            } else {
-                                ((MysqlEventParser) eventParser).setSupportBinlogImages("FULL,MINIMAL");
-                            }
-
-                            MysqlEventParser mysqlEventParser = (MysqlEventParser) eventParser;
-                            mysqlEventParser.setParallel(false); // otter先使用简单的模式
-                            CanalHAController haController = mysqlEventParser.getHaController();
-                            if (haController instanceof MediaHAController) {
-                                if (isGroup) {
-                                    throw new CanalException("not support group database use media HA");
-                                }
-
-                                ((MediaHAController) haController).setCanalHASwitchable(mysqlEventParser);
-                            }
-
-                            if (!haController.isStart()) {
-                                haController.start();
-                            }
-
-                            // 基于media的Ha，直接从tddl中获取数据库信息
-                            if (haController instanceof MediaHAController) {
-                                AuthenticationInfo authenticationInfo = ((MediaHAController) haController).getAvailableAuthenticationInfo();
-                                ((MysqlEventParser) eventParser).setMasterInfo(authenticationInfo);
-                            }
-                        }
-                    }
-
-                };
-                instance.setAlarmHandler(otterAlarmHandler);
-
-                CanalEventSink eventSink = instance.getEventSink();
-                if (eventSink instanceof AbstractCanalEventSink) {
-                    handler = new OtterDownStreamHandler();
-                    handler.setPipelineId(pipelineId);
-                    handler.setDetectingIntervalInSeconds(canal.getCanalParameter().getDetectingIntervalInSeconds());
-                    OtterContextLocator.autowire(handler); // 注入一下spring资源
-                    ((AbstractCanalEventSink) eventSink).addHandler(handler, 0); // 添加到开头
-                    handler.start();
-                }
-
-                return instance;
+        if (pipeline.getParameters().getAdaptiveBatch()) {
+            batchSizer = new AdaptiveBatchSizer(batchSize,
+                pipeline.getParameters().getBatchTargetSize() * 1024L,
+                pipeline.getParameters().getBatchLatencyBudget());
+            long latencyBudget = pipeline.getParameters().getBatchLatencyBudget();
+            if (batchTimeout == 0 || batchTimeout > latencyBudget) {
+                // 自适应模式下，等待凑满批次的时间不超过延迟预算
+                batchTimeout = latencyBudget;
             }
-        });
+        } else {
+            batchSizer = null;
+        }
+
+        instanceGenerator = new OtterCanalInstanceGenerator(canalConfigClient, pipeline, filter);
+        this.clientIdentity = new ClientIdentity(destination, pipeline.getParameters().getMainstemClientId(), filter);
+        if (pipeline.getParameters().getSharedParse()) {
+            // 共享同一个destination的解析，不再启动独立的canal instance
+            subscriber = SharedCanalDestination.subscribe(instanceGenerator, clientIdentity);
+            running = true;
+            return;
+        }
+
+        canalServer.setCanalInstanceGenerator(instanceGenerator);
         canalServer.start();
 
         canalServer.start(destination);
-        this.clientIdentity = new ClientIdentity(destination, pipeline.getParameters().getMainstemClientId(), filter);
         canalServer.subscribe(clientIdentity);// 发起一次订阅
 
         running = true;
@@ -221,13 +144,12 @@ public class CanalEmbedSelector implements OtterSelector {
             return;
         }
         running = false;
-        try {
-            handler.stop();
-        } catch (Exception e) {
-            logger.warn("failed destory handler", e);
+        if (subscriber != null) {
+            subscriber.unsubscribe();
+            return;
         }
 
-        handler = null;
+        instanceGenerator.stopHandlers();
         canalServer.stop(destination);
         canalServer.stop();
     }
@@ -235,9 +157,14 @@ public class CanalEmbedSelector implements OtterSelector {
     public Message<EventData> selector() throws InterruptedException {
         int emptyTimes = 0;
         com.alibaba.otter.canal.protocol.Message message = null;
+        int fetchSize = batchSizer != null ? batchSizer.getBatchSize() : batchSize;
         if (batchTimeout < 0) {// 进行轮询处理
             while (running) {
-                message = canalServer.getWithoutAck(clientIdentity, batchSize);
+                if (subscriber != null) {
+                    message = subscriber.getWithoutAck(fetchSize);
+                } else {
+                    message = canalServer.getWithoutAck(clientIdentity, fetchSize);
+                }
                 if (message == null || message.getId() == -1L) { // 代表没数据
                     applyWait(emptyTimes++);
                 } else {
@@ -249,7 +176,11 @@ public class CanalEmbedSelector implements OtterSelector {
             }
         } else { // 进行超时控制
             while (running) {
-                message = canalServer.getWithoutAck(clientIdentity, batchSize, batchTimeout, TimeUnit.MILLISECONDS);
+                if (subscriber != null) {
+                    message = subscriber.getWithoutAck(fetchSize, batchTimeout, TimeUnit.MILLISECONDS);
+                } else {
+                    message = canalServer.getWithoutAck(clientIdentity, fetchSize, batchTimeout, TimeUnit.MILLISECONDS);
+                }
                 if (message == null || message.getId() == -1L) { // 代表没数据
                     continue;
                 } else {
@@ -262,17 +193,28 @@ public class CanalEmbedSelector implements OtterSelector {
         }
 
         List<Entry> entries = null;
+        long bytes = 0;
         if (message.isRaw()) {
             entries = new ArrayList<CanalEntry.Entry>(message.getRawEntries().size());
             for (ByteString entry : message.getRawEntries()) {
                 try {
                     entries.add(CanalEntry.Entry.parseFrom(entry));
+                    bytes += entry.size();
                 } catch (InvalidProtocolBufferException e) {
                     throw new SelectException(e);
                 }
             }
         } else {
             entries = message.getEntries();
+            if (batchSizer != null) {
+                for (Entry entry : entries) {
+                    bytes += entry.getHeader().getEventLength(); // 使用binlog event的大小进行估算，避免再做一次序列化计算
+                }
+            }
+        }
+
+        if (batchSizer != null) {
+            batchSizer.select(message.getId(), entries.size(), bytes);
         }
 
         List<EventData> eventDatas = messageParser.parse(pipelineId, entries); // 过滤事务头/尾和回环数据
@@ -286,31 +228,92 @@ public class CanalEmbedSelector implements OtterSelector {
         }
 
         if (dump && logger.isInfoEnabled()) {
-            String startPosition = null;
-            String endPosition = null;
-            if (!CollectionUtils.isEmpty(entries)) {
-                startPosition = buildPositionForDump(entries.get(0));
-                endPosition = buildPositionForDump(entries.get(entries.size() - 1));
-            }
+            if (asyncDumper != null) {
+                // 异步输出，selector线程只做数据快照
+                Header startHeader = null;
+                Header endHeader = null;
+                if (!CollectionUtils.isEmpty(entries)) {
+                    startHeader = entries.get(0).getHeader();
+                    endHeader = entries.get(entries.size() - 1).getHeader();
+                }
+
+                asyncDumper.dump(new MessageDumpRecord(logger,
+                    pipelineId,
+                    result,
+                    startHeader,
+                    endHeader,
+                    entries.size(),
+                    dumpDetail,
+                    logSplitSize));
+            } else {
+                String startPosition = null;
+                String endPosition = null;
+                if (!CollectionUtils.isEmpty(entries)) {
+                    startPosition = MessageDumper.dumpPosition(entries.get(0).getHeader());
+                    endPosition = MessageDumper.dumpPosition(entries.get(entries.size() - 1).getHeader());
+                }
 
-            dumpMessages(result, startPosition, endPosition, entries.size());// 记录一下，方便追查问题
+                dumpMessages(result, startPosition, endPosition, entries.size());// 记录一下，方便追查问题
+            }
         }
         return result;
     }
 
     public void rollback(Long batchId) {
-        canalServer.rollback(clientIdentity, batchId);
+        if (subscriber != null) {
+            subscriber.rollback(); // 和canal一致，回滚所有未ack的批次
+        } else {
+            canalServer.rollback(clientIdentity, batchId);
+        }
+        if (batchSizer != null) {
+            batchSizer.rollback();
+        }
     }
 
     public void rollback() {
-        canalServer.rollback(clientIdentity);
+        if (subscriber != null) {
+            subscriber.rollback();
+        } else {
+            canalServer.rollback(clientIdentity);
+        }
+        if (batchSizer != null) {
+            batchSizer.rollback();
+        }
     }
 
     public void ack(Long batchId) {
-        canalServer.ack(clientIdentity, batchId);
+        if (subscriber != null) {
+            subscriber.ack(batchId);
+        } else {
+            canalServer.ack(clientIdentity, batchId);
+        }
+        if (batchSizer != null) {
+            batchSizer.ack(batchId);
+        }
+    }
+
+    public void ack(List<Long> batchIds) {
+        if (subscriber != null) {
+            subscriber.ack(batchIds);
+        } else {
+            // canal只支持按顺序逐个ack，都是内存操作
+            for (Long batchId : batchIds) {
+                canalServer.ack(clientIdentity, batchId);
+            }
+        }
+
+        if (batchSizer != null) {
+            for (Long batchId : batchIds) {
+                batchSizer.ack(batchId);
+            }
+        }
     }
 
     public List<Long> unAckBatchs() {
+        if (subscriber != null) {
+            return subscriber.listBatchIds();
+        }
+
         return canalServer.listBatchIds(clientIdentity);
     }
 
@@ -363,14 +366,6 @@ public class CanalEmbedSelector implements OtterSelector {
         }
     }
 
-    private String buildPositionForDump(Entry entry) {
-        long time = entry.getHeader().getExecuteTime();
-        Date date = new Date(time);
-        SimpleDateFormat format = new SimpleDateFormat(DATE_FORMAT);
-        return entry.getHeader().getLogfileName() + ":" + entry.getHeader().getLogfileOffset() + ":"
-               + entry.getHeader().getExecuteTime() + "(" + format.format(date) + ")";
-    }
-
     // ================== setter / getter ==================
     public void setMessageParser(MessageParser messageParser) {
         this.messageParser = messageParser;
@@ -384,6 +379,10 @@ public class CanalEmbedSelector implements OtterSelector {
         this.canalConfigClient = canalConfigClient;
     }
 
+    public void setAsyncDumper(AsyncDumper asyncDumper) {
+        this.asyncDumper = asyncDumper;
+    }
+
     public void setDump(boolean dump) {
         this.dump = dump;
     }
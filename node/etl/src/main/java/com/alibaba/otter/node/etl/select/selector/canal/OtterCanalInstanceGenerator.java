@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2010-2101 Alibaba Group Holding Limited.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.otter.node.etl.select.selector.canal;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alibaba.otter.canal.common.CanalException;
+import com.alibaba.otter.canal.extend.communication.CanalConfigClient;
+import com.alibaba.otter.canal.extend.ha.MediaHAController;
+import com.alibaba.otter.canal.instance.core.CanalInstance;
+import com.alibaba.otter.canal.instance.core.CanalInstanceGenerator;
+import com.alibaba.otter.canal.instance.manager.CanalInstanceWithManager;
+import com.alibaba.otter.canal.instance.manager.model.Canal;
+import com.alibaba.otter.canal.instance.manager.model.CanalParameter.HAMode;
+import com.alibaba.otter.canal.parse.CanalEventParser;
+import com.alibaba.otter.canal.parse.ha.CanalHAController;
+import com.alibaba.otter.canal.parse.inbound.mysql.MysqlEventParser;
+import com.alibaba.otter.canal.parse.support.AuthenticationInfo;
+import com.alibaba.otter.canal.sink.AbstractCanalEventSink;
+import com.alibaba.otter.canal.sink.CanalEventSink;
+import com.alibaba.otter.node.etl.OtterContextLocator;
+import com.alibaba.otter.shared.common.model.config.pipeline.Pipeline;
+
+/**
+ * otter使用的canal instance构造，独占模式下服务于单个pipeline，共享模式下一个instance服务于多个pipeline
+ *
+ * <pre>
+ * 1. slaveId和报警使用owner pipeline的信息
+ * 2. 每个订阅的pipeline都会挂载一个{@linkplain OtterDownStreamHandler}，各自进行心跳检测
+ * </pre>
+ */
+public class OtterCanalInstanceGenerator implements CanalInstanceGenerator {
+
+    private static final Logger          logger   = LoggerFactory.getLogger(OtterCanalInstanceGenerator.class);
+    private CanalConfigClient            canalConfigClient;
+    private Long                         pipelineId;                                                           // owner pipeline
+    private List<Long>                   handlerPipelineIds;
+    private String                       filter;
+    private boolean                      ddlSync;
+    private boolean                      filterTableError;
+    private boolean                      syncFull;
+    private boolean                      parallelParse;
+    private int                          parallelThreads;
+    private int                          parallelBuffer;
+    private List<OtterDownStreamHandler> handlers = new ArrayList<OtterDownStreamHandler>();
+
+    public OtterCanalInstanceGenerator(CanalConfigClient canalConfigClient, Pipeline pipeline, String filter){
+        this.canalConfigClient = canalConfigClient;
+        this.pipelineId = pipeline.getId();
+        this.handlerPipelineIds = new ArrayList<Long>();
+        this.handlerPipelineIds.add(pipelineId);
+        this.filter = filter;
+        this.ddlSync = pipeline.getParameters().getDdlSync();
+        // 暂时使用skip load代替
+        this.filterTableError = pipeline.getParameters().getSkipSelectException();
+        this.syncFull = pipeline.getParameters().getSyncMode().isRow()
+                        || pipeline.getParameters().isEnableRemedy();
+        this.parallelParse = pipeline.getParameters().getParallelParse();
+        this.parallelThreads = pipeline.getParameters().getParallelParseThreadSize();
+        this.parallelBuffer = pipeline.getParameters().getParallelParseBufferSize();
+    }
+
+    /**
+     * 影响canal解析行为的参数，只有一致的pipeline才能共享同一个instance
+     */
+    public String parseSignature() {
+        return ddlSync + "-" + filterTableError + "-" + syncFull + "-" + parallelParse + "-" + parallelThreads + "-"
+               + parallelBuffer;
+    }
+
+    public CanalInstance generate(String destination) {
+        Canal canal = canalConfigClient.findCanal(destination);
+        final OtterAlarmHandler otterAlarmHandler = new OtterAlarmHandler();
+        otterAlarmHandler.setPipelineId(pipelineId);
+        OtterContextLocator.autowire(otterAlarmHandler); // 注入一下spring资源
+        // 设置下slaveId，保证多个piplineId下重复引用时不重复
+        long slaveId = 10000;// 默认基数
+        if (canal.getCanalParameter().getSlaveId() != null) {
+            slaveId = canal.getCanalParameter().getSlaveId();
+        }
+        canal.getCanalParameter().setSlaveId(slaveId + pipelineId);
+        canal.getCanalParameter().setDdlIsolation(ddlSync);
+        canal.getCanalParameter().setFilterTableError(filterTableError);
+        canal.getCanalParameter().setMemoryStorageRawEntry(false);
+
+        CanalInstanceWithManager instance = new CanalInstanceWithManager(canal, filter) {
+
+            protected CanalHAController initHaController() {
+                HAMode haMode = parameters.getHaMode();
+                if (haMode.isMedia()) {
+                    return new MediaHAController(parameters.getMediaGroup(),
+                        parameters.getDbUsername(),
+                        parameters.getDbPassword(),
+                        parameters.getDefaultDatabaseName());
+                } else {
+                    return super.initHaController();
+                }
+            }
+
+            protected void startEventParserInternal(CanalEventParser parser, boolean isGroup) {
+                super.startEventParserInternal(parser, isGroup);
+
+                if (eventParser instanceof MysqlEventParser) {
+                    // 设置支持的类型
+                    ((MysqlEventParser) eventParser).setSupportBinlogFormats("ROW");
+                    if (syncFull) {
+                        ((MysqlEventParser) eventParser).setSupportBinlogImages("FULL");
+                    } else {
+                        ((MysqlEventParser) eventParser).setSupportBinlogImages("FULL,MINIMAL");
+                    }
+
+                    MysqlEventParser mysqlEventParser = (MysqlEventParser) eventParser;
+                    // 并行解析只会并发处理dml的反序列化，ddl/tableMeta仍为串行，最后按binlog顺序写入store
+                    // 所以store中的数据位点和串行模式一致，对selector的get/ack/rollback没有影响
+                    mysqlEventParser.setParallel(parallelParse);
+                    if (parallelParse) {
+                        if (parallelThreads > 0) {
+                            mysqlEventParser.setParallelThreadSize(parallelThreads);
+                        }
+                        mysqlEventParser.setParallelBufferSize(ringBufferSize(parallelBuffer));
+                    }
+                    CanalHAController haController = mysqlEventParser.getHaController();
+                    if (haController instanceof MediaHAController) {
+                        if (isGroup) {
+                            throw new CanalException("not support group database use media HA");
+                        }
+
+                        ((MediaHAController) haController).setCanalHASwitchable(mysqlEventParser);
+                    }
+
+                    if (!haController.isStart()) {
+                        haController.start();
+                    }
+
+                    // 基于media的Ha，直接从tddl中获取数据库信息
+                    if (haController instanceof MediaHAController) {
+                        AuthenticationInfo authenticationInfo = ((MediaHAController) haController).getAvailableAuthenticationInfo();
+                        ((MysqlEventParser) eventParser).setMasterInfo(authenticationInfo);
+                    }
+                }
+            }
+
+        };
+        instance.setAlarmHandler(otterAlarmHandler);
+
+        CanalEventSink eventSink = instance.getEventSink();
+        if (eventSink instanceof AbstractCanalEventSink) {
+            for (Long handlerPipelineId : handlerPipelineIds) {
+                OtterDownStreamHandler handler = new OtterDownStreamHandler();
+                handler.setPipelineId(handlerPipelineId);
+                handler.setDetectingIntervalInSeconds(canal.getCanalParameter().getDetectingIntervalInSeconds());
+                OtterContextLocator.autowire(handler); // 注入一下spring资源
+                ((AbstractCanalEventSink) eventSink).addHandler(handler, 0); // 添加到开头
+                handler.start();
+                handlers.add(handler);
+            }
+        }
+
+        return instance;
+    }
+
+    /**
+     * 关闭instance之后需要停止对应的心跳检测
+     */
+    public void stopHandlers() {
+        for (OtterDownStreamHandler handler : handlers) {
+            try {
+                handler.stop();
+            } catch (Exception e) {
+                logger.warn("failed destory handler", e);
+            }
+        }
+
+        handlers.clear();
+    }
+
+    /**
+     * 共享模式下pipeline退出时，只停止它自己的心跳检测
+     */
+    public void stopHandler(Long handlerPipelineId) {
+        Iterator<OtterDownStreamHandler> iter = handlers.iterator();
+        while (iter.hasNext()) {
+            OtterDownStreamHandler handler = iter.next();
+            if (handlerPipelineId.equals(handler.getPipelineId())) {
+                try {
+                    handler.stop();
+                } catch (Exception e) {
+                    logger.warn("failed destory handler", e);
+                }
+                iter.remove();
+            }
+        }
+
+        handlerPipelineIds.remove(handlerPipelineId);
+    }
+
+    // disruptor要求ringbuffer的大小为2的指数
+    private int ringBufferSize(int size) {
+        int ringBufferSize = 1;
+        while (ringBufferSize < size) {
+            ringBufferSize <<= 1;
+        }
+        return ringBufferSize;
+    }
+
+    // ================== setter / getter ==================
+
+    public void setFilter(String filter) {
+        this.filter = filter;
+    }
+
+    public void setHandlerPipelineIds(List<Long> handlerPipelineIds) {
+        this.handlerPipelineIds = handlerPipelineIds;
+    }
+
+    public Long getPipelineId() {
+        return pipelineId;
+    }
+
+}
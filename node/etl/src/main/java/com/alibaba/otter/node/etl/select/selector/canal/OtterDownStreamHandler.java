@@ -214,6 +214,10 @@ public class OtterDownStreamHandler extends AbstractCanalEventDownStreamHandler<
         return delayTime > detectingIntervalInSeconds * 2 * 1000;
     }
 
+    public Long getPipelineId() {
+        return pipelineId;
+    }
+
     public void setPipelineId(Long pipelineId) {
         this.pipelineId = pipelineId;
     }
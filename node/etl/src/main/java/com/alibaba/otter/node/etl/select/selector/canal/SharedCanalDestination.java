@@ -0,0 +1,564 @@
+/*
+ * Copyright (C) 2010-2101 Alibaba Group Holding Limited.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.otter.node.etl.select.selector.canal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alibaba.otter.canal.filter.aviater.AviaterRegexFilter;
+import com.alibaba.otter.canal.instance.core.CanalInstance;
+import com.alibaba.otter.canal.meta.CanalMetaManager;
+import com.alibaba.otter.canal.protocol.CanalEntry.Entry;
+import com.alibaba.otter.canal.protocol.CanalEntry.EntryType;
+import com.alibaba.otter.canal.protocol.CanalEntry.Header;
+import com.alibaba.otter.canal.protocol.ClientIdentity;
+import com.alibaba.otter.canal.protocol.Message;
+import com.alibaba.otter.canal.protocol.position.EntryPosition;
+import com.alibaba.otter.canal.protocol.position.LogPosition;
+import com.alibaba.otter.canal.protocol.position.Position;
+import com.alibaba.otter.canal.protocol.position.PositionRange;
+import com.alibaba.otter.canal.store.CanalEventStore;
+import com.alibaba.otter.canal.store.model.Event;
+import com.alibaba.otter.canal.store.model.Events;
+import com.alibaba.otter.node.etl.select.exceptions.SelectException;
+
+/**
+ * 同一个canal destination下多个pipeline共享一份binlog解析
+ *
+ * <pre>
+ * 1. 每个destination(以及解析参数一致)在node内只启动一个canal instance，只建立一个binlog dump连接，只解析一次
+ * 2. instance的解析filter为所有订阅pipeline filter的并集，分发时再按各自的filter过滤
+ * 3. 直接从eventStore中获取数据，放入共享的批次缓冲中，每个pipeline有独立的读取/ack游标，batchId为共享批次的序号
+ * 4. 所有pipeline都ack之后，才会ack底层的eventStore释放空间，最慢的pipeline会阻塞其他pipeline，缓冲批次数有上限
+ * 5. 每个pipeline的ack位点仍然写入各自clientIdentity的cursor，instance重启时从所有pipeline的最小位点开始解析，
+ *    位点靠前的pipeline会跳过自己已经ack的数据，直到读取位置越过自己的cursor，期间的ack不会让cursor回退
+ * 6. 运行过程中有新的pipeline加入时，会重启一次instance，未ack的批次在重启后可能被重复投递，和rollback的语义一致
+ * </pre>
+ */
+public class SharedCanalDestination {
+
+    private static final Logger                              logger          = LoggerFactory.getLogger(SharedCanalDestination.class);
+    private static final Map<String, SharedCanalDestination> destinations    = new HashMap<String, SharedCanalDestination>();
+    private static final int                                 maxBufferBatchs = 64;                                                   // 最多缓冲的共享批次数
+    private static final long                                maxWaitMillis   = 100L;
+
+    private final String                                     key;
+    private final String                                     destination;
+    private final List<Subscriber>                           subscribers     = new ArrayList<Subscriber>();
+    private final LinkedList<SharedBatch>                    buffer          = new LinkedList<SharedBatch>();
+    private OtterCanalInstanceGenerator                      generator;
+    private CanalInstance                                    instance;
+    private CanalMetaManager                                 metaManager;
+    private CanalEventStore<Event>                           eventStore;
+    private Position                                         lastEnd;
+    private long                                             nextSeq         = 1;
+    private long                                             generation      = 0;
+    private boolean                                          fetching        = false;
+    private boolean                                          needRestart     = false;
+
+    private SharedCanalDestination(String key, String destination){
+        this.key = key;
+        this.destination = destination;
+    }
+
+    /**
+     * 订阅共享的destination，第一个订阅者会启动canal instance
+     */
+    public static Subscriber subscribe(OtterCanalInstanceGenerator generator, ClientIdentity clientIdentity) {
+        String destination = clientIdentity.getDestination();
+        String key = destination + "-" + generator.parseSignature();
+        synchronized (destinations) {
+            SharedCanalDestination shared = destinations.get(key);
+            if (shared == null) {
+                shared = new SharedCanalDestination(key, destination);
+                destinations.put(key, shared);
+            }
+
+            Subscriber subscriber = new Subscriber(shared, generator, clientIdentity);
+            try {
+                shared.join(subscriber);
+            } catch (RuntimeException e) {
+                if (shared.isEmpty()) {
+                    destinations.remove(key);
+                }
+                throw e;
+            }
+            return subscriber;
+        }
+    }
+
+    private static void unsubscribe(Subscriber subscriber) {
+        synchronized (destinations) {
+            SharedCanalDestination shared = subscriber.shared;
+            shared.leave(subscriber);
+            if (shared.isEmpty()) {
+                destinations.remove(shared.key);
+            }
+        }
+    }
+
+    private synchronized void join(Subscriber subscriber) {
+        subscribers.add(subscriber);
+        if (instance == null) {
+            try {
+                startInstance();
+            } catch (RuntimeException e) {
+                subscribers.remove(subscriber);
+                throw e;
+            }
+        } else {
+            // 需要从新的pipeline位点重新解析，并扩大filter
+            if (metaManager != null && !metaManager.hasSubscribe(subscriber.clientIdentity)) {
+                metaManager.subscribe(subscriber.clientIdentity);
+            }
+            subscriber.readSeq = nextSeq;
+            needRestart = true;
+            notifyAll();
+        }
+
+        logger.info("pipeline {} subscribe shared destination {} , subscribers : {}",
+            new Object[] { subscriber.getPipelineId(), key, subscribers.size() });
+    }
+
+    private synchronized void leave(Subscriber subscriber) {
+        if (!subscribers.remove(subscriber)) {
+            return;
+        }
+
+        logger.info("pipeline {} unsubscribe shared destination {} , subscribers : {}",
+            new Object[] { subscriber.getPipelineId(), key, subscribers.size() });
+        if (subscribers.isEmpty()) {
+            waitFetching();
+            stopInstance();
+        } else {
+            if (generator != null) {
+                generator.stopHandler(subscriber.getPipelineId());
+                if (generator == subscriber.generator) {
+                    // owner离开后，需要使用剩余pipeline的参数重建instance
+                    needRestart = true;
+                }
+            }
+            retire(); // 离开的pipeline不再阻塞其他pipeline
+        }
+        notifyAll();
+    }
+
+    private synchronized boolean isEmpty() {
+        return subscribers.isEmpty();
+    }
+
+    private Message get(Subscriber subscriber, int batchSize, long timeout, TimeUnit unit)
+                                                                                            throws InterruptedException {
+        long deadline = timeout < 0 ? 0 : System.currentTimeMillis() + unit.toMillis(timeout);
+        while (true) {
+            CanalEventStore<Event> store = null;
+            Position start = null;
+            long currentGeneration = 0;
+            synchronized (this) {
+                if (!subscribers.contains(subscriber)) {
+                    return null;
+                }
+
+                restartIfNecessary();
+                if (subscriber.readSeq < nextSeq) {
+                    return read(subscriber);
+                }
+
+                long remain = deadline - System.currentTimeMillis();
+                if (fetching || buffer.size() >= maxBufferBatchs) {
+                    // 其他pipeline正在获取数据，或者最慢的pipeline还未ack
+                    if (timeout < 0 || remain <= 0) {
+                        return null;
+                    }
+
+                    wait(Math.min(remain, maxWaitMillis));
+                    continue;
+                }
+
+                fetching = true;
+                store = eventStore;
+                start = lastEnd != null ? lastEnd : eventStore.getFirstPosition();
+                currentGeneration = generation;
+            }
+
+            Events<Event> events = null;
+            try {
+                long remain = deadline - System.currentTimeMillis();
+                if (timeout < 0 || remain <= 0) {
+                    events = store.tryGet(start, batchSize);
+                } else {
+                    events = store.get(start, batchSize, remain, TimeUnit.MILLISECONDS);
+                }
+            } finally {
+                synchronized (this) {
+                    fetching = false;
+                    if (events != null && !events.getEvents().isEmpty() && currentGeneration == generation) {
+                        append(events);
+                    }
+                    notifyAll();
+                }
+            }
+
+            if ((events == null || events.getEvents().isEmpty())
+                && (timeout < 0 || deadline <= System.currentTimeMillis())) {
+                return null;
+            }
+        }
+    }
+
+    private synchronized void ack(Subscriber subscriber, List<Long> batchIds) {
+        Position ack = null;
+        for (Long batchId : batchIds) {
+            PendingBatch pending = removePending(subscriber, batchId);
+            if (pending.ack != null) {
+                ack = pending.ack;
+            }
+        }
+
+        // 多个批次只需要更新一次位点，重启后共享缓冲会回退到最慢pipeline的位点，位点靠前的pipeline不能回退自己的cursor
+        if (ack != null && metaManager != null && subscriber.isAfterCursor(ack)) {
+            metaManager.updateCursor(subscriber.clientIdentity, ack);
+            if (ack instanceof LogPosition) {
+                subscriber.cursor = ((LogPosition) ack).getPostion();
+            }
+        }
+        retire();
+    }
+
+    private PendingBatch removePending(Subscriber subscriber, Long batchId) {
+        if (!subscriber.stales.isEmpty() && subscriber.stales.getFirst().seq == batchId) {
+            // instance重启之前投递的批次，只需要更新位点
+            return subscriber.stales.removeFirst();
+        }
+
+        if (subscriber.pendings.isEmpty() || subscriber.pendings.getFirst().seq != batchId) {
+            throw new SelectException(String.format("batchId:%d is not the firstly:%s",
+                batchId,
+                subscriber.pendings.isEmpty() ? "null" : String.valueOf(subscriber.pendings.getFirst().seq)));
+        }
+        return subscriber.pendings.removeFirst();
+    }
+
+    private synchronized void rollback(Subscriber subscriber) {
+        if (!subscriber.pendings.isEmpty()) {
+            subscriber.readSeq = subscriber.pendings.getFirst().seq;
+        }
+
+        subscriber.pendings.clear();
+        subscriber.stales.clear();
+    }
+
+    private synchronized List<Long> listBatchIds(Subscriber subscriber) {
+        List<Long> batchIds = new ArrayList<Long>();
+        for (PendingBatch pending : subscriber.stales) {
+            batchIds.add(pending.seq);
+        }
+        for (PendingBatch pending : subscriber.pendings) {
+            batchIds.add(pending.seq);
+        }
+        return batchIds;
+    }
+
+    private Message read(Subscriber subscriber) {
+        SharedBatch batch = buffer.get((int) (subscriber.readSeq - buffer.getFirst().seq));
+        subscriber.readSeq++;
+        subscriber.pendings.add(new PendingBatch(batch.seq, batch.ack));
+
+        List<Entry> entries = new ArrayList<Entry>(batch.entries.size());
+        for (Entry entry : batch.entries) {
+            if (subscriber.accept(entry)) {
+                entries.add(entry);
+            }
+        }
+        return new Message(batch.seq, entries);
+    }
+
+    private void append(Events<Event> events) {
+        List<Entry> entries = new ArrayList<Entry>(events.getEvents().size());
+        for (Event event : events.getEvents()) {
+            entries.add(event.getEntry());
+        }
+
+        PositionRange range = events.getPositionRange();
+        buffer.add(new SharedBatch(nextSeq++, entries, range.getEnd(), range.getAck()));
+        lastEnd = range.getEnd();
+    }
+
+    /**
+     * 释放所有pipeline都已ack的批次
+     */
+    private void retire() {
+        long lowWater = nextSeq;
+        for (Subscriber subscriber : subscribers) {
+            long seq = subscriber.pendings.isEmpty() ? subscriber.readSeq : subscriber.pendings.getFirst().seq;
+            lowWater = Math.min(lowWater, seq);
+        }
+
+        SharedBatch last = null;
+        while (!buffer.isEmpty() && buffer.getFirst().seq < lowWater) {
+            last = buffer.removeFirst();
+        }
+
+        if (last != null && eventStore != null) {
+            eventStore.ack(last.end);
+            notifyAll();
+        }
+    }
+
+    private void restartIfNecessary() throws InterruptedException {
+        if (!needRestart) {
+            return;
+        }
+
+        long currentGeneration = generation;
+        while (fetching) {
+            wait(maxWaitMillis);
+        }
+
+        // wait期间会释放锁，其他pipeline可能已经完成了重启
+        if (!needRestart || generation != currentGeneration || subscribers.isEmpty()) {
+            return;
+        }
+
+        logger.info("restart shared destination {} for new subscriber", key);
+        stopInstance();
+        startInstance();
+    }
+
+    private void startInstance() {
+        // 使用第一个订阅者的参数作为owner，filter取并集
+        generator = subscribers.get(0).generator;
+        Set<String> filters = new LinkedHashSet<String>();
+        List<Long> pipelineIds = new ArrayList<Long>();
+        for (Subscriber subscriber : subscribers) {
+            if (StringUtils.isNotEmpty(subscriber.clientIdentity.getFilter())) {
+                filters.add(subscriber.clientIdentity.getFilter());
+            }
+            pipelineIds.add(subscriber.getPipelineId());
+        }
+        generator.setFilter(StringUtils.join(filters, ","));
+        generator.setHandlerPipelineIds(pipelineIds);
+
+        instance = generator.generate(destination);
+        instance.start();
+        metaManager = instance.getMetaManager();
+        eventStore = instance.getEventStore();
+        generation++;
+        needRestart = false;
+        buffer.clear();
+        lastEnd = null;
+        for (Subscriber subscriber : subscribers) {
+            if (!metaManager.hasSubscribe(subscriber.clientIdentity)) {
+                metaManager.subscribe(subscriber.clientIdentity);
+            }
+
+            subscriber.reset(nextSeq, metaManager.getCursor(subscriber.clientIdentity));
+        }
+    }
+
+    private void stopInstance() {
+        if (generator != null) {
+            generator.stopHandlers();
+        }
+
+        if (instance != null) {
+            try {
+                instance.stop();
+            } catch (Exception e) {
+                logger.warn("failed stop shared destination " + key, e);
+            }
+        }
+
+        buffer.clear();
+        instance = null;
+        metaManager = null;
+        eventStore = null;
+        generator = null;
+    }
+
+    private void waitFetching() {
+        try {
+            while (fetching) {
+                wait(maxWaitMillis);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 单个pipeline的订阅，接口和{@linkplain com.alibaba.otter.canal.server.embedded.CanalServerWithEmbedded}保持一致
+     */
+    public static class Subscriber {
+
+        private final SharedCanalDestination      shared;
+        private final OtterCanalInstanceGenerator generator;
+        private final ClientIdentity              clientIdentity;
+        private final AviaterRegexFilter          filter;
+        private final LinkedList<PendingBatch>    pendings = new LinkedList<PendingBatch>();
+        private final LinkedList<PendingBatch>    stales   = new LinkedList<PendingBatch>();
+        private long                              readSeq;
+        private EntryPosition                     cursor;                                     // 已经记录的ack位点
+        private EntryPosition                     skipCursor;
+
+        private Subscriber(SharedCanalDestination shared, OtterCanalInstanceGenerator generator,
+                           ClientIdentity clientIdentity){
+            this.shared = shared;
+            this.generator = generator;
+            this.clientIdentity = clientIdentity;
+            if (StringUtils.isNotEmpty(clientIdentity.getFilter())) {
+                this.filter = new AviaterRegexFilter(clientIdentity.getFilter());
+            } else {
+                this.filter = null;
+            }
+        }
+
+        public Message getWithoutAck(int batchSize) throws InterruptedException {
+            return shared.get(this, batchSize, -1L, TimeUnit.MILLISECONDS);
+        }
+
+        public Message getWithoutAck(int batchSize, long timeout, TimeUnit unit) throws InterruptedException {
+            return shared.get(this, batchSize, timeout, unit);
+        }
+
+        public void ack(Long batchId) {
+            shared.ack(this, Arrays.asList(batchId));
+        }
+
+        public void ack(List<Long> batchIds) {
+            shared.ack(this, batchIds);
+        }
+
+        public void rollback() {
+            shared.rollback(this);
+        }
+
+        public List<Long> listBatchIds() {
+            return shared.listBatchIds(this);
+        }
+
+        public void unsubscribe() {
+            SharedCanalDestination.unsubscribe(this);
+        }
+
+        public Long getPipelineId() {
+            return generator.getPipelineId();
+        }
+
+        private void reset(long seq, Position cursor) {
+            readSeq = seq;
+            stales.addAll(pendings);
+            pendings.clear();
+            this.cursor = cursor instanceof LogPosition ? ((LogPosition) cursor).getPostion() : null;
+            skipCursor = this.cursor;
+        }
+
+        /**
+         * ack位点是否在当前cursor之后，无法比较时按照之后处理
+         */
+        private boolean isAfterCursor(Position ack) {
+            if (cursor == null || !(ack instanceof LogPosition)) {
+                return true;
+            }
+
+            EntryPosition position = ((LogPosition) ack).getPostion();
+            if (position == null || position.getJournalName() == null || position.getPosition() == null) {
+                return true;
+            }
+
+            return compare(cursor, position.getServerId(), position.getJournalName(), position.getPosition()) > 0;
+        }
+
+        private boolean accept(Entry entry) {
+            Header header = entry.getHeader();
+            if (skipCursor != null) {
+                if (isConsumed(header)) {
+                    return false;
+                }
+
+                skipCursor = null; // 已经追上自己的位点
+            }
+
+            if (filter == null || entry.getEntryType() != EntryType.ROWDATA
+                || StringUtils.isEmpty(header.getTableName())) {
+                return true;
+            }
+
+            return filter.filter(header.getSchemaName() + "." + header.getTableName());
+        }
+
+        private boolean isConsumed(Header header) {
+            return compare(skipCursor, header.getServerId(), header.getLogfileName(), header.getLogfileOffset()) <= 0;
+        }
+
+        /**
+         * 比较binlog位点和cursor的先后，位点不可比较时(比如主备切换)认为在cursor之后
+         */
+        private int compare(EntryPosition cursor, Long serverId, String journalName, long offset) {
+            if (cursor.getJournalName() == null || cursor.getPosition() == null) {
+                return 1;
+            }
+
+            if (cursor.getServerId() != null && serverId != null && !cursor.getServerId().equals(serverId)) {
+                return 1; // 发生了主备切换，位点不可比较
+            }
+
+            int compare = journalName.compareTo(cursor.getJournalName());
+            if (compare != 0) {
+                return compare;
+            }
+            return offset < cursor.getPosition() ? -1 : (offset == cursor.getPosition() ? 0 : 1);
+        }
+    }
+
+    private static class SharedBatch {
+
+        private final long        seq;
+        private final List<Entry> entries;
+        private final Position    end;
+        private final Position    ack;
+
+        public SharedBatch(long seq, List<Entry> entries, Position end, Position ack){
+            this.seq = seq;
+            this.entries = entries;
+            this.end = end;
+            this.ack = ack;
+        }
+    }
+
+    private static class PendingBatch {
+
+        private final long     seq;
+        private final Position ack;
+
+        public PendingBatch(long seq, Position ack){
+            this.seq = seq;
+            this.ack = ack;
+        }
+    }
+}
@@ -75,4 +75,21 @@ public class SqlTemplateTest extends BaseDbTest {
         want.bool(sql1 == sql2);
     }
 
+    @Test
+    public void test_batch_select() {
+        String[] pk = { "id" };
+        String[] cols = { "name", "amount" };
+        SqlTemplate mysql = new MysqlSqlTemplate();
+        want.string(mysql.getBatchSelectSql(SCHEMA_NAME, TABLE_NAME, pk, cols, 3))
+            .isEqualTo("select `id` , `name` , `amount` from `srf`.`columns` where `id` in (? , ? , ?)");
+        want.string(mysql.getBatchSelectSql(SCHEMA_NAME, TABLE_NAME, pkColumns, new String[] { "amount" }, 2))
+            .isEqualTo("select `id` , `name` , `amount` from `srf`.`columns` where ( `id` = ? and `name` = ? ) or ( `id` = ? and `name` = ? )");
+
+        SqlTemplate oracle = new OracleSqlTemplate();
+        want.string(oracle.getBatchSelectSql(SCHEMA_NAME, TABLE_NAME, pk, cols, 2))
+            .isEqualTo("select id , name , amount from srf.columns where id in (? , ?)");
+        want.string(oracle.getBatchSelectSql(SCHEMA_NAME, TABLE_NAME, pkColumns, new String[] { "amount" }, 2))
+            .isEqualTo("select id , name , amount from srf.columns where ( id = ? and name = ? ) or ( id = ? and name = ? )");
+    }
+
 }
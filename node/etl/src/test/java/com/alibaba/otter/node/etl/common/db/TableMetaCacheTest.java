@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2010-2101 Alibaba Group Holding Limited.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.otter.node.etl.common.db;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ddlutils.model.Table;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.alibaba.otter.node.etl.common.db.dialect.TableMetaCache;
+import com.google.common.base.Function;
+
+public class TableMetaCacheTest {
+
+    @Test
+    public void testInvalidate() {
+        final AtomicInteger loads = new AtomicInteger(0);
+        TableMetaCache cache = new TableMetaCache(new Function<List<String>, Table>() {
+
+            public Table apply(List<String> names) {
+                loads.incrementAndGet();
+                Table table = new Table();
+                table.setSchema(names.get(0));
+                table.setName(names.get(1));
+                return table;
+            }
+        });
+
+        Table table = cache.get("test", "offer");
+        Assert.assertSame(cache.get("test", "offer"), table);
+        Assert.assertEquals(loads.get(), 1);
+        Assert.assertEquals(cache.getHitCount(), 1);
+        Assert.assertEquals(cache.getMissCount(), 1);
+
+        // 模拟收到ddl
+        cache.invalidate("test", "offer");
+        Assert.assertNotSame(cache.get("test", "offer"), table);
+        Assert.assertEquals(loads.get(), 2);
+
+        cache.get("test", "member");
+        cache.invalidateAll();
+        cache.get("test", "offer");
+        cache.get("test", "member");
+        Assert.assertEquals(loads.get(), 5);
+    }
+
+    @Test
+    public void testMaxSize() {
+        TableMetaCache cache = new TableMetaCache(2, new Function<List<String>, Table>() {
+
+            public Table apply(List<String> names) {
+                Table table = new Table();
+                table.setName(names.get(1));
+                return table;
+            }
+        });
+
+        cache.get("test", "t1");
+        cache.get("test", "t2");
+        cache.get("test", "t3");
+        Assert.assertTrue(cache.size() <= 2);
+    }
+
+    @Test
+    public void testLoadFailed() {
+        TableMetaCache cache = new TableMetaCache(new Function<List<String>, Table>() {
+
+            public Table apply(List<String> names) {
+                throw new IllegalStateException("no found table");
+            }
+        });
+
+        try {
+            cache.get("test", "offer");
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            // 保持和原先一样，直接抛出加载时的异常
+        }
+    }
+}
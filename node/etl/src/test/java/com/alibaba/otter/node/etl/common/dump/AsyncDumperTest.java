@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2010-2101 Alibaba Group Holding Limited.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.otter.node.etl.common.dump;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class AsyncDumperTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(AsyncDumperTest.class);
+
+    @Test
+    public void testDump() throws Exception {
+        AsyncDumper dumper = new AsyncDumper();
+        dumper.setBufferBytes(16 * 1024L);
+        dumper.afterPropertiesSet();
+
+        final AtomicInteger written = new AtomicInteger(0);
+        final CountDownLatch latch = new CountDownLatch(10);
+        for (int i = 0; i < 10; i++) {
+            Assert.assertTrue(dumper.dump(new DumpRecord(logger, "test", 1L, true) {
+
+                protected void write(Logger logger) {
+                    written.incrementAndGet();
+                    latch.countDown();
+                }
+            }));
+        }
+
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(dumper.getAcceptCount(), 10);
+        Assert.assertEquals(dumper.getDropCount(), 0);
+        dumper.destroy();
+
+        // 关闭之后不再接收
+        Assert.assertFalse(dumper.dump(new DumpRecord(logger, "test", 1L, true) {
+
+            protected void write(Logger logger) {
+            }
+        }));
+    }
+
+    @Test
+    public void testDropAndSample() throws Exception {
+        AsyncDumper dumper = new AsyncDumper();
+        dumper.setBufferBytes(4 * 1024L); // 每条记录默认按1KB估算
+        dumper.setSampleRate(2);
+        dumper.afterPropertiesSet();
+
+        // 后台线程被阻塞，队列很快会被填满
+        final CountDownLatch block = new CountDownLatch(1);
+        final AtomicInteger snapshots = new AtomicInteger(0);
+        for (int i = 0; i < 10; i++) {
+            dumper.dump(new DumpRecord(logger, "test", 1L, true) {
+
+                protected void snapshot() {
+                    snapshots.incrementAndGet();
+                }
+
+                protected void write(Logger logger) {
+                    try {
+                        block.await();
+                    } catch (InterruptedException e) {
+                        // ignore
+                    }
+                }
+            });
+        }
+
+        Assert.assertTrue(dumper.getDropCount() > 0);
+        Assert.assertTrue(dumper.getSampleCount() > 0);
+        Assert.assertEquals(dumper.getAcceptCount() + dumper.getDropCount(), 10);
+        // 被丢弃的记录不会做数据拷贝
+        Assert.assertEquals(snapshots.get(), dumper.getAcceptCount());
+        Assert.assertTrue(dumper.getUsedBytes() <= 4 * 1024L);
+        block.countDown();
+        dumper.destroy();
+    }
+}
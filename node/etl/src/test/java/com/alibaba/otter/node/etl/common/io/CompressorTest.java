@@ -17,8 +17,10 @@
 package com.alibaba.otter.node.etl.common.io;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Arrays;
 
 import org.apache.commons.lang.math.RandomUtils;
@@ -29,6 +31,7 @@ import com.alibaba.otter.node.etl.common.io.compress.Compressor;
 import com.alibaba.otter.node.etl.common.io.compress.impl.PackableObject;
 import com.alibaba.otter.node.etl.common.io.compress.impl.bzip2.BZip2Compressor;
 import com.alibaba.otter.node.etl.common.io.compress.impl.gzip.GzipCompressor;
+import com.alibaba.otter.node.etl.common.io.compress.impl.lz4.Lz4Compressor;
 import com.alibaba.otter.shared.common.utils.NioUtils;
 
 /**
@@ -39,7 +42,8 @@ import com.alibaba.otter.shared.common.utils.NioUtils;
  */
 public class CompressorTest extends BaseOtterTest {
 
-    private static Compressor[] comps = new Compressor[] { new GzipCompressor(), new BZip2Compressor() };
+    private static Compressor[] comps = new Compressor[] { new GzipCompressor(), new BZip2Compressor(),
+            new Lz4Compressor() };
 
     @Test
     public void test_stream() {
@@ -63,6 +67,30 @@ public class CompressorTest extends BaseOtterTest {
         }
     }
 
+    @Test
+    public void test_wrap_stream() {
+        try {
+            byte[] data = getBlock(20 * 1024);
+            for (int i = 0; i < comps.length; i++) {
+                Compressor comp = comps[i];
+                // 基于包装流的边写边压缩
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                OutputStream output = comp.compressStream(bytes);
+                output.write(data, 0, 1024);
+                output.write(data, 1024, data.length - 1024);
+                output.close();
+
+                InputStream input = comp.decompressStream(new ByteArrayInputStream(bytes.toByteArray()));
+                byte[] result = NioUtils.read(input);
+                check(data, result);
+                input.close();
+            }
+
+        } catch (Exception e) {
+            want.fail();
+        }
+    }
+
     @Test
     public void test_block() {
         try {
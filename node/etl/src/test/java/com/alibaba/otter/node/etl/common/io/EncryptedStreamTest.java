@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2010-2101 Alibaba Group Holding Limited.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.otter.node.etl.common.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.math.RandomUtils;
+import org.testng.annotations.Test;
+
+import com.alibaba.otter.node.etl.BaseOtterTest;
+import com.alibaba.otter.node.etl.common.io.signature.ChecksumException;
+import com.alibaba.otter.node.etl.common.io.signature.ChecksumUtils;
+
+public class EncryptedStreamTest extends BaseOtterTest {
+
+    @Test
+    public void test_simple() throws IOException {
+        byte[] data = getBlock(100 * 1024);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        EncryptedOutputStream encryptOutput = new EncryptedOutputStream(output);
+        encryptOutput.write(data);
+        encryptOutput.close();
+
+        EncryptedData encryptedData = encryptOutput.getEncryptedData();
+        byte[] encrypt = output.toByteArray();
+        // CTR模式密文长度不变，crc和一次性计算的结果一致
+        want.number(encrypt.length).isEqualTo(data.length);
+        want.string(encryptedData.getCrc()).isEqualTo(ChecksumUtils.checksum(encrypt));
+
+        DecryptedInputStream decryptInput = new DecryptedInputStream(new ByteArrayInputStream(encrypt),
+            encryptedData.getKey(),
+            encryptedData.getCrc());
+        byte[] decrypt = new byte[1024];
+        IOUtils.readFully(decryptInput, decrypt);
+        // 只读取部分数据，校验时会读完剩余的密文
+        decryptInput.verify();
+        for (int i = 0; i < decrypt.length; i++) {
+            want.number(decrypt[i]).isEqualTo(data[i]);
+        }
+    }
+
+    @Test
+    public void test_checksum_failed() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        EncryptedOutputStream encryptOutput = new EncryptedOutputStream(output);
+        encryptOutput.write(getBlock(10 * 1024));
+        encryptOutput.close();
+
+        EncryptedData encryptedData = encryptOutput.getEncryptedData();
+        byte[] encrypt = output.toByteArray();
+        encrypt[encrypt.length - 1] ^= 1;
+        DecryptedInputStream decryptInput = new DecryptedInputStream(new ByteArrayInputStream(encrypt),
+            encryptedData.getKey(),
+            encryptedData.getCrc());
+        IOUtils.toByteArray(decryptInput);
+        try {
+            decryptInput.verify();
+            want.fail();
+        } catch (ChecksumException e) {
+            // ignore
+        }
+    }
+
+    private byte[] getBlock(int length) {
+        byte[] rawData = new byte[length];
+        for (int i = 0; i < rawData.length; i++) {
+            rawData[i] = (byte) (' ' + RandomUtils.nextInt(95));
+        }
+        return rawData;
+    }
+}
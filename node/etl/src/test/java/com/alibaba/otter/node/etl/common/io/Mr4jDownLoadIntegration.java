@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2010-2101 Alibaba Group Holding Limited.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.otter.node.etl.common.io;
+
+import org.testng.annotations.Test;
+
+import com.alibaba.otter.node.etl.BaseOtterTest;
+import com.alibaba.otter.node.etl.common.io.download.exception.DataRetrieveException;
+import com.alibaba.otter.node.etl.common.io.download.impl.mr4j.Mr4jRetriever;
+
+public class Mr4jDownLoadIntegration extends BaseOtterTest {
+
+    private static final String tmp = System.getProperty("java.io.tmpdir", "/tmp");
+
+    @Test
+    public void testDownLoad_ok() {
+        // 按256KB拆分segment，大文件会并行下载
+        Mr4jRetriever retriever = new Mr4jRetriever("http://china.alibaba.com", tmp, 4, 256 * 1024L);
+        try {
+            retriever.connect();
+            retriever.doRetrieve();
+            want.bool(retriever.isDataAvailable()).is(true);
+            want.number(retriever.getTransferredBytes()).isEqualTo(retriever.getDataAsFile().length());
+        } catch (DataRetrieveException ex) {
+            retriever.abort();
+        } finally {
+            retriever.disconnect();
+        }
+    }
+
+    @Test
+    public void testDownLoad_failed() {
+        Mr4jRetriever retriever = new Mr4jRetriever("http://127.0.0.1:1/aaaaaaa/sssss", tmp);
+        retriever.setRetryTimes(0);
+        try {
+            retriever.connect();
+            retriever.doRetrieve();
+            want.fail();
+        } catch (DataRetrieveException ex) {
+            retriever.abort();
+            want.bool(retriever.isDataAvailable()).is(false);
+        } finally {
+            retriever.disconnect();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2010-2101 Alibaba Group Holding Limited.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.otter.node.etl.common.pipe;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import com.alibaba.otter.node.etl.BaseOtterTest;
+import com.alibaba.otter.node.etl.TestUtils;
+import com.alibaba.otter.node.etl.common.pipe.impl.AdaptivePipeChooser;
+import com.alibaba.otter.node.etl.common.pipe.impl.AdaptivePipeChooser.CostSample;
+import com.alibaba.otter.node.etl.common.pipe.impl.AdaptivePipeChooser.PipeCostEvent;
+import com.alibaba.otter.node.etl.common.pipe.impl.AdaptivePipeChooser.PipeCostRpc;
+import com.alibaba.otter.node.etl.common.pipe.impl.AdaptivePipeChooser.PipeType;
+
+public class AdaptivePipeChooserTest extends BaseOtterTest {
+
+    private static final Long PIPELINE_ID = 1L;
+    private static final Long NID         = 2L;
+
+    @Test
+    public void test_choose() throws Exception {
+        AdaptivePipeChooser chooser = new AdaptivePipeChooser();
+        chooser.setExploreInterval(1000);
+
+        // 样本不足时使用阈值规则的结果
+        want.object(chooser.choose(PIPELINE_ID, NID, 2 * 1024L, PipeType.HTTP)).isEqualTo(PipeType.HTTP);
+
+        // rpc: 1ms + 1ms/KB , http: 20ms + 0.1ms/KB，两者在21KB左右相交
+        List<CostSample> samples = new ArrayList<CostSample>();
+        for (int i = 1; i <= 10; i++) {
+            long size = i * 10 * 1024L;
+            chooser.recordProduce(NID, PipeType.RPC, size, millis(0.5 + 0.5 * i * 10));
+            chooser.recordProduce(NID, PipeType.HTTP, size, millis(10 + 0.05 * i * 10));
+            samples.add(new CostSample(PipeType.RPC, size, millis(0.5 + 0.5 * i * 10)));
+            samples.add(new CostSample(PipeType.HTTP, size, millis(10 + 0.05 * i * 10)));
+        }
+        PipeCostEvent event = new PipeCostEvent(PipeCostRpc.report);
+        event.setNid(NID);
+        event.setSamples(samples);
+        TestUtils.invokeMethod(chooser, "onReport", event);
+
+        want.object(chooser.choose(PIPELINE_ID, NID, 2 * 1024L, PipeType.HTTP)).isEqualTo(PipeType.RPC);
+        want.object(chooser.choose(PIPELINE_ID, NID, 500 * 1024L, PipeType.RPC)).isEqualTo(PipeType.HTTP);
+        want.string(chooser.info(PIPELINE_ID)).contains("reason:model");
+        // 其他node还没有样本
+        want.object(chooser.choose(PIPELINE_ID, 3L, 500 * 1024L, PipeType.RPC)).isEqualTo(PipeType.RPC);
+    }
+
+    @Test
+    public void test_explore() {
+        AdaptivePipeChooser chooser = new AdaptivePipeChooser();
+        chooser.setExploreInterval(2);
+        chooser.setMaxExploreSize(1024L);
+
+        want.object(chooser.choose(PIPELINE_ID, NID, 512L, PipeType.HTTP)).isEqualTo(PipeType.HTTP);
+        want.object(chooser.choose(PIPELINE_ID, NID, 512L, PipeType.HTTP)).isEqualTo(PipeType.RPC);
+        want.string(chooser.info(PIPELINE_ID)).contains("explore");
+        // 超过maxExploreSize不探测rpc
+        want.object(chooser.choose(PIPELINE_ID, NID, 4096L, PipeType.HTTP)).isEqualTo(PipeType.HTTP);
+        want.object(chooser.choose(PIPELINE_ID, NID, 4096L, PipeType.HTTP)).isEqualTo(PipeType.HTTP);
+    }
+
+    private long millis(double millis) {
+        return (long) (millis * 1000000);
+    }
+}
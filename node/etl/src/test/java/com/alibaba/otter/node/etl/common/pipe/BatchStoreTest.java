@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2010-2101 Alibaba Group Holding Limited.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.otter.node.etl.common.pipe;
+
+import org.testng.annotations.Test;
+
+import com.alibaba.otter.node.etl.BaseOtterTest;
+import com.alibaba.otter.node.etl.common.pipe.exception.PipeException;
+import com.alibaba.otter.node.etl.common.pipe.impl.memory.MemoryPipeKey;
+import com.alibaba.otter.node.etl.common.pipe.store.BatchStore;
+import com.alibaba.otter.shared.etl.model.DbBatch;
+import com.alibaba.otter.shared.etl.model.EventData;
+import com.alibaba.otter.shared.etl.model.EventType;
+import com.alibaba.otter.shared.etl.model.Identity;
+import com.alibaba.otter.shared.etl.model.RowBatch;
+
+public class BatchStoreTest extends BaseOtterTest {
+
+    @Test
+    public void test_backpressure() {
+        // 容量只够放2个batch
+        BatchStore<MemoryPipeKey> store = new BatchStore<MemoryPipeKey>(2048L, 60 * 1000L, 100L, false);
+        MemoryPipeKey key1 = buildKey(1L);
+        MemoryPipeKey key2 = buildKey(2L);
+        store.put(key1, buildDbBatch(100L, 1L));
+        store.put(key2, buildDbBatch(100L, 2L));
+        want.number(store.getResidentBytes()).isEqualTo(2048L);
+
+        try {
+            store.put(buildKey(3L), buildDbBatch(100L, 3L));
+            want.fail();
+        } catch (PipeException e) {
+            want.number(store.getRejectCount()).isEqualTo(1L);
+        }
+
+        // 下游获取后释放空间
+        want.object(store.get(key1)).notNull();
+        want.object(store.get(key1)).isNull();
+        want.number(store.getHitCount()).isEqualTo(1L);
+        want.number(store.getMissCount()).isEqualTo(1L);
+        store.put(buildKey(3L), buildDbBatch(100L, 3L));
+        want.number(store.getResidentBytes()).isEqualTo(2048L);
+    }
+
+    @Test
+    public void test_release() {
+        BatchStore<MemoryPipeKey> store = new BatchStore<MemoryPipeKey>(1024 * 1024L, 60 * 1000L, 100L, true);
+        MemoryPipeKey key1 = buildKey(1L);
+        MemoryPipeKey key2 = buildKey(2L);
+        store.put(key1, buildDbBatch(100L, 1L));
+        store.put(key2, buildDbBatch(200L, 2L));
+
+        store.release(100L);
+        want.object(store.get(key1)).isNull();
+        want.number(store.getEvictionCount()).isEqualTo(1L);
+
+        // serialized模式下返回解码后的新对象
+        DbBatch target = store.get(key2);
+        want.number(target.getRowBatch().getIdentity().getProcessId()).isEqualTo(2L);
+        want.number(target.getRowBatch().getDatas().size()).isEqualTo(1);
+        want.number(store.getResidentBytes()).isEqualTo(0L);
+    }
+
+    @Test
+    public void test_put_mode() {
+        BatchStore<MemoryPipeKey> store = new BatchStore<MemoryPipeKey>(1024 * 1024L, 60 * 1000L, 100L, false);
+        MemoryPipeKey key1 = buildKey(1L);
+        MemoryPipeKey key2 = buildKey(2L);
+        DbBatch dbBatch1 = buildDbBatch(100L, 1L);
+        store.put(key1, dbBatch1);
+        store.put(key2, buildDbBatch(100L, 2L), true);
+
+        // 非编码存储直接返回原对象，不需要编解码
+        want.object(store.get(key1) == dbBatch1).isEqualTo(true);
+        // 编码存储直接返回byte[]
+        want.object(store.getBytes(key2)).notNull();
+        want.number(store.getResidentBytes()).isEqualTo(0L);
+    }
+
+    private MemoryPipeKey buildKey(Long processId) {
+        MemoryPipeKey key = new MemoryPipeKey();
+        Identity identity = new Identity();
+        identity.setProcessId(processId);
+        key.setIdentity(identity);
+        return key;
+    }
+
+    private DbBatch buildDbBatch(Long pipelineId, Long processId) {
+        DbBatch dbBatch = new DbBatch();
+        RowBatch rowBatch = new RowBatch();
+        Identity identity = new Identity();
+        identity.setChannelId(100L);
+        identity.setPipelineId(pipelineId);
+        identity.setProcessId(processId);
+        rowBatch.setIdentity(identity);
+        EventData eventData = new EventData();
+        eventData.setTableId(1L);
+        eventData.setSchemaName("otter");
+        eventData.setTableName("test");
+        eventData.setEventType(EventType.INSERT);
+        eventData.setSize(1024L);
+        rowBatch.merge(eventData);
+        dbBatch.setRowBatch(rowBatch);
+        return dbBatch;
+    }
+}
@@ -40,6 +40,7 @@ import com.alibaba.otter.shared.common.model.config.node.Node;
 import com.alibaba.otter.shared.common.model.config.node.NodeParameter;
 import com.alibaba.otter.shared.common.model.config.parameter.SystemParameter.RetrieverType;
 import com.alibaba.otter.shared.common.model.config.pipeline.Pipeline;
+import com.alibaba.otter.shared.common.model.config.pipeline.PipelineParameter.PipeCompressType;
 import com.alibaba.otter.shared.common.utils.NioUtils;
 import com.alibaba.otter.shared.etl.model.DbBatch;
 import com.alibaba.otter.shared.etl.model.EventColumn;
@@ -147,6 +148,51 @@ public class HttpPipeIntegration extends BaseOtterTest {
         identity.setPipelineId(100L);
         identity.setProcessId(100L);
 
+        DbBatch dbBatch = buildDbBatch(identity);
+        HttpPipeKey key = rowDataHttpPipe.put(dbBatch);
+        DbBatch target = rowDataHttpPipe.get(key);
+
+        want.bool(target.getRowBatch().getIdentity().equals(identity));
+        want.object(target).notNull();
+    }
+
+    @Test
+    public void test_rowData_stream() {
+        final Node currentNode = new Node();
+        currentNode.setId(1L);
+        currentNode.setIp("127.0.0.1");
+        currentNode.setParameters(new NodeParameter());
+        final Pipeline pipeline = new Pipeline();
+        pipeline.getParameters().setRetriever(RetrieverType.ARIA2C);
+        pipeline.getParameters().setUseStreamDownload(true);
+        pipeline.getParameters().setUseFileEncrypt(true);
+        pipeline.getParameters().setPipeCompressType(PipeCompressType.LZ4);
+        // mock一下
+        new NonStrictExpectations() {
+
+            {
+                configClientService.currentNode();
+                returns(currentNode);
+
+                configClientService.findPipeline(anyLong);
+                returns(pipeline);
+            }
+        };
+        Identity identity = new Identity();
+        identity.setChannelId(100L);
+        identity.setPipelineId(100L);
+        identity.setProcessId(100L);
+
+        DbBatch dbBatch = buildDbBatch(identity);
+        HttpPipeKey key = rowDataHttpPipe.put(dbBatch);
+        DbBatch target = rowDataHttpPipe.get(key);
+
+        want.bool(target.getRowBatch().getIdentity().equals(identity)).is(true);
+        want.number(target.getRowBatch().getDatas().size()).isEqualTo(1);
+        want.number(target.getFileBatch().getFiles().size()).isEqualTo(1);
+    }
+
+    private DbBatch buildDbBatch(Identity identity) {
         FileBatch fileBatch = new FileBatch();
         fileBatch.setIdentity(identity);
         File localFile = new File(tmp, "httpPipeTest.jpg");
@@ -188,12 +234,7 @@ public class HttpPipeIntegration extends BaseOtterTest {
         DbBatch dbBatch = new DbBatch();
         dbBatch.setRowBatch(rowBatch);
         dbBatch.setFileBatch(fileBatch);
-
-        HttpPipeKey key = rowDataHttpPipe.put(dbBatch);
-        DbBatch target = rowDataHttpPipe.get(key);
-
-        want.bool(target.getRowBatch().getIdentity().equals(identity));
-        want.object(target).notNull();
+        return dbBatch;
     }
 
     private void check(byte[] src, byte[] dest) {
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2010-2101 Alibaba Group Holding Limited.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.otter.node.etl.common.pipe;
+
+import java.io.File;
+
+import org.testng.annotations.Test;
+
+import com.alibaba.otter.node.etl.BaseOtterTest;
+import com.alibaba.otter.node.etl.common.pipe.impl.mmap.MmapPipeKey;
+import com.alibaba.otter.node.etl.common.pipe.impl.mmap.RowDataMmapPipe;
+import com.alibaba.otter.shared.etl.model.DbBatch;
+import com.alibaba.otter.shared.etl.model.EventData;
+import com.alibaba.otter.shared.etl.model.EventType;
+import com.alibaba.otter.shared.etl.model.Identity;
+import com.alibaba.otter.shared.etl.model.RowBatch;
+
+public class MmapPipeTest extends BaseOtterTest {
+
+    private static final String tmp = System.getProperty("java.io.tmpdir", "/tmp") + "/mmap_test";
+
+    @Test
+    public void test_ok() throws Exception {
+        RowDataMmapPipe pipe = new RowDataMmapPipe();
+        pipe.setMmapDir(tmp);
+        pipe.afterPropertiesSet();
+        try {
+            MmapPipeKey key = pipe.put(buildDbBatch(100L));
+            want.bool(new File(key.getPath()).exists()).is(true);
+
+            DbBatch target = pipe.get(key);
+            want.number(target.getRowBatch().getIdentity().getProcessId()).isEqualTo(100L);
+            want.string(target.getRowBatch().getDatas().get(0).getTableName()).isEqualTo("test");
+            // 获取后删除文件
+            want.bool(new File(key.getPath()).exists()).is(false);
+            want.object(pipe.get(key)).isNull();
+        } finally {
+            pipe.destroy();
+        }
+    }
+
+    @Test
+    public void test_rollback() throws Exception {
+        RowDataMmapPipe pipe = new RowDataMmapPipe();
+        pipe.setMmapDir(tmp);
+        pipe.afterPropertiesSet();
+        try {
+            MmapPipeKey key1 = pipe.put(buildDbBatch(101L));
+            Thread.sleep(10);
+            pipe.rollback(100L);
+            MmapPipeKey key2 = pipe.put(buildDbBatch(102L));
+            // rollback之前写入的数据被删除
+            want.object(pipe.get(key1)).isNull();
+            want.number(pipe.get(key2).getRowBatch().getIdentity().getProcessId()).isEqualTo(102L);
+
+            MmapPipeKey key3 = pipe.put(buildDbBatch(103L));
+            pipe.release(100L);
+            want.object(pipe.get(key3)).isNull();
+        } finally {
+            pipe.destroy();
+        }
+    }
+
+    private DbBatch buildDbBatch(Long processId) {
+        DbBatch dbBatch = new DbBatch();
+        RowBatch rowBatch = new RowBatch();
+        Identity identity = new Identity();
+        identity.setChannelId(100L);
+        identity.setPipelineId(100L);
+        identity.setProcessId(processId);
+        rowBatch.setIdentity(identity);
+        EventData eventData = new EventData();
+        eventData.setTableId(1L);
+        eventData.setSchemaName("otter");
+        eventData.setTableName("test");
+        eventData.setEventType(EventType.INSERT);
+        rowBatch.merge(eventData);
+        dbBatch.setRowBatch(rowBatch);
+        return dbBatch;
+    }
+}
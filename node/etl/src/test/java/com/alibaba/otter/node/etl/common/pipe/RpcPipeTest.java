@@ -16,9 +16,12 @@
 
 package com.alibaba.otter.node.etl.common.pipe;
 
+import java.sql.Types;
+
 import mockit.Mock;
 import mockit.Mockit;
 
+import org.apache.commons.lang.StringUtils;
 import org.testng.annotations.Test;
 
 import com.alibaba.otter.node.common.communication.NodeCommmunicationClient;
@@ -26,8 +29,12 @@ import com.alibaba.otter.node.etl.BaseOtterTest;
 import com.alibaba.otter.node.etl.TestUtils;
 import com.alibaba.otter.node.etl.common.pipe.impl.rpc.RowDataRpcPipe;
 import com.alibaba.otter.node.etl.common.pipe.impl.rpc.RpcPipeKey;
+import com.alibaba.otter.node.etl.model.protobuf.DbBatchCodec;
 import com.alibaba.otter.shared.communication.core.model.Event;
 import com.alibaba.otter.shared.etl.model.DbBatch;
+import com.alibaba.otter.shared.etl.model.EventColumn;
+import com.alibaba.otter.shared.etl.model.EventData;
+import com.alibaba.otter.shared.etl.model.EventType;
 import com.alibaba.otter.shared.etl.model.Identity;
 import com.alibaba.otter.shared.etl.model.RowBatch;
 
@@ -72,11 +79,96 @@ public class RpcPipeTest extends BaseOtterTest {
                 return 1L;
             }
 
+            @Mock
+            private Integer getVersion(Long pipelineId) {
+                return null;
+            }
+
+        });
+        pipe.setNodeCommmunicationClient(new NodeCommmunicationClient());
+        RpcPipeKey key = pipe.put(source);
+        DbBatch target = pipe.get(key);
+        want.bool(source.getRowBatch().getIdentity().equals(target.getRowBatch().getIdentity())).is(true);// identify相等
+    }
+
+    @Test
+    public void test_v2() {
+        final DbBatch source = new DbBatch();
+        RowBatch rowBatch = new RowBatch();
+        Identity identity = new Identity();
+        identity.setChannelId(100L);
+        identity.setPipelineId(100L);
+        identity.setProcessId(100L);
+        rowBatch.setIdentity(identity);
+        EventData eventData = new EventData();
+        eventData.setTableId(1L);
+        eventData.setSchemaName("otter");
+        eventData.setTableName("test");
+        eventData.setEventType(EventType.UPDATE);
+        eventData.setExecuteTime(100L);
+        eventData.getKeys().add(buildColumn("id", Types.BIGINT, "1", true));
+        eventData.getColumns().add(buildColumn("name", Types.VARCHAR, "test", false));
+        eventData.getColumns().add(buildColumn("amount", Types.DECIMAL, "10.50", false));
+        eventData.getColumns().add(buildColumn("gmt_create", Types.TIMESTAMP, "2012-10-31 12:00:01.123", false));
+        eventData.getColumns().add(buildColumn("gmt_modify", Types.TIMESTAMP, "0000-00-00 00:00:00", false));
+        eventData.getColumns().add(buildColumn("code", Types.INTEGER, "007", false));
+        EventColumn nullColumn = buildColumn("remark", Types.VARCHAR, null, false);
+        nullColumn.setNull(true);
+        eventData.getColumns().add(nullColumn);
+        rowBatch.merge(eventData);
+        rowBatch.merge(eventData.clone());
+        source.setRowBatch(rowBatch);
+
+        final RowDataRpcPipe pipe = new RowDataRpcPipe();
+        try {
+            pipe.afterPropertiesSet();
+        } catch (Exception e) {
+            want.fail();
+        }
+        Mockit.setUpMock(NodeCommmunicationClient.class, new Object() {
+
+            @Mock
+            public Object call(Long nid, final Event event) {
+                try {
+                    return TestUtils.invokeMethod(pipe, "onGetV2", event);
+                } catch (Exception e) {
+                    want.fail();
+                }
+
+                return null;
+            }
+
+        });
+
+        Mockit.setUpMock(RowDataRpcPipe.class, new Object() {
+
+            @Mock
+            private Long getNid() {
+                return 1L;
+            }
+
+            @Mock
+            private Integer getVersion(Long pipelineId) {
+                return DbBatchCodec.VERSION_2;
+            }
+
         });
         pipe.setNodeCommmunicationClient(new NodeCommmunicationClient());
         RpcPipeKey key = pipe.put(source);
         DbBatch target = pipe.get(key);
         want.bool(source.getRowBatch().getIdentity().equals(target.getRowBatch().getIdentity())).is(true);// identify相等
+        want.number(target.getRowBatch().getDatas().size()).isEqualTo(2);
+        for (EventData data : target.getRowBatch().getDatas()) {
+            want.string(data.getTableName()).isEqualTo("test");
+            want.number(data.getColumns().size()).isEqualTo(eventData.getColumns().size());
+            for (int i = 0; i < data.getColumns().size(); i++) {
+                EventColumn expect = eventData.getColumns().get(i);
+                EventColumn actual = data.getColumns().get(i);
+                want.string(actual.getColumnName()).isEqualTo(expect.getColumnName());
+                want.bool(actual.isNull()).is(expect.isNull());
+                want.bool(StringUtils.equals(actual.getColumnValue(), expect.getColumnValue())).is(true);
+            }
+        }
     }
 
     @Test
@@ -120,6 +212,11 @@ public class RpcPipeTest extends BaseOtterTest {
                 return 1L;
             }
 
+            @Mock
+            private Integer getVersion(Long pipelineId) {
+                return null;
+            }
+
         });
         pipe.setNodeCommmunicationClient(new NodeCommmunicationClient());
 
@@ -132,4 +229,13 @@ public class RpcPipeTest extends BaseOtterTest {
         DbBatch target = pipe.get(key);
         want.bool(target == null).is(true);// 返回结果为空
     }
+
+    private EventColumn buildColumn(String name, int type, String value, boolean isKey) {
+        EventColumn column = new EventColumn();
+        column.setColumnName(name);
+        column.setColumnType(type);
+        column.setColumnValue(value);
+        column.setKey(isKey);
+        return column;
+    }
 }
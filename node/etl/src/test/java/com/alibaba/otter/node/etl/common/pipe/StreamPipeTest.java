@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2010-2101 Alibaba Group Holding Limited.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.otter.node.etl.common.pipe;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import mockit.Mock;
+import mockit.Mockit;
+
+import org.testng.annotations.Test;
+
+import com.alibaba.otter.node.common.communication.NodeCommmunicationClient;
+import com.alibaba.otter.node.etl.BaseOtterTest;
+import com.alibaba.otter.node.etl.TestUtils;
+import com.alibaba.otter.node.etl.common.pipe.impl.stream.RowDataStreamPipe;
+import com.alibaba.otter.node.etl.common.pipe.impl.stream.RowDataStreamPipe.StreamEvent;
+import com.alibaba.otter.node.etl.common.pipe.impl.stream.StreamPipeKey;
+import com.alibaba.otter.shared.communication.core.model.Event;
+import com.alibaba.otter.shared.etl.model.DbBatch;
+import com.alibaba.otter.shared.etl.model.Identity;
+import com.alibaba.otter.shared.etl.model.RowBatch;
+
+public class StreamPipeTest extends BaseOtterTest {
+
+    private static final int PORT = 2093;
+
+    @Test
+    public void test_ok() throws Exception {
+        mockAddress(PORT);
+        RowDataStreamPipe pipe = new RowDataStreamPipe();
+        pipe.setWindowSize(2);
+        pipe.afterPropertiesSet();
+        try {
+            // 窗口满了以后返回null，由调用方降级
+            List<StreamPipeKey> keys = new ArrayList<StreamPipeKey>();
+            for (int i = 0; i < 3; i++) {
+                keys.add(pipe.put(buildDbBatch(100L + i), 1L));
+            }
+            want.object(keys.get(2)).isNull();
+
+            for (int i = 0; i < 2; i++) {
+                DbBatch target = pipe.get(keys.get(i));
+                want.number(target.getRowBatch().getIdentity().getProcessId()).isEqualTo(100L + i);
+            }
+
+            // 消费后ack释放窗口
+            Thread.sleep(500);
+            StreamPipeKey key = pipe.put(buildDbBatch(200L), 1L);
+            want.object(key).notNull();
+            want.number(pipe.get(key).getRowBatch().getIdentity().getProcessId()).isEqualTo(200L);
+        } finally {
+            pipe.destroy();
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void test_pull() throws Exception {
+        mockAddress(PORT + 1);
+        final RowDataStreamPipe pipe = new RowDataStreamPipe();
+        pipe.setWaitTimeout(100L);
+        pipe.afterPropertiesSet();
+        Mockit.setUpMock(NodeCommmunicationClient.class, new Object() {
+
+            @Mock
+            public Object call(Long nid, final Event event) {
+                try {
+                    return TestUtils.invokeMethod(pipe, "onPull", event);
+                } catch (Exception e) {
+                    want.fail();
+                }
+
+                return null;
+            }
+
+        });
+        pipe.setNodeCommmunicationClient(new NodeCommmunicationClient());
+        try {
+            StreamPipeKey key = pipe.put(buildDbBatch(100L), 1L);
+            want.object(key).notNull();
+            // 模拟推送的数据丢失，只能通过rpc从发送端的窗口中拉取
+            Map<StreamPipeKey, ?> arrives = (Map<StreamPipeKey, ?>) TestUtils.getField(pipe, "arrives");
+            for (int i = 0; i < 10 && !arrives.containsKey(key); i++) {
+                Thread.sleep(50);
+            }
+            arrives.clear();
+            want.number(pipe.get(key).getRowBatch().getIdentity().getProcessId()).isEqualTo(100L);
+            // 拉取后从窗口中移除
+            StreamEvent event = new StreamEvent(RowDataStreamPipe.RowDataStream.pull);
+            event.setKey(key);
+            want.object(TestUtils.invokeMethod(pipe, "onPull", event)).isNull();
+        } finally {
+            pipe.destroy();
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void test_release() throws Exception {
+        mockAddress(PORT + 2);
+        RowDataStreamPipe pipe = new RowDataStreamPipe();
+        pipe.setMaxArriveBytes(1L);
+        pipe.afterPropertiesSet();
+        try {
+            StreamPipeKey key = pipe.put(buildDbBatch(100L), 1L);
+            want.object(key).notNull();
+            // 超过接收端的字节数上限，推送的数据不会保留，也不会ack
+            Thread.sleep(500);
+            Map<StreamPipeKey, ?> arrives = (Map<StreamPipeKey, ?>) TestUtils.getField(pipe, "arrives");
+            want.number(arrives.size()).isEqualTo(0);
+
+            // rollback后释放发送端窗口中的数据
+            pipe.release(100L);
+            StreamEvent event = new StreamEvent(RowDataStreamPipe.RowDataStream.pull);
+            event.setKey(key);
+            want.object(TestUtils.invokeMethod(pipe, "onPull", event)).isNull();
+        } finally {
+            pipe.destroy();
+        }
+    }
+
+    private void mockAddress(final int port) {
+        Mockit.setUpMock(RowDataStreamPipe.class, new Object() {
+
+            @Mock
+            private Long getNid() {
+                return 1L;
+            }
+
+            @Mock
+            private int getListenPort() {
+                return port;
+            }
+
+            @Mock
+            private InetSocketAddress getAddress(Long nid) {
+                return new InetSocketAddress("127.0.0.1", port);
+            }
+        });
+    }
+
+    private DbBatch buildDbBatch(Long processId) {
+        DbBatch dbBatch = new DbBatch();
+        RowBatch rowBatch = new RowBatch();
+        Identity identity = new Identity();
+        identity.setChannelId(100L);
+        identity.setPipelineId(100L);
+        identity.setProcessId(processId);
+        rowBatch.setIdentity(identity);
+        dbBatch.setRowBatch(rowBatch);
+        return dbBatch;
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2010-2101 Alibaba Group Holding Limited.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.alibaba.otter.node.etl.extract;
+
+import java.util.Arrays;
+
+import org.testng.annotations.Test;
+
+import com.alibaba.otter.node.etl.BaseOtterTest;
+import com.alibaba.otter.node.etl.extract.extractor.DatabaseExtractCache;
+import com.alibaba.otter.node.etl.extract.extractor.DatabaseExtractCache.Window;
+import com.alibaba.otter.shared.etl.model.EventColumn;
+import com.alibaba.otter.shared.etl.model.EventData;
+
+public class DatabaseExtractCacheTest extends BaseOtterTest {
+
+    private static final Long PIPELINE_ID = 1L;
+    private String[]          columns     = { "name", "amount" };
+
+    @Test
+    public void test_window() {
+        DatabaseExtractCache cache = new DatabaseExtractCache();
+        Window window1 = new Window(1L);
+        want.object(cache.get(PIPELINE_ID, window1, buildEventData("1", 50L), columns)).isNull();
+        cache.put(PIPELINE_ID, window1, buildEventData("1", 50L), columns, Arrays.asList("ljh", "100.01"));
+
+        // 同一批次内直接命中
+        want.collection(cache.get(PIPELINE_ID, window1, buildEventData("1", 100L), columns).getValues()).sizeEq(2);
+        // 反查字段不同
+        want.object(cache.get(PIPELINE_ID, window1, buildEventData("1", 100L), new String[] { "name" })).isNull();
+
+        // 记录不存在也会被缓存
+        cache.put(PIPELINE_ID, window1, buildEventData("2", 50L), columns, null);
+        DatabaseExtractCache.Entry entry = cache.get(PIPELINE_ID, window1, buildEventData("2", 60L), columns);
+        want.object(entry).notNull();
+        want.object(entry.getValues()).isNull();
+        want.string(cache.info(PIPELINE_ID)).contains("hit:2 miss:2");
+    }
+
+    @Test
+    public void test_invalidate() {
+        DatabaseExtractCache cache = new DatabaseExtractCache();
+        Window window1 = new Window(1L);
+        cache.put(PIPELINE_ID, window1, buildEventData("1", 50L), columns, Arrays.asList("ljh", "100.01"));
+
+        // 其他批次的变更即使executeTime更早也不能命中，可能是反查之后才提交的大事务
+        Window window2 = new Window(2L);
+        want.object(cache.get(PIPELINE_ID, window2, buildEventData("1", 10L), columns)).isNull();
+        want.object(cache.get(PIPELINE_ID, window1, buildEventData("1", 50L), columns)).isNull();
+
+        cache.put(PIPELINE_ID, window2, buildEventData("1", 100L), columns, Arrays.asList("ljh", "100.01"));
+        cache.release(PIPELINE_ID);
+        want.string(cache.info(PIPELINE_ID)).isEqualTo("");
+    }
+
+    private EventData buildEventData(String pk, long executeTime) {
+        EventData eventData = new EventData();
+        eventData.setSchemaName("srf");
+        eventData.setTableName("columns");
+        eventData.setExecuteTime(executeTime);
+        EventColumn column = new EventColumn();
+        column.setColumnName("id");
+        column.setColumnValue(pk);
+        column.setKey(true);
+        eventData.setKeys(Arrays.asList(column));
+        return eventData;
+    }
+}
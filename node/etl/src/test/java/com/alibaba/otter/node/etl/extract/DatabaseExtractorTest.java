@@ -21,22 +21,29 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import mockit.Mocked;
 
 import org.apache.commons.lang.math.RandomUtils;
 import org.jtester.annotations.SpringBeanByName;
 import org.jtester.annotations.SpringBeanFrom;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import com.alibaba.otter.node.common.config.ConfigClientService;
 import com.alibaba.otter.node.etl.BaseDbTest;
+import com.alibaba.otter.node.etl.TestUtils;
+import com.alibaba.otter.node.etl.common.db.dialect.DbDialect;
+import com.alibaba.otter.node.etl.common.db.dialect.DbDialectFactory;
+import com.alibaba.otter.node.etl.common.db.dialect.mysql.MysqlSqlTemplate;
 import com.alibaba.otter.node.etl.extract.extractor.DatabaseExtractor;
 import com.alibaba.otter.shared.common.model.config.channel.ChannelParameter.SyncConsistency;
 import com.alibaba.otter.shared.common.model.config.channel.ChannelParameter.SyncMode;
 import com.alibaba.otter.shared.common.model.config.data.DataMediaPair;
 import com.alibaba.otter.shared.common.model.config.data.db.DbDataMedia;
+import com.alibaba.otter.shared.common.model.config.data.db.DbMediaSource;
 import com.alibaba.otter.shared.common.model.config.pipeline.Pipeline;
 import com.alibaba.otter.shared.etl.model.DbBatch;
 import com.alibaba.otter.shared.etl.model.EventColumn;
@@ -50,6 +57,9 @@ public class DatabaseExtractorTest extends BaseDbTest {
     @SpringBeanByName
     private DatabaseExtractor   databaseExtractor;
 
+    @SpringBeanByName
+    private DbDialectFactory    dbDialectFactory;
+
     @SpringBeanFrom
     @Mocked
     private ConfigClientService configClientService;
@@ -100,6 +110,91 @@ public class DatabaseExtractorTest extends BaseDbTest {
         want.number(rowBatch.getDatas().size()).isEqualTo(count);
     }
 
+    @Test
+    public void test_global_row_batch() throws Exception {
+        final Pipeline pipeline = new Pipeline();
+        pipeline.setId(100L);
+        pipeline.getParameters().setSyncMode(SyncMode.ROW);
+        pipeline.getParameters().setSyncConsistency(SyncConsistency.MEDIA);// 设置为全局
+        pipeline.getParameters().setExtractBatchSize(4);// 每4条记录合并为一次反查
+
+        final int start = 1000000 + RandomUtils.nextInt(1000000);
+        int count = 10;
+        int exist = 6; // 前6条记录在数据库中存在，后4条miss
+        List<DataMediaPair> pairs = getDataMediaPairForMysql(start, 1);
+        pipeline.setPairs(pairs);
+
+        new NonStrictExpectations() {
+
+            {
+                configClientService.findPipeline(100L);
+                returns(pipeline);
+            }
+        };
+
+        // 统计批量反查的次数
+        final AtomicInteger batchCount = new AtomicInteger(0);
+        DbDialect dbDialect = dbDialectFactory.getDbDialect(100L, (DbMediaSource) pairs.get(0).getSource().getSource());
+        TestUtils.setField(dbDialect, "sqlTemplate", new MysqlSqlTemplate() {
+
+            public String getBatchSelectSql(String schemaName, String tableName, String[] pkNames,
+                                            String[] columnNames, int size) {
+                batchCount.incrementAndGet();
+                return super.getBatchSelectSql(schemaName, tableName, pkNames, columnNames, size);
+            }
+        });
+
+        JdbcTemplate jdbcTemplate = dbDialect.getJdbcTemplate();
+        String insertSql = "insert into srf.columns(id,name,alias_name,amount,text_b,text_c,curr_date,gmt_create,gmt_modify)"
+                           + " values (?,?,?,?,?,?,?,?,?)";
+        for (int i = start; i < start + exist; i++) {
+            jdbcTemplate.update(insertSql, new Object[] { i, "ljh_" + i, "db_" + i, "100.01", "text_b", "中文",
+                    "2011-01-01", "2011-01-01 11:11:11", "2011-01-01 11:11:11" });
+        }
+
+        try {
+            // 构造数据
+            RowBatch rowBatch = new RowBatch();
+            rowBatch.setIdentity(identity);
+            for (int i = start; i < start + count; i++) {
+                EventData eventData = getEventData(start, i);
+                eventData.setSchemaName("srf");
+                eventData.setTableName("columns");
+                // miss的记录中，补救数据反查不到时需要被过滤
+                eventData.setRemedy(i == start + exist || i == start + exist + 1);
+                rowBatch.merge(eventData);
+            }
+
+            databaseExtractor.extract(new DbBatch(rowBatch));
+
+            // 10条记录按4条一批，需要3次批量反查
+            want.number(batchCount.get()).isEqualTo(3);
+            List<EventData> eventDatas = rowBatch.getDatas();
+            want.number(eventDatas.size()).isEqualTo(count - 2);
+            for (EventData eventData : eventDatas) {
+                int id = Integer.valueOf(eventData.getKeys().get(0).getColumnValue());
+                String aliasName = null;
+                for (EventColumn column : eventData.getColumns()) {
+                    if ("alias_name".equalsIgnoreCase(column.getColumnName())) {
+                        aliasName = column.getColumnValue();
+                    }
+                }
+
+                if (id < start + exist) {
+                    // 批量反查的结果按主键映射回对应的记录
+                    want.string(aliasName).isEqualTo("db_" + id);
+                } else {
+                    // miss后退化为单条反查，非补救数据保留原始值
+                    want.bool(id >= start + exist + 2).is(true);
+                    want.string(aliasName).isEqualTo("hello_" + id);
+                }
+            }
+        } finally {
+            jdbcTemplate.update("delete from srf.columns where id >= ? and id < ?", new Object[] { start,
+                    start + count });
+        }
+    }
+
     public void test_override_field() {
         final Pipeline pipeline = new Pipeline();
         pipeline.setId(100L);
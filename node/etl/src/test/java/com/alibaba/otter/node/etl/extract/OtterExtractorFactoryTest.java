@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2010-2101 Alibaba Group Holding Limited.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.otter.node.etl.extract;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import mockit.Mocked;
+
+import org.testng.annotations.Test;
+
+import com.alibaba.otter.node.common.config.ConfigClientService;
+import com.alibaba.otter.node.etl.BaseOtterTest;
+import com.alibaba.otter.node.etl.extract.exceptions.ExtractException;
+import com.alibaba.otter.node.etl.extract.extractor.OtterExtractor;
+import com.alibaba.otter.node.etl.extract.extractor.OtterExtractorFactory;
+import com.alibaba.otter.node.etl.extract.extractor.PartitionExtractor;
+import com.alibaba.otter.shared.common.model.config.pipeline.Pipeline;
+import com.alibaba.otter.shared.common.model.config.pipeline.PipelineParameter;
+import com.alibaba.otter.shared.common.utils.thread.ExecutorTemplate;
+import com.alibaba.otter.shared.common.utils.thread.ExecutorTemplateGetter;
+import com.alibaba.otter.shared.etl.model.DbBatch;
+import com.alibaba.otter.shared.etl.model.EventColumn;
+import com.alibaba.otter.shared.etl.model.EventData;
+import com.alibaba.otter.shared.etl.model.EventType;
+import com.alibaba.otter.shared.etl.model.FileBatch;
+import com.alibaba.otter.shared.etl.model.FileData;
+import com.alibaba.otter.shared.etl.model.Identity;
+import com.alibaba.otter.shared.etl.model.RowBatch;
+
+public class OtterExtractorFactoryTest extends BaseOtterTest {
+
+    @Mocked
+    private ConfigClientService configClientService;
+
+    @Test
+    public void test_partition() throws Exception {
+        final Pipeline pipeline = new Pipeline();
+        pipeline.setId(100L);
+        PipelineParameter parameter = new PipelineParameter();
+        parameter.setExtractPartition(true);
+        pipeline.setParameters(parameter);
+        new NonStrictExpectations() {
+
+            {
+                configClientService.findPipeline(100L);
+                returns(pipeline);
+            }
+        };
+
+        final AtomicInteger partitionCount = new AtomicInteger(0);
+        // 分区内：删除id=2，表11的id=1之后新增一条记录，并产生一个附件
+        OtterExtractor<DbBatch> filter = new OtterExtractor<DbBatch>() {
+
+            public void extract(DbBatch dbBatch) throws ExtractException {
+                partitionCount.incrementAndGet();
+                List<EventData> datas = dbBatch.getRowBatch().getDatas();
+                Long tableId = datas.get(0).getTableId();
+                for (EventData eventData : datas) {
+                    want.number(eventData.getTableId()).isEqualTo(tableId);
+                }
+
+                Iterator<EventData> iter = datas.iterator();
+                while (iter.hasNext()) {
+                    if ("2".equals(iter.next().getKeys().get(0).getColumnValue())) {
+                        iter.remove();
+                    }
+                }
+
+                if (tableId == 11L) {
+                    datas.add(1, buildEventData(11L, "new"));
+                }
+
+                FileBatch fileBatch = new FileBatch();
+                fileBatch.merge(new FileData());
+                dbBatch.setFileBatch(fileBatch);
+            }
+        };
+        // 整个批次：分区合并后才执行
+        final AtomicInteger batchSize = new AtomicInteger(0);
+        OtterExtractor<DbBatch> batch = new OtterExtractor<DbBatch>() {
+
+            public void extract(DbBatch dbBatch) throws ExtractException {
+                batchSize.set(dbBatch.getRowBatch().getDatas().size());
+            }
+        };
+
+        OtterExtractorFactory factory = new OtterExtractorFactory();
+        factory.setConfigClientService(configClientService);
+        factory.setDbBatchExtractor(Arrays.asList(filter, batch));
+        factory.setPartitionExtractor(Arrays.asList(filter));
+        final ExecutorTemplate executorTemplate = new ExecutorTemplate();
+        executorTemplate.afterPropertiesSet();
+        factory.setExecutorTemplateGetter(new ExecutorTemplateGetter() {
+
+            public ExecutorTemplate get() {
+                return executorTemplate;
+            }
+
+            public void release(ExecutorTemplate target) {
+            }
+        });
+
+        RowBatch rowBatch = new RowBatch();
+        Identity identity = new Identity();
+        identity.setChannelId(100L);
+        identity.setPipelineId(100L);
+        identity.setProcessId(100L);
+        rowBatch.setIdentity(identity);
+        rowBatch.merge(buildEventData(10L, "1"));
+        rowBatch.merge(buildEventData(11L, "1"));
+        rowBatch.merge(buildEventData(10L, "2"));
+        rowBatch.merge(buildEventData(12L, "1"));
+        rowBatch.merge(buildEventData(11L, "3"));
+        rowBatch.merge(buildEventData(10L, "3"));
+
+        DbBatch dbBatch = new DbBatch(rowBatch);
+        factory.extract(dbBatch);
+        executorTemplate.destroy();
+
+        want.number(partitionCount.get()).isEqualTo(3);
+        want.number(batchSize.get()).isEqualTo(6);
+        want.collection(dbBatch.getFileBatch().getFiles()).sizeEq(3);
+
+        // 恢复原始顺序，新增的记录跟随在同分区的前一条记录之后
+        List<String> result = new ArrayList<String>();
+        for (EventData eventData : rowBatch.getDatas()) {
+            result.add(eventData.getTableId() + ":" + eventData.getKeys().get(0).getColumnValue());
+        }
+        want.string(result.toString()).isEqualTo("[10:1, 11:1, 11:new, 12:1, 11:3, 10:3]");
+    }
+
+    @Test
+    public void test_not_partitionable() throws Exception {
+        final Pipeline pipeline = new Pipeline();
+        pipeline.setId(100L);
+        PipelineParameter parameter = new PipelineParameter();
+        parameter.setExtractPartition(true);
+        pipeline.setParameters(parameter);
+        new NonStrictExpectations() {
+
+            {
+                configClientService.findPipeline(100L);
+                returns(pipeline);
+            }
+        };
+
+        // 拒绝分区的extractor基于整个批次执行
+        final AtomicInteger count = new AtomicInteger(0);
+        final AtomicInteger batchSize = new AtomicInteger(0);
+        OtterExtractor<DbBatch> extractor = new NotPartitionableExtractor() {
+
+            public void extract(DbBatch dbBatch) throws ExtractException {
+                count.incrementAndGet();
+                batchSize.set(dbBatch.getRowBatch().getDatas().size());
+            }
+        };
+
+        OtterExtractorFactory factory = new OtterExtractorFactory();
+        factory.setConfigClientService(configClientService);
+        factory.setDbBatchExtractor(Arrays.asList(extractor));
+        factory.setPartitionExtractor(Arrays.asList(extractor));
+
+        RowBatch rowBatch = new RowBatch();
+        Identity identity = new Identity();
+        identity.setChannelId(100L);
+        identity.setPipelineId(100L);
+        identity.setProcessId(100L);
+        rowBatch.setIdentity(identity);
+        rowBatch.merge(buildEventData(10L, "1"));
+        rowBatch.merge(buildEventData(11L, "1"));
+        factory.extract(new DbBatch(rowBatch));
+
+        want.number(count.get()).isEqualTo(1);
+        want.number(batchSize.get()).isEqualTo(2);
+    }
+
+    private abstract static class NotPartitionableExtractor implements OtterExtractor<DbBatch>, PartitionExtractor {
+
+        public boolean isPartitionable(Pipeline pipeline) {
+            return false;
+        }
+    }
+
+    private EventData buildEventData(Long tableId, String id) {
+        EventData eventData = new EventData();
+        eventData.setTableId(tableId);
+        eventData.setSchemaName("test");
+        eventData.setTableName("test_" + tableId);
+        eventData.setEventType(EventType.UPDATE);
+        List<EventColumn> keys = new ArrayList<EventColumn>();
+        EventColumn key = new EventColumn();
+        key.setColumnName("id");
+        key.setColumnValue(id);
+        key.setKey(true);
+        keys.add(key);
+        eventData.setKeys(keys);
+        return eventData;
+    }
+}
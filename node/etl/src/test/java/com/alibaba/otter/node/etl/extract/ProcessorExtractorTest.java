@@ -0,0 +1,273 @@
+/*
+ * Copyright (C) 2010-2101 Alibaba Group Holding Limited.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.alibaba.otter.node.etl.extract;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import mockit.Mocked;
+
+import org.testng.annotations.Test;
+
+import com.alibaba.otter.node.common.config.ConfigClientService;
+import com.alibaba.otter.node.etl.BaseOtterTest;
+import com.alibaba.otter.node.etl.extract.extractor.ProcessorExtractor;
+import com.alibaba.otter.shared.common.model.config.data.DataMediaPair;
+import com.alibaba.otter.shared.common.model.config.data.ExtensionData;
+import com.alibaba.otter.shared.common.model.config.data.db.DbDataMedia;
+import com.alibaba.otter.shared.common.model.config.pipeline.Pipeline;
+import com.alibaba.otter.shared.common.utils.extension.ExtensionFactory;
+import com.alibaba.otter.shared.common.utils.thread.ExecutorTemplate;
+import com.alibaba.otter.shared.common.utils.thread.ExecutorTemplateGetter;
+import com.alibaba.otter.shared.etl.extend.processor.BatchEventProcessor;
+import com.alibaba.otter.shared.etl.extend.processor.EventProcessor;
+import com.alibaba.otter.shared.etl.model.DbBatch;
+import com.alibaba.otter.shared.etl.model.EventColumn;
+import com.alibaba.otter.shared.etl.model.EventData;
+import com.alibaba.otter.shared.etl.model.EventType;
+import com.alibaba.otter.shared.etl.model.Identity;
+import com.alibaba.otter.shared.etl.model.RowBatch;
+
+public class ProcessorExtractorTest extends BaseOtterTest {
+
+    @Mocked
+    private ConfigClientService configClientService;
+
+    @Test
+    public void test_batch() throws Exception {
+        final Pipeline pipeline = new Pipeline();
+        pipeline.setId(100L);
+        List<DataMediaPair> pairs = new ArrayList<DataMediaPair>();
+        pairs.add(buildPair(1L, 10L, "batch"));
+        pairs.add(buildPair(2L, 11L, "single"));
+        pipeline.setPairs(pairs);
+        new NonStrictExpectations() {
+
+            {
+                configClientService.findPipeline(100L);
+                returns(pipeline);
+            }
+        };
+
+        final AtomicInteger batchCount = new AtomicInteger(0);
+        // 批量处理：一次拿到表10的所有数据，过滤掉id=2
+        final BatchEventProcessor batchProcessor = new BatchEventProcessor() {
+
+            public boolean process(EventData eventData) {
+                throw new IllegalStateException("should use batch process");
+            }
+
+            public List<EventData> process(List<EventData> eventDatas) {
+                batchCount.incrementAndGet();
+                want.collection(eventDatas).sizeEq(3);
+                List<EventData> result = new ArrayList<EventData>();
+                for (EventData eventData : eventDatas) {
+                    if (!"2".equals(eventData.getKeys().get(0).getColumnValue())) {
+                        result.add(eventData);
+                    }
+                }
+                return result;
+            }
+        };
+        // 逐条处理：过滤掉id=2
+        final EventProcessor singleProcessor = new EventProcessor() {
+
+            public boolean process(EventData eventData) {
+                return !"2".equals(eventData.getKeys().get(0).getColumnValue());
+            }
+        };
+
+        ProcessorExtractor extractor = new ProcessorExtractor();
+        extractor.setConfigClientService(configClientService);
+        extractor.setExtensionFactory(new ExtensionFactory() {
+
+            @SuppressWarnings("unchecked")
+            public <T> T getExtension(Class<T> type, ExtensionData extensionData) {
+                return (T) ("batch".equals(extensionData.getClazzPath()) ? batchProcessor : singleProcessor);
+            }
+        });
+        final ExecutorTemplate executorTemplate = new ExecutorTemplate();
+        executorTemplate.afterPropertiesSet();
+        extractor.setExecutorTemplateGetter(new ExecutorTemplateGetter() {
+
+            public ExecutorTemplate get() {
+                return executorTemplate;
+            }
+
+            public void release(ExecutorTemplate target) {
+            }
+        });
+
+        RowBatch rowBatch = new RowBatch();
+        Identity identity = new Identity();
+        identity.setChannelId(100L);
+        identity.setPipelineId(100L);
+        identity.setProcessId(100L);
+        rowBatch.setIdentity(identity);
+        rowBatch.merge(buildEventData(10L, "1"));
+        rowBatch.merge(buildEventData(11L, "1"));
+        rowBatch.merge(buildEventData(10L, "2"));
+        rowBatch.merge(buildEventData(11L, "2"));
+        rowBatch.merge(buildEventData(10L, "3"));
+
+        extractor.extract(new DbBatch(rowBatch));
+        executorTemplate.destroy();
+
+        want.number(batchCount.get()).isEqualTo(1);
+        List<EventData> datas = rowBatch.getDatas();
+        want.collection(datas).sizeEq(3);
+        // 批量处理的结果放在表10第一条数据的位置
+        want.number(datas.get(0).getTableId()).isEqualTo(10L);
+        want.string(datas.get(1).getKeys().get(0).getColumnValue()).isEqualTo("3");
+        want.number(datas.get(2).getTableId()).isEqualTo(11L);
+    }
+
+    @Test
+    public void test_shared_single_processor() throws Exception {
+        final Pipeline pipeline = new Pipeline();
+        pipeline.setId(101L);
+        List<DataMediaPair> pairs = new ArrayList<DataMediaPair>();
+        pairs.add(buildPair(3L, 20L, "batch"));
+        pairs.add(buildPair(4L, 20L, "single"));
+        pairs.add(buildPair(5L, 21L, "batch"));
+        pairs.add(buildPair(6L, 21L, "single"));
+        pipeline.setPairs(pairs);
+        new NonStrictExpectations() {
+
+            {
+                configClientService.findPipeline(101L);
+                returns(pipeline);
+            }
+        };
+
+        final BatchEventProcessor batchProcessor = new BatchEventProcessor() {
+
+            public boolean process(EventData eventData) {
+                throw new IllegalStateException("should use batch process");
+            }
+
+            public List<EventData> process(List<EventData> eventDatas) {
+                return eventDatas;
+            }
+        };
+        // 两个源表共享同一个普通processor实例，不能被并发调用
+        final Thread extractThread = Thread.currentThread();
+        final AtomicInteger running = new AtomicInteger(0);
+        final AtomicInteger concurrent = new AtomicInteger(0);
+        final AtomicInteger otherThread = new AtomicInteger(0);
+        final AtomicInteger singleCount = new AtomicInteger(0);
+        final EventProcessor singleProcessor = new EventProcessor() {
+
+            public boolean process(EventData eventData) {
+                if (running.incrementAndGet() > 1) {
+                    concurrent.incrementAndGet();
+                }
+                if (Thread.currentThread() != extractThread) {
+                    otherThread.incrementAndGet();
+                }
+
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    running.decrementAndGet();
+                }
+                singleCount.incrementAndGet();
+                return true;
+            }
+        };
+
+        ProcessorExtractor extractor = new ProcessorExtractor();
+        extractor.setConfigClientService(configClientService);
+        extractor.setExtensionFactory(new ExtensionFactory() {
+
+            @SuppressWarnings("unchecked")
+            public <T> T getExtension(Class<T> type, ExtensionData extensionData) {
+                return (T) ("batch".equals(extensionData.getClazzPath()) ? batchProcessor : singleProcessor);
+            }
+        });
+        final ExecutorTemplate executorTemplate = new ExecutorTemplate();
+        executorTemplate.afterPropertiesSet();
+        extractor.setExecutorTemplateGetter(new ExecutorTemplateGetter() {
+
+            public ExecutorTemplate get() {
+                return executorTemplate;
+            }
+
+            public void release(ExecutorTemplate target) {
+            }
+        });
+
+        RowBatch rowBatch = new RowBatch();
+        Identity identity = new Identity();
+        identity.setChannelId(101L);
+        identity.setPipelineId(101L);
+        identity.setProcessId(101L);
+        rowBatch.setIdentity(identity);
+        for (int i = 1; i <= 5; i++) {
+            rowBatch.merge(buildEventData(20L, String.valueOf(i)));
+            rowBatch.merge(buildEventData(21L, String.valueOf(i)));
+        }
+
+        extractor.extract(new DbBatch(rowBatch));
+        executorTemplate.destroy();
+
+        want.number(singleCount.get()).isEqualTo(10);
+        want.number(concurrent.get()).isEqualTo(0);
+        want.number(otherThread.get()).isEqualTo(0);
+        want.collection(rowBatch.getDatas()).sizeEq(10);
+        want.bool(extractor.isPartitionable(pipeline)).is(false);
+    }
+
+    private DataMediaPair buildPair(Long id, Long sourceId, String processor) {
+        DataMediaPair pair = new DataMediaPair();
+        pair.setId(id);
+        DbDataMedia source = new DbDataMedia();
+        source.setId(sourceId);
+        source.setNamespace("test");
+        source.setName("test_" + sourceId);
+        pair.setSource(source);
+        DbDataMedia target = new DbDataMedia();
+        target.setId(sourceId + 100);
+        target.setNamespace("test");
+        target.setName("test_" + sourceId);
+        pair.setTarget(target);
+        ExtensionData filterData = new ExtensionData();
+        filterData.setClazzPath(processor);
+        pair.setFilterData(filterData);
+        return pair;
+    }
+
+    private EventData buildEventData(Long tableId, String id) {
+        EventData eventData = new EventData();
+        eventData.setTableId(tableId);
+        eventData.setSchemaName("test");
+        eventData.setTableName("test_" + tableId);
+        eventData.setEventType(EventType.UPDATE);
+        List<EventColumn> keys = new ArrayList<EventColumn>();
+        EventColumn key = new EventColumn();
+        key.setColumnName("id");
+        key.setColumnValue(id);
+        key.setKey(true);
+        keys.add(key);
+        eventData.setKeys(keys);
+        return eventData;
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2010-2101 Alibaba Group Holding Limited.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.otter.node.etl.extract;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import mockit.Mocked;
+
+import org.testng.annotations.Test;
+
+import com.alibaba.otter.node.common.config.ConfigClientService;
+import com.alibaba.otter.node.etl.BaseOtterTest;
+import com.alibaba.otter.node.etl.extract.extractor.RowMergeExtractor;
+import com.alibaba.otter.shared.common.model.config.pipeline.Pipeline;
+import com.alibaba.otter.shared.common.model.config.pipeline.PipelineParameter;
+import com.alibaba.otter.shared.etl.model.DbBatch;
+import com.alibaba.otter.shared.etl.model.EventColumn;
+import com.alibaba.otter.shared.etl.model.EventData;
+import com.alibaba.otter.shared.etl.model.EventType;
+import com.alibaba.otter.shared.etl.model.Identity;
+import com.alibaba.otter.shared.etl.model.RowBatch;
+
+public class RowMergeExtractorTest extends BaseOtterTest {
+
+    @Mocked
+    private ConfigClientService configClientService;
+
+    @Test
+    public void test_merge() {
+        mockPipeline(true);
+        RowMergeExtractor extractor = new RowMergeExtractor();
+        extractor.setConfigClientService(configClientService);
+
+        RowBatch rowBatch = buildRowBatch();
+        // pair 1: I + U + U 合并为一条I
+        rowBatch.merge(buildEventData(1L, EventType.INSERT, "1", "a"));
+        rowBatch.merge(buildEventData(1L, EventType.UPDATE, "1", "b"));
+        rowBatch.merge(buildEventData(1L, EventType.UPDATE, "1", "c"));
+        // pair 2: 同一张源表的同一条记录，属于不同的pair不能合并
+        rowBatch.merge(buildEventData(2L, EventType.UPDATE, "1", "d"));
+        // pair 1: 不同主键
+        rowBatch.merge(buildEventData(1L, EventType.DELETE, "2", null));
+
+        DbBatch dbBatch = new DbBatch(rowBatch);
+        extractor.extract(dbBatch);
+        List<EventData> datas = dbBatch.getRowBatch().getDatas();
+        want.collection(datas).sizeEq(3);
+        want.object(datas.get(0).getEventType()).isEqualTo(EventType.INSERT);
+        want.string(datas.get(0).getColumns().get(0).getColumnValue()).isEqualTo("c");
+        want.object(datas.get(1).getEventType()).isEqualTo(EventType.DELETE);
+        want.number(datas.get(2).getPairId()).isEqualTo(2L);
+    }
+
+    @Test
+    public void test_disable() {
+        mockPipeline(false);
+        RowMergeExtractor extractor = new RowMergeExtractor();
+        extractor.setConfigClientService(configClientService);
+
+        RowBatch rowBatch = buildRowBatch();
+        rowBatch.merge(buildEventData(1L, EventType.INSERT, "1", "a"));
+        rowBatch.merge(buildEventData(1L, EventType.UPDATE, "1", "b"));
+        DbBatch dbBatch = new DbBatch(rowBatch);
+        extractor.extract(dbBatch);
+        want.collection(dbBatch.getRowBatch().getDatas()).sizeEq(2);
+    }
+
+    private void mockPipeline(boolean extractMerge) {
+        final Pipeline pipeline = new Pipeline();
+        pipeline.setId(100L);
+        PipelineParameter parameter = new PipelineParameter();
+        parameter.setExtractMerge(extractMerge);
+        pipeline.setParameters(parameter);
+        new NonStrictExpectations() {
+
+            {
+                configClientService.findPipeline(100L);
+                returns(pipeline);
+            }
+        };
+    }
+
+    private RowBatch buildRowBatch() {
+        RowBatch rowBatch = new RowBatch();
+        Identity identity = new Identity();
+        identity.setChannelId(100L);
+        identity.setPipelineId(100L);
+        identity.setProcessId(100L);
+        rowBatch.setIdentity(identity);
+        return rowBatch;
+    }
+
+    private EventData buildEventData(Long pairId, EventType eventType, String id, String name) {
+        EventData eventData = new EventData();
+        eventData.setPairId(pairId);
+        eventData.setTableId(10L);
+        eventData.setSchemaName("test");
+        eventData.setTableName("test");
+        eventData.setEventType(eventType);
+
+        List<EventColumn> keys = new ArrayList<EventColumn>();
+        keys.add(buildColumn("id", id, true));
+        eventData.setKeys(keys);
+        List<EventColumn> columns = new ArrayList<EventColumn>();
+        if (name != null) {
+            columns.add(buildColumn("name", name, false));
+        }
+        eventData.setColumns(columns);
+        return eventData;
+    }
+
+    private EventColumn buildColumn(String name, String value, boolean isKey) {
+        EventColumn column = new EventColumn();
+        column.setColumnName(name);
+        column.setColumnValue(value);
+        column.setColumnType(12);
+        column.setKey(isKey);
+        column.setUpdate(true);
+        return column;
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2010-2101 Alibaba Group Holding Limited.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.otter.node.etl.select;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.alibaba.otter.node.etl.select.selector.canal.AdaptiveBatchSizer;
+
+public class AdaptiveBatchSizerTest {
+
+    @Test
+    public void testByteTarget() {
+        // 目标1MB，每条entry 1KB
+        AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(100000, 1024 * 1024L, 0L);
+        int last = sizer.getBatchSize();
+        for (int i = 0; i < 10; i++) {
+            sizer.select((long) i, sizer.getBatchSize(), sizer.getBatchSize() * 1024L);
+            Assert.assertTrue(sizer.getBatchSize() <= last * 2); // 每次最多扩大一倍
+            last = sizer.getBatchSize();
+        }
+        Assert.assertEquals(sizer.getBatchSize(), 1024);
+
+        // entry变大后，批次数量需要缩小
+        for (int i = 10; i < 30; i++) {
+            sizer.select((long) i, sizer.getBatchSize(), sizer.getBatchSize() * 64 * 1024L);
+        }
+        Assert.assertTrue(sizer.getBatchSize() < 100);
+    }
+
+    @Test
+    public void testMaxBatchSize() {
+        AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(500, 1024 * 1024L, 0L);
+        for (int i = 0; i < 10; i++) {
+            sizer.select((long) i, 100, 100L);
+        }
+        Assert.assertEquals(sizer.getBatchSize(), 500);
+    }
+
+    @Test
+    public void testLatencyBudget() throws InterruptedException {
+        AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(100000, 1024 * 1024 * 1024L, 100L);
+        sizer.select(1L, 1000, 1000L);
+        Thread.sleep(200);
+        sizer.ack(1L);
+        // 1000条耗时200ms，延迟预算100ms下批次需要缩小到500条左右
+        Assert.assertTrue(sizer.getBatchSize() <= 500);
+        sizer.rollback();
+        sizer.ack(2L); // 不存在的批次直接忽略
+    }
+
+    @Test
+    public void testFixedCost() {
+        // 固定耗时50ms，每条entry 0.01ms，100ms的预算下批次应该收敛到5000条左右
+        AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(100000, 1024 * 1024 * 1024L, 100L);
+        for (int i = 0; i < 30; i++) {
+            int count = sizer.getBatchSize();
+            sizer.select((long) i, count, count * 100L);
+            sizer.cost(count, 50 + count / 100);
+        }
+        Assert.assertTrue(sizer.getBatchSize() > 4000 && sizer.getBatchSize() < 6000);
+
+        // 固定耗时150ms已经超过预算，缩小批次没有意义，不能一路缩小到最小值
+        sizer = new AdaptiveBatchSizer(100000, 1024 * 1024 * 1024L, 100L);
+        for (int i = 0; i < 30; i++) {
+            int count = sizer.getBatchSize();
+            sizer.select((long) i, count, count * 100L);
+            sizer.cost(count, 150 + count / 100);
+        }
+        Assert.assertEquals(sizer.getBatchSize(), 100000);
+    }
+}
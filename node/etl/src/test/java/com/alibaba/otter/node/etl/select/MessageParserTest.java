@@ -0,0 +1,284 @@
+/*
+ * Copyright (C) 2010-2101 Alibaba Group Holding Limited.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.alibaba.otter.node.etl.select;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import mockit.Mocked;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.alibaba.otter.canal.protocol.CanalEntry;
+import com.alibaba.otter.canal.protocol.CanalEntry.Column;
+import com.alibaba.otter.canal.protocol.CanalEntry.Entry;
+import com.alibaba.otter.canal.protocol.CanalEntry.EntryType;
+import com.alibaba.otter.canal.protocol.CanalEntry.Header;
+import com.alibaba.otter.canal.protocol.CanalEntry.RowChange;
+import com.alibaba.otter.canal.protocol.CanalEntry.RowData;
+import com.alibaba.otter.node.common.config.ConfigClientService;
+import com.alibaba.otter.node.etl.BaseOtterTest;
+import com.alibaba.otter.node.etl.common.db.dialect.DbDialect;
+import com.alibaba.otter.node.etl.common.db.dialect.DbDialectFactory;
+import com.alibaba.otter.node.etl.select.selector.MessageParser;
+import com.alibaba.otter.shared.common.model.config.channel.ChannelParameter.RemedyAlgorithm;
+import com.alibaba.otter.shared.common.model.config.channel.ChannelParameter.SyncMode;
+import com.alibaba.otter.shared.common.model.config.data.DataMediaPair;
+import com.alibaba.otter.shared.common.model.config.data.DataMediaType;
+import com.alibaba.otter.shared.common.model.config.data.db.DbDataMedia;
+import com.alibaba.otter.shared.common.model.config.data.db.DbMediaSource;
+import com.alibaba.otter.shared.common.model.config.pipeline.Pipeline;
+import com.alibaba.otter.shared.common.model.config.pipeline.PipelineParameter;
+import com.alibaba.otter.shared.common.utils.thread.ExecutorTemplate;
+import com.alibaba.otter.shared.common.utils.thread.ExecutorTemplateGetter;
+import com.alibaba.otter.shared.etl.model.EventData;
+import com.alibaba.otter.shared.etl.model.EventType;
+
+public class MessageParserTest extends BaseOtterTest {
+
+    private static final int    TRANSACTIONS     = 30;
+    private static final int    ROWS             = 100;
+    private static final int    LOOPBACK_INDEX   = 10; // 回环事务
+    private static final int    DDL_INDEX        = 20; // 包含ddl的事务
+
+    @Mocked
+    private ConfigClientService configClientService;
+    private ExecutorTemplate    executorTemplate;
+    private AtomicInteger       reloadCount      = new AtomicInteger(0);
+
+    @BeforeClass
+    public void setup() {
+        executorTemplate = new ExecutorTemplate();
+        executorTemplate.afterPropertiesSet();
+    }
+
+    @AfterClass
+    public void tearDown() throws Exception {
+        executorTemplate.destroy();
+    }
+
+    @Test
+    public void test_serial_parallel() {
+        final Pipeline pipeline = buildPipeline();
+        new NonStrictExpectations() {
+
+            {
+                configClientService.findPipeline(100L);
+                returns(pipeline);
+            }
+        };
+
+        MessageParser parser = buildParser();
+        List<Entry> entries = buildEntries();
+
+        pipeline.getParameters().setParallelMessageParse(false);
+        List<EventData> serial = parser.parse(100L, entries);
+        want.number(reloadCount.get()).isEqualTo(1);
+
+        pipeline.getParameters().setParallelMessageParse(true);
+        List<EventData> parallel = parser.parse(100L, entries);
+        want.number(reloadCount.get()).isEqualTo(2);
+
+        // 回环事务开启了补救，其余事务正常解析，ddl单独一条
+        want.collection(serial).sizeEq(TRANSACTIONS * ROWS + 1);
+        want.collection(parallel).sizeEq(serial.size());
+        for (int i = 0; i < serial.size(); i++) {
+            EventData expect = serial.get(i);
+            EventData actual = parallel.get(i);
+            want.object(actual.getEventType()).isEqualTo(expect.getEventType());
+            want.string(actual.getTableName()).isEqualTo(expect.getTableName());
+            want.bool(actual.isRemedy()).is(expect.isRemedy());
+            want.object(actual.getSyncConsistency()).isEqualTo(expect.getSyncConsistency());
+            if (!actual.getEventType().isDdl()) {
+                want.string(actual.getKeys().get(0).getColumnValue()).isEqualTo(expect.getKeys()
+                    .get(0)
+                    .getColumnValue());
+            }
+        }
+
+        for (int i = 0; i < ROWS; i++) {
+            EventData eventData = parallel.get(LOOPBACK_INDEX * ROWS + i);
+            want.bool(eventData.isRemedy()).is(true);
+            want.string(eventData.getKeys().get(0).getColumnValue()).isEqualTo(LOOPBACK_INDEX + "-" + i);
+        }
+        want.bool(parallel.get(0).isRemedy()).is(false);
+
+        // ddl保持在原始位置，所在事务的dml在ddl之后
+        EventData ddl = parallel.get(DDL_INDEX * ROWS);
+        want.object(ddl.getEventType()).isEqualTo(EventType.ALTER);
+        want.number(ddl.getTableId()).isEqualTo(10L);
+        want.string(parallel.get(DDL_INDEX * ROWS + 1).getKeys().get(0).getColumnValue()).isEqualTo(DDL_INDEX + "-0");
+    }
+
+    private MessageParser buildParser() {
+        final DbDialect dbDialect = (DbDialect) Proxy.newProxyInstance(DbDialect.class.getClassLoader(),
+            new Class[] { DbDialect.class },
+            new InvocationHandler() {
+
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    if ("reloadTable".equals(method.getName())) {
+                        reloadCount.incrementAndGet();
+                    }
+                    return null;
+                }
+            });
+
+        MessageParser parser = new MessageParser();
+        parser.setConfigClientService(configClientService);
+        parser.setDbDialectFactory(new DbDialectFactory() {
+
+            public DbDialect getDbDialect(Long pipelineId, DbMediaSource source) {
+                return dbDialect;
+            }
+        });
+        parser.setExecutorTemplateGetter(new ExecutorTemplateGetter() {
+
+            public ExecutorTemplate get() {
+                return executorTemplate;
+            }
+
+            public void release(ExecutorTemplate target) {
+            }
+        });
+        return parser;
+    }
+
+    private Pipeline buildPipeline() {
+        Pipeline pipeline = new Pipeline();
+        pipeline.setId(100L);
+        List<DataMediaPair> pairs = new ArrayList<DataMediaPair>();
+        pairs.add(buildPair(1L, 10L));
+        pipeline.setPairs(pairs);
+
+        PipelineParameter parameter = pipeline.getParameters();
+        parameter.setSystemSchema("retl");
+        parameter.setSystemMarkTable("retl_mark");
+        parameter.setSystemMarkTableColumn("channel_id");
+        parameter.setSystemMarkTableInfo("channel_info");
+        parameter.setSystemDualTable("xdual");
+        parameter.setChannelInfo("OTTER");
+        parameter.setHome(true);
+        parameter.setEnableRemedy(true);
+        parameter.setRemedyAlgorithm(RemedyAlgorithm.LOOPBACK);
+        parameter.setRemedyDelayThresoldForMedia(60);
+        parameter.setSyncMode(SyncMode.FIELD);
+        parameter.setUseTableTransform(false);
+        parameter.setDdlSync(true);
+        parameter.setMessageParsePoolSize(4);
+        return pipeline;
+    }
+
+    private DataMediaPair buildPair(Long id, Long sourceId) {
+        DbMediaSource mediaSource = new DbMediaSource();
+        mediaSource.setId(1L);
+        mediaSource.setType(DataMediaType.MYSQL);
+
+        DataMediaPair pair = new DataMediaPair();
+        pair.setId(id);
+        DbDataMedia source = new DbDataMedia();
+        source.setId(sourceId);
+        source.setNamespace("test");
+        source.setName("test_" + sourceId);
+        source.setSource(mediaSource);
+        pair.setSource(source);
+        DbDataMedia target = new DbDataMedia();
+        target.setId(sourceId + 100);
+        target.setNamespace("test");
+        target.setName("test_" + sourceId);
+        target.setSource(mediaSource);
+        pair.setTarget(target);
+        return pair;
+    }
+
+    private List<Entry> buildEntries() {
+        List<Entry> entries = new ArrayList<Entry>();
+        for (int i = 0; i < TRANSACTIONS; i++) {
+            entries.add(buildTransaction(EntryType.TRANSACTIONBEGIN));
+            if (i == LOOPBACK_INDEX) {
+                // otter同步产生的回环数据，需要开启补救
+                entries.add(buildRow("retl", "retl_mark", CanalEntry.EventType.UPDATE, "channel_info", "OTTER"));
+            }
+            if (i == DDL_INDEX) {
+                entries.add(buildDdl("test", "test_10", "alter table test_10 add column name varchar(32)"));
+            }
+            for (int j = 0; j < ROWS; j++) {
+                entries.add(buildRow("test", "test_10", CanalEntry.EventType.INSERT, "id", i + "-" + j));
+            }
+            entries.add(buildTransaction(EntryType.TRANSACTIONEND));
+        }
+        return entries;
+    }
+
+    private Entry buildTransaction(EntryType entryType) {
+        return Entry.newBuilder().setHeader(buildHeader("", "", CanalEntry.EventType.QUERY)).setEntryType(entryType).build();
+    }
+
+    private Entry buildRow(String schemaName, String tableName, CanalEntry.EventType eventType, String name,
+                           String value) {
+        Column.Builder columnBuilder = Column.newBuilder();
+        columnBuilder.setIndex(0);
+        columnBuilder.setName(name);
+        columnBuilder.setValue(value);
+        columnBuilder.setIsKey(true);
+        columnBuilder.setUpdated(true);
+        RowData.Builder rowDataBuilder = RowData.newBuilder();
+        rowDataBuilder.addAfterColumns(columnBuilder.build());
+
+        RowChange.Builder rowChangeBuilder = RowChange.newBuilder();
+        rowChangeBuilder.setEventType(eventType);
+        rowChangeBuilder.addRowDatas(rowDataBuilder.build());
+        return Entry.newBuilder()
+            .setHeader(buildHeader(schemaName, tableName, eventType))
+            .setEntryType(EntryType.ROWDATA)
+            .setStoreValue(rowChangeBuilder.build().toByteString())
+            .build();
+    }
+
+    private Entry buildDdl(String schemaName, String tableName, String sql) {
+        RowChange.Builder rowChangeBuilder = RowChange.newBuilder();
+        rowChangeBuilder.setEventType(CanalEntry.EventType.ALTER);
+        rowChangeBuilder.setIsDdl(true);
+        rowChangeBuilder.setSql(sql);
+        rowChangeBuilder.setDdlSchemaName(schemaName);
+        return Entry.newBuilder()
+            .setHeader(buildHeader(schemaName, tableName, CanalEntry.EventType.ALTER))
+            .setEntryType(EntryType.ROWDATA)
+            .setStoreValue(rowChangeBuilder.build().toByteString())
+            .build();
+    }
+
+    private Header buildHeader(String schemaName, String tableName, CanalEntry.EventType eventType) {
+        Header.Builder headBuilder = Header.newBuilder();
+        headBuilder.setEventLength(100L);
+        headBuilder.setExecuteTime(new Date().getTime());
+        headBuilder.setLogfileName("mysql-bin.000001");
+        headBuilder.setLogfileOffset(1000L);
+        headBuilder.setSchemaName(schemaName);
+        headBuilder.setTableName(tableName);
+        headBuilder.setEventType(eventType);
+        headBuilder.setSourceType(CanalEntry.Type.MYSQL);
+        return headBuilder.build();
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2010-2101 Alibaba Group Holding Limited.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.alibaba.otter.node.etl.select;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import mockit.Mock;
+import mockit.Mockit;
+
+import org.testng.annotations.Test;
+
+import com.alibaba.otter.node.etl.BaseOtterTest;
+import com.alibaba.otter.node.etl.TestUtils;
+import com.alibaba.otter.node.etl.common.pipe.exception.PipeException;
+import com.alibaba.otter.node.etl.common.pipe.impl.RowDataPipeDelegate;
+import com.alibaba.otter.node.etl.common.pipe.impl.memory.RowDataMemoryPipe;
+import com.alibaba.otter.node.etl.common.pipe.impl.mmap.RowDataMmapPipe;
+import com.alibaba.otter.node.etl.common.pipe.impl.rpc.RowDataRpcPipe;
+import com.alibaba.otter.node.etl.common.pipe.impl.stream.RowDataStreamPipe;
+import com.alibaba.otter.node.etl.select.selector.OtterSelector;
+import com.alibaba.otter.shared.etl.model.DbBatch;
+import com.alibaba.otter.shared.etl.model.Identity;
+import com.alibaba.otter.shared.etl.model.RowBatch;
+
+public class SelectTaskRollbackTest extends BaseOtterTest {
+
+    /**
+     * rollback termin一般由load节点发起，rpc的数据保存在select/extract节点上，需要在select节点收到termin时释放
+     */
+    @Test
+    public void test_release_producer_store() throws Exception {
+        Mockit.setUpMock(RowDataRpcPipe.class, new Object() {
+
+            @Mock
+            private Long getNid() {
+                return 1L;
+            }
+
+            @Mock
+            private Integer getVersion(Long pipelineId) {
+                return null;
+            }
+        });
+
+        RowDataRpcPipe rpcPipe = new RowDataRpcPipe();
+        rpcPipe.setCapacity(1L); // 只能放入一个batch
+        rpcPipe.setPutTimeout(100L);
+        rpcPipe.afterPropertiesSet();
+        RowDataMemoryPipe memoryPipe = new RowDataMemoryPipe();
+        memoryPipe.setDownloadDir(new File(System.getProperty("java.io.tmpdir"), "otter_rollback_test").getPath());
+        memoryPipe.afterPropertiesSet();
+        RowDataMmapPipe mmapPipe = new RowDataMmapPipe();
+        mmapPipe.setMmapDir(new File(System.getProperty("java.io.tmpdir"), "otter_rollback_test").getPath());
+
+        RowDataPipeDelegate rowDataPipeDelegate = new RowDataPipeDelegate();
+        rowDataPipeDelegate.setRowDataRpcPipe(rpcPipe);
+        rowDataPipeDelegate.setRowDataMemoryPipe(memoryPipe);
+        rowDataPipeDelegate.setRowDataMmapPipe(mmapPipe);
+        rowDataPipeDelegate.setRowDataStreamPipe(new RowDataStreamPipe());
+
+        // extract写入后，load节点出错，这个batch不会再被获取
+        rpcPipe.put(buildDbBatch(100L, 1L));
+        try {
+            rpcPipe.put(buildDbBatch(100L, 2L));
+            want.fail();
+        } catch (PipeException e) {
+            want.string(e.getMessage()).contains("batch_store_full");
+        }
+
+        SelectTask selectTask = new SelectTask(100L);
+        selectTask.setRowDataPipeDelegate(rowDataPipeDelegate);
+        TestUtils.setField(selectTask, "otterSelector", Proxy.newProxyInstance(OtterSelector.class.getClassLoader(),
+            new Class[] { OtterSelector.class },
+            new InvocationHandler() {
+
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    return null;
+                }
+            }));
+        // 模拟ProcessTermin收到rollback termin
+        TestUtils.invokeMethod(selectTask, "rollback", 1L);
+
+        rpcPipe.put(buildDbBatch(100L, 2L));
+        want.string(rpcPipe.getStoreInfo()).contains("size:1");
+    }
+
+    private DbBatch buildDbBatch(Long pipelineId, Long processId) {
+        RowBatch rowBatch = new RowBatch();
+        Identity identity = new Identity();
+        identity.setChannelId(pipelineId);
+        identity.setPipelineId(pipelineId);
+        identity.setProcessId(processId);
+        rowBatch.setIdentity(identity);
+        return new DbBatch(rowBatch);
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2010-2101 Alibaba Group Holding Limited.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.alibaba.otter.node.etl.select;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.alibaba.otter.canal.instance.core.CanalInstance;
+import com.alibaba.otter.canal.meta.CanalMetaManager;
+import com.alibaba.otter.canal.protocol.CanalEntry.Entry;
+import com.alibaba.otter.canal.protocol.CanalEntry.EntryType;
+import com.alibaba.otter.canal.protocol.CanalEntry.Header;
+import com.alibaba.otter.canal.protocol.ClientIdentity;
+import com.alibaba.otter.canal.protocol.Message;
+import com.alibaba.otter.canal.protocol.position.EntryPosition;
+import com.alibaba.otter.canal.protocol.position.LogIdentity;
+import com.alibaba.otter.canal.protocol.position.LogPosition;
+import com.alibaba.otter.canal.protocol.position.Position;
+import com.alibaba.otter.canal.store.CanalEventStore;
+import com.alibaba.otter.canal.store.model.Event;
+import com.alibaba.otter.canal.store.model.Events;
+import com.alibaba.otter.node.etl.select.selector.canal.OtterCanalInstanceGenerator;
+import com.alibaba.otter.node.etl.select.selector.canal.SharedCanalDestination;
+import com.alibaba.otter.node.etl.select.selector.canal.SharedCanalDestination.Subscriber;
+import com.alibaba.otter.shared.common.model.config.channel.ChannelParameter.SyncMode;
+import com.alibaba.otter.shared.common.model.config.pipeline.Pipeline;
+
+public class SharedCanalDestinationTest {
+
+    private static final String      DESTINATION = "shared_cursor_test";
+    private static final String      JOURNAL     = "mysql-bin.000001";
+    private static final int         ENTRIES     = 10;
+
+    private final List<Event>        binlog      = new ArrayList<Event>();
+    private final Map<Short, Long>   cursors     = new HashMap<Short, Long>();
+    private final List<String>       backwards   = new ArrayList<String>();
+    private CanalInstance            instance;
+
+    @Test
+    public void test_cursor_not_backward() throws Exception {
+        for (long offset = 1; offset <= ENTRIES; offset++) {
+            binlog.add(new Event(new LogIdentity(), buildEntry(offset)));
+        }
+        cursors.put((short) 2, 5L); // pipeline 2已经ack到了offset 5
+        instance = buildInstance();
+
+        // pipeline 2加入后instance重启，共享缓冲从最慢的pipeline 1的位点开始
+        Subscriber first = SharedCanalDestination.subscribe(new FakeGenerator(1L), new ClientIdentity(DESTINATION,
+            (short) 1,
+            null));
+        Subscriber second = SharedCanalDestination.subscribe(new FakeGenerator(2L), new ClientIdentity(DESTINATION,
+            (short) 2,
+            null));
+
+        List<Long> firstOffsets = new ArrayList<Long>();
+        List<Long> secondOffsets = new ArrayList<Long>();
+        try {
+            for (int i = 0; i < ENTRIES * 2; i++) {
+                consume(first, firstOffsets);
+                consume(second, secondOffsets);
+            }
+        } finally {
+            first.unsubscribe();
+            second.unsubscribe();
+        }
+
+        Assert.assertTrue(backwards.isEmpty(), backwards.toString());
+        Assert.assertEquals(firstOffsets, range(1, ENTRIES));
+        // 已经ack的数据不能重复投递
+        Assert.assertEquals(secondOffsets, range(6, ENTRIES));
+        Assert.assertEquals(cursors.get((short) 1), Long.valueOf(ENTRIES));
+        Assert.assertEquals(cursors.get((short) 2), Long.valueOf(ENTRIES));
+    }
+
+    private void consume(Subscriber subscriber, List<Long> offsets) throws InterruptedException {
+        Message message = subscriber.getWithoutAck(2);
+        if (message == null) {
+            return;
+        }
+
+        for (Entry entry : message.getEntries()) {
+            offsets.add(entry.getHeader().getLogfileOffset());
+        }
+        subscriber.ack(message.getId());
+    }
+
+    private List<Long> range(long from, long to) {
+        List<Long> result = new ArrayList<Long>();
+        for (long i = from; i <= to; i++) {
+            result.add(i);
+        }
+        return result;
+    }
+
+    private Entry buildEntry(long offset) {
+        Header.Builder headBuilder = Header.newBuilder();
+        headBuilder.setLogfileName(JOURNAL);
+        headBuilder.setLogfileOffset(offset);
+        headBuilder.setSchemaName("test");
+        headBuilder.setTableName("shared");
+        return Entry.newBuilder().setHeader(headBuilder.build()).setEntryType(EntryType.ROWDATA).build();
+    }
+
+    private LogPosition buildPosition(long offset) {
+        LogPosition position = new LogPosition();
+        position.setIdentity(new LogIdentity());
+        position.setPostion(new EntryPosition(JOURNAL, offset));
+        return position;
+    }
+
+    private long offsetOf(Object position) {
+        return position == null ? 0 : ((LogPosition) position).getPostion().getPosition();
+    }
+
+    /**
+     * 模拟canal的eventStore/metaManager，从binlog的开头开始解析
+     */
+    private CanalInstance buildInstance() {
+        final Object eventStore = proxy(CanalEventStore.class, new InvocationHandler() {
+
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if ("tryGet".equals(method.getName()) || "get".equals(method.getName())) {
+                    long start = offsetOf(args[0]);
+                    int batchSize = (Integer) args[1];
+                    Events<Event> events = new Events<Event>();
+                    List<Event> datas = new ArrayList<Event>();
+                    for (Event event : binlog) {
+                        if (event.getEntry().getHeader().getLogfileOffset() > start && datas.size() < batchSize) {
+                            datas.add(event);
+                        }
+                    }
+                    events.setEvents(datas);
+                    if (!datas.isEmpty()) {
+                        long end = datas.get(datas.size() - 1).getEntry().getHeader().getLogfileOffset();
+                        events.getPositionRange().setStart(buildPosition(start));
+                        events.getPositionRange().setEnd(buildPosition(end));
+                        events.getPositionRange().setAck(buildPosition(end));
+                    }
+                    return events;
+                }
+                return null;
+            }
+        });
+
+        final Object metaManager = proxy(CanalMetaManager.class, new InvocationHandler() {
+
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if ("hasSubscribe".equals(method.getName())) {
+                    return true;
+                } else if ("getCursor".equals(method.getName())) {
+                    Long offset = cursors.get(((ClientIdentity) args[0]).getClientId());
+                    return offset == null ? null : buildPosition(offset);
+                } else if ("updateCursor".equals(method.getName())) {
+                    short clientId = ((ClientIdentity) args[0]).getClientId();
+                    long offset = offsetOf(args[1]);
+                    Long old = cursors.get(clientId);
+                    if (old != null && old > offset) {
+                        backwards.add(clientId + ":" + old + "->" + offset);
+                    }
+                    cursors.put(clientId, offset);
+                }
+                return null;
+            }
+        });
+
+        return (CanalInstance) proxy(CanalInstance.class, new InvocationHandler() {
+
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if ("getEventStore".equals(method.getName())) {
+                    return eventStore;
+                } else if ("getMetaManager".equals(method.getName())) {
+                    return metaManager;
+                } else if (method.getReturnType() == boolean.class) {
+                    return true;
+                }
+                return null;
+            }
+        });
+    }
+
+    private Object proxy(Class<?> type, InvocationHandler handler) {
+        return Proxy.newProxyInstance(type.getClassLoader(), new Class[] { type }, handler);
+    }
+
+    private class FakeGenerator extends OtterCanalInstanceGenerator {
+
+        public FakeGenerator(Long pipelineId){
+            super(null, buildPipeline(pipelineId), null);
+        }
+
+        public CanalInstance generate(String destination) {
+            return instance;
+        }
+    }
+
+    private static Pipeline buildPipeline(Long pipelineId) {
+        Pipeline pipeline = new Pipeline();
+        pipeline.setId(pipelineId);
+        pipeline.getParameters().setSyncMode(SyncMode.FIELD);
+        pipeline.getParameters().setEnableRemedy(false);
+        return pipeline;
+    }
+}
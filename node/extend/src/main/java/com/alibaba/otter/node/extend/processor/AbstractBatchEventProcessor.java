@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2010-2101 Alibaba Group Holding Limited.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.alibaba.otter.node.extend.processor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.alibaba.otter.shared.etl.extend.processor.BatchEventProcessor;
+import com.alibaba.otter.shared.etl.model.EventData;
+
+/**
+ * 批量的业务自定义处理过程，默认逐条调用process(EventData)，子类可以覆盖process(List)做批量处理
+ */
+public class AbstractBatchEventProcessor extends AbstractEventProcessor implements BatchEventProcessor {
+
+    public List<EventData> process(List<EventData> eventDatas) {
+        List<EventData> result = new ArrayList<EventData>(eventDatas.size());
+        for (EventData eventData : eventDatas) {
+            if (process(eventData)) {
+                result.add(eventData);
+            }
+        }
+        return result;
+    }
+
+}
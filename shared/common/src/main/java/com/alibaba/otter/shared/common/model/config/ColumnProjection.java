@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2010-2101 Alibaba Group Holding Limited.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.otter.shared.common.model.config;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.lang.StringUtils;
+
+import com.alibaba.otter.shared.common.model.config.data.ColumnGroup;
+import com.alibaba.otter.shared.common.model.config.data.ColumnPair;
+import com.alibaba.otter.shared.common.model.config.data.DataMediaPair;
+
+/**
+ * 源表的字段投影，根据视图定义(include/exclude)提前计算出需要同步的非主键字段，用于在解析binlog时直接裁剪字段
+ *
+ * <pre>
+ * 1. 一个源表可能对应多个目标(多路复制)，任意一个pair需要的字段都会被保留
+ * 2. 任意一个pair没有视图定义或者存在filter/resolver，代表需要所有字段，不做投影
+ * 3. 字段组中定义的字段会被保留，避免GroupExtractor因为字段缺失而反查数据库
+ * 4. 主键不参与投影，由调用方保证主键全部保留
+ * </pre>
+ */
+public class ColumnProjection {
+
+    private final Set<String> includeColumns = new HashSet<String>(); // include模式下需要的字段
+    private Set<String>       excludeColumns = null;                  // 所有exclude模式下都排除的字段
+
+    private ColumnProjection(){
+    }
+
+    /**
+     * 根据源表对应的所有pair构建投影，返回null代表需要所有字段
+     */
+    public static ColumnProjection build(List<DataMediaPair> pairs) {
+        if (pairs == null || pairs.isEmpty()) {
+            return null;
+        }
+
+        ColumnProjection projection = new ColumnProjection();
+        for (DataMediaPair pair : pairs) {
+            if (pair.isExistFilter() || pair.isExistResolver() || pair.getColumnPairs() == null
+                || pair.getColumnPairs().isEmpty()) {
+                return null;
+            }
+
+            Set<String> columns = new HashSet<String>();
+            for (ColumnPair columnPair : pair.getColumnPairs()) {
+                columns.add(StringUtils.lowerCase(columnPair.getSourceColumn().getName()));
+            }
+
+            if (pair.getColumnPairMode().isExclude()) {
+                if (projection.excludeColumns == null) {
+                    projection.excludeColumns = columns;
+                } else {
+                    projection.excludeColumns.retainAll(columns);
+                }
+            } else {
+                projection.includeColumns.addAll(columns);
+            }
+
+            if (pair.getColumnGroups() != null) {
+                for (ColumnGroup columnGroup : pair.getColumnGroups()) {
+                    if (columnGroup == null || columnGroup.getColumnPairs() == null) {
+                        continue;
+                    }
+
+                    for (ColumnPair columnPair : columnGroup.getColumnPairs()) {
+                        projection.includeColumns.add(StringUtils.lowerCase(columnPair.getSourceColumn().getName()));
+                    }
+                }
+            }
+        }
+
+        return projection;
+    }
+
+    /**
+     * 判断非主键字段是否需要保留
+     */
+    public boolean contains(String columnName) {
+        String name = StringUtils.lowerCase(columnName);
+        if (includeColumns.contains(name)) {
+            return true;
+        }
+
+        return excludeColumns != null && !excludeColumns.contains(name);
+    }
+
+}
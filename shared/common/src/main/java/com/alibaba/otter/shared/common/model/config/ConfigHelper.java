@@ -20,6 +20,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.oro.text.regex.MalformedPatternException;
@@ -62,17 +63,26 @@ public class ConfigHelper {
                                                              }
                                                          }
                                                      });
+    private static Map<Long, PipelineRoutingIndex> routingIndexes = new ConcurrentHashMap<Long, PipelineRoutingIndex>();
 
     /**
      * 根据DataMedia id得到对应的DataMedia
      */
     public static DataMedia<? extends DataMediaSource> findDataMedia(Pipeline pipeline, Long id) {
         Assert.notNull(pipeline);
-        for (DataMediaPair pair : pipeline.getPairs()) {
-            if (pair.getSource().getId().equals(id)) {
-                return pair.getSource();
-            } else if (pair.getTarget().getId().equals(id)) {
-                return pair.getTarget();
+        if (pipeline.getId() == null) {
+            // 没有id的pipeline不缓存索引，直接线性查找
+            for (DataMediaPair pair : pipeline.getPairs()) {
+                if (pair.getSource().getId().equals(id)) {
+                    return pair.getSource();
+                } else if (pair.getTarget().getId().equals(id)) {
+                    return pair.getTarget();
+                }
+            }
+        } else {
+            DataMedia dataMedia = getRoutingIndex(pipeline).findDataMedia(id);
+            if (dataMedia != null) {
+                return dataMedia;
             }
         }
 
@@ -92,10 +102,9 @@ public class ConfigHelper {
      */
     public static DataMedia<? extends DataMediaSource> findSourceDataMedia(Pipeline pipeline, String namespace,
                                                                            String name, boolean notExistReturnNull) {
-        for (DataMediaPair pair : pipeline.getPairs()) {
-            if (isMatch(pair.getSource(), namespace, name)) {
-                return pair.getSource();
-            }
+        DataMediaPair pair = findPairBySourceName(pipeline, namespace, name);
+        if (pair != null) {
+            return pair.getSource();
         }
 
         if (notExistReturnNull) {
@@ -117,10 +126,9 @@ public class ConfigHelper {
      */
     public static DataMediaPair findDataMediaPairBySourceName(Pipeline pipeline, String namespace, String name,
                                                               boolean notExistReturnNull) {
-        for (DataMediaPair pair : pipeline.getPairs()) {
-            if (isMatch(pair.getSource(), namespace, name)) {
-                return pair;
-            }
+        DataMediaPair pair = findPairBySourceName(pipeline, namespace, name);
+        if (pair != null) {
+            return pair;
         }
 
         if (notExistReturnNull) {
@@ -135,6 +143,10 @@ public class ConfigHelper {
      */
     public static List<DataMediaPair> findDataMediaPairByMediaId(Pipeline pipeline, Long tid) {
         Assert.notNull(pipeline);
+        if (pipeline.getId() != null) {
+            return getRoutingIndex(pipeline).findPairsByMediaId(tid);
+        }
+
         List<DataMediaPair> pairs = new ArrayList<DataMediaPair>();
         for (DataMediaPair pair : pipeline.getPairs()) {
             if (pair.getSource().getId().equals(tid)) {
@@ -152,8 +164,15 @@ public class ConfigHelper {
      */
     public static DataMediaPair findDataMediaPair(Pipeline pipeline, Long pairId) {
         Assert.notNull(pipeline);
-        for (DataMediaPair pair : pipeline.getPairs()) {
-            if (pair.getId().equals(pairId)) {
+        if (pipeline.getId() == null) {
+            for (DataMediaPair pair : pipeline.getPairs()) {
+                if (pair.getId().equals(pairId)) {
+                    return pair;
+                }
+            }
+        } else {
+            DataMediaPair pair = getRoutingIndex(pipeline).findPair(pairId);
+            if (pair != null) {
                 return pair;
             }
         }
@@ -161,6 +180,73 @@ public class ConfigHelper {
         throw new ConfigException("no such DataMediaPair , the pairId = " + pairId);
     }
 
+    /**
+     * 根据源DataMedia id得到对应的字段投影，返回null代表需要所有字段
+     */
+    public static ColumnProjection findColumnProjection(Pipeline pipeline, Long mediaId) {
+        Assert.notNull(pipeline);
+        if (pipeline.getId() != null) {
+            return getRoutingIndex(pipeline).findColumnProjection(mediaId);
+        }
+
+        List<DataMediaPair> pairs = new ArrayList<DataMediaPair>();
+        for (DataMediaPair pair : pipeline.getPairs()) {
+            if (pair.getSource().getId().equals(mediaId)) {
+                pairs.add(pair);
+            }
+        }
+        return ColumnProjection.build(pairs);
+    }
+
+    /**
+     * 获取pipeline对应的路由索引，pipeline配置内容发生变化后会自动重建，没有id的pipeline每次都会新建索引
+     */
+    public static PipelineRoutingIndex getRoutingIndex(Pipeline pipeline) {
+        if (pipeline.getId() == null) {
+            return new PipelineRoutingIndex(pipeline);
+        }
+
+        PipelineRoutingIndex index = routingIndexes.get(pipeline.getId());
+        if (index == null || !index.isBuiltFrom(pipeline)) {
+            index = refreshRoutingIndex(pipeline);
+        }
+
+        return index;
+    }
+
+    /**
+     * 重建pipeline对应的路由索引，在收到新的channel配置时调用
+     */
+    public static PipelineRoutingIndex refreshRoutingIndex(Pipeline pipeline) {
+        PipelineRoutingIndex index = new PipelineRoutingIndex(pipeline);
+        if (pipeline.getId() != null) {
+            routingIndexes.put(pipeline.getId(), index);
+        }
+        return index;
+    }
+
+    /**
+     * 删除pipeline对应的路由索引，在pipeline停止或者删除时调用
+     */
+    public static void removeRoutingIndex(Long pipelineId) {
+        if (pipelineId != null) {
+            routingIndexes.remove(pipelineId);
+        }
+    }
+
+    private static DataMediaPair findPairBySourceName(Pipeline pipeline, String namespace, String name) {
+        if (pipeline.getId() != null) {
+            return getRoutingIndex(pipeline).findPairBySourceName(namespace, name);
+        }
+
+        for (DataMediaPair pair : pipeline.getPairs()) {
+            if (isMatch(pair.getSource(), namespace, name)) {
+                return pair;
+            }
+        }
+        return null;
+    }
+
     /**
      * 解析DataMedia中的namespace和name，支持offer[1-128]分库的定义
      */
@@ -256,7 +342,7 @@ public class ConfigHelper {
 
     // ===================== helper method ================
 
-    private static boolean isMatch(DataMedia dataMedia, String namespace, String name) {
+    static boolean isMatch(DataMedia dataMedia, String namespace, String name) {
         boolean isMatch = true;
         if (StringUtils.isEmpty(namespace)) {
             isMatch &= StringUtils.isEmpty(dataMedia.getNamespace());
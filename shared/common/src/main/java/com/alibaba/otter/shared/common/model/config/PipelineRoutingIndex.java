@@ -0,0 +1,320 @@
+/*
+ * Copyright (C) 2010-2101 Alibaba Group Holding Limited.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.otter.shared.common.model.config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang.StringUtils;
+
+import com.alibaba.otter.shared.common.model.config.data.ColumnGroup;
+import com.alibaba.otter.shared.common.model.config.data.ColumnPair;
+import com.alibaba.otter.shared.common.model.config.data.DataMedia;
+import com.alibaba.otter.shared.common.model.config.data.DataMedia.ModeValue;
+import com.alibaba.otter.shared.common.model.config.data.DataMediaPair;
+import com.alibaba.otter.shared.common.model.config.data.DataMediaSource;
+import com.alibaba.otter.shared.common.model.config.data.ExtensionData;
+import com.alibaba.otter.shared.common.model.config.pipeline.Pipeline;
+
+/**
+ * pipeline下DataMediaPair的路由索引，替代ConfigHelper中针对pairs的线性查找
+ *
+ * <pre>
+ * 1. 构建后不可变，根据pairs的配置内容计算指纹，pipeline配置变化(包括原地修改)后会重新构建一个新版本
+ * 2. single/multi模式的源表，直接展开为namespace.name的hash查找
+ * 3. wildcard模式的源表，保留原始顺序进行正则匹配，匹配结果会缓存(包括未匹配的结果)
+ * 4. 多个pair同时匹配时，保持和线性查找一致的语义，返回pipeline中第一个匹配的pair
+ * </pre>
+ */
+public class PipelineRoutingIndex {
+
+    private static final AtomicLong                  VERSION_GENERATOR = new AtomicLong(0);
+    private static final int                         MAX_EXPAND_SIZE   = 10000;                        // multi模式展开的最大数量
+    private static final int                         MAX_CACHE_SIZE    = 50000;                        // 名字匹配结果的最大缓存数量
+    private static final Object                      NOT_FOUND         = new Object();
+
+    private final long                               version;
+    private final long                               fingerprint;
+    private final List<DataMediaPair>                pairs;
+    private final int                                pairSize;
+    private final Map<Long, DataMediaPair>           pairsById         = new HashMap<Long, DataMediaPair>();
+    private final Map<Long, DataMedia>               mediasById        = new HashMap<Long, DataMedia>();
+    private final Map<Long, List<DataMediaPair>>     pairsByMediaId    = new HashMap<Long, List<DataMediaPair>>();
+    private final Map<String, Integer>               exactNames        = new HashMap<String, Integer>();
+    private final List<Integer>                      patternPairs      = new ArrayList<Integer>();
+    private final ConcurrentMap<String, Object>      resolvedNames     = new ConcurrentHashMap<String, Object>();
+    private final ConcurrentMap<Long, Object>        projections       = new ConcurrentHashMap<Long, Object>();
+
+    public PipelineRoutingIndex(Pipeline pipeline){
+        this.version = VERSION_GENERATOR.incrementAndGet();
+        this.fingerprint = fingerprint(pipeline);
+        this.pairs = pipeline.getPairs() == null ? Collections.<DataMediaPair> emptyList() : new ArrayList<DataMediaPair>(
+            pipeline.getPairs());
+        this.pairSize = pairs.size();
+
+        for (int i = 0; i < pairSize; i++) {
+            DataMediaPair pair = pairs.get(i);
+            if (!pairsById.containsKey(pair.getId())) {
+                pairsById.put(pair.getId(), pair);
+            }
+
+            DataMedia source = pair.getSource();
+            DataMedia target = pair.getTarget();
+            if (!mediasById.containsKey(source.getId())) {
+                mediasById.put(source.getId(), source);
+            }
+            if (!mediasById.containsKey(target.getId())) {
+                mediasById.put(target.getId(), target);
+            }
+
+            addPairByMediaId(source.getId(), pair);
+            if (!target.getId().equals(source.getId())) {
+                addPairByMediaId(target.getId(), pair);
+            }
+
+            if (!expandNames(source, i)) {
+                patternPairs.add(i);
+            }
+        }
+    }
+
+    /**
+     * 判断当前索引是否和该pipeline的配置内容一致，不要求是同一个pipeline对象
+     */
+    public boolean isBuiltFrom(Pipeline pipeline) {
+        return fingerprint == fingerprint(pipeline);
+    }
+
+    /**
+     * 计算pipeline中pairs配置的指纹，只计算原始的配置值，不展开multi模式
+     */
+    public static long fingerprint(Pipeline pipeline) {
+        long hash = hash(17, pipeline.getId());
+        List<DataMediaPair> pairs = pipeline.getPairs();
+        if (pairs == null) {
+            return hash;
+        }
+
+        hash = hash(hash, pairs.size());
+        for (DataMediaPair pair : pairs) {
+            hash = hash(hash, pair.getId());
+            hash = hash(hash, pair.getPullWeight());
+            hash = hash(hash, pair.getPushWeight());
+            hash = hash(hash, pair.getGmtModified());
+            hash = hash(hash, pair.getColumnPairMode());
+            hash = hash(hash, pair.getFilterData());
+            hash = hash(hash, pair.getResolverData());
+            hash = hash(hash, pair.getSource());
+            hash = hash(hash, pair.getTarget());
+            if (pair.getColumnPairs() != null) {
+                for (ColumnPair columnPair : pair.getColumnPairs()) {
+                    hash = hash(hash, columnPair);
+                }
+            }
+            if (pair.getColumnGroups() != null) {
+                for (ColumnGroup columnGroup : pair.getColumnGroups()) {
+                    if (columnGroup != null && columnGroup.getColumnPairs() != null) {
+                        for (ColumnPair columnPair : columnGroup.getColumnPairs()) {
+                            hash = hash(hash, columnPair);
+                        }
+                    }
+                }
+            }
+        }
+
+        return hash;
+    }
+
+    public DataMediaPair findPairBySourceName(String namespace, String name) {
+        String key = buildKey(namespace, name);
+        Object result = resolvedNames.get(key);
+        if (result == null) {
+            result = resolve(namespace, name, key);
+            if (resolvedNames.size() < MAX_CACHE_SIZE) {
+                resolvedNames.putIfAbsent(key, result);
+            }
+        }
+
+        return result == NOT_FOUND ? null : (DataMediaPair) result;
+    }
+
+    public DataMediaPair findPair(Long pairId) {
+        return pairsById.get(pairId);
+    }
+
+    public DataMedia findDataMedia(Long mediaId) {
+        return mediasById.get(mediaId);
+    }
+
+    public List<DataMediaPair> findPairsByMediaId(Long mediaId) {
+        List<DataMediaPair> result = pairsByMediaId.get(mediaId);
+        if (result == null) {
+            return new ArrayList<DataMediaPair>();
+        }
+
+        return new ArrayList<DataMediaPair>(result);
+    }
+
+    /**
+     * 获取源表的字段投影，返回null代表需要所有字段
+     */
+    public ColumnProjection findColumnProjection(Long mediaId) {
+        Object result = projections.get(mediaId);
+        if (result == null) {
+            List<DataMediaPair> projectPairs = new ArrayList<DataMediaPair>();
+            List<DataMediaPair> mediaPairs = pairsByMediaId.get(mediaId);
+            if (mediaPairs != null) {
+                for (DataMediaPair pair : mediaPairs) {
+                    if (mediaId.equals(pair.getSource().getId())) {
+                        projectPairs.add(pair);
+                    }
+                }
+            }
+
+            ColumnProjection projection = ColumnProjection.build(projectPairs);
+            result = projection == null ? NOT_FOUND : projection;
+            projections.putIfAbsent(mediaId, result);
+        }
+
+        return result == NOT_FOUND ? null : (ColumnProjection) result;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    // ===================== helper method ================
+
+    private static long hash(long hash, DataMedia dataMedia) {
+        if (dataMedia == null) {
+            return hash(hash, (Object) null);
+        }
+
+        hash = hash(hash, dataMedia.getId());
+        hash = hash(hash, dataMedia.getNamespace());
+        hash = hash(hash, dataMedia.getName());
+        hash = hash(hash, dataMedia.getGmtModified());
+        DataMediaSource source = dataMedia.getSource();
+        if (source != null) {
+            hash = hash(hash, source.getId());
+            hash = hash(hash, source.getGmtModified());
+        }
+        return hash;
+    }
+
+    private static long hash(long hash, ExtensionData extensionData) {
+        if (extensionData == null) {
+            return hash(hash, (Object) null);
+        }
+
+        hash = hash(hash, extensionData.getExtensionDataType());
+        hash = hash(hash, extensionData.getClazzPath());
+        hash = hash(hash, extensionData.getSourceText());
+        return hash(hash, extensionData.getTimestamp());
+    }
+
+    private static long hash(long hash, ColumnPair columnPair) {
+        if (columnPair == null) {
+            return hash(hash, (Object) null);
+        }
+
+        hash = hash(hash, columnPair.getSourceColumn() == null ? null : columnPair.getSourceColumn().getName());
+        return hash(hash, columnPair.getTargetColumn() == null ? null : columnPair.getTargetColumn().getName());
+    }
+
+    private static long hash(long hash, Object value) {
+        return hash * 1000003 + (value == null ? 0 : value.hashCode());
+    }
+
+    private Object resolve(String namespace, String name, String key) {
+        Integer exact = exactNames.get(key);
+        int limit = exact == null ? pairSize : exact;
+        // 存在比精确匹配更靠前的通配符配置，需要优先匹配，保持和线性查找一致
+        for (Integer index : patternPairs) {
+            if (index >= limit) {
+                break;
+            }
+
+            DataMediaPair pair = pairs.get(index);
+            if (ConfigHelper.isMatch(pair.getSource(), namespace, name)) {
+                return pair;
+            }
+        }
+
+        return exact == null ? NOT_FOUND : pairs.get(exact);
+    }
+
+    private void addPairByMediaId(Long mediaId, DataMediaPair pair) {
+        List<DataMediaPair> mediaPairs = pairsByMediaId.get(mediaId);
+        if (mediaPairs == null) {
+            mediaPairs = new ArrayList<DataMediaPair>(1);
+            pairsByMediaId.put(mediaId, mediaPairs);
+        }
+
+        mediaPairs.add(pair);
+    }
+
+    /**
+     * 将single/multi模式的namespace和name展开为精确的名字，返回false代表需要走正则匹配
+     */
+    private boolean expandNames(DataMedia source, int index) {
+        List<String> namespaces = expandValues(source.getNamespace(), source.getNamespaceMode());
+        List<String> names = expandValues(source.getName(), source.getNameMode());
+        if (namespaces == null || names == null || namespaces.size() * names.size() > MAX_EXPAND_SIZE) {
+            return false;
+        }
+
+        for (String namespace : namespaces) {
+            for (String name : names) {
+                String key = buildKey(namespace, name);
+                if (!exactNames.containsKey(key)) {
+                    exactNames.put(key, index);
+                }
+            }
+        }
+
+        return true;
+    }
+
+    private List<String> expandValues(String value, ModeValue modeValue) {
+        if (StringUtils.isEmpty(value)) {
+            return Collections.singletonList("");
+        }
+
+        if (modeValue == null) {
+            return null;
+        } else if (modeValue.getMode().isSingle()) {
+            return Collections.singletonList(value);
+        } else if (modeValue.getMode().isMulti()) {
+            return modeValue.getMultiValue();
+        } else {
+            return null;
+        }
+    }
+
+    private String buildKey(String namespace, String name) {
+        return StringUtils.lowerCase(StringUtils.defaultString(namespace)) + "."
+               + StringUtils.lowerCase(StringUtils.defaultString(name));
+    }
+
+}
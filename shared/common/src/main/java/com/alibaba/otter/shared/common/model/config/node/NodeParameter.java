@@ -34,6 +34,7 @@ public class NodeParameter implements Serializable {
     private static final long serialVersionUID = -4788966688697451950L;
     private Integer           mbeanPort;                               // mbean端口
     private Integer           downloadPort;                            // 下载端口
+    private Integer           streamPort;                              // 数据推送端口，stream pipe使用
     private AutoKeeperCluster zkCluster;                               // zk的集群
     private String            externalIp;                              // 外部ip
     private Boolean           useExternalIp    = false;                // 是否使用外部ip，此优先级高于pipeline参数，设置后包括rpc/pipe都将使用外部ip
@@ -46,6 +47,14 @@ public class NodeParameter implements Serializable {
         this.downloadPort = downloadPort;
     }
 
+    public Integer getStreamPort() {
+        return streamPort;
+    }
+
+    public void setStreamPort(Integer streamPort) {
+        this.streamPort = streamPort;
+    }
+
     public Integer getMbeanPort() {
         return mbeanPort;
     }
@@ -77,6 +77,25 @@ public class PipelineParameter implements Serializable {
                                                                                              // run模型，只记录load日志，不同步数据
     private Boolean               ddlSync                    = true;                        // 是否支持ddl同步
     private Boolean               skipDdlException           = false;                       // 是否跳过ddl执行异常
+    private Boolean               parallelParse              = false;                       // 是否启用binlog并行解析
+    private Integer               parallelParseThreadSize    = 0;                           // 并行解析线程数，<=0代表使用canal的默认值
+    private Integer               parallelParseBufferSize    = 256;                         // 并行解析的ringbuffer大小，会调整为2的指数
+    private Boolean               parallelMessageParse       = false;                       // 是否按事务切分后并行解析canal数据
+    private Integer               messageParsePoolSize       = 5;                           // 并行解析canal数据的线程数
+    private Boolean               adaptiveBatch              = false;                       // 是否根据数据大小和延迟自适应调整mainstem批次大小
+    private Integer               batchTargetSize            = 1024;                        // 自适应模式下单批次的目标大小，单位KB
+    private Integer               batchLatencyBudget         = 1000;                        // 自适应模式下单批次的延迟预算，单位毫秒
+    private Integer               selectPrefetchSize         = 0;                           // select预取的批次数，<=0代表不启用预取
+    private Boolean               sharedParse                = false;                       // 同一个canal destination下的多个pipeline是否共享binlog解析
+    private PipeCompressType      pipeCompressType           = PipeCompressType.NONE;       // http pipe传输数据的压缩算法
+    private Boolean               useStreamDownload          = false;                       // http pipe是否边下载边解析，不落地文件
+    private Boolean               useTypedEncode             = false;                       // pipe传输是否使用v2的类型化列编码，需要所有node都升级后开启
+    private Boolean               useStreamEncrypt           = false;                       // 文件加密时是否边写边加密/校验，需要所有node都升级后开启
+    private Boolean               extractMerge               = false;                       // extract节点在发送前是否按主键合并同一批次的I/U/D数据
+    private Boolean               useLocalMmap               = false;                       // 同一台机器上的node之间是否通过共享目录的mmap文件传输
+    private Integer               extractBatchSize           = 0;                           // 数据库反查时按表合并为where pk in (...)的批次大小，<=1代表单条反查
+    private Boolean               useExtractCache            = false;                       // 数据库反查结果是否在批次窗口内按主键缓存，热点记录只反查一次
+    private Boolean               extractPartition           = false;                       // extract是否按表分区，各分区独立流过extractor链，互不等待
 
     // ================================= channel parameter
     // ================================
@@ -209,7 +228,11 @@ public class PipelineParameter implements Serializable {
         /** RPC */
         RPC,
         /** HTTP */
-        HTTP;
+        HTTP,
+        /** 基于长连接主动推送 */
+        STREAM,
+        /** 根据实测代价在RPC/HTTP之间自适应选择 */
+        ADAPTIVE;
 
         public boolean isAutomatic() {
             return this.equals(PipeChooseMode.AUTOMATIC);
@@ -222,6 +245,41 @@ public class PipelineParameter implements Serializable {
         public boolean isHttp() {
             return this.equals(PipeChooseMode.HTTP);
         }
+
+        public boolean isStream() {
+            return this.equals(PipeChooseMode.STREAM);
+        }
+
+        public boolean isAdaptive() {
+            return this.equals(PipeChooseMode.ADAPTIVE);
+        }
+    }
+
+    public static enum PipeCompressType {
+        /** 不压缩 */
+        NONE,
+        /** gzip */
+        GZIP,
+        /** bzip2，压缩率高，cpu消耗大 */
+        BZIP2,
+        /** lz4，压缩率低，速度快 */
+        LZ4;
+
+        public boolean isNone() {
+            return this.equals(PipeCompressType.NONE);
+        }
+
+        public boolean isGzip() {
+            return this.equals(PipeCompressType.GZIP);
+        }
+
+        public boolean isBzip2() {
+            return this.equals(PipeCompressType.BZIP2);
+        }
+
+        public boolean isLz4() {
+            return this.equals(PipeCompressType.LZ4);
+        }
     }
 
     public static enum SelectorMode {
@@ -507,6 +565,158 @@ public class PipelineParameter implements Serializable {
         this.skipDdlException = skipDdlException;
     }
 
+    public Boolean getParallelParse() {
+        return parallelParse == null ? false : parallelParse;
+    }
+
+    public void setParallelParse(Boolean parallelParse) {
+        this.parallelParse = parallelParse;
+    }
+
+    public Integer getParallelParseThreadSize() {
+        return parallelParseThreadSize == null ? 0 : parallelParseThreadSize;
+    }
+
+    public void setParallelParseThreadSize(Integer parallelParseThreadSize) {
+        this.parallelParseThreadSize = parallelParseThreadSize;
+    }
+
+    public Integer getParallelParseBufferSize() {
+        return parallelParseBufferSize == null ? 256 : parallelParseBufferSize;
+    }
+
+    public void setParallelParseBufferSize(Integer parallelParseBufferSize) {
+        this.parallelParseBufferSize = parallelParseBufferSize;
+    }
+
+    public Boolean getParallelMessageParse() {
+        return parallelMessageParse == null ? false : parallelMessageParse;
+    }
+
+    public void setParallelMessageParse(Boolean parallelMessageParse) {
+        this.parallelMessageParse = parallelMessageParse;
+    }
+
+    public Integer getMessageParsePoolSize() {
+        return messageParsePoolSize == null ? 5 : messageParsePoolSize;
+    }
+
+    public void setMessageParsePoolSize(Integer messageParsePoolSize) {
+        this.messageParsePoolSize = messageParsePoolSize;
+    }
+
+    public Boolean getAdaptiveBatch() {
+        return adaptiveBatch == null ? false : adaptiveBatch;
+    }
+
+    public void setAdaptiveBatch(Boolean adaptiveBatch) {
+        this.adaptiveBatch = adaptiveBatch;
+    }
+
+    public Integer getBatchTargetSize() {
+        return batchTargetSize == null ? 1024 : batchTargetSize;
+    }
+
+    public void setBatchTargetSize(Integer batchTargetSize) {
+        this.batchTargetSize = batchTargetSize;
+    }
+
+    public Integer getBatchLatencyBudget() {
+        return batchLatencyBudget == null ? 1000 : batchLatencyBudget;
+    }
+
+    public void setBatchLatencyBudget(Integer batchLatencyBudget) {
+        this.batchLatencyBudget = batchLatencyBudget;
+    }
+
+    public Integer getSelectPrefetchSize() {
+        return selectPrefetchSize == null ? 0 : selectPrefetchSize;
+    }
+
+    public void setSelectPrefetchSize(Integer selectPrefetchSize) {
+        this.selectPrefetchSize = selectPrefetchSize;
+    }
+
+    public Boolean getSharedParse() {
+        return sharedParse == null ? false : sharedParse;
+    }
+
+    public void setSharedParse(Boolean sharedParse) {
+        this.sharedParse = sharedParse;
+    }
+
+    public PipeCompressType getPipeCompressType() {
+        return pipeCompressType == null ? PipeCompressType.NONE : pipeCompressType;
+    }
+
+    public void setPipeCompressType(PipeCompressType pipeCompressType) {
+        this.pipeCompressType = pipeCompressType;
+    }
+
+    public Boolean getUseStreamDownload() {
+        return useStreamDownload == null ? false : useStreamDownload;
+    }
+
+    public void setUseStreamDownload(Boolean useStreamDownload) {
+        this.useStreamDownload = useStreamDownload;
+    }
+
+    public Boolean getUseTypedEncode() {
+        return useTypedEncode == null ? false : useTypedEncode;
+    }
+
+    public void setUseTypedEncode(Boolean useTypedEncode) {
+        this.useTypedEncode = useTypedEncode;
+    }
+
+    public Boolean getUseStreamEncrypt() {
+        return useStreamEncrypt == null ? false : useStreamEncrypt;
+    }
+
+    public void setUseStreamEncrypt(Boolean useStreamEncrypt) {
+        this.useStreamEncrypt = useStreamEncrypt;
+    }
+
+    public Boolean getExtractMerge() {
+        return extractMerge == null ? false : extractMerge;
+    }
+
+    public void setExtractMerge(Boolean extractMerge) {
+        this.extractMerge = extractMerge;
+    }
+
+    public Boolean getUseLocalMmap() {
+        return useLocalMmap == null ? false : useLocalMmap;
+    }
+
+    public void setUseLocalMmap(Boolean useLocalMmap) {
+        this.useLocalMmap = useLocalMmap;
+    }
+
+    public Integer getExtractBatchSize() {
+        return extractBatchSize == null ? 0 : extractBatchSize;
+    }
+
+    public void setExtractBatchSize(Integer extractBatchSize) {
+        this.extractBatchSize = extractBatchSize;
+    }
+
+    public Boolean getUseExtractCache() {
+        return useExtractCache == null ? false : useExtractCache;
+    }
+
+    public void setUseExtractCache(Boolean useExtractCache) {
+        this.useExtractCache = useExtractCache;
+    }
+
+    public Boolean getExtractPartition() {
+        return extractPartition == null ? false : extractPartition;
+    }
+
+    public void setExtractPartition(Boolean extractPartition) {
+        this.extractPartition = extractPartition;
+    }
+
     // =============================channel parameter ==========================
 
     public Boolean getEnableRemedy() {
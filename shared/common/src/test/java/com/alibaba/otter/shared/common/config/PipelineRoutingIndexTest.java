@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2010-2101 Alibaba Group Holding Limited.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.otter.shared.common.config;
+
+import java.util.ArrayList;
+
+import org.testng.annotations.Test;
+
+import com.alibaba.otter.shared.common.BaseOtterTest;
+import com.alibaba.otter.shared.common.model.config.ColumnProjection;
+import com.alibaba.otter.shared.common.model.config.ConfigHelper;
+import com.alibaba.otter.shared.common.model.config.PipelineRoutingIndex;
+import com.alibaba.otter.shared.common.model.config.data.ColumnPair;
+import com.alibaba.otter.shared.common.model.config.data.ColumnPairMode;
+import com.alibaba.otter.shared.common.model.config.data.DataMediaPair;
+import com.alibaba.otter.shared.common.model.config.data.db.DbDataMedia;
+import com.alibaba.otter.shared.common.model.config.pipeline.Pipeline;
+
+public class PipelineRoutingIndexTest extends BaseOtterTest {
+
+    @Test
+    public void testExactAndMulti() {
+        Pipeline pipeline = buildPipeline(1L);
+        pipeline.getPairs().add(buildPair(1L, 10L, "test", "offer[1-4]"));
+        pipeline.getPairs().add(buildPair(2L, 20L, "test", "member"));
+
+        DataMediaPair pair = ConfigHelper.findDataMediaPairBySourceName(pipeline, "TEST", "offer3");
+        want.number(pair.getId()).isEqualTo(1L);
+        pair = ConfigHelper.findDataMediaPairBySourceName(pipeline, "test", "Member");
+        want.number(pair.getId()).isEqualTo(2L);
+        pair = ConfigHelper.findDataMediaPairBySourceName(pipeline, "test", "offer5", true);
+        want.object(pair).isNull();
+
+        want.number(ConfigHelper.findDataMediaPair(pipeline, 2L).getId()).isEqualTo(2L);
+        want.number(ConfigHelper.findDataMedia(pipeline, 10L).getId()).isEqualTo(10L);
+        want.number(ConfigHelper.findDataMedia(pipeline, 11L).getId()).isEqualTo(11L);
+        want.collection(ConfigHelper.findDataMediaPairByMediaId(pipeline, 21L)).sizeEq(1);
+    }
+
+    @Test
+    public void testWildCardOrder() {
+        Pipeline pipeline = buildPipeline(2L);
+        pipeline.getPairs().add(buildPair(1L, 10L, "test", "offer_.*"));
+        pipeline.getPairs().add(buildPair(2L, 20L, "test", "offer_detail"));
+
+        // 通配符配置在前，需要和线性查找一样优先匹配通配符
+        DataMediaPair pair = ConfigHelper.findDataMediaPairBySourceName(pipeline, "test", "offer_detail");
+        want.number(pair.getId()).isEqualTo(1L);
+        pair = ConfigHelper.findDataMediaPairBySourceName(pipeline, "test", "member", true);
+        want.object(pair).isNull();
+    }
+
+    @Test
+    public void testRebuild() {
+        Pipeline pipeline = buildPipeline(3L);
+        pipeline.getPairs().add(buildPair(1L, 10L, "test", "offer"));
+        PipelineRoutingIndex index = ConfigHelper.getRoutingIndex(pipeline);
+        want.object(ConfigHelper.getRoutingIndex(pipeline)).isEqualTo(index);
+
+        // 模拟收到新的channel配置
+        Pipeline newPipeline = buildPipeline(3L);
+        newPipeline.getPairs().add(buildPair(2L, 20L, "test", "member"));
+        PipelineRoutingIndex newIndex = ConfigHelper.getRoutingIndex(newPipeline);
+        want.bool(newIndex.getVersion() > index.getVersion()).is(true);
+        want.object(ConfigHelper.findDataMediaPairBySourceName(newPipeline, "test", "offer", true)).isNull();
+
+        // 相同内容的新pipeline对象，不需要重建
+        Pipeline samePipeline = buildPipeline(3L);
+        samePipeline.getPairs().add(buildPair(2L, 20L, "test", "member"));
+        want.object(ConfigHelper.getRoutingIndex(samePipeline)).isEqualTo(newIndex);
+
+        // 原地修改pair的视图定义，需要重建
+        want.object(ConfigHelper.findColumnProjection(samePipeline, 20L)).isNull();
+        samePipeline.getPairs().get(0).getColumnPairs().add(new ColumnPair("name", "name"));
+        ColumnProjection projection = ConfigHelper.findColumnProjection(samePipeline, 20L);
+        want.bool(projection.contains("name")).is(true);
+        want.bool(projection.contains("nick")).is(false);
+
+        // pipeline停止后删除索引
+        PipelineRoutingIndex lastIndex = ConfigHelper.getRoutingIndex(samePipeline);
+        ConfigHelper.removeRoutingIndex(3L);
+        want.bool(ConfigHelper.getRoutingIndex(samePipeline).getVersion() > lastIndex.getVersion()).is(true);
+    }
+
+    @Test
+    public void testWithoutId() {
+        Pipeline pipeline = buildPipeline(null);
+        pipeline.getPairs().add(buildPair(1L, 10L, "test", "offer_.*"));
+        pipeline.getPairs().add(buildPair(2L, 20L, "test", "offer_detail"));
+
+        // 没有id的pipeline直接线性查找，语义保持一致
+        want.number(ConfigHelper.findDataMediaPairBySourceName(pipeline, "test", "offer_detail").getId()).isEqualTo(1L);
+        want.object(ConfigHelper.findDataMediaPairBySourceName(pipeline, "test", "member", true)).isNull();
+        want.number(ConfigHelper.findDataMediaPair(pipeline, 2L).getId()).isEqualTo(2L);
+        want.number(ConfigHelper.findDataMedia(pipeline, 20L).getId()).isEqualTo(20L);
+        want.collection(ConfigHelper.findDataMediaPairByMediaId(pipeline, 10L)).sizeEq(1);
+        want.object(ConfigHelper.findColumnProjection(pipeline, 10L)).isNull();
+    }
+
+    @Test
+    public void testColumnProjection() {
+        Pipeline pipeline = buildPipeline(4L);
+        DataMediaPair include = buildPair(1L, 10L, "test", "offer");
+        include.getColumnPairs().add(new ColumnPair("NAME", "NAME"));
+        pipeline.getPairs().add(include);
+        DataMediaPair exclude = buildPair(2L, 20L, "test", "member");
+        exclude.setColumnPairMode(ColumnPairMode.EXCLUDE);
+        exclude.getColumnPairs().add(new ColumnPair("password", "password"));
+        pipeline.getPairs().add(exclude);
+        pipeline.getPairs().add(buildPair(3L, 30L, "test", "detail"));
+
+        ColumnProjection projection = ConfigHelper.findColumnProjection(pipeline, 10L);
+        want.bool(projection.contains("name")).is(true);
+        want.bool(projection.contains("gmt_create")).is(false);
+        projection = ConfigHelper.findColumnProjection(pipeline, 20L);
+        want.bool(projection.contains("PASSWORD")).is(false);
+        want.bool(projection.contains("nick")).is(true);
+        // 没有视图定义，需要所有字段
+        want.object(ConfigHelper.findColumnProjection(pipeline, 30L)).isNull();
+
+        // 多路复制时，取所有pair需要字段的并集
+        DataMediaPair other = buildPair(4L, 10L, "test", "offer");
+        other.getColumnPairs().add(new ColumnPair("title", "title"));
+        pipeline.getPairs().add(other);
+        projection = ConfigHelper.findColumnProjection(pipeline, 10L);
+        want.bool(projection.contains("title")).is(true);
+        want.bool(projection.contains("name")).is(true);
+    }
+
+    private Pipeline buildPipeline(Long id) {
+        Pipeline pipeline = new Pipeline();
+        pipeline.setId(id);
+        pipeline.setPairs(new ArrayList<DataMediaPair>());
+        return pipeline;
+    }
+
+    private DataMediaPair buildPair(Long pairId, Long mediaId, String namespace, String name) {
+        DbDataMedia source = new DbDataMedia();
+        source.setId(mediaId);
+        source.setNamespace(namespace);
+        source.setName(name);
+
+        DbDataMedia target = new DbDataMedia();
+        target.setId(mediaId + 1);
+        target.setNamespace(namespace);
+        target.setName(name);
+
+        DataMediaPair pair = new DataMediaPair();
+        pair.setId(pairId);
+        pair.setSource(source);
+        pair.setTarget(target);
+        return pair;
+    }
+
+}
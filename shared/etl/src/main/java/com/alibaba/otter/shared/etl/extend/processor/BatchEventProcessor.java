@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2010-2101 Alibaba Group Holding Limited.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.alibaba.otter.shared.etl.extend.processor;
+
+import java.util.List;
+
+import com.alibaba.otter.shared.etl.model.EventData;
+
+/**
+ * 批量的业务自定义处理过程，一次处理同一个DataMediaPair在一个批次内的所有数据
+ * 
+ * <pre>
+ * 1. 实现了该接口后，ProcessorExtractor会优先调用{@linkplain #process(List)}，不再逐条调用{@linkplain EventProcessor#process(EventData)}
+ * 2. 不同源表的数据会在线程池中并行处理，同一个实现可能被并发调用，需要保证线程安全
+ * 3. 比如需要通过DataSourceFetcher反查数据时，可以合并为一次批量查询
+ * </pre>
+ */
+public interface BatchEventProcessor extends EventProcessor {
+
+    /**
+     * 批量处理EventData，数据按照原始的变更顺序排列
+     * 
+     * @return 需要继续处理的数据，未返回的数据会被忽略，也可以返回修改后的新对象
+     */
+    public List<EventData> process(List<EventData> eventDatas);
+}